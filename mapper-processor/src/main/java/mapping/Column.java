@@ -0,0 +1,33 @@
+package mapping;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Names the column a constructor parameter of a {@link RowMapped} class is read from.
+ *
+ * @author Joshua Escareno
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.PARAMETER)
+public @interface Column {
+
+    /**
+     * @return the column label, matched ignoring case as MySQL does
+     */
+    String value();
+
+    /**
+     * @return whether the row may come without this column, in which case the parameter gets 0, false or null
+     * and the column is left out of the select list
+     */
+    boolean optional() default false;
+
+    /**
+     * @return whether the column is a string with few distinct values, which are then read through a dictionary
+     * shared by every row of the class, so equal values share one {@code String}
+     */
+    boolean canonical() default false;
+}
@@ -0,0 +1,23 @@
+package mapping;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a data class whose rows are read from a table. At compile time {@link RowMapperProcessor}
+ * writes a {@code <ClassName>Mapper} next to it, which lists the columns to select and builds an
+ * instance from a row through the one constructor whose parameters are all {@link Column}s.
+ *
+ * @author Joshua Escareno
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface RowMapped {
+
+    /**
+     * @return the table the rows come from
+     */
+    String table();
+}
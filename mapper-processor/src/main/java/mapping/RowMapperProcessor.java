@@ -0,0 +1,271 @@
+package mapping;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes a {@code util.RowMapping} for every {@link RowMapped} class. The mapping calls the class's
+ * {@link Column} constructor with each parameter read by the {@code ResultSet} getter for its type, from
+ * an index resolved once per statement, so mapping a row involves no reflection or label lookups. It also
+ * carries the select list of the class as {@code COLUMNS}, so queries need not select {@code *}.
+ * Canonical columns are read through a {@code util.StringInterner} held by the mapping.
+ * <p>
+ * Column types are limited to those the hand-written mappers read: {@code int}, {@code long},
+ * {@code double}, {@code boolean}, {@code Integer}, {@code String}, {@code BigDecimal}, {@code LocalDate}
+ * and {@code LocalDateTime}, plus {@code byte[]} for a class that decodes a column itself. Anything else is a
+ * compile error.
+ *
+ * @author Joshua Escareno
+ */
+@SupportedAnnotationTypes("mapping.RowMapped")
+public class RowMapperProcessor extends AbstractProcessor {
+
+    /**
+     * the number of canonical strings kept per mapped class, across all its canonical columns
+     */
+    private static final int CANONICAL_VALUES = 1024;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(RowMapped.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@RowMapped only applies to classes");
+                continue;
+            }
+
+            TypeElement type = (TypeElement) element;
+            ExecutableElement constructor = findConstructor(type);
+            if (constructor == null) continue;
+
+            try {
+                write(type, constructor);
+            } catch (IOException e) {
+                error(type, "Cannot write the mapper of " + type + ": " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the one accessible constructor whose parameters are all columns, or null after reporting why
+     * there is none
+     */
+    private ExecutableElement findConstructor(TypeElement type) {
+        List<ExecutableElement> found = new ArrayList<>();
+
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            if (parameters.isEmpty()) continue;
+
+            boolean columns = true;
+            for (VariableElement parameter : parameters) {
+                columns &= parameter.getAnnotation(Column.class) != null;
+            }
+            if (columns) found.add(constructor);
+        }
+
+        if (found.size() != 1) {
+            error(type, "@RowMapped class " + type + " needs exactly one constructor with every parameter "
+                    + "annotated @Column, but has " + found.size());
+            return null;
+        }
+
+        ExecutableElement constructor = found.get(0);
+        if (constructor.getModifiers().contains(Modifier.PRIVATE)) {
+            error(constructor, "The @Column constructor of " + type + " must not be private");
+            return null;
+        }
+        return constructor;
+    }
+
+    private void write(TypeElement type, ExecutableElement constructor) throws IOException {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String mapperName = type.getSimpleName() + "Mapper";
+        String typeName = type.getQualifiedName().toString();
+        RowMapped rowMapped = type.getAnnotation(RowMapped.class);
+
+        List<String> labels = new ArrayList<>();
+        List<String> selected = new ArrayList<>();
+        List<String> optional = new ArrayList<>();
+        List<String> reads = new ArrayList<>();
+        boolean canonical = false;
+
+        List<? extends VariableElement> parameters = constructor.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            VariableElement parameter = parameters.get(i);
+            Column column = parameter.getAnnotation(Column.class);
+            String read = read(parameter.asType(), "index[" + i + "]");
+
+            if (read == null) {
+                error(parameter, "Cannot map a column to " + parameter.asType());
+                return;
+            }
+            if (column.canonical()) {
+                if (!parameter.asType().toString().equals("java.lang.String")) {
+                    error(parameter, "Only String columns can be canonical");
+                    return;
+                }
+                read = "STRINGS.intern(rs, index[" + i + "])";
+                canonical = true;
+            }
+            if (labels.contains(column.value())) {
+                error(parameter, "Column " + column.value() + " is mapped twice");
+                return;
+            }
+
+            labels.add(column.value());
+            optional.add(String.valueOf(column.optional()));
+            if (column.optional()) {
+                reads.add("index[" + i + "] == 0 ? " + missing(parameter.asType()) + " : " + read);
+            } else {
+                selected.add(column.value());
+                reads.add(read);
+            }
+        }
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                packageName.isEmpty() ? mapperName : packageName + "." + mapperName, type);
+
+        try (PrintWriter out = new PrintWriter(file.openWriter())) {
+            if (!packageName.isEmpty()) out.println("package " + packageName + ";\n");
+
+            out.println("/**");
+            out.println(" * Reads {@link " + typeName + "} rows of the {@code " + rowMapped.table() + "} table.");
+            out.println(" * Generated by {@code " + RowMapperProcessor.class.getName() + "}; do not edit.");
+            out.println(" */");
+            out.println("public final class " + mapperName + " implements util.RowMapping<" + typeName + "> {");
+            out.println();
+            out.println("    /** The table the rows come from */");
+            out.println("    public static final String TABLE = " + quote(rowMapped.table()) + ";");
+            out.println();
+            out.println("    /** The select list of the columns read, without the optional ones */");
+            out.println("    public static final String COLUMNS = " + quote(String.join(", ", selected)) + ";");
+            out.println();
+            out.println("    public static final " + mapperName + " INSTANCE = new " + mapperName + "();");
+            out.println();
+            out.println("    private static final java.util.List<String> LABELS = java.util.Collections"
+                    + ".unmodifiableList(java.util.Arrays.asList(");
+            out.println("            " + quoteAll(labels) + "));");
+            out.println();
+            out.println("    private static final boolean[] OPTIONAL = {" + String.join(", ", optional) + "};");
+            out.println();
+            if (canonical) {
+                out.println("    private static final util.StringInterner STRINGS = new util.StringInterner("
+                        + CANONICAL_VALUES + ");");
+                out.println();
+            }
+            out.println("    private " + mapperName + "() {");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public String table() {");
+            out.println("        return TABLE;");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public java.util.List<String> columns() {");
+            out.println("        return LABELS;");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public boolean isOptional(int column) {");
+            out.println("        return OPTIONAL[column];");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public " + typeName + " map(java.sql.ResultSet rs, int[] index) "
+                    + "throws java.sql.SQLException {");
+            out.println("        return new " + typeName + "(");
+            for (int i = 0; i < reads.size(); i++) {
+                out.println("                " + reads.get(i) + (i < reads.size() - 1 ? "," : ""));
+            }
+            out.println("        );");
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    /**
+     * @return the expression reading a column of the given type, or null if the type is not supported
+     */
+    private static String read(TypeMirror type, String index) {
+        switch (type.toString()) {
+            case "int":
+                return "rs.getInt(" + index + ")";
+            case "long":
+                return "rs.getLong(" + index + ")";
+            case "double":
+                return "rs.getDouble(" + index + ")";
+            case "boolean":
+                return "rs.getBoolean(" + index + ")";
+            case "java.lang.Integer":
+                return "util.DAOUtils.getInteger(rs, " + index + ")";
+            case "java.lang.String":
+                return "rs.getString(" + index + ")";
+            case "java.math.BigDecimal":
+                return "rs.getBigDecimal(" + index + ")";
+            case "java.time.LocalDate":
+                return "util.DAOUtils.getLocalDate(rs, " + index + ")";
+            case "java.time.LocalDateTime":
+                return "util.DAOUtils.getLocalDateTime(rs, " + index + ")";
+            case "byte[]":
+                return "rs.getBytes(" + index + ")";
+        }
+        return null;
+    }
+
+    /**
+     * @return the value given for a missing optional column of the given type
+     */
+    private static String missing(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "false";
+            case INT:
+            case LONG:
+            case DOUBLE:
+                return "0";
+        }
+        return "null";
+    }
+
+    private static String quote(String s) {
+        return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static String quoteAll(List<String> strings) {
+        List<String> quoted = new ArrayList<>();
+        for (String s : strings) {
+            quoted.add(quote(s));
+        }
+        return String.join(", ", quoted);
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,128 @@
+package Serialize;
+
+import dao.PropertyDAO.PropertyBaseData;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * The fields of a {@link PropertyBaseData} other than its id, in the order of their bits in a
+ * {@link SyncMessage.PropertyDiff} mask. Each field knows how to write its value compactly, so a
+ * diff carries raw values instead of serialized objects.
+ *
+ * @author Dexter Elliott
+ */
+enum PropertyField {
+    TYPE(Kind.STRING),
+    ADDRESS(Kind.STRING),
+    CITY_CODE(Kind.STRING),
+    NUMBER_OF_ROOMS(Kind.INT),
+    NUMBER_OF_BATHROOMS(Kind.INT),
+    GARAGE_COUNT(Kind.INT),
+    SQUARE_FOOTAGE(Kind.DECIMAL),
+    FRONT_YARD_FOOTAGE(Kind.DECIMAL),
+    BACKYARD_FOOTAGE(Kind.DECIMAL),
+    NUMBER_OF_TENANTS(Kind.INT),
+    RENTAL_FEE(Kind.DECIMAL),
+    LAST_PAYMENT_DATE(Kind.DATE),
+    OWNER_ID(Kind.STRING),
+    VACANCY_INDICATOR(Kind.STRING);
+
+    static final PropertyField[] FIELDS = values();
+
+    private enum Kind {STRING, INT, DECIMAL, DATE}
+
+    private final Kind kind;
+
+    PropertyField(Kind kind) {
+        this.kind = kind;
+    }
+
+    int bit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * @return the values of all fields of a property, indexed by ordinal
+     */
+    static Object[] valuesOf(PropertyBaseData p) {
+        return new Object[]{p.getPropertyType(), p.getPropertyAddress(), p.getCityCode(), p.getNumberOfRooms(),
+                p.getNumberOfBathrooms(), p.getGarageCount(), p.getSquareFootage(), p.getFrontYardFootage(),
+                p.getBackyardFootage(), p.getNumberOfTenants(), p.getRentalFee(), p.getLastPaymentDate(),
+                p.getOwnerID(), p.getVacancyIndicator()};
+    }
+
+    /**
+     * @return a property built from its id and the values of all fields, indexed by ordinal
+     */
+    static PropertyBaseData build(int propertyId, Object[] v) {
+        return new PropertyBaseData(propertyId, (String) v[0], (String) v[1], (String) v[2], (Integer) v[3],
+                (Integer) v[4], (Integer) v[5], (BigDecimal) v[6], (BigDecimal) v[7], (BigDecimal) v[8],
+                (Integer) v[9], (BigDecimal) v[10], (LocalDate) v[11], (String) v[12], (String) v[13]);
+    }
+
+    /**
+     * @return a mask with the bits of the fields that differ between two properties
+     */
+    static int diff(Object[] before, Object[] after) {
+        int mask = 0;
+
+        for (PropertyField field : FIELDS) {
+            Object a = before[field.ordinal()], b = after[field.ordinal()];
+
+            // compareTo, not equals, so a fee read back as 1200.00 matches one entered as 1200
+            boolean same = a instanceof BigDecimal && b instanceof BigDecimal ?
+                    ((BigDecimal) a).compareTo((BigDecimal) b) == 0 : Objects.equals(a, b);
+            if (!same) mask |= field.bit();
+        }
+
+        return mask;
+    }
+
+    void write(ObjectOutput out, Object value) throws IOException {
+        if (kind == Kind.INT) {
+            out.writeInt((Integer) value);
+            return;
+        }
+
+        out.writeBoolean(value != null);
+        if (value == null) return;
+
+        switch (kind) {
+            case STRING:
+                out.writeUTF((String) value);
+                break;
+            case DECIMAL:
+                BigDecimal decimal = (BigDecimal) value;
+                byte[] unscaled = decimal.unscaledValue().toByteArray();
+                out.writeByte(decimal.scale());
+                out.writeByte(unscaled.length);
+                out.write(unscaled);
+                break;
+            default:
+                out.writeInt((int) ((LocalDate) value).toEpochDay());
+        }
+    }
+
+    Object read(ObjectInput in) throws IOException {
+        if (kind == Kind.INT) return in.readInt();
+        if (!in.readBoolean()) return null;
+
+        switch (kind) {
+            case STRING:
+                return in.readUTF();
+            case DECIMAL:
+                int scale = in.readByte();
+                byte[] unscaled = new byte[in.readUnsignedByte()];
+                in.readFully(unscaled);
+                return new BigDecimal(new BigInteger(unscaled), scale);
+            default:
+                return LocalDate.ofEpochDay(in.readInt());
+        }
+    }
+}
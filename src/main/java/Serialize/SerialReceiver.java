@@ -1,31 +1,115 @@
 package Serialize;
 
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
 
 /**
- * Handle Receiving info from server
+ * Handle Receiving info from server: listens for the snapshot sync messages that
+ * {@link SerialSender#sync} sends, applies each to a {@link SnapshotSyncReceiver}, and sends back
+ * its reply on the same connection.
+ * <p>
+ * It listens on the loopback address unless told otherwise, and reads nothing but the classes a
+ * sync message is made of; see {@link SyncInputStream}.
  *
  * @author Dexter Elliott
  */
-public class SerialReceiver {
+public class SerialReceiver implements AutoCloseable {
+    private static final int READ_TIMEOUT_MS = 10_000;
+
+    private final ServerSocket server;
+    private final SnapshotSyncReceiver snapshot;
+    private Thread listener;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(SerialReceiver.class.getName());
+    }
 
     /**
-     * Sets the socket that the receiver should listen to in order to listen to the website
+     * Sets the socket that the receiver should listen to, on the loopback address and the port
+     * {@link SerialSender#sync} sends to by default
+     *
+     * @param snapshot the properties kept in sync
+     * @throws IOException if the port cannot be listened on
      */
-    public SerialReceiver() {
-
-        try {
-            Socket socket = new Socket("http://localhost/", 8080);
-            ObjectInputStream OIS = new ObjectInputStream(socket.getInputStream());
-        } catch (IOException e) {
-            System.out.println("Problem setting socket");
-            e.getMessage().trim();
-        }
+    public SerialReceiver(SnapshotSyncReceiver snapshot) throws IOException {
+        this(snapshot, SerialSender.SYNC_PORT);
+    }
+
+    /**
+     * @param snapshot the properties kept in sync
+     * @param port     the port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be listened on
+     */
+    public SerialReceiver(SnapshotSyncReceiver snapshot, int port) throws IOException {
+        this(snapshot, InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * @param snapshot the properties kept in sync
+     * @param address  the address to listen on, for senders on other hosts
+     * @param port     the port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be listened on
+     */
+    public SerialReceiver(SnapshotSyncReceiver snapshot, InetAddress address, int port) throws IOException {
+        this.server = new ServerSocket(port, 0, address);
+        this.snapshot = snapshot;
+    }
 
+    /**
+     * @return the port listened on
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Wait for one message, apply it and reply.
+     *
+     * @throws IOException if the socket is closed, or the message cannot be read or replied to
+     */
+    public void receive() throws IOException {
+        try (Socket socket = server.accept()) {
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            SyncInputStream OIS = new SyncInputStream(socket.getInputStream());
+            SyncMessage reply = snapshot.receive(OIS.readMessage());
 
+            ObjectOutputStream OOS = new ObjectOutputStream(socket.getOutputStream());
+            OOS.writeObject(reply);
+            OOS.flush();
+        }
     }
 
+    /**
+     * Receive messages on a background thread until {@link #close} is called.
+     */
+    public synchronized void listen() {
+        if (listener != null) throw new IllegalStateException("Already listening");
+
+        listener = new Thread(() -> {
+            while (!server.isClosed()) {
+                try {
+                    receive();
+                } catch (SocketException e) {
+                    // closed
+                } catch (IOException | RuntimeException e) {
+                    // the sender gets no reply and starts over
+                    getLogger().log(WARNING, "Sync message dropped ({0})", String.valueOf(e.getMessage()).trim());
+                }
+            }
+        }, "serial-receiver");
+        listener.setDaemon(true);
+        listener.start();
+    }
 
-}
\ No newline at end of file
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+}
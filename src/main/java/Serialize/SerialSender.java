@@ -8,6 +8,9 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.net.Socket;
 import java.util.List;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
 
 /**
  * Handles Sending to website
@@ -15,6 +18,14 @@ import java.util.List;
  * @author Dexter Elliott
  */
 public class SerialSender {
+    static final String HOST = "localhost";
+    static final int SYNC_PORT = 8083;
+    private static final int REPLY_TIMEOUT_MS = 10_000;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(SerialSender.class.getName());
+    }
+
     /**
      * Sets the socket to send objects from for serialized objects
      *
@@ -46,4 +57,52 @@ public class SerialSender {
 
     }
 
+    /**
+     * Sends only what changed in the list since the receiver last acknowledged it, or the whole
+     * list if the receiver has not acknowledged one yet, to the {@link SerialReceiver} on the
+     * default port.
+     *
+     * @param session the sync state of the receiver
+     * @param objs    the current list
+     * @return the receiver's reply, or null if nothing was sent
+     */
+    public static SyncMessage sync(SnapshotSyncSender session, List<PropertyDAO.PropertyBaseData> objs) {
+        return sync(session, objs, HOST, SYNC_PORT);
+    }
+
+    /**
+     * Sends only what changed in the list since the receiver last acknowledged it, and waits for
+     * the receiver's reply, which goes to {@link SnapshotSyncSender#receive}. A reply that does
+     * not arrive leaves the receiver's version unknown, so the next sync starts over with the
+     * whole list.
+     *
+     * @param session the sync state of the receiver
+     * @param objs    the current list
+     * @param host    the host of the {@link SerialReceiver}
+     * @param port    the port of the {@link SerialReceiver}
+     * @return the receiver's reply, or null if nothing was sent or no reply came
+     */
+    public static SyncMessage sync(SnapshotSyncSender session, List<PropertyDAO.PropertyBaseData> objs,
+                                   String host, int port) {
+        SyncMessage message = session.update(objs);
+        if (message == null) return null;
+
+        try (Socket socket = new Socket(host, port)) {
+            socket.setSoTimeout(REPLY_TIMEOUT_MS);
+            ObjectOutputStream OOS = new ObjectOutputStream(socket.getOutputStream());
+            OOS.writeObject(message);
+            OOS.flush();
+
+            SyncInputStream OIS = new SyncInputStream(socket.getInputStream());
+            SyncMessage reply = OIS.readMessage();
+            session.receive(reply);
+            return reply;
+        } catch (IOException e) {
+            getLogger().log(WARNING, "No reply to sync version {0} ({1})",
+                    new Object[]{message.getVersion(), String.valueOf(e.getMessage()).trim()});
+            session.reset();
+            return null;
+        }
+    }
+
 }
@@ -0,0 +1,70 @@
+package Serialize;
+
+import dao.PropertyDAO.PropertyBaseData;
+import Serialize.SyncMessage.Ack;
+import Serialize.SyncMessage.Delta;
+import Serialize.SyncMessage.FullSnapshot;
+import Serialize.SyncMessage.PropertyDiff;
+import Serialize.SyncMessage.ResyncRequest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The receiving side of the property snapshot sync. Pass every message from the
+ * {@link SnapshotSyncSender} to {@link #receive} and send back the reply it returns.
+ *
+ * @author Dexter Elliott
+ */
+public class SnapshotSyncReceiver {
+    private final Map<Integer, PropertyBaseData> properties = new LinkedHashMap<>();
+    private long version;
+
+    /**
+     * Apply a message from the sender.
+     *
+     * @param message a {@link FullSnapshot} or {@link Delta}
+     * @return the reply: an {@link Ack} of the new version, or a {@link ResyncRequest} if a delta
+     * did not start from this receiver's version
+     */
+    public synchronized SyncMessage receive(SyncMessage message) {
+        if (message instanceof FullSnapshot) {
+            properties.clear();
+            for (PropertyBaseData p : ((FullSnapshot) message).getProperties()) properties.put(p.getPropertyId(), p);
+        } else if (message instanceof Delta) {
+            Delta delta = (Delta) message;
+
+            if (delta.getBaseVersion() != version) return new ResyncRequest(version);
+
+            for (int id : delta.getRemoved()) properties.remove(id);
+            for (PropertyBaseData p : delta.getAdded()) properties.put(p.getPropertyId(), p);
+
+            for (PropertyDiff diff : delta.getChanged()) {
+                PropertyBaseData before = properties.get(diff.getPropertyId());
+                if (before == null) return new ResyncRequest(version);
+                properties.put(diff.getPropertyId(), diff.applyTo(before));
+            }
+        } else {
+            throw new IllegalArgumentException("Unexpected sync message " + message.getClass().getSimpleName());
+        }
+
+        version = message.getVersion();
+        return new Ack(version);
+    }
+
+    /**
+     * @return the version of the snapshot held, 0 before the first one
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return a copy of the properties held
+     */
+    public synchronized List<PropertyBaseData> getProperties() {
+        return new ArrayList<>(properties.values());
+    }
+}
@@ -0,0 +1,114 @@
+package Serialize;
+
+import dao.PropertyDAO.PropertyBaseData;
+import Serialize.SyncMessage.Ack;
+import Serialize.SyncMessage.Delta;
+import Serialize.SyncMessage.FullSnapshot;
+import Serialize.SyncMessage.PropertyDiff;
+import Serialize.SyncMessage.ResyncRequest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+
+/**
+ * The sending side of the property snapshot sync, one instance per receiver. Call
+ * {@link #update} with the current property list whenever it may have changed, send whatever it
+ * returns, and pass the receiver's replies to {@link #receive}.
+ * <p>
+ * Deltas are always computed against the last version the receiver acknowledged, and only one
+ * message is outstanding at a time: until it is acknowledged {@code update} returns null, and the
+ * changes are picked up by the next call after the ack instead.
+ *
+ * @author Dexter Elliott
+ */
+public class SnapshotSyncSender {
+    private Map<Integer, Object[]> acked;
+    private long ackedVersion;
+    private Map<Integer, Object[]> sent;
+    private long sentVersion;
+    private long nextVersion = 1;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(SnapshotSyncSender.class.getName());
+    }
+
+    /**
+     * Work out what to send for the current property list.
+     *
+     * @param current every property the receiver should have
+     * @return the message to send, or null if nothing changed or a message is still unacknowledged
+     */
+    public synchronized SyncMessage update(List<PropertyBaseData> current) {
+        if (sent != null) return null;
+
+        Map<Integer, Object[]> state = new LinkedHashMap<>();
+        for (PropertyBaseData p : current) state.put(p.getPropertyId(), PropertyField.valuesOf(p));
+
+        if (acked == null) {
+            markSent(state);
+            return new FullSnapshot(sentVersion, current);
+        }
+
+        List<PropertyBaseData> added = new ArrayList<>();
+        List<PropertyDiff> changed = new ArrayList<>();
+
+        for (PropertyBaseData p : current) {
+            Object[] before = acked.get(p.getPropertyId());
+            Object[] after = state.get(p.getPropertyId());
+
+            if (before == null) {
+                added.add(p);
+            } else {
+                int mask = PropertyField.diff(before, after);
+                if (mask != 0) changed.add(new PropertyDiff(p.getPropertyId(), mask, after));
+            }
+        }
+
+        int[] removed = acked.keySet().stream()
+                .filter(id -> !state.containsKey(id))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        if (added.isEmpty() && changed.isEmpty() && removed.length == 0) return null;
+
+        markSent(state);
+        return new Delta(ackedVersion, sentVersion, added, changed, removed);
+    }
+
+    /**
+     * Handle a reply from the receiver.
+     *
+     * @param reply an {@link Ack} or a {@link ResyncRequest}
+     */
+    public synchronized void receive(SyncMessage reply) {
+        if (reply instanceof Ack && sent != null && reply.getVersion() == sentVersion) {
+            acked = sent;
+            ackedVersion = sentVersion;
+            sent = null;
+        } else if (reply instanceof ResyncRequest || reply instanceof Ack) {
+            // a stale or unexpected ack means the two sides disagree; start over
+            getLogger().log(INFO, "Receiver at version {0} while {1} was sent, resyncing",
+                    new Object[]{reply.getVersion(), sentVersion});
+            reset();
+        }
+    }
+
+    /**
+     * Forget what the receiver has, so the next update is a full snapshot. For a receiver that
+     * reconnects or a reply that was lost.
+     */
+    public synchronized void reset() {
+        acked = null;
+        sent = null;
+    }
+
+    private void markSent(Map<Integer, Object[]> state) {
+        sent = state;
+        sentVersion = nextVersion++;
+    }
+}
@@ -0,0 +1,65 @@
+package Serialize;
+
+import dao.PropertyDAO.PropertyBaseData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads {@link SyncMessage}s off a socket, refusing any class a sync message is not made of
+ * before it is loaded. Whoever can reach the port can send any bytes, and deserializing an
+ * arbitrary class can run code of that class.
+ *
+ * @author Dexter Elliott
+ */
+final class SyncInputStream extends ObjectInputStream {
+    private static final Set<String> ALLOWED = new HashSet<>(Arrays.asList(
+            SyncMessage.class.getName(),
+            SyncMessage.FullSnapshot.class.getName(),
+            SyncMessage.Delta.class.getName(),
+            SyncMessage.Ack.class.getName(),
+            SyncMessage.ResyncRequest.class.getName(),
+            SyncMessage.PropertyDiff.class.getName(),
+            PropertyBaseData.class.getName(),
+            ArrayList.class.getName(),
+            BigDecimal.class.getName(),
+            BigInteger.class.getName(),
+            Number.class.getName(),
+            // LocalDate is written through its serial proxy
+            "java.time.Ser",
+            int[].class.getName(),
+            byte[].class.getName()));
+
+    SyncInputStream(InputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        if (!ALLOWED.contains(desc.getName())) {
+            throw new InvalidClassException(desc.getName(), "not part of a sync message");
+        }
+        return super.resolveClass(desc);
+    }
+
+    /**
+     * @return the next sync message
+     * @throws IOException if the stream holds anything but a sync message
+     */
+    SyncMessage readMessage() throws IOException {
+        try {
+            return (SyncMessage) readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a sync message", e);
+        }
+    }
+}
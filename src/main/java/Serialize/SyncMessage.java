@@ -0,0 +1,174 @@
+package Serialize;
+
+import dao.PropertyDAO.PropertyBaseData;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The messages of the property snapshot sync between a {@link SnapshotSyncSender} and a
+ * {@link SnapshotSyncReceiver}. The sender starts with a {@link FullSnapshot}; once the receiver
+ * has acknowledged a version with an {@link Ack}, the sender only sends a {@link Delta} from
+ * that version. A receiver that is not at the version a delta starts from asks for a
+ * {@link ResyncRequest}, and gets a full snapshot again.
+ *
+ * @author Dexter Elliott
+ */
+public abstract class SyncMessage implements Serializable {
+    private final long version;
+
+    SyncMessage(long version) {
+        this.version = version;
+    }
+
+    /**
+     * @return the snapshot version this message brings the receiver to, or acknowledges
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Every property, replacing whatever the receiver had.
+     */
+    public static final class FullSnapshot extends SyncMessage {
+        private final List<PropertyBaseData> properties;
+
+        public FullSnapshot(long version, List<PropertyBaseData> properties) {
+            super(version);
+            this.properties = new ArrayList<>(properties);
+        }
+
+        public List<PropertyBaseData> getProperties() {
+            return properties;
+        }
+    }
+
+    /**
+     * The changes between two versions: properties added in full, changed properties as
+     * field-level diffs, and the ids of removed properties.
+     */
+    public static final class Delta extends SyncMessage {
+        private final long baseVersion;
+        private final List<PropertyBaseData> added;
+        private final List<PropertyDiff> changed;
+        private final int[] removed;
+
+        public Delta(long baseVersion, long version, List<PropertyBaseData> added, List<PropertyDiff> changed,
+                     int[] removed) {
+            super(version);
+            this.baseVersion = baseVersion;
+            this.added = added;
+            this.changed = changed;
+            this.removed = removed;
+        }
+
+        /**
+         * @return the version the receiver must be at to apply this delta
+         */
+        public long getBaseVersion() {
+            return baseVersion;
+        }
+
+        public List<PropertyBaseData> getAdded() {
+            return added;
+        }
+
+        public List<PropertyDiff> getChanged() {
+            return changed;
+        }
+
+        public int[] getRemoved() {
+            return removed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.length == 0;
+        }
+    }
+
+    /**
+     * Sent by the receiver after applying a snapshot or delta.
+     */
+    public static final class Ack extends SyncMessage {
+        public Ack(long version) {
+            super(version);
+        }
+    }
+
+    /**
+     * Sent by the receiver when a delta does not start from its version.
+     */
+    public static final class ResyncRequest extends SyncMessage {
+        public ResyncRequest(long version) {
+            super(version);
+        }
+    }
+
+    /**
+     * The changed fields of one property. Only the fields whose bit is set in the mask are
+     * written, as raw values.
+     */
+    public static final class PropertyDiff implements Serializable {
+        private transient int propertyId;
+        private transient int mask;
+        private transient Object[] values;
+
+        PropertyDiff(int propertyId, int mask, Object[] values) {
+            this.propertyId = propertyId;
+            this.mask = mask;
+            this.values = values;
+        }
+
+        public int getPropertyId() {
+            return propertyId;
+        }
+
+        /**
+         * @return the number of fields changed
+         */
+        public int size() {
+            return Integer.bitCount(mask);
+        }
+
+        boolean changes(PropertyField field) {
+            return (mask & field.bit()) != 0;
+        }
+
+        /**
+         * Apply this diff to the receiver's copy of the property.
+         */
+        PropertyBaseData applyTo(PropertyBaseData property) {
+            Object[] fields = PropertyField.valuesOf(property);
+
+            for (PropertyField field : PropertyField.FIELDS) {
+                if (changes(field)) fields[field.ordinal()] = values[field.ordinal()];
+            }
+
+            return PropertyField.build(propertyId, fields);
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            out.writeInt(propertyId);
+            out.writeShort(mask);
+
+            for (PropertyField field : PropertyField.FIELDS) {
+                if (changes(field)) field.write(out, values[field.ordinal()]);
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException {
+            propertyId = in.readInt();
+            mask = in.readUnsignedShort();
+            values = new Object[PropertyField.FIELDS.length];
+
+            for (PropertyField field : PropertyField.FIELDS) {
+                if (changes(field)) values[field.ordinal()] = field.read(in);
+            }
+        }
+    }
+}
@@ -3,9 +3,13 @@ package dao;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
 
 /**
  * A base class from which all MySql specific Data Access Objects can be derived. Common
@@ -18,6 +22,10 @@ import java.util.Map;
  * pool when the resource goes out of scope, i.e., when the {@code close()} method is called by
  * the DI context. TODO: Not sure how to handle this correctly in all possible situations.
  * For now, connections are <b>NOT</b> being released when the DAO is closed.
+ * <p>
+ * Statements are prepared lazily, on first use, so constructing a DAO does not touch the
+ * database. Statements marked {@link #hot} can be prepared ahead of the first request with
+ * {@link #prepareHotStatements()}.
  *
  * @author Joshua Escareno
  */
@@ -26,6 +34,8 @@ public abstract class AbstractMySqlDAO implements BaseDAO {
 
     private final Connection conn;
     private final int collateSize;
+    private final List<LazyStatement> statements = new CopyOnWriteArrayList<>();
+    private final List<LazyStatement> hotStatements = new ArrayList<>();
 
     protected AbstractMySqlDAO(Connection conn) {
         this(conn, DEFAULT_COLLATE_SIZE);
@@ -177,6 +187,112 @@ public abstract class AbstractMySqlDAO implements BaseDAO {
         }
     }
 
+    /**
+     * Declare a query that is prepared on first use. Unlike {@link #prepareQuery}, this does not
+     * touch the connection, so it is safe to call from a constructor without a database.
+     *
+     * @param query the query to be prepared, including replacement parameters
+     * @return the statement, to be fetched with {@link LazyStatement#get()} when it is run
+     */
+    protected final LazyStatement lazyQuery(String query) {
+        return lazyQuery(() -> query);
+    }
+
+    /**
+     * Declare a query that is prepared on first use, whose text is only built then.
+     *
+     * @param query builds the query to be prepared
+     * @return the statement, to be fetched with {@link LazyStatement#get()} when it is run
+     */
+    protected final LazyStatement lazyQuery(Supplier<String> query) {
+        return track(new LazyStatement(conn, query, Connection::prepareStatement));
+    }
+
+    /**
+     * Declare a query whose results may be streamed from the server one row at a time instead of
+     * being read into memory in full on execution. It is prepared on first use, and fetched with
+     * {@link #streaming} when it is run.
+     *
+     * @param query the query to be prepared, including replacement parameters
+     * @return the statement, to be fetched with {@link #streaming} when it is run
+     */
+    protected final LazyStatement lazyStreamingQuery(String query) {
+        return track(new LazyStatement(conn, () -> query, (c, sql) ->
+                c.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)));
+    }
+
+    /**
+     * Get a statement declared with {@link #lazyStreamingQuery} ready to run. While a streamed
+     * result is open its connection cannot run any other statement, for as long as the caller
+     * takes over the rows, so results are only streamed on a connection the DAO has to itself: one
+     * lent by a {@link ConnectionPool} for the call. On any other connection the rows are read in
+     * full when the query runs, leaving the connection free for others while they are handed on.
+     *
+     * @param statement the statement
+     * @return the prepared statement, asking MySQL Connector/J for a streaming result set if the
+     * connection is pooled
+     * @throws SQLException if the statement cannot be prepared
+     */
+    protected final PreparedStatement streaming(LazyStatement statement) throws SQLException {
+        PreparedStatement ps = statement.get();
+        ps.setFetchSize(ConnectionPool.isPooled(conn) ? Integer.MIN_VALUE : 0);
+        return ps;
+    }
+
+    /**
+     * Keep hold of a statement declared outside of {@link #lazyQuery}, so that {@link #cancel()}
+     * reaches it.
+     *
+     * @param statement the statement
+     * @return the same statement
+     */
+    protected final LazyStatement track(LazyStatement statement) {
+        if (!statements.contains(statement)) statements.add(statement);
+        return statement;
+    }
+
+    /**
+     * Mark a statement as one the DAO is expected to run soon after startup, so it is prepared by
+     * {@link #prepareHotStatements()}.
+     *
+     * @param statement the statement
+     * @return the same statement
+     */
+    protected final LazyStatement hot(LazyStatement statement) {
+        hotStatements.add(statement);
+        return track(statement);
+    }
+
+    /**
+     * Prepare the statements marked {@link #hot} that are not prepared yet, for example while the
+     * application warms up.
+     *
+     * @return the number of statements prepared
+     * @throws SQLException if a statement cannot be prepared
+     */
+    public int prepareHotStatements() throws SQLException {
+        int prepared = 0;
+
+        for (LazyStatement statement : hotStatements) {
+            if (!statement.isPrepared()) {
+                statement.get();
+                prepared++;
+            }
+        }
+
+        return prepared;
+    }
+
+    /**
+     * Cancel the statement this DAO is running, from another thread, for example a read that
+     * another replica has already answered. Statements that are not running are left alone.
+     *
+     * @throws SQLException if the database cannot be asked to cancel
+     */
+    void cancel() throws SQLException {
+        for (LazyStatement statement : statements) statement.cancel();
+    }
+
     @FunctionalInterface
     interface QueryProcessor<T, R> {
         R apply(T t) throws SQLException;
@@ -0,0 +1,197 @@
+package dao;
+
+import dao.BulkLookupPlanner.Strategy;
+import util.DAOUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Looks up rows by a list of integer ids of any length, running whichever strategy the
+ * {@link BulkLookupPlanner} picks. Statements are prepared on first use and kept; the temporary
+ * table is created on the DAO's connection the first time it is needed and emptied after every
+ * lookup.
+ * <p>
+ * Like the DAOs that own it, an instance must not be used by more than one thread at a time.
+ *
+ * @param <R> the row type
+ * @author Joshua Escareno
+ */
+final class BulkLookup<R> {
+    private final Connection conn;
+    private final String name;
+    private final String inListTemplate;
+    private final String joinQuery;
+    private final String tempTable;
+    private final int collateSize;
+    private final DAOUtils.ResultSetMapper<R> mapper;
+    private final BulkLookupPlanner planner;
+    private final Map<Integer, PreparedStatement> inListStatements = new ConcurrentHashMap<>();
+    private volatile PreparedStatement fullLoad;
+    private volatile PreparedStatement join;
+    private boolean tempTableCreated;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(BulkLookup.class.getName());
+    }
+
+    /**
+     * @param conn           the DAO's connection
+     * @param name           the name of the lookup, used in logs
+     * @param inListTemplate the query with a {@code "??"} where the IN list goes
+     * @param joinQuery      the same query joining against {@code tempTable.id} instead
+     * @param tempTable      the name of the temporary table the join query uses
+     * @param collateSize    the largest IN list sent in one statement
+     * @param mapper         maps one result row
+     */
+    BulkLookup(Connection conn, String name, String inListTemplate, String joinQuery, String tempTable,
+               int collateSize, DAOUtils.ResultSetMapper<R> mapper) {
+        this.conn = conn;
+        this.name = name;
+        this.inListTemplate = inListTemplate;
+        this.joinQuery = joinQuery;
+        this.tempTable = tempTable;
+        this.collateSize = collateSize;
+        this.mapper = mapper;
+        this.planner = new BulkLookupPlanner(collateSize);
+    }
+
+    /**
+     * Look up the rows for a list of ids.
+     *
+     * @param ids the ids; duplicates are ignored
+     * @return the matching rows, in no particular order
+     * @throws SQLException if a query cannot be executed
+     */
+    List<R> lookup(List<Integer> ids) throws SQLException {
+        if (ids.isEmpty()) return new ArrayList<>();
+
+        // every strategy then returns each row once, whichever collation an id falls in
+        ids = new ArrayList<>(new LinkedHashSet<>(ids));
+        int n = ids.size();
+        Strategy strategy = planner.choose(n);
+        long start = System.nanoTime();
+
+        try {
+            List<R> result;
+
+            switch (strategy) {
+                case BUCKETED_IN_LIST:
+                    result = inList(ids);
+                    break;
+                case COLLATED_IN_LIST:
+                    result = new ArrayList<>();
+                    for (int i = 0; i < n; i += collateSize) {
+                        result.addAll(inList(ids.subList(i, Math.min(i + collateSize, n))));
+                    }
+                    break;
+                default:
+                    result = tempTableJoin(ids);
+            }
+
+            long dur = System.nanoTime() - start;
+            planner.record(strategy, n, dur);
+            getLogger().log(INFO, "[SQLStats] {0} [{1}] {2} retrieved {3} rows in {4} ms.",
+                    new Object[]{name, n, strategy, result.size(), dur / 1_000_000});
+            return result;
+        } catch (Exception e) {
+            long dur = (System.nanoTime() - start) / 1_000_000;
+            getLogger().log(WARNING, "[SQLStats] {0} [{1}] {2} failed({3}) in {4} ms.",
+                    new Object[]{name, n, strategy, String.valueOf(e.getMessage()).trim(), dur});
+            throw e;
+        }
+    }
+
+    /**
+     * Run one IN list of at most {@code collateSize} ids, padded with nulls up to its bucket.
+     * {@code x in (1, null)} is never true for the null, so padding never matches anything.
+     */
+    private List<R> inList(List<Integer> ids) throws SQLException {
+        int bucket = planner.bucketSize(ids.size());
+        PreparedStatement ps = inListStatements.get(bucket);
+
+        if (ps == null) {
+            ps = conn.prepareStatement(inListTemplate.replace("??", DAOUtils.mkInList(bucket)));
+            inListStatements.put(bucket, ps);
+        }
+
+        return DAOUtils.queryForList(conn, ps, p -> {
+            int i = 0;
+            for (Integer id : ids) p.setInt(++i, id);
+            while (i < bucket) p.setNull(++i, Types.INTEGER);
+        }, mapper);
+    }
+
+    private List<R> tempTableJoin(List<Integer> ids) throws SQLException {
+        if (!tempTableCreated) {
+            try (Statement st = conn.createStatement()) {
+                st.execute("create temporary table if not exists " + tempTable
+                        + " (id int not null primary key) engine=memory");
+            }
+            join = conn.prepareStatement(joinQuery);
+            tempTableCreated = true;
+        }
+
+        try {
+            int n = ids.size();
+
+            for (int i = 0; i < n; i += collateSize) {
+                List<Integer> batch = ids.subList(i, Math.min(i + collateSize, n));
+
+                if (batch.size() == collateSize) {
+                    if (fullLoad == null) fullLoad = conn.prepareStatement(loadStatement(collateSize));
+                    bindIds(fullLoad, batch).executeUpdate();
+                } else {
+                    // the final partial batch gets a statement of its own size
+                    try (PreparedStatement load = conn.prepareStatement(loadStatement(batch.size()))) {
+                        bindIds(load, batch).executeUpdate();
+                    }
+                }
+            }
+
+            return DAOUtils.queryForList(conn, join, null, mapper);
+        } finally {
+            try (Statement st = conn.createStatement()) {
+                st.execute("delete from " + tempTable);
+            }
+        }
+    }
+
+    /**
+     * Cancel whichever of the lookup's statements is running, from another thread.
+     *
+     * @throws SQLException if the database cannot be asked to cancel
+     */
+    void cancel() throws SQLException {
+        for (PreparedStatement ps : inListStatements.values()) ps.cancel();
+
+        PreparedStatement ps = join;
+        if (ps != null) ps.cancel();
+        ps = fullLoad;
+        if (ps != null) ps.cancel();
+    }
+
+    private String loadStatement(int rows) {
+        return "insert ignore into " + tempTable + " (id) values "
+                + String.join(",", Collections.nCopies(rows, "(?)"));
+    }
+
+    private static PreparedStatement bindIds(PreparedStatement ps, List<Integer> ids) throws SQLException {
+        int i = 0;
+        for (Integer id : ids) ps.setInt(++i, id);
+        return ps;
+    }
+}
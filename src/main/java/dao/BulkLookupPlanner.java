@@ -0,0 +1,113 @@
+package dao;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Chooses how a lookup by a list of ids is sent to the database, based on what the same kind of
+ * lookup has cost before.
+ * <ul>
+ * <li>{@link Strategy#BUCKETED_IN_LIST}: one {@code IN} list, padded with nulls to the next power
+ * of two so only a handful of statement shapes are ever prepared. Only possible while the list
+ * fits in one collation.</li>
+ * <li>{@link Strategy#COLLATED_IN_LIST}: one full size {@code IN} list per collation.</li>
+ * <li>{@link Strategy#TEMP_TABLE_JOIN}: the ids are batch inserted into a temporary table and
+ * joined against, which costs a few extra round trips but lets the server use a single join.</li>
+ * </ul>
+ * Lists are grouped into size classes by their bit length. For each class the planner keeps an
+ * exponentially weighted average of the nanoseconds per id every strategy has taken, and picks
+ * the cheapest. A strategy that has not been measured in a class yet is tried on the second
+ * lookup of that class, and every {@value #EXPLORE_INTERVAL}th lookup runs the runner-up so an
+ * estimate that went stale (a grown table, a busier server) gets corrected.
+ *
+ * @author Joshua Escareno
+ */
+final class BulkLookupPlanner {
+    static final int EXPLORE_INTERVAL = 32;
+
+    /**
+     * Before anything is measured, lists of more than this many collations go to a temp table.
+     */
+    static final int TEMP_TABLE_COLLATIONS = 10;
+
+    private static final double EWMA_WEIGHT = 0.2;
+
+    enum Strategy {BUCKETED_IN_LIST, COLLATED_IN_LIST, TEMP_TABLE_JOIN}
+
+    private final int collateSize;
+    private final Map<Integer, SizeClass> classes = new HashMap<>();
+
+    BulkLookupPlanner(int collateSize) {
+        this.collateSize = collateSize;
+    }
+
+    /**
+     * Choose the strategy for a list of {@code n} ids.
+     *
+     * @param n the number of ids, at least 1
+     * @return the strategy to run
+     */
+    synchronized Strategy choose(int n) {
+        if (n <= collateSize) return Strategy.BUCKETED_IN_LIST;
+
+        SizeClass sizeClass = classes.computeIfAbsent(sizeClass(n), k -> new SizeClass());
+        long lookups = sizeClass.lookups++;
+        Double collated = sizeClass.costPerId.get(Strategy.COLLATED_IN_LIST);
+        Double tempTable = sizeClass.costPerId.get(Strategy.TEMP_TABLE_JOIN);
+        Strategy prior = n > TEMP_TABLE_COLLATIONS * collateSize ?
+                Strategy.TEMP_TABLE_JOIN : Strategy.COLLATED_IN_LIST;
+
+        if (collated == null && tempTable == null) return prior;
+        if (collated == null) return lookups > 0 ? Strategy.COLLATED_IN_LIST : prior;
+        if (tempTable == null) return lookups > 0 ? Strategy.TEMP_TABLE_JOIN : prior;
+
+        Strategy best = collated <= tempTable ? Strategy.COLLATED_IN_LIST : Strategy.TEMP_TABLE_JOIN;
+        Strategy other = best == Strategy.COLLATED_IN_LIST ? Strategy.TEMP_TABLE_JOIN : Strategy.COLLATED_IN_LIST;
+
+        return lookups % EXPLORE_INTERVAL == EXPLORE_INTERVAL - 1 ? other : best;
+    }
+
+    /**
+     * Record how long a lookup took.
+     *
+     * @param strategy the strategy that ran
+     * @param n        the number of ids looked up
+     * @param nanos    the elapsed time, including loading and clearing a temp table
+     */
+    synchronized void record(Strategy strategy, int n, long nanos) {
+        if (strategy == Strategy.BUCKETED_IN_LIST) return;
+
+        double cost = (double) nanos / n;
+        SizeClass sizeClass = classes.computeIfAbsent(sizeClass(n), k -> new SizeClass());
+        sizeClass.costPerId.merge(strategy, cost, (old, now) -> old + EWMA_WEIGHT * (now - old));
+    }
+
+    /**
+     * The current estimate for a strategy, for logging and tests.
+     *
+     * @return nanoseconds per id, or {@code null} if the strategy has not run for lists this size
+     */
+    synchronized Double estimate(Strategy strategy, int n) {
+        SizeClass sizeClass = classes.get(sizeClass(n));
+        return sizeClass == null ? null : sizeClass.costPerId.get(strategy);
+    }
+
+    /**
+     * The statement size for a bucketed list of {@code n} ids: the next power of two, but never
+     * less than 8 or more than the collate size.
+     */
+    int bucketSize(int n) {
+        int bucket = Math.max(8, Integer.highestOneBit(Math.max(1, n - 1)) << 1);
+        return Math.min(bucket, collateSize);
+    }
+
+    private static int sizeClass(int n) {
+        return 32 - Integer.numberOfLeadingZeros(n);
+    }
+
+    private static final class SizeClass {
+        private final Map<Strategy, Double> costPerId = new EnumMap<>(Strategy.class);
+        private long lookups;
+    }
+}
@@ -0,0 +1,129 @@
+package dao;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+
+/**
+ * One page of changes to a table, as returned by the {@code changesSince} DAO methods. A consumer
+ * holding a copy of the table applies {@link #getUpserts()} (rows inserted or updated, in their
+ * current state) and removes {@link #getDeletedIds()}, then asks for the next page from
+ * {@link #getResumeMark()}. Starting from 0 replays the whole table.
+ * <p>
+ * Deletes are sent as bare ids rather than rows; a deleted row has no state worth sending.
+ * <p>
+ * The resume mark of the last page trails the newest change read, so the next call reads the
+ * most recent changes again along with any that committed late with a lower sequence. Applying a
+ * change twice is harmless, so consumers need not tell them apart.
+ * <p>
+ * A feed may forget a consumer's mark, see {@link UnknownCursorException}; consumers reading
+ * through {@link #read} then get the feed again from 0.
+ *
+ * @param <T> the row type
+ * @author Joshua Escareno
+ */
+public final class ChangeFeed<T> implements Serializable {
+    /**
+     * Reads one page of a feed from a change sequence.
+     */
+    @FunctionalInterface
+    public interface Reader<T> {
+        ChangeFeed<T> since(long seq) throws SQLException;
+    }
+
+    private final List<T> upserts;
+    private final int[] deletedIds;
+    private final long highWaterMark;
+    private final long resumeMark;
+    private final boolean hasMore;
+
+    /**
+     * A page resuming at its high-water mark, for feeds where no change can commit late.
+     */
+    public ChangeFeed(List<T> upserts, int[] deletedIds, long highWaterMark, boolean hasMore) {
+        this(upserts, deletedIds, highWaterMark, highWaterMark, hasMore);
+    }
+
+    public ChangeFeed(List<T> upserts, int[] deletedIds, long highWaterMark, long resumeMark, boolean hasMore) {
+        this.upserts = upserts;
+        this.deletedIds = deletedIds;
+        this.highWaterMark = highWaterMark;
+        this.resumeMark = resumeMark;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * @return the rows changed since the requested sequence, ordered by their change sequence
+     */
+    public List<T> getUpserts() {
+        return upserts;
+    }
+
+    /**
+     * @return the ids of the rows deleted since the requested sequence
+     */
+    public int[] getDeletedIds() {
+        return deletedIds;
+    }
+
+    /**
+     * @return the sequence of the newest change in the page; unchanged if there were no changes
+     */
+    public long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * @return the change sequence to pass to the next call: the high-water mark while more
+     * changes are waiting, and possibly less once the newest changes were read
+     */
+    public long getResumeMark() {
+        return resumeMark;
+    }
+
+    /**
+     * @return true if the page was cut off by the limit and more changes are waiting
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Read the page of a feed after a mark, or the first page if the feed no longer knows the mark
+     *
+     * @param feed reads the feed
+     * @param seq  the resume mark of the previous page, or 0
+     * @return the page, whose resume mark the caller keeps as usual
+     * @throws SQLException if the feed cannot be read
+     */
+    public static <T> ChangeFeed<T> read(Reader<T> feed, long seq) throws SQLException {
+        try {
+            return feed.since(seq);
+        } catch (UnknownCursorException e) {
+            getLogger().log(WARNING, "{0}; reading the feed again from 0", e.getMessage());
+            return feed.since(0);
+        }
+    }
+
+    public boolean isEmpty() {
+        return upserts.isEmpty() && deletedIds.length == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeFeed{" +
+                "upserts=" + upserts.size() +
+                ", deletedIds=" + deletedIds.length +
+                ", highWaterMark=" + highWaterMark +
+                ", resumeMark=" + resumeMark +
+                ", hasMore=" + hasMore +
+                '}';
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(ChangeFeed.class.getName());
+    }
+}
@@ -0,0 +1,176 @@
+package dao;
+
+import util.DAOUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Reads one page of a table's change feed. Changed rows are found by their change sequence
+ * column and deleted rows in {@code change_tombstone}; both draw from the same sequence, so the
+ * two result sets can be merged into a single ordered page with one high-water mark. A row that
+ * moves to another owner leaves a tombstone in the old owner's feed only.
+ * <p>
+ * Sequence numbers are handed out when a statement runs, not when it commits, so a statement
+ * still running while a page is read can commit a lower sequence later. Writes here are single
+ * autocommit statements, which keeps that window small, and the last page of a catch-up resumes
+ * {@value #RESUME_LAG} sequences behind its newest change so the next read picks up what
+ * committed late in between.
+ *
+ * @param <T> the row type
+ * @author Joshua Escareno
+ */
+final class ChangeFeedQuery<T> {
+    /**
+     * How far the resume mark of a last page trails its newest change. It has to cover the
+     * sequences other statements take while one is running; rows in it are read once more.
+     */
+    static final int RESUME_LAG = 1_000;
+
+    // rows that moved to another owner are still there, and only gone from the old owner's feed
+    private static final String TOMBSTONES_QUERY
+            = "select /* TOMBSTONES_QUERY */ tombstone_seq, tombstone_row_ID\n"
+            + "from change_tombstone\n"
+            + "where tombstone_table = ?\n"
+            + "and tombstone_seq > ?\n"
+            + "and not tombstone_moved\n"
+            + "order by tombstone_seq\n"
+            + "limit ?";
+
+    private static final String OWNER_TOMBSTONES_QUERY
+            = TOMBSTONES_QUERY.replace("where tombstone_table = ?", "where tombstone_owner_id = ?\n"
+            + "and tombstone_table = ?").replace("and not tombstone_moved\n", "");
+
+    private final Connection conn;
+    private final String name;
+    private final String table;
+    private final String seqColumn;
+    private final DAOUtils.ResultSetMapper<T> mapper;
+    private final LazyStatement changes;
+    private final LazyStatement ownerChanges;
+    private final LazyStatement tombstones;
+    private final LazyStatement ownerTombstones;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(ChangeFeedQuery.class.getName());
+    }
+
+    /**
+     * @param conn         the DAO's connection
+     * @param name         the name of the query, used in logs
+     * @param table        the {@code tombstone_table} code of the table
+     * @param seqColumn    the change sequence column of the table
+     * @param changes      the changed rows after a sequence, taking the sequence and a limit
+     * @param ownerChanges the same restricted to one owner, taking the owner id first
+     * @param mapper       maps one changed row
+     */
+    ChangeFeedQuery(Connection conn, String name, String table, String seqColumn, String changes,
+                    String ownerChanges, DAOUtils.ResultSetMapper<T> mapper) {
+        this.conn = conn;
+        this.name = name;
+        this.table = table;
+        this.seqColumn = seqColumn;
+        this.mapper = mapper;
+        this.changes = prepare(changes);
+        this.ownerChanges = prepare(ownerChanges);
+        this.tombstones = prepare(TOMBSTONES_QUERY);
+        this.ownerTombstones = prepare(OWNER_TOMBSTONES_QUERY);
+    }
+
+    private LazyStatement prepare(String query) {
+        return new LazyStatement(conn, () -> query, Connection::prepareStatement);
+    }
+
+    /**
+     * @return the statements of this query, which are prepared on first use
+     */
+    List<LazyStatement> statements() {
+        return Arrays.asList(changes, ownerChanges, tombstones, ownerTombstones);
+    }
+
+    /**
+     * Read the changes after {@code seq}.
+     *
+     * @param ownerId only changes to this owner's rows, or all changes if null
+     * @param seq     the resume mark of the previous page, or 0
+     * @param limit   the most changes to return
+     * @return the page of changes
+     * @throws SQLException if a query cannot be executed
+     */
+    ChangeFeed<T> since(String ownerId, long seq, int limit) throws SQLException {
+        if (limit < 1) throw new IllegalArgumentException("limit must be >= 1, but is " + limit);
+
+        long start = System.currentTimeMillis();
+
+        try {
+            // one more than the limit of each tells whether anything was cut off
+            List<T> rows = new ArrayList<>();
+            List<Long> rowSeqs = new ArrayList<>();
+            DAOUtils.queryRows(conn, (ownerId == null ? changes : ownerChanges).get(), ps -> {
+                int i = 0;
+                if (ownerId != null) ps.setString(++i, ownerId);
+                ps.setLong(++i, seq);
+                ps.setInt(++i, limit + 1);
+            }, rs -> {
+                rows.add(mapper.mapResult(rs));
+                rowSeqs.add(rs.getLong(seqColumn));
+            });
+
+            List<long[]> deletes = new ArrayList<>();
+            DAOUtils.queryRows(conn, (ownerId == null ? tombstones : ownerTombstones).get(), ps -> {
+                int i = 0;
+                if (ownerId != null) ps.setString(++i, ownerId);
+                ps.setString(++i, table);
+                ps.setLong(++i, seq);
+                ps.setInt(++i, limit + 1);
+            }, rs -> deletes.add(new long[]{rs.getLong(1), rs.getLong(2)}));
+
+            ChangeFeed<T> page = merge(rows, rowSeqs, deletes, seq, limit);
+
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(INFO, "[SQLStats] {0} ({1}, after {2}) returned {3} in {4} ms.",
+                    new Object[]{name, ownerId, seq, page, dur});
+            return page;
+        } catch (Exception e) {
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] {0} ({1}, after {2}) failed ({3}) in {4} ms.",
+                    new Object[]{name, ownerId, seq, String.valueOf(e.getMessage()).trim(), dur});
+            throw e;
+        }
+    }
+
+    /**
+     * Merge changed rows and tombstones, each ordered by sequence, into a page of at most
+     * {@code limit} changes. A page cut off resumes at its high-water mark, so catching up always
+     * moves on; a last page holding changes resumes {@link #RESUME_LAG} before its newest one. The
+     * mark of a last page is the newest change of the table, so it does not creep back from one
+     * call to the next.
+     */
+    static <T> ChangeFeed<T> merge(List<T> rows, List<Long> rowSeqs, List<long[]> deletes, long seq, int limit) {
+        List<T> upserts = new ArrayList<>();
+        int[] deletedIds = new int[Math.min(deletes.size(), limit)];
+        int r = 0, d = 0;
+        long highWaterMark = seq;
+
+        while (r + d < limit && (r < rows.size() || d < deletes.size())) {
+            if (d == deletes.size() || (r < rows.size() && rowSeqs.get(r) < deletes.get(d)[0])) {
+                highWaterMark = rowSeqs.get(r);
+                upserts.add(rows.get(r++));
+            } else {
+                highWaterMark = deletes.get(d)[0];
+                deletedIds[d] = (int) deletes.get(d++)[1];
+            }
+        }
+
+        boolean hasMore = r < rows.size() || d < deletes.size();
+        long resumeMark = hasMore || r + d == 0 ? highWaterMark : Math.max(0, highWaterMark - RESUME_LAG);
+        return new ChangeFeed<>(upserts, Arrays.copyOf(deletedIds, d), highWaterMark, resumeMark, hasMore);
+    }
+}
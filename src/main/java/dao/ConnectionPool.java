@@ -0,0 +1,208 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+
+/**
+ * A bounded set of connections to one database, each lent to one caller at a time. DAOs built
+ * with {@link DAOFactory#createPooled} take a connection for every call, so no two threads ever
+ * run statements on the same connection.
+ * <p>
+ * Connections are opened when they are first needed, up to the maximum, and kept open once
+ * returned. The connection returned last is lent out first, as it is the one most likely to have
+ * its DAOs' statements prepared already. A caller finding every connection lent out waits for one
+ * to come back, for a limited time.
+ *
+ * @author Joshua Escareno
+ */
+public final class ConnectionPool implements AutoCloseable {
+    private static final Set<Connection> pooled = Collections.synchronizedSet(
+            Collections.newSetFromMap(new WeakHashMap<>()));
+
+    /**
+     * Opens a new connection to the pool's database.
+     */
+    @FunctionalInterface
+    public interface Opener {
+        Connection open() throws SQLException;
+    }
+
+    private final Opener opener;
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final boolean closesConnections;
+    private final Deque<Connection> idle = new ArrayDeque<>();
+    private int open;
+    private boolean closed;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(ConnectionPool.class.getName());
+    }
+
+    /**
+     * @param maxSize       the most connections open at once
+     * @param maxWaitMillis how long {@link #borrow()} waits for a connection to come back
+     * @param opener        opens the connections
+     */
+    public ConnectionPool(int maxSize, long maxWaitMillis, Opener opener) {
+        this(maxSize, maxWaitMillis, opener, true);
+    }
+
+    private ConnectionPool(int maxSize, long maxWaitMillis, Opener opener, boolean closesConnections) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize must be >= 1, but is " + maxSize);
+
+        this.opener = opener;
+        this.maxSize = maxSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.closesConnections = closesConnections;
+    }
+
+    /**
+     * A pool lending out a single connection that is already open, for code that has only one.
+     * Callers take turns with it; it is not closed with the pool.
+     *
+     * @param conn          the connection
+     * @param maxWaitMillis how long {@link #borrow()} waits for the connection to come back
+     * @return the pool
+     */
+    public static ConnectionPool of(Connection conn, long maxWaitMillis) {
+        return new ConnectionPool(1, maxWaitMillis, () -> conn, false);
+    }
+
+    /**
+     * @return whether a connection belongs to a pool, so that whoever holds it has it to
+     * themselves
+     */
+    public static boolean isPooled(Connection conn) {
+        return conn != null && pooled.contains(conn);
+    }
+
+    /**
+     * Take a connection, opening one if none is free and the pool is not full. It must be given
+     * back with {@link #release} once the caller is done with it.
+     *
+     * @return a connection no one else is using
+     * @throws SQLException if no connection came free in time, or one could not be opened
+     */
+    public Connection borrow() throws SQLException {
+        long deadline = System.currentTimeMillis() + maxWaitMillis;
+
+        synchronized (this) {
+            while (true) {
+                if (closed) throw new SQLException("Connection pool is closed");
+
+                Connection conn = idle.pollFirst();
+
+                if (conn != null) {
+                    if (isOpen(conn)) return conn;
+                    discard(conn);
+                    continue;
+                }
+
+                if (open < maxSize) {
+                    open++;
+                    break;
+                }
+
+                long wait = deadline - System.currentTimeMillis();
+
+                if (wait <= 0) {
+                    throw new SQLException("No connection came free in " + maxWaitMillis + " ms; all "
+                            + maxSize + " are in use");
+                }
+
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a connection", e);
+                }
+            }
+        }
+
+        // opening takes a while, so it is done outside the lock
+        try {
+            Connection conn = opener.open();
+            pooled.add(conn);
+            return conn;
+        } catch (SQLException | RuntimeException e) {
+            synchronized (this) {
+                open--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Give back a connection taken with {@link #borrow()}. A connection that was closed meanwhile
+     * is dropped, and a new one is opened in its place when next needed.
+     *
+     * @param conn the connection
+     */
+    public synchronized void release(Connection conn) {
+        if (closed || !isOpen(conn)) {
+            discard(conn);
+        } else {
+            idle.addFirst(conn);
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * @return the number of connections open, lent out or not
+     */
+    public synchronized int size() {
+        return open;
+    }
+
+    /**
+     * @return the most connections the pool opens
+     */
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Close the connections that are not lent out, and those that are as they come back.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+
+        while (!idle.isEmpty()) discard(idle.pollFirst());
+
+        notifyAll();
+    }
+
+    private static boolean isOpen(Connection conn) {
+        try {
+            return !conn.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(Connection conn) {
+        open--;
+        pooled.remove(conn);
+        DAOFactory.release(conn);
+
+        if (!closesConnections) return;
+
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            getLogger().log(WARNING, "Unable to close a pooled connection: {0}", e.getMessage());
+        }
+    }
+}
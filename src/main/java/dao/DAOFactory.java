@@ -1,16 +1,54 @@
 package dao;
 
 import util.DAOUtils;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
  * Factory abstract class for instantiating DAOs
+ * <p>
+ * A DAO keeps the statements it has prepared for as long as it lives, so DAOs are kept per
+ * connection and handed out again for as long as their connection stays open: creating the same
+ * kind of DAO on the same connection twice returns the same instance. The implementation class and
+ * constructor of each DAO interface are likewise resolved only once.
+ * <p>
+ * A DAO is single-threaded, like its connection: two threads running statements on the same
+ * connection interleave their parameters and results. DAOs created on a connection are for the
+ * thread that owns it. Code calling DAOs from several threads, such as servlets, creates them with
+ * {@link #createPooled}, so that each call has a connection and its DAO to itself.
+ * <p>
+ * Which class implements an interface is decided by an {@link ImplementationResolver}, by default
+ * the {@code MySql} classes. Implementations with a no-argument constructor, such as
+ * {@link PropertyInMemoryDAO}, do not need a connection; they are built without getting one, and
+ * kept once for all connections.
+ *
  * @author Joshua Escareno
  */
 public abstract class DAOFactory {
+    private static final MethodType CONNECTION_CONSTRUCTOR = MethodType.methodType(void.class, Connection.class);
+
+    private static final MethodType NO_ARGUMENT_CONSTRUCTOR = MethodType.methodType(void.class);
+
+    private static final ConcurrentMap<Class<?>, MethodHandle> constructors = new ConcurrentHashMap<>();
+    private static final Set<Class<?>> connectionless = ConcurrentHashMap.newKeySet();
+    private static volatile ImplementationResolver resolver = ImplementationResolver.fromSystemProperty();
+    private static final Map<Connection, ConcurrentMap<Class<?>, BaseDAO>> registry =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+
     private static Logger getLogger() {
         return Logger.getLogger(DAOFactory.class.getName());
     }
@@ -44,7 +82,8 @@ public abstract class DAOFactory {
 
     /**
      * Implementation for a non-collating DAO creation pattern. The database connection is
-     * retrieved lazily once the implementation class and constructor have been resolved.
+     * retrieved lazily once the implementation class and constructor have been resolved. If a DAO
+     * of this kind already exists for the connection, that DAO is returned.
      *
      * @param daoClass           a type token specifying the kind of DAO to be created
      * @param connectionSupplier a supplier for the database connection to use
@@ -53,21 +92,189 @@ public abstract class DAOFactory {
      */
     public static <T extends BaseDAO>
     T create(Class<T> daoClass, Supplier<Connection> connectionSupplier) {
-        try {
-            Class<T> implementationClass = getImplementationClass(daoClass);
+        MethodHandle constructor = getConstructor(daoClass);
+        if (constructor == null) return null;
+
+        Connection conn = connectionless.contains(daoClass) ? null : connectionSupplier.get();
+        ConcurrentMap<Class<?>, BaseDAO> daos = registry.get(conn);
+
+        if (daos == null) {
+            releaseClosedConnections();
+            daos = registry.computeIfAbsent(conn, c -> new ConcurrentHashMap<>());
+        }
+
+        BaseDAO dao = daos.get(daoClass);
 
+        if (dao == null) {
             try {
-                return implementationClass
-                        .getDeclaredConstructor(Connection.class)
-                        .newInstance(connectionSupplier.get());
-            } catch (NoSuchMethodException e) {
-                getLogger().severe("No suitable constructor for class " +
-                        implementationClass.getName());
-            } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
-                getLogger().severe("Exception while creating DAO implementation class " +
-                        implementationClass.getName());
+                dao = (BaseDAO) constructor.invokeExact(conn);
+            } catch (Error e) {
+                throw e;
+            } catch (Throwable e) {
+                getLogger().severe("Exception while creating DAO implementation for " + daoClass.getName());
                 e.printStackTrace();
+                return null;
             }
+
+            // two threads may both have built one; every caller gets the one that was kept
+            BaseDAO kept = daos.putIfAbsent(daoClass, dao);
+            if (kept != null) dao = kept;
+        }
+
+        return daoClass.cast(dao);
+    }
+
+    /**
+     * Build and return a DAO that may be called from any number of threads at once: each call
+     * takes a connection from the pool and runs on the DAO created for that connection, which no
+     * other thread uses until the call returns.
+     *
+     * @param daoClass a type token specifying the kind of DAO to be created
+     * @param pool     the connections to run the calls on
+     * @param <T>      the type of the DAO interface
+     * @return a DAO of the requested interface type
+     */
+    public static <T extends BaseDAO>
+    T createPooled(Class<T> daoClass, ConnectionPool pool) {
+        return createPooled(daoClass, pool, pool);
+    }
+
+    /**
+     * Build and return a pooled DAO, as {@link #createPooled(Class, ConnectionPool)}, that runs
+     * the methods marked {@link Streaming} on connections of a second pool. A consumer that is
+     * slow to take its rows then only holds up other streams, never the calls on {@code pool}.
+     *
+     * @param daoClass a type token specifying the kind of DAO to be created
+     * @param pool     the connections to run the calls on
+     * @param streams  the connections to run the streaming calls on
+     * @param <T>      the type of the DAO interface
+     * @return a DAO of the requested interface type
+     */
+    public static <T extends BaseDAO>
+    T createPooled(Class<T> daoClass, ConnectionPool pool, ConnectionPool streams) {
+        return PooledDAO.create(daoClass, pool, streams);
+    }
+
+    /**
+     * Build and return a stand-in for a DAO that is wired with the database connection from the
+     * default application context when it is first used, so nothing connects until then.
+     *
+     * @param daoClass a type token specifying the kind of DAO to be created
+     * @param <T>      the type of the DAO interface
+     * @return a DAO of the requested interface type
+     */
+    public static <T extends BaseDAO>
+    T createLazily(Class<T> daoClass) {
+        return createLazily(daoClass, () -> create(daoClass));
+    }
+
+    /**
+     * Build and return a stand-in for a DAO that is built by {@code factory} when it is first
+     * used, for example with {@link #createReplicated}.
+     *
+     * @param daoClass a type token specifying the kind of DAO to be created
+     * @param factory  builds the DAO
+     * @param <T>      the type of the DAO interface
+     * @return a DAO of the requested interface type; its methods throw IllegalStateException if
+     * the factory cannot build the DAO
+     */
+    public static <T extends BaseDAO>
+    T createLazily(Class<T> daoClass, Supplier<T> factory) {
+        return LazyDAO.create(daoClass, factory);
+    }
+
+    /**
+     * Get a DAO ready to serve requests: build it if it was created lazily, and prepare the
+     * statements it expects to need first. DAOs split over replicas are warmed on every replica,
+     * and pooled DAOs on one connection of their pool.
+     *
+     * @param dao the DAO to warm up
+     * @return the number of statements prepared
+     * @throws SQLException if a statement cannot be prepared
+     */
+    public static int warmUp(BaseDAO dao) throws SQLException {
+        dao = LazyDAO.resolve(dao);
+        PooledDAO<?> pooled = PooledDAO.of(dao);
+        int prepared = 0;
+
+        if (dao instanceof AbstractMySqlDAO) {
+            prepared += ((AbstractMySqlDAO) dao).prepareHotStatements();
+        } else if (dao instanceof ForwardingPropertyDAO) {
+            prepared += warmUp(((ForwardingPropertyDAO) dao).delegate());
+        } else if (pooled != null) {
+            prepared += pooled.warmUp();
+        } else {
+            for (BaseDAO target : ReadWriteSplit.targets(dao)) prepared += warmUp(target);
+        }
+
+        return prepared;
+    }
+
+    /**
+     * Choose the classes implementing DAO interfaces from now on, for example
+     * {@code ImplementationResolver.byKind("InMemory")}. DAOs already created are forgotten.
+     *
+     * @param implementationResolver decides which class implements a DAO interface
+     */
+    public static void setImplementationResolver(ImplementationResolver implementationResolver) {
+        resolver = implementationResolver;
+        constructors.clear();
+        connectionless.clear();
+        registry.clear();
+    }
+
+    /**
+     * Forget the DAOs created for a connection, for example before it is closed. Closed
+     * connections are also forgotten on their own the next time a DAO is created for a new
+     * connection.
+     *
+     * @param conn the connection whose DAOs to forget
+     */
+    public static void release(Connection conn) {
+        registry.remove(conn);
+    }
+
+    private static void releaseClosedConnections() {
+        synchronized (registry) {
+            registry.keySet().removeIf(conn -> {
+                try {
+                    return conn != null && conn.isClosed();
+                } catch (SQLException e) {
+                    return true;
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the constructor of the implementation of a DAO interface taking a connection, as a
+     * handle returning {@link BaseDAO}, or null if there is none
+     */
+    private static MethodHandle getConstructor(Class<? extends BaseDAO> daoClass) {
+        MethodHandle constructor = constructors.get(daoClass);
+        if (constructor != null) return constructor;
+
+        try {
+            Class<?> implementationClass = getImplementationClass(daoClass);
+
+            try {
+                constructor = MethodHandles.publicLookup()
+                        .findConstructor(implementationClass, CONNECTION_CONSTRUCTOR)
+                        .asType(MethodType.methodType(BaseDAO.class, Connection.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                try {
+                    constructor = MethodHandles.dropArguments(MethodHandles.publicLookup()
+                            .findConstructor(implementationClass, NO_ARGUMENT_CONSTRUCTOR)
+                            .asType(MethodType.methodType(BaseDAO.class)), 0, Connection.class);
+                    connectionless.add(daoClass);
+                } catch (NoSuchMethodException | IllegalAccessException e2) {
+                    getLogger().severe("No suitable constructor for class " + implementationClass.getName());
+                    return null;
+                }
+            }
+
+            constructors.putIfAbsent(daoClass, constructor);
+            return constructor;
         } catch (ClassNotFoundException e) {
             getLogger().severe(e.getMessage());
         }
@@ -107,12 +314,81 @@ public abstract class DAOFactory {
         return null;
     }
 
+    /**
+     * Build and return a DAO spread over the shards of a router: one DAO per shard connection,
+     * behind the {@code Sharded} implementation of the interface, for example
+     * {@link ShardedPropertyDAO}.
+     *
+     * @param daoClass a type token specifying the kind of DAO to be created
+     * @param router   the shards and how to route between them
+     * @param <T>      the type of the DAO interface
+     * @return a DAO implementation of the requested interface type, or null if the interface
+     * cannot be sharded
+     */
+    public static <T extends BaseDAO>
+    T createSharded(Class<T> daoClass, ShardRouter router) {
+        String interfaceName = daoClass.getName();
+        String shardedClassName = interfaceName.substring(0, interfaceName.length() - daoClass.getSimpleName().length())
+                + "Sharded" + daoClass.getSimpleName();
+
+        try {
+            Class<T> shardedClass = loadImplementationClass(daoClass, shardedClassName);
+            List<T> shards = new ArrayList<>();
+
+            for (int shard = 0; shard < router.size(); shard++) {
+                shards.add(create(daoClass, router.connection(shard)));
+            }
+
+            try {
+                return shardedClass
+                        .getDeclaredConstructor(ShardRouter.class, List.class)
+                        .newInstance(router, shards);
+            } catch (NoSuchMethodException e) {
+                getLogger().severe("No suitable constructor for class " + shardedClass.getName());
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+                getLogger().severe("Exception while creating DAO implementation class " +
+                        shardedClass.getName());
+                e.printStackTrace();
+            }
+        } catch (ClassNotFoundException e) {
+            getLogger().severe(e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Build and return a DAO that sends the {@link ReadOnly} methods of the interface to the
+     * replicas of a replica set and everything else to its primary. The DAO on each database is
+     * pooled, so the DAO may be called from many threads at once, and runs its {@link Streaming}
+     * methods on the stream pool of that database.
+     *
+     * @param daoClass a type token specifying the kind of DAO to be created
+     * @param replicas the primary and replica connections, and how to choose between them
+     * @param <T>      the type of the DAO interface
+     * @return a DAO implementation of the requested interface type, or null if the interface
+     * has no implementation
+     */
+    public static <T extends BaseDAO>
+    T createReplicated(Class<T> daoClass, ReplicaSet replicas) {
+        if (getConstructor(daoClass) == null) return null;
+
+        T primary = createPooled(daoClass, replicas.primary(), replicas.primaryStreams());
+        List<T> replicaDAOs = new ArrayList<>();
+
+        for (int replica = 0; replica < replicas.size(); replica++) {
+            replicaDAOs.add(createPooled(daoClass, replicas.replica(replica), replicas.replicaStreams(replica)));
+        }
+
+        return ReadWriteSplit.create(daoClass, primary, replicaDAOs, replicas);
+    }
+
     /**
      * Given a class token for a DAO interface class, such as {@link SlumlordDAO}, returns a
      * class object for the respective implementation class, for example,
-     * {@link SlumlordMySqlDAO}. Currently, this simply injects an {@code "MySql} in front
-     * of the DAO suffix that all DAO interfaces should have, and finds the corresponding class on
-     * the classpath using reflection.
+     * {@link SlumlordMySqlDAO}. The candidate classes are named by the current
+     * {@link ImplementationResolver}, and the first one found on the classpath that implements the
+     * interface is used.
      *
      * @param daoClass a class token specifying the DAO interface for which to find an
      *                 implementation
@@ -123,15 +399,35 @@ public abstract class DAOFactory {
      */
     private static <T extends BaseDAO, I extends T>
     Class<I> getImplementationClass(Class<T> daoClass) throws ClassNotFoundException {
-        String interfaceName = daoClass.getName();
+        ClassNotFoundException notFound =
+                new ClassNotFoundException("No matching implementation for " + daoClass.getName());
 
-        if (!interfaceName.endsWith("DAO")) {
-            throw new ClassNotFoundException("No matching implementation for " + interfaceName);
+        for (String implementationClassName : resolver.candidates(daoClass)) {
+            try {
+                return loadImplementationClass(daoClass, implementationClassName);
+            } catch (ClassNotFoundException e) {
+                notFound = e;
+            }
         }
 
-        String implementationClassName = interfaceName
-                .substring(0, interfaceName.length() - 3)
-                .concat("MySqlDAO");
+        throw notFound;
+    }
+
+    /**
+     * Loads a class by name and checks that it implements a DAO interface.
+     *
+     * @param daoClass                a class token specifying the DAO interface
+     * @param implementationClassName the fully qualified name of the implementation class
+     * @param <T>                     the type of the DAO interface
+     * @param <I>                     the type of the DAO implementation class
+     * @return the implementation class
+     * @throws ClassNotFoundException if the class cannot be loaded or does not implement the
+     *                                interface
+     */
+    private static <T extends BaseDAO, I extends T>
+    Class<I> loadImplementationClass(Class<T> daoClass, String implementationClassName)
+            throws ClassNotFoundException {
+        String interfaceName = daoClass.getName();
         Class<?> implementationClass;
 
         try {
@@ -0,0 +1,82 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link PropertyDAO} that forwards every call to another PropertyDAO. Decorators that only
+ * care about a handful of operations (cache invalidation, write buffering, and the like) can
+ * extend this class and override just those methods.
+ *
+ * @author Joshua Escareno
+ */
+public abstract class ForwardingPropertyDAO implements PropertyDAO {
+    private final PropertyDAO delegate;
+
+    protected ForwardingPropertyDAO(PropertyDAO delegate) {
+        this.delegate = delegate;
+    }
+
+    protected PropertyDAO delegate() {
+        return delegate;
+    }
+
+    @Override
+    public List<PropertyBaseData> listAllPropertiesByOwner(String ownerId) throws SQLException {
+        return delegate.listAllPropertiesByOwner(ownerId);
+    }
+
+    @Override
+    public String lookupPropertyOwner(int propertyId) throws SQLException {
+        return delegate.lookupPropertyOwner(propertyId);
+    }
+
+    @Override
+    public int streamAllPropertiesByOwner(String ownerId, Consumer<PropertyBaseData> action) throws SQLException {
+        return delegate.streamAllPropertiesByOwner(ownerId, action);
+    }
+
+    @Override
+    public List<PropertyWithTenants> listAllPropertiesWithTenantsByOwner(String ownerId) throws SQLException {
+        return delegate.listAllPropertiesWithTenantsByOwner(ownerId);
+    }
+
+    @Override
+    public int streamAllPropertiesWithTenantsByOwner(String ownerId, Consumer<PropertyWithTenants> action)
+            throws SQLException {
+        return delegate.streamAllPropertiesWithTenantsByOwner(ownerId, action);
+    }
+
+    @Override
+    public ChangeFeed<PropertyBaseData> propertyChangesSince(String ownerId, long seq, int limit)
+            throws SQLException {
+        return delegate.propertyChangesSince(ownerId, seq, limit);
+    }
+
+    @Override
+    public List<PropertyBaseData> listAllVacantProperties() throws SQLException {
+        return delegate.listAllVacantProperties();
+    }
+
+    @Override
+    public void insertNewProperty(PropertyBaseData property) throws SQLException {
+        delegate.insertNewProperty(property);
+    }
+
+    @Override
+    public int insertProperties(List<PropertyBaseData> properties) throws SQLException {
+        return delegate.insertProperties(properties);
+    }
+
+    @Override
+    public void updateRentalFee(BigDecimal newRentalFee, int propertyId, String ownerId) throws SQLException {
+        delegate.updateRentalFee(newRentalFee, propertyId, ownerId);
+    }
+
+    @Override
+    public int updateRentalFees(List<RentalFeeUpdate> updates) throws SQLException {
+        return delegate.updateRentalFees(updates);
+    }
+}
@@ -0,0 +1,60 @@
+package dao;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decides which classes may implement a DAO interface, for {@link DAOFactory}. The factory uses
+ * the first candidate that can be loaded and implements the interface.
+ * <p>
+ * The factory starts out with {@link #fromSystemProperty()}; another resolver can be set with
+ * {@link DAOFactory#setImplementationResolver}.
+ *
+ * @author Joshua Escareno
+ */
+@FunctionalInterface
+public interface ImplementationResolver {
+    /**
+     * System property naming the kinds of implementation to use, best first and separated by
+     * commas, for example {@code InMemory,MySql}.
+     */
+    String PROPERTY = "slumlord.dao.implementation";
+
+    /**
+     * @param daoClass the DAO interface
+     * @return the fully qualified names of the classes that may implement it, best first
+     */
+    List<String> candidates(Class<? extends BaseDAO> daoClass);
+
+    /**
+     * Implementations named after their interface with a kind injected in front of the DAO
+     * suffix: with the kinds {@code InMemory} and {@code MySql}, {@link SlumlordDAO} is
+     * implemented by {@link SlumlordInMemoryDAO}, or else {@link SlumlordMySqlDAO}.
+     *
+     * @param kinds the kinds of implementation, best first
+     * @return the resolver
+     */
+    static ImplementationResolver byKind(String... kinds) {
+        List<String> kindList = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(kinds)));
+
+        return daoClass -> {
+            String interfaceName = daoClass.getName();
+            if (!interfaceName.endsWith("DAO")) return Collections.emptyList();
+
+            String stem = interfaceName.substring(0, interfaceName.length() - 3);
+            List<String> names = new ArrayList<>();
+            for (String kind : kindList) names.add(stem + kind + "DAO");
+            return names;
+        };
+    }
+
+    /**
+     * @return a resolver using the kinds named by the {@value #PROPERTY} system property, or the
+     * MySQL implementations if it is not set
+     */
+    static ImplementationResolver fromSystemProperty() {
+        return byKind(System.getProperty(PROPERTY, "MySql").trim().split("\\s*,\\s*"));
+    }
+}
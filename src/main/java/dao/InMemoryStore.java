@@ -0,0 +1,536 @@
+package dao;
+
+import dao.PaymentDAO.PaymentData;
+import dao.PropertyDAO.PropertyBaseData;
+import dao.SlumlordDAO.SlumData;
+import dao.TenantDAO.TenantData;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * The slumlords, properties, tenants and payments behind the {@code InMemory} DAOs, for example
+ * {@link PropertyInMemoryDAO}, kept in concurrent maps with an index for every lookup the DAOs
+ * make: properties by owner, tenants by property, and the vacant properties. Reads take no locks
+ * and never wait; writes are serialized on the store so the indexes stay in step with the rows.
+ * Payments are the exception: they are kept by property and read under the store's lock, as they
+ * are read far less often than properties.
+ * <p>
+ * A store can stand alone, for benchmarks and tests, in which case inserts are checked against the
+ * same keys as the database: unique addresses and slumlord user names, and that the owner of a
+ * property and the property of a tenant exist. Or it can be a hot copy of the database that
+ * follows the change feeds with {@link #refresh} or {@link #refreshEvery}; then writes should go to
+ * the database, and reads to the store. Slumlords and payments have no change feed and are not
+ * copied.
+ * <p>
+ * The store keeps its own change feeds, numbered by one sequence for both tables like the
+ * {@code change_seq} table, so anything following a database can follow a store the same way.
+ *
+ * @author Joshua Escareno
+ */
+public class InMemoryStore implements AutoCloseable {
+    private static final int PAGE_SIZE = 1000;
+    private static final InMemoryStore SHARED = new InMemoryStore();
+
+    /**
+     * The latest change to a row. If the row is gone the change was its delete, made while the row
+     * belonged to {@code ownerId}. A move is the row leaving {@code ownerId} for another owner, and
+     * is only seen by that owner's feed; moves are equal when they are of one row leaving one owner.
+     */
+    private static final class Change {
+        private final int id;
+        private final String ownerId;
+        private final boolean moved;
+
+        Change(int id, String ownerId, boolean moved) {
+            this.id = id;
+            this.ownerId = ownerId;
+            this.moved = moved;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Change)) return false;
+            Change other = (Change) o;
+            return id == other.id && Objects.equals(ownerId, other.ownerId) && moved == other.moved;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id + Objects.hashCode(ownerId);
+        }
+    }
+
+    private final ConcurrentMap<Integer, PropertyBaseData> properties = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, NavigableSet<Integer>> propertiesByOwner = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> propertiesByAddress = new ConcurrentHashMap<>();
+    private final NavigableSet<Integer> vacantProperties = new ConcurrentSkipListSet<>();
+    private final ConcurrentMap<Integer, TenantData> tenants = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, NavigableSet<Integer>> tenantsByProperty = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, SlumData> slumlords = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> passwordHashes = new ConcurrentHashMap<>();
+    private final Map<Integer, List<PaymentData>> paymentsByProperty = new HashMap<>();
+    private final AtomicLong lastPaymentId = new AtomicLong();
+
+    private final AtomicLong changeSeq = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, Change> propertyChanges = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Long, Change> tenantChanges = new ConcurrentSkipListMap<>();
+    private final Map<Integer, Long> propertySeqs = new HashMap<>();
+    private final Map<Integer, Long> tenantSeqs = new HashMap<>();
+    private final Map<Change, Long> propertyMoves = new HashMap<>();
+    private final Map<Change, Long> tenantMoves = new HashMap<>();
+    private final AtomicInteger lastPropertyId = new AtomicInteger();
+    private final AtomicInteger lastTenantId = new AtomicInteger();
+
+    private long propertyHighWaterMark;
+    private long tenantHighWaterMark;
+    private ScheduledExecutorService refresher;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(InMemoryStore.class.getName());
+    }
+
+    /**
+     * @return the store used by the {@code InMemory} DAOs that {@link DAOFactory} creates
+     */
+    public static InMemoryStore shared() {
+        return SHARED;
+    }
+
+    // ---- properties
+
+    PropertyBaseData property(int propertyId) {
+        return properties.get(propertyId);
+    }
+
+    List<PropertyBaseData> propertiesByOwner(String ownerId) {
+        return rows(propertiesByOwner.get(ownerId), properties);
+    }
+
+    List<PropertyBaseData> vacantProperties() {
+        return rows(vacantProperties, properties);
+    }
+
+    /**
+     * Insert properties all at once, or none of them if one breaks a key.
+     *
+     * @param inserted the properties; they are given new ids
+     * @throws SQLIntegrityConstraintViolationException if an address is taken or an owner does
+     *                                                  not exist
+     */
+    synchronized void insertProperties(List<PropertyBaseData> inserted) throws SQLException {
+        Map<String, Integer> addresses = new HashMap<>();
+
+        for (PropertyBaseData p : inserted) {
+            if (p.getPropertyAddress() != null && (propertiesByAddress.containsKey(p.getPropertyAddress())
+                    || addresses.put(p.getPropertyAddress(), 0) != null)) {
+                throw new SQLIntegrityConstraintViolationException(
+                        "Duplicate entry '" + p.getPropertyAddress() + "' for key 'property_address'");
+            }
+            if (p.getOwnerID() != null && !slumlords.containsKey(p.getOwnerID())) {
+                throw new SQLIntegrityConstraintViolationException(
+                        "Owner '" + p.getOwnerID() + "' of property '" + p.getPropertyAddress() + "' does not exist");
+            }
+        }
+
+        for (PropertyBaseData p : inserted) putProperty(p.withPropertyId(lastPropertyId.incrementAndGet()));
+    }
+
+    /**
+     * Add a property with the id it has, or replace the property with that id.
+     */
+    synchronized void putProperty(PropertyBaseData property) {
+        int id = property.getPropertyId();
+        PropertyBaseData old = properties.put(id, property);
+
+        reindex(old, property);
+        lastPropertyId.accumulateAndGet(id, Math::max);
+        changed(propertyChanges, propertySeqs, id, property.getOwnerID());
+
+        if (old != null && !Objects.equals(old.getOwnerID(), property.getOwnerID())) {
+            moved(propertyChanges, propertyMoves, id, old.getOwnerID(), property.getOwnerID());
+
+            // the tenants move along with their property
+            for (TenantData t : tenantsByProperty(id)) {
+                moved(tenantChanges, tenantMoves, t.getPid(), old.getOwnerID(), property.getOwnerID());
+                changed(tenantChanges, tenantSeqs, t.getPid(), property.getOwnerID());
+            }
+        }
+    }
+
+    /**
+     * Remove a property. Its tenants are kept, as they would be without the foreign key.
+     */
+    synchronized void removeProperty(int propertyId) {
+        PropertyBaseData old = properties.remove(propertyId);
+
+        if (old != null) {
+            reindex(old, null);
+            changed(propertyChanges, propertySeqs, propertyId, old.getOwnerID());
+        }
+    }
+
+    /**
+     * @return whether the property exists and belongs to the owner, and so was updated
+     */
+    synchronized boolean updateRentalFee(int propertyId, String ownerId, BigDecimal rentalFee) {
+        PropertyBaseData old = properties.get(propertyId);
+        if (old == null || !Objects.equals(old.getOwnerID(), ownerId)) return false;
+
+        putProperty(old.withRentalFee(rentalFee));
+        return true;
+    }
+
+    /**
+     * Move a property from the index entries of its old state to those of its new state, leaving
+     * the entries that stay the same alone so concurrent readers always find it there.
+     */
+    private void reindex(PropertyBaseData old, PropertyBaseData p) {
+        String oldOwner = old == null ? null : old.getOwnerID();
+        String oldAddress = old == null ? null : old.getPropertyAddress();
+        String owner = p == null ? null : p.getOwnerID();
+        String address = p == null ? null : p.getPropertyAddress();
+        int id = old != null ? old.getPropertyId() : p.getPropertyId();
+
+        if (owner != null) {
+            propertiesByOwner.computeIfAbsent(owner, o -> new ConcurrentSkipListSet<>()).add(id);
+        }
+        if (oldOwner != null && !oldOwner.equals(owner)) {
+            propertiesByOwner.computeIfPresent(oldOwner, (o, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+
+        if (address != null) propertiesByAddress.put(address, id);
+        if (oldAddress != null && !oldAddress.equals(address)) propertiesByAddress.remove(oldAddress, id);
+
+        if (p != null && "V".equals(p.getVacancyIndicator())) vacantProperties.add(id);
+        else vacantProperties.remove(id);
+    }
+
+    // ---- tenants
+
+    List<TenantData> tenantsByProperty(int propertyId) {
+        return rows(tenantsByProperty.get(propertyId), tenants);
+    }
+
+    /**
+     * Insert tenants all at once, or none of them if one lives in a property that does not exist.
+     *
+     * @param inserted the tenants; they are given new ids
+     * @throws SQLIntegrityConstraintViolationException if a property does not exist
+     */
+    synchronized void insertTenants(List<TenantData> inserted) throws SQLException {
+        for (TenantData t : inserted) {
+            if (!properties.containsKey(t.getPropertyId())) {
+                throw new SQLIntegrityConstraintViolationException(
+                        "Property " + t.getPropertyId() + " of tenant " + t.getFirstName() + " "
+                                + t.getLastName() + " does not exist");
+            }
+        }
+
+        for (TenantData t : inserted) {
+            putTenant(new TenantData(lastTenantId.incrementAndGet(), t.getFirstName(), t.getLastName(), t.getDob(),
+                    t.getPhoneNumber(), t.getAddress(), t.getCity(), t.getZipCode(), t.getPropertyId()));
+        }
+    }
+
+    /**
+     * Add a tenant with the id it has, or replace the tenant with that id.
+     */
+    synchronized void putTenant(TenantData tenant) {
+        int id = tenant.getPid();
+        TenantData old = tenants.put(id, tenant);
+
+        if (old != null && old.getPropertyId() != tenant.getPropertyId()) {
+            unindex(old);
+            moved(tenantChanges, tenantMoves, id, ownerOf(old), ownerOf(tenant));
+        }
+        tenantsByProperty.computeIfAbsent(tenant.getPropertyId(), p -> new ConcurrentSkipListSet<>()).add(id);
+        lastTenantId.accumulateAndGet(id, Math::max);
+        changed(tenantChanges, tenantSeqs, id, ownerOf(tenant));
+    }
+
+    synchronized void removeTenant(int tenantId) {
+        TenantData old = tenants.remove(tenantId);
+
+        if (old != null) {
+            unindex(old);
+            changed(tenantChanges, tenantSeqs, tenantId, ownerOf(old));
+        }
+    }
+
+    private void unindex(TenantData t) {
+        tenantsByProperty.computeIfPresent(t.getPropertyId(), (p, ids) -> {
+            ids.remove(t.getPid());
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private String ownerOf(TenantData tenant) {
+        PropertyBaseData property = properties.get(tenant.getPropertyId());
+        return property == null ? null : property.getOwnerID();
+    }
+
+    // ---- slumlords
+
+    SlumData slumlord(String userName) {
+        return slumlords.get(userName);
+    }
+
+    /**
+     * @throws SQLIntegrityConstraintViolationException if the user name is taken
+     */
+    void insertSlumlord(SlumData slumlord) throws SQLException {
+        if (slumlords.putIfAbsent(slumlord.getUserName(), slumlord) != null) {
+            throw new SQLIntegrityConstraintViolationException(
+                    "Duplicate entry '" + slumlord.getUserName() + "' for key 'PRIMARY'");
+        }
+    }
+
+    String passwordHash(String userName) {
+        return passwordHashes.get(userName);
+    }
+
+    boolean setPasswordHash(String userName, String passwordHash) {
+        if (!slumlords.containsKey(userName)) return false;
+
+        passwordHashes.put(userName, passwordHash);
+        return true;
+    }
+
+    // ---- payments
+
+    /**
+     * Record payments, and move the last payment date of each property paid for forward to its
+     * latest payment.
+     *
+     * @param recorded the payments; they are given new ids
+     */
+    synchronized void recordPayments(List<PaymentData> recorded) {
+        for (PaymentData p : recorded) {
+            paymentsByProperty.computeIfAbsent(p.getPropertyId(), id -> new ArrayList<>())
+                    .add(new PaymentData(lastPaymentId.incrementAndGet(), p.getPropertyId(), p.getTenantId(),
+                            p.getAmount(), p.getPaymentDate()));
+            advanceLastPaymentDate(p.getPropertyId(), p.getPaymentDate(), false);
+        }
+    }
+
+    /**
+     * @return the property's payments in the date range, by date
+     */
+    synchronized List<PaymentData> payments(int propertyId, LocalDate from, LocalDate to) {
+        List<PaymentData> result = new ArrayList<>();
+        for (PaymentData p : paymentsByProperty.getOrDefault(propertyId, new ArrayList<>())) {
+            if (!p.getPaymentDate().isBefore(from) && !p.getPaymentDate().isAfter(to)) result.add(p);
+        }
+        result.sort(Comparator.comparing(PaymentData::getPaymentDate).thenComparing(PaymentData::getPaymentId));
+        return result;
+    }
+
+    /**
+     * @return the date of the property's latest payment, or null if it was never paid for
+     */
+    synchronized LocalDate lastPayment(int propertyId) {
+        return paymentsByProperty.getOrDefault(propertyId, new ArrayList<>()).stream()
+                .map(PaymentData::getPaymentDate)
+                .max(Comparator.naturalOrder())
+                .orElse(null);
+    }
+
+    /**
+     * Set the last payment date of every property paid for to its latest payment.
+     *
+     * @return the number of properties changed
+     */
+    synchronized int rebuildLastPaymentDates() {
+        int changed = 0;
+        for (int propertyId : paymentsByProperty.keySet()) {
+            if (advanceLastPaymentDate(propertyId, lastPayment(propertyId), true)) changed++;
+        }
+        return changed;
+    }
+
+    private boolean advanceLastPaymentDate(int propertyId, LocalDate date, boolean backwards) {
+        PropertyBaseData p = properties.get(propertyId);
+        if (p == null || Objects.equals(p.getLastPaymentDate(), date)) return false;
+        if (!backwards && p.getLastPaymentDate() != null && p.getLastPaymentDate().isAfter(date)) return false;
+
+        putProperty(p.withLastPaymentDate(date));
+        return true;
+    }
+
+    // ---- change feeds
+
+    ChangeFeed<PropertyBaseData> propertyChangesSince(String ownerId, long seq, int limit) {
+        return changesSince(propertyChanges, properties, PropertyBaseData::getOwnerID, ownerId, seq, limit);
+    }
+
+    ChangeFeed<TenantData> tenantChangesSince(String ownerId, long seq, int limit) {
+        return changesSince(tenantChanges, tenants, this::ownerOf, ownerId, seq, limit);
+    }
+
+    private void changed(ConcurrentSkipListMap<Long, Change> changes, Map<Integer, Long> seqs, int id, String ownerId) {
+        long seq = changeSeq.incrementAndGet();
+        changes.put(seq, new Change(id, ownerId, false));
+
+        Long previous = seqs.put(id, seq);
+        if (previous != null) changes.remove(previous);
+    }
+
+    /**
+     * Record a row leaving {@code from} for {@code to}, taking back a move it made away from
+     * {@code to} before, as the row is in that owner's feed again.
+     */
+    private void moved(ConcurrentSkipListMap<Long, Change> changes, Map<Change, Long> moves, int id,
+                       String from, String to) {
+        if (Objects.equals(from, to)) return;
+
+        Long back = moves.remove(new Change(id, to, true));
+        if (back != null) changes.remove(back);
+
+        if (from != null) {
+            long seq = changeSeq.incrementAndGet();
+            Change move = new Change(id, from, true);
+            changes.put(seq, move);
+
+            Long previous = moves.put(move, seq);
+            if (previous != null) changes.remove(previous);
+        }
+    }
+
+    private static <T> ChangeFeed<T> changesSince(ConcurrentSkipListMap<Long, Change> changes,
+                                                  Map<Integer, T> rows,
+                                                  Function<T, String> owner,
+                                                  String ownerId, long seq, int limit) {
+        List<T> upserts = new ArrayList<>();
+        List<Integer> deleted = new ArrayList<>();
+        long highWaterMark = seq;
+        boolean hasMore = false;
+
+        for (Map.Entry<Long, Change> e : changes.tailMap(seq, false).entrySet()) {
+            Change change = e.getValue();
+            T row = change.moved ? null : rows.get(change.id);
+
+            if (change.moved ? !change.ownerId.equals(ownerId)
+                    : ownerId != null && !ownerId.equals(row != null ? owner.apply(row) : change.ownerId)) continue;
+            if (upserts.size() + deleted.size() == limit) {
+                hasMore = true;
+                break;
+            }
+
+            if (row != null) upserts.add(row);
+            else deleted.add(change.id);
+            highWaterMark = e.getKey();
+        }
+
+        // changes are made under the store's lock in sequence order, so none can turn up late
+        return new ChangeFeed<>(upserts, deleted.stream().mapToInt(Integer::intValue).toArray(), highWaterMark, hasMore);
+    }
+
+    // ---- following a database
+
+    /**
+     * Apply the changes made to the database since the last refresh, or copy it all the first
+     * time.
+     *
+     * @return the number of properties and tenants added, changed or deleted
+     * @throws SQLException if the changes cannot be read
+     */
+    public int refresh(PropertyDAO propertyDAO, TenantDAO tenantDAO) throws SQLException {
+        long start = System.currentTimeMillis();
+        int changes = 0;
+
+        // properties first, so tenants of new properties find their owner
+        ChangeFeed<PropertyBaseData> propertyFeed;
+        do {
+            propertyFeed = ChangeFeed.read(seq -> propertyDAO.propertyChangesSince(null, seq, PAGE_SIZE),
+                    propertyHighWaterMark);
+            for (PropertyBaseData p : propertyFeed.getUpserts()) putProperty(p);
+            for (int id : propertyFeed.getDeletedIds()) removeProperty(id);
+            propertyHighWaterMark = propertyFeed.getResumeMark();
+            changes += propertyFeed.getUpserts().size() + propertyFeed.getDeletedIds().length;
+        } while (propertyFeed.hasMore());
+
+        ChangeFeed<TenantData> tenantFeed;
+        do {
+            tenantFeed = ChangeFeed.read(seq -> tenantDAO.tenantChangesSince(null, seq, PAGE_SIZE),
+                    tenantHighWaterMark);
+            for (TenantData t : tenantFeed.getUpserts()) putTenant(t);
+            for (int id : tenantFeed.getDeletedIds()) removeTenant(id);
+            tenantHighWaterMark = tenantFeed.getResumeMark();
+            changes += tenantFeed.getUpserts().size() + tenantFeed.getDeletedIds().length;
+        } while (tenantFeed.hasMore());
+
+        if (changes > 0) {
+            getLogger().log(INFO, "Copied {0} property and tenant changes in {1} ms.",
+                    new Object[]{changes, System.currentTimeMillis() - start});
+        }
+        return changes;
+    }
+
+    /**
+     * Refresh from the change feeds every {@code intervalMs} on a background thread, until
+     * {@link #close} is called.
+     */
+    public synchronized void refreshEvery(PropertyDAO propertyDAO, TenantDAO tenantDAO, long intervalMs) {
+        if (refresher != null) throw new IllegalStateException("Already refreshing");
+
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "in-memory-store");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh(propertyDAO, tenantDAO);
+            } catch (Exception e) {
+                getLogger().log(WARNING, "In-memory store refresh failed ({0})", String.valueOf(e.getMessage()).trim());
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (refresher != null) refresher.shutdownNow();
+        refresher = null;
+    }
+
+    /**
+     * @return the rows with the given ids, in id order, skipping any removed meanwhile
+     */
+    private static <T> List<T> rows(NavigableSet<Integer> ids, Map<Integer, T> rows) {
+        if (ids == null) return new ArrayList<>();
+
+        List<T> result = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            T row = rows.get(id);
+            if (row != null) result.add(row);
+        }
+        return result;
+    }
+}
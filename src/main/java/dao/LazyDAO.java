@@ -0,0 +1,79 @@
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.function.Supplier;
+
+/**
+ * Stands in for a DAO that is only built, and so only connects to the database, when one of its
+ * methods is first called or when it is warmed up with {@link DAOFactory#warmUp}.
+ *
+ * @author Joshua Escareno
+ */
+final class LazyDAO<T extends BaseDAO> implements InvocationHandler {
+    private final Class<T> daoClass;
+    private final Supplier<T> factory;
+    private volatile T target;
+
+    private LazyDAO(Class<T> daoClass, Supplier<T> factory) {
+        this.daoClass = daoClass;
+        this.factory = factory;
+    }
+
+    static <T extends BaseDAO> T create(Class<T> daoClass, Supplier<T> factory) {
+        return daoClass.cast(Proxy.newProxyInstance(daoClass.getClassLoader(), new Class<?>[]{daoClass},
+                new LazyDAO<>(daoClass, factory)));
+    }
+
+    /**
+     * @return the DAO behind a lazy stand-in, built now if need be, or the DAO itself if it is not
+     * a stand-in
+     */
+    static BaseDAO resolve(BaseDAO dao) {
+        if (!Proxy.isProxyClass(dao.getClass())) return dao;
+
+        InvocationHandler handler = Proxy.getInvocationHandler(dao);
+        return handler instanceof LazyDAO ? ((LazyDAO<?>) handler).target() : dao;
+    }
+
+    T target() {
+        T dao = target;
+
+        if (dao == null) {
+            synchronized (this) {
+                dao = target;
+
+                if (dao == null) {
+                    dao = factory.get();
+                    if (dao == null) throw new IllegalStateException("Unable to create " + daoClass.getName());
+                    target = dao;
+                }
+            }
+        }
+
+        return dao;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class && target == null) {
+            // do not connect to print or compare a DAO
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "Lazy " + daoClass.getSimpleName();
+            }
+        }
+
+        try {
+            return method.invoke(target(), args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.function.Supplier;
+
+/**
+ * A statement that is prepared the first time it is used rather than when its DAO is built, so
+ * building a DAO costs nothing and statements that are never run are never prepared. The SQL can
+ * be given as a supplier, for statements whose text is itself expensive to build, such as the
+ * collated ones.
+ * <p>
+ * Once prepared the statement is kept for the life of the DAO. Statements a DAO expects to need
+ * right away can be prepared ahead of time, see {@link AbstractMySqlDAO#prepareHotStatements()}.
+ *
+ * @author Joshua Escareno
+ */
+final class LazyStatement {
+    /**
+     * Prepares the statement on a connection.
+     */
+    @FunctionalInterface
+    interface Preparer {
+        PreparedStatement prepare(Connection conn, String sql) throws SQLException;
+    }
+
+    private final Connection conn;
+    private final Supplier<String> sql;
+    private final Preparer preparer;
+    private volatile PreparedStatement statement;
+
+    LazyStatement(Connection conn, Supplier<String> sql, Preparer preparer) {
+        this.conn = conn;
+        this.sql = sql;
+        this.preparer = preparer;
+    }
+
+    /**
+     * @return the statement, prepared now if this is the first time it is asked for
+     * @throws SQLException if the statement cannot be prepared
+     */
+    PreparedStatement get() throws SQLException {
+        PreparedStatement ps = statement;
+
+        if (ps == null) {
+            synchronized (this) {
+                ps = statement;
+
+                if (ps == null) {
+                    String query = sql.get();
+
+                    try {
+                        statement = ps = preparer.prepare(conn, query);
+                    } catch (SQLException e) {
+                        throw new SQLException("Unable to prepare SQL query:\n" + query, e);
+                    }
+                }
+            }
+        }
+
+        return ps;
+    }
+
+    /**
+     * Cancel the statement if it is running, as {@link PreparedStatement#cancel()} does.
+     *
+     * @throws SQLException if the database cannot be asked to cancel
+     */
+    void cancel() throws SQLException {
+        PreparedStatement ps = statement;
+        if (ps != null) ps.cancel();
+    }
+
+    boolean isPrepared() {
+        return statement != null;
+    }
+}
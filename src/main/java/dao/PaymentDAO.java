@@ -0,0 +1,130 @@
+package dao;
+
+import mapping.Column;
+import mapping.RowMapped;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DAO for the {@code PAYMENT} ledger. Payments are only ever inserted; a payment is never
+ * updated or deleted, so inserting one does not lock any row another payment needs. The
+ * {@code property_last_payment_date} column is kept as a summary of the ledger for the code
+ * that reads it, and can always be rebuilt from it. It is updated after the payments are
+ * committed, one short statement at a time, so no property row stays locked while a batch is
+ * recorded.
+ *
+ * @author Joshua Escareno
+ */
+public interface PaymentDAO extends BaseDAO {
+
+    /**
+     * A method to record a batch of payments with as few round trips as possible. After the payments are
+     * inserted, the last payment date of every property in the batch is moved forward to its latest payment,
+     * with one update per collation rather than one per payment. The payments are committed together: if
+     * any insert fails, nothing of the batch is recorded. The dates are moved afterwards, each update
+     * committed on its own; one failing is logged and left for {@link #rebuildLastPaymentDates}, as the
+     * payments are recorded by then
+     *
+     * @param payments the payments to record; their ids are ignored
+     * @return the number of payments recorded
+     * @throws SQLException if one of the statements cannot be executed
+     */
+    int recordPayments(List<PaymentData> payments) throws SQLException;
+
+    /**
+     * A method to retrieve the payments made for a property in a date range. Only the monthly partitions
+     * covering the range are read
+     *
+     * @param propertyId the property whose payments we want
+     * @param from       the first day of the range
+     * @param to         the last day of the range
+     * @return a list of payments ordered by date
+     * @throws SQLException if the query cannot be executed
+     */
+    @ReadOnly
+    List<PaymentData> listPaymentsByProperty(int propertyId, LocalDate from, LocalDate to) throws SQLException;
+
+    /**
+     * A method to retrieve the date of the latest payment in the ledger for each of a list of properties
+     *
+     * @param propertyIds the properties we want the dates for
+     * @return a map from property id to the date of its latest payment; properties never paid for are left out
+     * @throws SQLException if the query cannot be executed
+     */
+    @ReadOnly
+    Map<Integer, LocalDate> lastPaymentDates(List<Integer> propertyIds) throws SQLException;
+
+    /**
+     * A method to recompute {@code property_last_payment_date} of every property from the ledger, for
+     * repairing the summary after payments were loaded outside of {@link #recordPayments}
+     *
+     * @return the number of properties updated
+     * @throws SQLException if the update cannot be executed
+     */
+    int rebuildLastPaymentDates() throws SQLException;
+
+    /**
+     * data access class for the {@code PAYMENT} table
+     */
+    @RowMapped(table = "payment")
+    final class PaymentData implements Serializable {
+        private final long paymentId;
+        private final int propertyId;
+        private final Integer tenantId;
+        private final BigDecimal amount;
+        private final LocalDate paymentDate;
+
+        public PaymentData(
+                @Column("payment_ID") long paymentId,
+                @Column("payment_property_ID") int propertyId,
+                @Column("payment_tenant_ID") Integer tenantId,
+                @Column("payment_amount") BigDecimal amount,
+                @Column("payment_date") LocalDate paymentDate
+        ) {
+            this.paymentId = paymentId;
+            this.propertyId = propertyId;
+            this.tenantId = tenantId;
+            this.amount = amount;
+            this.paymentDate = paymentDate;
+        }
+
+        public long getPaymentId() {
+            return paymentId;
+        }
+
+        public int getPropertyId() {
+            return propertyId;
+        }
+
+        /**
+         * @return the paying tenant, or null if the payment was not made by a known tenant
+         */
+        public Integer getTenantId() {
+            return tenantId;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public LocalDate getPaymentDate() {
+            return paymentDate;
+        }
+
+        @Override
+        public String toString() {
+            return "PaymentData{" +
+                    "paymentId=" + paymentId +
+                    ", propertyId=" + propertyId +
+                    ", tenantId=" + tenantId +
+                    ", amount=" + amount +
+                    ", paymentDate=" + paymentDate +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package dao;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link PaymentDAO} keeping the ledger in an {@link InMemoryStore}. Recording a payment moves
+ * the property's last payment date forward in the store, where it shows up in the property change
+ * feed as it would from the database.
+ *
+ * @author Joshua Escareno
+ */
+public class PaymentInMemoryDAO implements PaymentDAO {
+    private final InMemoryStore store;
+
+    public PaymentInMemoryDAO() {
+        this(InMemoryStore.shared());
+    }
+
+    public PaymentInMemoryDAO(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public int recordPayments(List<PaymentData> payments) {
+        store.recordPayments(payments);
+        return payments.size();
+    }
+
+    @Override
+    public List<PaymentData> listPaymentsByProperty(int propertyId, LocalDate from, LocalDate to) {
+        return store.payments(propertyId, from, to);
+    }
+
+    @Override
+    public Map<Integer, LocalDate> lastPaymentDates(List<Integer> propertyIds) {
+        Map<Integer, LocalDate> result = new LinkedHashMap<>();
+        for (int propertyId : propertyIds) {
+            LocalDate date = store.lastPayment(propertyId);
+            if (date != null) result.put(propertyId, date);
+        }
+        return result;
+    }
+
+    @Override
+    public int rebuildLastPaymentDates() {
+        return store.rebuildLastPaymentDates();
+    }
+}
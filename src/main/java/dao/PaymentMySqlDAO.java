@@ -0,0 +1,291 @@
+package dao;
+
+import util.ColumnMapper;
+import util.DAOUtils;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Implementation of the {@code PaymentDAO} interface
+ *
+ * @author Joshua Escareno
+ */
+public class PaymentMySqlDAO extends AbstractMySqlDAO implements PaymentDAO {
+
+    private static final String INSERT_PAYMENTS_TEMPLATE
+            = "insert /* INSERT_PAYMENTS_STATEMENT */ into payment(payment_property_ID, payment_tenant_ID, "
+            + "payment_amount, payment_date)\n"
+            + "values ??";
+
+    private static final int INSERT_PAYMENTS_COLUMNS = 4;
+
+    private static final String PAYMENTS_BY_PROPERTY_QUERY
+            = "select /* PAYMENTS_BY_PROPERTY_QUERY */\n"
+            + PaymentDataMapper.COLUMNS + "\n"
+            + "from payment\n"
+            + "where payment_property_ID = ?\n"
+            + "and payment_date between ? and ?\n"
+            + "order by payment_date, payment_ID";
+
+    private static final String LAST_PAYMENT_DATES_QUERY
+            = "select /* LAST_PAYMENT_DATES_QUERY */\n"
+            + "payment_property_ID, max(payment_date)\n"
+            + "from payment\n"
+            + "where payment_property_ID in ??\n"
+            + "group by payment_property_ID";
+
+    private static final String REBUILD_LAST_PAYMENT_DATES_STATEMENT
+            = "update /* REBUILD_LAST_PAYMENT_DATES_STATEMENT */ property\n"
+            + "join (select payment_property_ID, max(payment_date) last_payment\n"
+            + "      from payment group by payment_property_ID) p on p.payment_property_ID = property_ID\n"
+            + "set property_last_payment_date = p.last_payment";
+
+    private final ColumnMapper<PaymentData> paymentRows = new ColumnMapper<>(PaymentDataMapper.INSTANCE);
+    private final LazyStatement insertPaymentsBatch;
+    private final LazyStatement listPayments;
+    private final LazyStatement lastPaymentDates;
+    private final LazyStatement advanceLastPaymentDates;
+    private final LazyStatement rebuildLastPaymentDates;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(PaymentMySqlDAO.class.getName());
+    }
+
+    public PaymentMySqlDAO(Connection conn) {
+        this(conn, DEFAULT_COLLATE_SIZE);
+    }
+
+    public PaymentMySqlDAO(Connection conn, int collateSize) {
+        super(conn, collateSize);
+        this.insertPaymentsBatch = lazyQuery(() -> INSERT_PAYMENTS_TEMPLATE.replace("??",
+                DAOUtils.mkValuesList(getCollateSize(), INSERT_PAYMENTS_COLUMNS)));
+        this.listPayments = hot(lazyQuery(PAYMENTS_BY_PROPERTY_QUERY));
+        this.lastPaymentDates = lazyQuery(() -> LAST_PAYMENT_DATES_QUERY.replace("??",
+                DAOUtils.mkInList(getCollateSize())));
+        this.advanceLastPaymentDates = lazyQuery(() -> mkAdvanceLastPaymentDates(getCollateSize()));
+        this.rebuildLastPaymentDates = lazyQuery(REBUILD_LAST_PAYMENT_DATES_STATEMENT);
+    }
+
+    @Override
+    public int recordPayments(List<PaymentData> payments) throws SQLException {
+        long start = System.currentTimeMillis();
+        Connection conn = getConn();
+        boolean autoCommit = conn.getAutoCommit();
+
+        // the payments of a batch are committed together, so a retry after a failure cannot record
+        // some of them twice; the payment table has no change tracking, so nothing else waits on them
+        conn.setAutoCommit(false);
+        int rows;
+
+        try {
+            rows = payments.isEmpty() ? 0 : collatedUpdateExecutor(payments, batch -> {
+                if (batch.size() == getCollateSize()) {
+                    return bindPayments(insertPaymentsBatch.get(), batch).executeUpdate();
+                }
+
+                // the final partial batch gets a statement of its own size
+                String sql = INSERT_PAYMENTS_TEMPLATE.replace("??",
+                        DAOUtils.mkValuesList(batch.size(), INSERT_PAYMENTS_COLUMNS));
+
+                try (PreparedStatement ps = getConn().prepareStatement(sql)) {
+                    return bindPayments(ps, batch).executeUpdate();
+                }
+            });
+
+            conn.commit();
+        } catch (Exception e) {
+            conn.rollback();
+
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] INSERT_PAYMENTS_STATEMENT [{0}] failed and was rolled back ({1}) "
+                    + "in {2} ms.", new Object[]{DAOUtils.mkPrintList(payments), e.getMessage().trim(), dur});
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        int properties = advanceLastPaymentDates(payments);
+
+        long dur = System.currentTimeMillis() - start;
+        getLogger().log(INFO, "[SQLStats] INSERT_PAYMENTS_STATEMENT [{0}] recorded {1} payments for {2} "
+                + "properties in {3} ms.", new Object[]{DAOUtils.mkPrintList(payments), rows, properties, dur});
+        return rows;
+    }
+
+    /**
+     * Move the summary date of each property forward to its latest payment in the batch, once the
+     * payments are committed. The batch is reduced to one date per property first, and
+     * {@code greatest()} keeps a later date that is already there, so batches may be recorded in
+     * any order. Each collation is a single autocommit statement, as the change feed expects of
+     * writes to the property table, and holds its row locks only while it runs.
+     * <p>
+     * The payments are recorded whether or not this succeeds, so a failed update is logged rather
+     * than thrown, which would have the caller record them again; the date stays behind until the
+     * property's next payment or {@link #rebuildLastPaymentDates}.
+     *
+     * @return the number of properties in the batch
+     */
+    private int advanceLastPaymentDates(List<PaymentData> payments) {
+        Map<Integer, LocalDate> latest = new TreeMap<>();
+
+        for (PaymentData payment : payments) {
+            latest.merge(payment.getPropertyId(), payment.getPaymentDate(),
+                    (a, b) -> a.isAfter(b) ? a : b);
+        }
+
+        List<Map.Entry<Integer, LocalDate>> dates = new ArrayList<>(latest.entrySet());
+
+        for (int i = 0; i < dates.size(); i += getCollateSize()) {
+            List<Map.Entry<Integer, LocalDate>> batch = dates.subList(i, Math.min(dates.size(), i + getCollateSize()));
+
+            try {
+                if (batch.size() == getCollateSize()) {
+                    bindLastPaymentDates(advanceLastPaymentDates.get(), batch).executeUpdate();
+                } else {
+                    try (PreparedStatement ps = getConn().prepareStatement(mkAdvanceLastPaymentDates(batch.size()))) {
+                        bindLastPaymentDates(ps, batch).executeUpdate();
+                    }
+                }
+            } catch (SQLException e) {
+                getLogger().log(WARNING, "[SQLStats] ADVANCE_LAST_PAYMENT_DATES_STATEMENT [{0}] failed ({1}); the "
+                        + "payments are recorded, rebuildLastPaymentDates() repairs the dates", new Object[]{
+                        DAOUtils.mkPrintList(batch), e.getMessage().trim()});
+            }
+        }
+
+        return dates.size();
+    }
+
+    @Override
+    public List<PaymentData> listPaymentsByProperty(int propertyId, LocalDate from, LocalDate to)
+            throws SQLException {
+        long start = System.currentTimeMillis();
+
+        try {
+            List<PaymentData> result = DAOUtils.queryForList(getConn(), listPayments.get(), ps -> {
+                ps.setInt(1, propertyId);
+                ps.setDate(2, DAOUtils.asSqlDate(from));
+                ps.setDate(3, DAOUtils.asSqlDate(to));
+            }, paymentRows);
+
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(INFO, "[SQLStats] PAYMENTS_BY_PROPERTY_QUERY [pid: {0}, {1} - {2}] returned {3} rows "
+                    + "in {4} ms.", new Object[]{propertyId, from, to, result.size(), dur});
+            return result;
+        } catch (Exception e) {
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] PAYMENTS_BY_PROPERTY_QUERY [pid: {0}] failed ({1}) in {2} ms.",
+                    new Object[]{propertyId, e.getMessage().trim(), dur});
+            throw e;
+        }
+    }
+
+    @Override
+    public Map<Integer, LocalDate> lastPaymentDates(List<Integer> propertyIds) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        try {
+            Map<Integer, LocalDate> result = propertyIds.isEmpty() ? new HashMap<>() :
+                    collatedMapExecutor(propertyIds, batch -> {
+                        Map<Integer, LocalDate> dates = new HashMap<>();
+
+                        DAOUtils.queryRows(getConn(), lastPaymentDates.get(), ps -> {
+                            int i = 0, collateSize = getCollateSize();
+                            for (Integer pid : batch) ps.setInt(++i, pid);
+                            while (i < collateSize) ps.setNull(++i, Types.INTEGER);
+                        }, rs -> dates.put(rs.getInt(1), DAOUtils.getLocalDate(rs, 2)));
+
+                        return dates;
+                    });
+
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(INFO, "[SQLStats] LAST_PAYMENT_DATES_QUERY [{0}] returned {1} rows in {2} ms.",
+                    new Object[]{DAOUtils.mkPrintList(propertyIds), result.size(), dur});
+            return result;
+        } catch (Exception e) {
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] LAST_PAYMENT_DATES_QUERY [{0}] failed ({1}) in {2} ms.",
+                    new Object[]{DAOUtils.mkPrintList(propertyIds), e.getMessage().trim(), dur});
+            throw e;
+        }
+    }
+
+    @Override
+    public int rebuildLastPaymentDates() throws SQLException {
+        long start = System.currentTimeMillis();
+
+        try {
+            int rows = rebuildLastPaymentDates.get().executeUpdate();
+
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(INFO, "[SQLStats] REBUILD_LAST_PAYMENT_DATES_STATEMENT updated {0} rows in {1} ms.",
+                    new Object[]{rows, dur});
+            return rows;
+        } catch (Exception e) {
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] REBUILD_LAST_PAYMENT_DATES_STATEMENT failed ({0}) in {1} ms.",
+                    new Object[]{e.getMessage().trim(), dur});
+            throw e;
+        }
+    }
+
+    /**
+     * Build an update moving the last payment date of <em>n</em> properties forward in one statement.
+     *
+     * @param n the number of properties updated by the statement
+     * @return the update statement, taking <em>n</em> (id, date) pairs followed by <em>n</em> ids
+     */
+    private static String mkAdvanceLastPaymentDates(int n) {
+        return "update /* ADVANCE_LAST_PAYMENT_DATES_STATEMENT */ property\n"
+                + "set property_last_payment_date = greatest(coalesce(property_last_payment_date, '1000-01-01'), "
+                + "case property_ID " + String.join(" ", Collections.nCopies(n, "when ? then ?")) + " end)\n"
+                + "where property_ID in " + DAOUtils.mkInList(n);
+    }
+
+    private static PreparedStatement bindLastPaymentDates(PreparedStatement ps,
+                                                          List<Map.Entry<Integer, LocalDate>> batch)
+            throws SQLException {
+        int i = 0;
+
+        for (Map.Entry<Integer, LocalDate> date : batch) {
+            ps.setInt(++i, date.getKey());
+            ps.setDate(++i, DAOUtils.asSqlDate(date.getValue()));
+        }
+
+        for (Map.Entry<Integer, LocalDate> date : batch) {
+            ps.setInt(++i, date.getKey());
+        }
+
+        return ps;
+    }
+
+    private static PreparedStatement bindPayments(PreparedStatement ps, List<PaymentData> batch)
+            throws SQLException {
+        int i = 0;
+
+        for (PaymentData payment : batch) {
+            ps.setInt(++i, payment.getPropertyId());
+            if (payment.getTenantId() != null) ps.setInt(++i, payment.getTenantId());
+            else ps.setNull(++i, Types.INTEGER);
+            ps.setBigDecimal(++i, payment.getAmount());
+            ps.setDate(++i, DAOUtils.asSqlDate(payment.getPaymentDate()));
+        }
+
+        return ps;
+    }
+}
@@ -0,0 +1,156 @@
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Stands in for a DAO on a {@link ConnectionPool}: every call takes a connection from the pool,
+ * runs on the DAO kept for that connection, and gives the connection back. As a connection is
+ * lent to one caller at a time, so is its DAO, and the DAO's prepared statements are never used
+ * by two threads at once.
+ * <p>
+ * A call handing rows to a callback, such as a streaming query, keeps its connection until it
+ * returns. A DAO called from such a callback takes a second connection. Methods marked
+ * {@link Streaming} may be given a pool of their own, so a slow consumer never holds a
+ * connection that other calls are waiting for.
+ *
+ * @author Joshua Escareno
+ */
+final class PooledDAO<T extends BaseDAO> implements InvocationHandler {
+    private final Class<T> daoClass;
+    private final ConnectionPool pool;
+    private final ConnectionPool streams;
+
+    /**
+     * A call that another thread may cancel while it runs, see {@link #invoke(Method, Object[], Call)}.
+     */
+    static final class Call {
+        private BaseDAO running;
+        private boolean over;
+
+        private synchronized boolean start(BaseDAO dao) {
+            if (over) return false;
+            running = dao;
+            return true;
+        }
+
+        private synchronized void finish() {
+            over = true;
+            running = null;
+        }
+
+        /**
+         * Cancel the statement the call is running, if it is still running, or keep it from
+         * starting. The call's connection is only given back once this returns, so the cancel
+         * cannot reach a statement of whoever takes the connection next.
+         */
+        synchronized void cancel() {
+            over = true;
+            if (!(running instanceof AbstractMySqlDAO)) return;
+
+            try {
+                ((AbstractMySqlDAO) running).cancel();
+            } catch (SQLException e) {
+                getLogger().log(WARNING, "Unable to cancel a call: {0}", e.getMessage());
+            }
+        }
+    }
+
+    private static Logger getLogger() {
+        return Logger.getLogger(PooledDAO.class.getName());
+    }
+
+    private PooledDAO(Class<T> daoClass, ConnectionPool pool, ConnectionPool streams) {
+        this.daoClass = daoClass;
+        this.pool = pool;
+        this.streams = streams;
+    }
+
+    static <T extends BaseDAO> T create(Class<T> daoClass, ConnectionPool pool, ConnectionPool streams) {
+        return daoClass.cast(Proxy.newProxyInstance(daoClass.getClassLoader(), new Class<?>[]{daoClass},
+                new PooledDAO<>(daoClass, pool, streams)));
+    }
+
+    /**
+     * @return the handler behind a DAO made by {@link #create}, or null for any other DAO
+     */
+    static PooledDAO<?> of(BaseDAO dao) {
+        if (!Proxy.isProxyClass(dao.getClass())) return null;
+
+        InvocationHandler handler = Proxy.getInvocationHandler(dao);
+        return handler instanceof PooledDAO ? (PooledDAO<?>) handler : null;
+    }
+
+    /**
+     * Prepare the statements a DAO expects to need first, on one of the pool's connections.
+     *
+     * @return the number of statements prepared
+     * @throws SQLException if no connection can be had or a statement cannot be prepared
+     */
+    int warmUp() throws SQLException {
+        Connection conn = pool.borrow();
+
+        try {
+            return DAOFactory.warmUp(target(conn));
+        } finally {
+            pool.release(conn);
+        }
+    }
+
+    private T target(Connection conn) {
+        T dao = DAOFactory.create(daoClass, conn);
+        if (dao == null) throw new IllegalStateException("Unable to create " + daoClass.getName());
+        return dao;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            // do not take a connection to print or compare a DAO
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "Pooled " + daoClass.getSimpleName();
+            }
+        }
+
+        return invoke(method, args, new Call());
+    }
+
+    /**
+     * Run a call of the DAO interface on a connection of the pool, as a cancellable call.
+     *
+     * @param method the method of the DAO interface
+     * @param args   the arguments
+     * @param call   the handle through which the call can be cancelled
+     * @return what the method returned
+     * @throws Throwable what the method threw, or SQLException if the call was cancelled before
+     *                   it started
+     */
+    Object invoke(Method method, Object[] args, Call call) throws Throwable {
+        ConnectionPool from = method.isAnnotationPresent(Streaming.class) ? streams : pool;
+        Connection conn = from.borrow();
+
+        try {
+            T dao = target(conn);
+            if (!call.start(dao)) throw new SQLException("Cancelled before it started");
+
+            return method.invoke(dao, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        } finally {
+            call.finish();
+            from.release(conn);
+        }
+    }
+}
@@ -1,10 +1,18 @@
 package dao;
 
+import mapping.Column;
+import mapping.RowMapped;
+import util.DAOUtils;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 /**
  * Data access class for the {@code Property} table
@@ -24,8 +32,72 @@ public interface PropertyDAO extends BaseDAO {
      * @return a list of PropertyBaseData ojects
      * @throws SQLException if the query cannot be executed
      */
+    @ReadOnly
     List<PropertyBaseData> listAllPropertiesByOwner(String ownerId) throws SQLException;
 
+    /**
+     * A Method to find who owns a property, for checking that a user may see it
+     *
+     * @param propertyId the property
+     * @return the user name of the owner, or null if there is no such property or it has no owner
+     * @throws SQLException if the query cannot be executed
+     */
+    @ReadOnly
+    String lookupPropertyOwner(int propertyId) throws SQLException;
+
+    /**
+     * A Method to stream all the properties owned by a user, handing each one to {@code action}
+     * as it is read from the database instead of collecting them in a list first. Rows are only
+     * streamed from the server on a pooled connection, see {@link DAOFactory#createPooled}
+     *
+     * @param ownerId the person who owns the properties we wish to list
+     * @param action  called once for every property, in the order the rows arrive
+     * @return the number of properties streamed
+     * @throws SQLException if the query cannot be executed
+     */
+    @ReadOnly(hedge = false)
+    @Streaming
+    int streamAllPropertiesByOwner(String ownerId, Consumer<PropertyBaseData> action) throws SQLException;
+
+    /**
+     * A Method to retrieve all the properties owned by a user together with their tenants in a single query,
+     * rather than one tenant query per property
+     *
+     * @param ownerId the person who owns the properties we wish to list
+     * @return a list of PropertyWithTenants objects ordered by property id; vacant properties have no tenants
+     * @throws SQLException if the query cannot be executed
+     */
+    @ReadOnly
+    List<PropertyWithTenants> listAllPropertiesWithTenantsByOwner(String ownerId) throws SQLException;
+
+    /**
+     * A Method to stream all the properties owned by a user together with their tenants, handing each property
+     * to {@code action} as soon as its last tenant has been read
+     *
+     * @param ownerId the person who owns the properties we wish to list
+     * @param action  called once for every property, in property id order
+     * @return the number of properties streamed
+     * @throws SQLException if the query cannot be executed
+     */
+    @ReadOnly(hedge = false)
+    @Streaming
+    int streamAllPropertiesWithTenantsByOwner(String ownerId, Consumer<PropertyWithTenants> action)
+            throws SQLException;
+
+    /**
+     * A Method to retrieve the properties inserted, updated or deleted after a change sequence, for consumers
+     * keeping their own copy of the table up to date
+     *
+     * @param ownerId only changes to this owner's properties, with those moved to another owner as deletes, or
+     *                all changes if null
+     * @param seq     the high-water mark of the previous page, or 0 for everything
+     * @param limit   the most changes to return
+     * @return one page of changes
+     * @throws SQLException if the query cannot be executed
+     */
+    @ReadOnly
+    ChangeFeed<PropertyBaseData> propertyChangesSince(String ownerId, long seq, int limit) throws SQLException;
+
     /**
      * A Method to retrieve all vacant properties in the database, that is properties with 0 tenants and a
      * {@code vacancyIndicator} of "V"
@@ -33,6 +105,7 @@ public interface PropertyDAO extends BaseDAO {
      * @return a list of PropertyBaseData objects
      * @throws SQLException if the query cannot be completed
      */
+    @ReadOnly
     List<PropertyBaseData> listAllVacantProperties() throws SQLException;
 
     /**
@@ -43,6 +116,16 @@ public interface PropertyDAO extends BaseDAO {
      */
     void insertNewProperty(PropertyBaseData property) throws SQLException;
 
+    /**
+     * A method to insert many property records into the {@code Property} table with as few round trips
+     * as possible, using multi-row inserts
+     *
+     * @param properties the property objects to be inserted; their ids are ignored
+     * @return the number of rows inserted
+     * @throws SQLException if one of the inserts cannot be executed
+     */
+    int insertProperties(List<PropertyBaseData> properties) throws SQLException;
+
     /**
      * A method to update the {@code property_rental_fee} field for a given property
      *
@@ -52,10 +135,98 @@ public interface PropertyDAO extends BaseDAO {
      */
     void updateRentalFee(BigDecimal newRentalFee, int propertyId, String ownerId) throws SQLException;
 
+    /**
+     * A method to update the {@code property_rental_fee} field of many properties with as few round trips as
+     * possible. Each update only applies if the property belongs to the given owner.
+     *
+     * @param updates the updates to apply, at most one per property
+     * @return the number of rows updated
+     * @throws SQLException if one of the updates cannot be executed
+     */
+    int updateRentalFees(List<RentalFeeUpdate> updates) throws SQLException;
+
+    /**
+     * A new rental fee for one property.
+     */
+    final class RentalFeeUpdate implements Serializable {
+        private final int propertyId;
+        private final String ownerId;
+        private final BigDecimal rentalFee;
+
+        public RentalFeeUpdate(int propertyId, String ownerId, BigDecimal rentalFee) {
+            this.propertyId = propertyId;
+            this.ownerId = ownerId;
+            this.rentalFee = rentalFee;
+        }
+
+        public int getPropertyId() {
+            return propertyId;
+        }
+
+        public String getOwnerId() {
+            return ownerId;
+        }
+
+        public BigDecimal getRentalFee() {
+            return rentalFee;
+        }
+
+        @Override
+        public String toString() {
+            return "RentalFeeUpdate{" +
+                    "propertyId=" + propertyId +
+                    ", ownerId='" + ownerId + '\'' +
+                    ", rentalFee=" + rentalFee +
+                    '}';
+        }
+    }
+
+    /**
+     * A property and the tenants living in it.
+     */
+    final class PropertyWithTenants implements Serializable {
+        private final PropertyBaseData property;
+        private final List<TenantDAO.TenantData> tenants;
+
+        public PropertyWithTenants(PropertyBaseData property, List<TenantDAO.TenantData> tenants) {
+            this.property = property;
+            this.tenants = tenants;
+        }
+
+        public PropertyBaseData getProperty() {
+            return property;
+        }
+
+        public List<TenantDAO.TenantData> getTenants() {
+            return tenants;
+        }
+
+        @Override
+        public String toString() {
+            return "PropertyWithTenants{" +
+                    "property=" + property +
+                    ", tenants=" + tenants +
+                    '}';
+        }
+    }
+
     /**
      * Data access class for passing data from the db easily.
+     * <p>
+     * A property read from the database keeps the raw bytes of its decimal and date columns and decodes each
+     * one the first time its getter is called, since most callers only look at a few fields. The bytes of a
+     * column are dropped once it is decoded, so properties held on to, as by the notice scheduler, do not
+     * keep both. Decoding is done holding the lock of the bytes, so a thread finding a column's bytes
+     * dropped also finds its value.
      */
+    @RowMapped(table = "property")
     final class PropertyBaseData implements Serializable {
+        private static final int SQUARE_FOOTAGE = 0;
+        private static final int FRONT_YARD_FOOTAGE = 1;
+        private static final int BACKYARD_FOOTAGE = 2;
+        private static final int RENTAL_FEE = 3;
+        private static final int LAST_PAYMENT_DATE = 4;
+
         private final int propertyId;
         private final String propertyType;
         private final String propertyAddress;
@@ -63,14 +234,17 @@ public interface PropertyDAO extends BaseDAO {
         private final int numberOfRooms;
         private final int numberOfBathrooms;
         private final int garageCount;
-        private final BigDecimal squareFootage;
-        private final BigDecimal frontYardFootage;
-        private final BigDecimal backyardFootage;
+        private BigDecimal squareFootage;
+        private BigDecimal frontYardFootage;
+        private BigDecimal backyardFootage;
         private final int numberOfTenants;
-        private final BigDecimal rentalFee;
-        private final LocalDate lastPaymentDate;
+        private BigDecimal rentalFee;
+        private LocalDate lastPaymentDate;
         private final String ownerID;
         private final String vacancyIndicator;
+        // the undecoded columns of a property read from the database, null otherwise; each is set to null
+        // once decoded, and the array is not serialized
+        private final transient byte[][] raw;
 
         public PropertyBaseData(
                 int propertyId,
@@ -104,6 +278,41 @@ public interface PropertyDAO extends BaseDAO {
             this.lastPaymentDate = lastPaymentDate;
             this.ownerID = ownerID;
             this.vacancyIndicator = vacancyIndicator;
+            this.raw = null;
+        }
+
+        /**
+         * Row constructor used by the generated mapper, taking the decimal and date columns as the bytes
+         * {@code ResultSet.getBytes} returns for them
+         */
+        PropertyBaseData(
+                @Column("property_ID") int propertyId,
+                @Column(value = "property_type", canonical = true) String propertyType,
+                @Column("property_address") String propertyAddress,
+                @Column(value = "property_city_code", canonical = true) String cityCode,
+                @Column("property_numRooms") int numberOfRooms,
+                @Column("property_numBrooms") int numberOfBathrooms,
+                @Column("property_garage_count") int garageCount,
+                @Column("property_sqr_foot") byte[] squareFootage,
+                @Column("property_frontY_sqr_foot") byte[] frontYardFootage,
+                @Column("property_backY_sqr_foot") byte[] backyardFootage,
+                @Column("property_num_tenants") int numberOfTenants,
+                @Column("property_rental_fee") byte[] rentalFee,
+                @Column("property_last_payment_date") byte[] lastPaymentDate,
+                @Column(value = "property_owner_id", canonical = true) String ownerID,
+                @Column(value = "property_vacancy_ind", canonical = true) String vacancyIndicator
+        ) {
+            this.propertyId = propertyId;
+            this.propertyType = propertyType;
+            this.propertyAddress = propertyAddress;
+            this.cityCode = cityCode;
+            this.numberOfRooms = numberOfRooms;
+            this.numberOfBathrooms = numberOfBathrooms;
+            this.garageCount = garageCount;
+            this.numberOfTenants = numberOfTenants;
+            this.ownerID = ownerID;
+            this.vacancyIndicator = vacancyIndicator;
+            this.raw = new byte[][]{squareFootage, frontYardFootage, backyardFootage, rentalFee, lastPaymentDate};
         }
 
         public int getNumberOfBathrooms() {
@@ -115,15 +324,36 @@ public interface PropertyDAO extends BaseDAO {
         }
 
         public BigDecimal getSquareFootage() {
-            return squareFootage;
+            BigDecimal value = squareFootage;
+            if (value == null && raw != null) {
+                synchronized (raw) {
+                    value = squareFootage;
+                    if (value == null) squareFootage = value = DAOUtils.decodeBigDecimal(take(SQUARE_FOOTAGE));
+                }
+            }
+            return value;
         }
 
         public BigDecimal getFrontYardFootage() {
-            return frontYardFootage;
+            BigDecimal value = frontYardFootage;
+            if (value == null && raw != null) {
+                synchronized (raw) {
+                    value = frontYardFootage;
+                    if (value == null) frontYardFootage = value = DAOUtils.decodeBigDecimal(take(FRONT_YARD_FOOTAGE));
+                }
+            }
+            return value;
         }
 
         public BigDecimal getBackyardFootage() {
-            return backyardFootage;
+            BigDecimal value = backyardFootage;
+            if (value == null && raw != null) {
+                synchronized (raw) {
+                    value = backyardFootage;
+                    if (value == null) backyardFootage = value = DAOUtils.decodeBigDecimal(take(BACKYARD_FOOTAGE));
+                }
+            }
+            return value;
         }
 
         public int getPropertyId() {
@@ -147,11 +377,25 @@ public interface PropertyDAO extends BaseDAO {
         }
 
         public BigDecimal getRentalFee() {
-            return rentalFee;
+            BigDecimal value = rentalFee;
+            if (value == null && raw != null) {
+                synchronized (raw) {
+                    value = rentalFee;
+                    if (value == null) rentalFee = value = DAOUtils.decodeBigDecimal(take(RENTAL_FEE));
+                }
+            }
+            return value;
         }
 
         public LocalDate getLastPaymentDate() {
-            return lastPaymentDate;
+            LocalDate value = lastPaymentDate;
+            if (value == null && raw != null) {
+                synchronized (raw) {
+                    value = lastPaymentDate;
+                    if (value == null) lastPaymentDate = value = DAOUtils.decodeLocalDate(take(LAST_PAYMENT_DATE));
+                }
+            }
+            return value;
         }
 
         public String getOwnerID() {
@@ -165,5 +409,81 @@ public interface PropertyDAO extends BaseDAO {
         public String getCityCode() {
             return cityCode;
         }
+
+        /**
+         * @param newRentalFee the rental fee of the copy
+         * @return a copy of this property with a different rental fee
+         */
+        public PropertyBaseData withRentalFee(BigDecimal newRentalFee) {
+            return new PropertyBaseData(propertyId, propertyType, propertyAddress, cityCode, numberOfRooms,
+                    numberOfBathrooms, garageCount, getSquareFootage(), getFrontYardFootage(), getBackyardFootage(),
+                    numberOfTenants, newRentalFee, getLastPaymentDate(), ownerID, vacancyIndicator);
+        }
+
+        /**
+         * @param newLastPaymentDate the last payment date of the copy
+         * @return a copy of this property with a different last payment date
+         */
+        public PropertyBaseData withLastPaymentDate(LocalDate newLastPaymentDate) {
+            return new PropertyBaseData(propertyId, propertyType, propertyAddress, cityCode, numberOfRooms,
+                    numberOfBathrooms, garageCount, getSquareFootage(), getFrontYardFootage(), getBackyardFootage(),
+                    numberOfTenants, getRentalFee(), newLastPaymentDate, ownerID, vacancyIndicator);
+        }
+
+        /**
+         * @param newPropertyId the id of the copy
+         * @return a copy of this property with a different id
+         */
+        public PropertyBaseData withPropertyId(int newPropertyId) {
+            return new PropertyBaseData(newPropertyId, propertyType, propertyAddress, cityCode, numberOfRooms,
+                    numberOfBathrooms, garageCount, getSquareFootage(), getFrontYardFootage(), getBackyardFootage(),
+                    numberOfTenants, getRentalFee(), getLastPaymentDate(), ownerID, vacancyIndicator);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof PropertyBaseData)) return false;
+            PropertyBaseData other = (PropertyBaseData) o;
+            return propertyId == other.propertyId
+                    && numberOfRooms == other.numberOfRooms
+                    && numberOfBathrooms == other.numberOfBathrooms
+                    && garageCount == other.garageCount
+                    && numberOfTenants == other.numberOfTenants
+                    && Objects.equals(propertyType, other.propertyType)
+                    && Objects.equals(propertyAddress, other.propertyAddress)
+                    && Objects.equals(cityCode, other.cityCode)
+                    && Objects.equals(getSquareFootage(), other.getSquareFootage())
+                    && Objects.equals(getFrontYardFootage(), other.getFrontYardFootage())
+                    && Objects.equals(getBackyardFootage(), other.getBackyardFootage())
+                    && Objects.equals(getRentalFee(), other.getRentalFee())
+                    && Objects.equals(getLastPaymentDate(), other.getLastPaymentDate())
+                    && Objects.equals(ownerID, other.ownerID)
+                    && Objects.equals(vacancyIndicator, other.vacancyIndicator);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * propertyId + Objects.hashCode(getRentalFee());
+        }
+
+        /**
+         * Take the bytes of a column to decode, dropping them. Called holding the lock of the bytes, which
+         * the decoded value is written under too.
+         */
+        private byte[] take(int column) {
+            byte[] bytes = raw[column];
+            raw[column] = null;
+            return bytes;
+        }
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            // the raw bytes are not sent, so decode whatever has not been read yet
+            getSquareFootage();
+            getFrontYardFootage();
+            getBackyardFootage();
+            getRentalFee();
+            getLastPaymentDate();
+            out.defaultWriteObject();
+        }
     }
 }
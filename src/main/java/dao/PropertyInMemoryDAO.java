@@ -0,0 +1,99 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link PropertyDAO} answering from an {@link InMemoryStore} instead of the database, so a
+ * lookup costs a few map reads instead of a round trip. Results are ordered by property id, as
+ * the MySQL queries order them.
+ * <p>
+ * {@link DAOFactory} creates it, on the shared store, when the {@code InMemory} implementations
+ * are chosen; see {@link ImplementationResolver}.
+ *
+ * @author Joshua Escareno
+ */
+public class PropertyInMemoryDAO implements PropertyDAO {
+    private final InMemoryStore store;
+
+    public PropertyInMemoryDAO() {
+        this(InMemoryStore.shared());
+    }
+
+    public PropertyInMemoryDAO(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public List<PropertyBaseData> listAllPropertiesByOwner(String ownerId) {
+        return store.propertiesByOwner(ownerId);
+    }
+
+    @Override
+    public String lookupPropertyOwner(int propertyId) {
+        PropertyBaseData property = store.property(propertyId);
+        return property == null ? null : property.getOwnerID();
+    }
+
+    @Override
+    public int streamAllPropertiesByOwner(String ownerId, Consumer<PropertyBaseData> action) {
+        List<PropertyBaseData> properties = store.propertiesByOwner(ownerId);
+        properties.forEach(action);
+        return properties.size();
+    }
+
+    @Override
+    public List<PropertyWithTenants> listAllPropertiesWithTenantsByOwner(String ownerId) {
+        List<PropertyWithTenants> result = new ArrayList<>();
+        streamAllPropertiesWithTenantsByOwner(ownerId, result::add);
+        return result;
+    }
+
+    @Override
+    public int streamAllPropertiesWithTenantsByOwner(String ownerId, Consumer<PropertyWithTenants> action) {
+        List<PropertyBaseData> properties = store.propertiesByOwner(ownerId);
+        for (PropertyBaseData p : properties) {
+            action.accept(new PropertyWithTenants(p, store.tenantsByProperty(p.getPropertyId())));
+        }
+        return properties.size();
+    }
+
+    @Override
+    public ChangeFeed<PropertyBaseData> propertyChangesSince(String ownerId, long seq, int limit) {
+        return store.propertyChangesSince(ownerId, seq, limit);
+    }
+
+    @Override
+    public List<PropertyBaseData> listAllVacantProperties() {
+        return store.vacantProperties();
+    }
+
+    @Override
+    public void insertNewProperty(PropertyBaseData property) throws SQLException {
+        store.insertProperties(Collections.singletonList(property));
+    }
+
+    @Override
+    public int insertProperties(List<PropertyBaseData> properties) throws SQLException {
+        store.insertProperties(properties);
+        return properties.size();
+    }
+
+    @Override
+    public void updateRentalFee(BigDecimal newRentalFee, int propertyId, String ownerId) {
+        store.updateRentalFee(propertyId, ownerId, newRentalFee);
+    }
+
+    @Override
+    public int updateRentalFees(List<RentalFeeUpdate> updates) {
+        int updated = 0;
+        for (RentalFeeUpdate update : updates) {
+            if (store.updateRentalFee(update.getPropertyId(), update.getOwnerId(), update.getRentalFee())) updated++;
+        }
+        return updated;
+    }
+}
@@ -1,11 +1,14 @@
 package dao;
 
+import util.ColumnMapper;
 import util.DAOUtils;
 
 import java.math.BigDecimal;
 import java.sql.*;
-import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import static java.util.logging.Level.INFO;
@@ -22,32 +25,77 @@ public class PropertyMySqlDAO extends AbstractMySqlDAO implements PropertyDAO {
     //SQL statements
     private static final String ALL_PROPERTIES_BY_OWNER_QUERY
             = "select /* ALL_PROPERTIES_BY_OWNER_QUERY */\n"
-            + "    * \n" //this is very bad we should never do this
+            + "    " + PropertyBaseDataMapper.COLUMNS + "\n"
             + "from property\n"
             + "where property_owner_id = ?";
 
+    private static final String PROPERTY_OWNER_QUERY
+            = "select /* PROPERTY_OWNER_QUERY */ property_owner_id\n"
+            + "from property\n"
+            + "where property_ID = ?";
+
     private static final String ALL_VACANT_PROPERTIES_QUERY =
             ALL_PROPERTIES_BY_OWNER_QUERY.replace("/* ALL_PROPERTIES_BY_OWNER_QUERY */\n",
                     "/* ALL_VACANT_PROPERTIES_QUERY */")
                     .replace("where property_owner_id = ?", "where property_vacancy_ind = 'V'\n")
                     .concat("and property_num_tenants = 0");
 
-    private static final String INSERT_NEW_PROPERTY_STATEMENT
-            = "insert into property(property_type, property_address, property_city_code, property_num_rooms, "
-            + "property_num_tenants, property_rental_fee, property_last_payment_date, property_owner_id"
-            + "property_vacancy_ind)\n"
-            + "values(?,?,?,?,?,?,?,?,?)";
+    private static final String PROPERTIES_WITH_TENANTS_BY_OWNER_QUERY
+            = "select /* PROPERTIES_WITH_TENANTS_BY_OWNER_QUERY */\n"
+            + "    " + PropertyBaseDataMapper.COLUMNS + ",\n"
+            + "    " + TenantDataMapper.COLUMNS + "\n"
+            + "from property\n"
+            + "left join tenant on tenant_property_ID = property_ID\n"
+            + "where property_owner_id = ?\n"
+            + "order by property_ID, tenant_ID";
+
+    private static final String PROPERTY_CHANGES_QUERY
+            = "select /* PROPERTY_CHANGES_QUERY */\n"
+            + "    " + PropertyBaseDataMapper.COLUMNS + ", property_change_seq\n"
+            + "from property\n"
+            + "where property_change_seq > ?\n"
+            + "order by property_change_seq\n"
+            + "limit ?";
+
+    private static final String OWNER_PROPERTY_CHANGES_QUERY
+            = PROPERTY_CHANGES_QUERY.replace("where property_change_seq > ?",
+            "where property_owner_id = ?\nand property_change_seq > ?");
+
+    private static final String INSERT_PROPERTIES_TEMPLATE
+            = "insert /* INSERT_PROPERTIES_STATEMENT */ into property(property_type, property_address, "
+            + "property_city_code, property_numRooms, property_numBrooms, property_garage_count, property_sqr_foot, "
+            + "property_frontY_sqr_foot, property_backY_sqr_foot, property_num_tenants, property_rental_fee, "
+            + "property_last_payment_date, property_owner_id, property_vacancy_ind)\n"
+            + "values ??";
+
+    private static final int INSERT_PROPERTIES_COLUMNS = 14;
+
+    private static final String INSERT_NEW_PROPERTY_STATEMENT = INSERT_PROPERTIES_TEMPLATE
+            .replace("INSERT_PROPERTIES_STATEMENT", "INSERT_NEW_PROPERTY_STATEMENT")
+            .replace("??", DAOUtils.mkValuesList(1, INSERT_PROPERTIES_COLUMNS));
 
     private static final String UPDATE_RENTAL_FEE_STATEMENT
             = "update property\n"
             + "set property_rental_fee = ?\n"
-            + "where property_id = ?\n"
-            + "and owner_id = ?";
+            + "where property_ID = ?\n"
+            + "and property_owner_id = ?";
 
-    private final PreparedStatement listPropertiesByOwner;
-    private final PreparedStatement listVacantProperties;
-    private final CallableStatement insertNewProperty;
-    private final CallableStatement updatePropertyFee;
+    // every property select starts with the same select list, so they can share one mapper
+    private final ColumnMapper<PropertyBaseData> propertyRows = new ColumnMapper<>(PropertyBaseDataMapper.INSTANCE);
+    private final ColumnMapper<PropertyBaseData> joinedPropertyRows
+            = new ColumnMapper<>(PropertyBaseDataMapper.INSTANCE);
+    private final ColumnMapper<TenantDAO.TenantData> joinedTenantRows = new ColumnMapper<>(TenantDataMapper.INSTANCE);
+    private final LazyStatement listPropertiesByOwner;
+    private final LazyStatement streamPropertiesByOwner;
+    private final LazyStatement propertyOwner;
+    private final LazyStatement listPropertiesWithTenants;
+    private final LazyStatement streamPropertiesWithTenants;
+    private final LazyStatement listVacantProperties;
+    private final ChangeFeedQuery<PropertyBaseData> propertyChanges;
+    private final LazyStatement insertNewProperty;
+    private final LazyStatement insertPropertiesBatch;
+    private final LazyStatement updatePropertyFee;
+    private final LazyStatement updatePropertyFeesBatch;
 
     private static Logger getLogger() {
         return Logger.getLogger(PropertyMySqlDAO.class.getName());
@@ -61,39 +109,20 @@ public class PropertyMySqlDAO extends AbstractMySqlDAO implements PropertyDAO {
     public PropertyMySqlDAO(Connection conn) {
         super(conn);
 
-        this.listPropertiesByOwner = prepareQuery(ALL_PROPERTIES_BY_OWNER_QUERY);
-        this.listVacantProperties = prepareQuery(ALL_VACANT_PROPERTIES_QUERY);
-        this.insertNewProperty = prepareCall(INSERT_NEW_PROPERTY_STATEMENT);
-        this.updatePropertyFee = prepareCall(UPDATE_RENTAL_FEE_STATEMENT);
-    }
-
-    /**
-     * a method to map a record retrieved in a query to its respective java dao
-     *
-     * @param rs the result set we a translating into an object
-     * @return an instance of {@code PropertyBaseData}
-     * @throws SQLException if an error occurs retrieving data from the result set
-     */
-    private PropertyBaseData mapPropertyBaseData(ResultSet rs) throws SQLException {
-        int propertyId = rs.getInt(1);
-        String propertyType = rs.getString(2);
-        String propertyAddress = rs.getString(3);
-        String cityCode = rs.getString(4);
-        int numberOfRooms = rs.getInt(5);
-        int numberOfBathrooms = rs.getInt(6);
-        int garageCount = rs.getInt(7);
-        BigDecimal sqrFoot = rs.getBigDecimal(8);
-        BigDecimal fYardFoot = rs.getBigDecimal(9);
-        BigDecimal bYardFoot = rs.getBigDecimal(10);
-        int numberOfTenants = rs.getInt(11);
-        BigDecimal rentalFee = rs.getBigDecimal(12);
-        LocalDate lastPaymentDate = DAOUtils.getLocalDate(rs, 13);
-        String ownerId = rs.getString(14);
-        String vacancyInd = rs.getString(15);
-
-        return new PropertyBaseData(propertyId, propertyType, propertyAddress, cityCode, numberOfRooms,
-                numberOfBathrooms, garageCount, sqrFoot, fYardFoot, bYardFoot, numberOfTenants, rentalFee,
-                lastPaymentDate, ownerId, vacancyInd);
+        this.listPropertiesByOwner = hot(lazyQuery(ALL_PROPERTIES_BY_OWNER_QUERY));
+        this.streamPropertiesByOwner = lazyStreamingQuery(ALL_PROPERTIES_BY_OWNER_QUERY);
+        this.propertyOwner = hot(lazyQuery(PROPERTY_OWNER_QUERY));
+        this.listPropertiesWithTenants = hot(lazyQuery(PROPERTIES_WITH_TENANTS_BY_OWNER_QUERY));
+        this.streamPropertiesWithTenants = lazyStreamingQuery(PROPERTIES_WITH_TENANTS_BY_OWNER_QUERY);
+        this.listVacantProperties = hot(lazyQuery(ALL_VACANT_PROPERTIES_QUERY));
+        this.propertyChanges = new ChangeFeedQuery<>(conn, "PROPERTY_CHANGES_QUERY", "P", "property_change_seq",
+                PROPERTY_CHANGES_QUERY, OWNER_PROPERTY_CHANGES_QUERY, propertyRows);
+        this.propertyChanges.statements().forEach(this::hot);
+        this.insertNewProperty = lazyQuery(INSERT_NEW_PROPERTY_STATEMENT);
+        this.insertPropertiesBatch = lazyQuery(() -> INSERT_PROPERTIES_TEMPLATE.replace("??",
+                DAOUtils.mkValuesList(getCollateSize(), INSERT_PROPERTIES_COLUMNS)));
+        this.updatePropertyFee = hot(lazyQuery(UPDATE_RENTAL_FEE_STATEMENT));
+        this.updatePropertyFeesBatch = lazyQuery(() -> mkUpdateRentalFees(getCollateSize()));
     }
 
     @Override
@@ -101,9 +130,9 @@ public class PropertyMySqlDAO extends AbstractMySqlDAO implements PropertyDAO {
         long start = System.currentTimeMillis();
 
         try {
-            List<PropertyBaseData> result = DAOUtils.queryForList(getConn(), listPropertiesByOwner, ps -> {
+            List<PropertyBaseData> result = DAOUtils.queryForList(getConn(), listPropertiesByOwner.get(), ps -> {
                 ps.setString(1, ownerId);
-            }, this::mapPropertyBaseData);
+            }, propertyRows);
 
             long dur = System.currentTimeMillis() - start;
             getLogger().log(INFO, "[SQLStats] ALL_PROPERTIES_BY_OWNER_QUERY ({0}) returned {1} rows in {2} ms.",
@@ -117,13 +146,146 @@ public class PropertyMySqlDAO extends AbstractMySqlDAO implements PropertyDAO {
         }
     }
 
+    @Override
+    public String lookupPropertyOwner(int propertyId) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        try {
+            List<String> owners = DAOUtils.queryForList(getConn(), propertyOwner.get(), ps -> {
+                ps.setInt(1, propertyId);
+            }, rs -> rs.getString(1));
+
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(INFO, "[SQLStats] PROPERTY_OWNER_QUERY ({0}) returned {1} rows in {2} ms.",
+                    new Object[]{propertyId, owners.size(), dur});
+            return owners.isEmpty() ? null : owners.get(0);
+        } catch (Exception e) {
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] PROPERTY_OWNER_QUERY ({0}) failed ({1}) in {2} ms.",
+                    new Object[]{propertyId, e.getMessage().trim(), dur});
+            throw e;
+        }
+    }
+
+    @Override
+    public int streamAllPropertiesByOwner(String ownerId, Consumer<PropertyBaseData> action) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        try {
+            int rows = DAOUtils.queryRows(getConn(), streaming(streamPropertiesByOwner), ps -> {
+                ps.setString(1, ownerId);
+            }, rs -> action.accept(propertyRows.mapResult(rs)));
+
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(INFO, "[SQLStats] ALL_PROPERTIES_BY_OWNER_QUERY ({0}) streamed {1} rows in {2} ms.",
+                    new Object[]{ownerId, rows, dur});
+            return rows;
+        } catch (Exception e) {
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] ALL_PROPERTIES_BY_OWNER_QUERY ({0}) stream failed ({1}) in {2} ms.",
+                    new Object[]{ownerId, e.getMessage().trim(), dur});
+            throw e;
+        }
+    }
+
+    @Override
+    public List<PropertyWithTenants> listAllPropertiesWithTenantsByOwner(String ownerId) throws SQLException {
+        List<PropertyWithTenants> result = new ArrayList<>();
+        queryPropertiesWithTenants(listPropertiesWithTenants.get(), ownerId, result::add, "returned");
+        return result;
+    }
+
+    @Override
+    public int streamAllPropertiesWithTenantsByOwner(String ownerId, Consumer<PropertyWithTenants> action)
+            throws SQLException {
+        return queryPropertiesWithTenants(streaming(streamPropertiesWithTenants), ownerId, action, "streamed");
+    }
+
+    /**
+     * Run the properties with tenants join, folding the rows of each property into one
+     * {@code PropertyWithTenants}. The rows arrive ordered by property, so a property is complete as soon as
+     * the next one starts and only the property being read is held in memory.
+     */
+    private int queryPropertiesWithTenants(PreparedStatement ps, String ownerId,
+                                           Consumer<PropertyWithTenants> action, String verb) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        try {
+            PropertyGrouper grouper = new PropertyGrouper(action);
+            int rows = DAOUtils.queryRows(getConn(), ps, p -> {
+                p.setString(1, ownerId);
+            }, grouper::accept);
+            grouper.finish();
+
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(INFO, "[SQLStats] PROPERTIES_WITH_TENANTS_BY_OWNER_QUERY ({0}) {1} {2} properties "
+                    + "from {3} rows in {4} ms.", new Object[]{ownerId, verb, grouper.properties, rows, dur});
+            return grouper.properties;
+        } catch (Exception e) {
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] PROPERTIES_WITH_TENANTS_BY_OWNER_QUERY ({0}) failed ({1}) in {2} ms.",
+                    new Object[]{ownerId, e.getMessage().trim(), dur});
+            throw e;
+        }
+    }
+
+    /**
+     * Folds consecutive join rows sharing a property id into a single property with its tenants.
+     */
+    private final class PropertyGrouper {
+        private final Consumer<PropertyWithTenants> action;
+        private PropertyBaseData current;
+        private List<TenantDAO.TenantData> tenants;
+        private int properties;
+        private int propertyIdColumn;
+        private int tenantIdColumn;
+
+        PropertyGrouper(Consumer<PropertyWithTenants> action) {
+            this.action = action;
+        }
+
+        void accept(ResultSet rs) throws SQLException {
+            if (propertyIdColumn == 0) {
+                propertyIdColumn = joinedPropertyRows.column(rs, "property_ID");
+                tenantIdColumn = joinedTenantRows.column(rs, "tenant_ID");
+            }
+
+            int propertyId = rs.getInt(propertyIdColumn);
+
+            if (current == null || current.getPropertyId() != propertyId) {
+                finish();
+                current = joinedPropertyRows.mapResult(rs);
+                tenants = new ArrayList<>();
+            }
+
+            rs.getInt(tenantIdColumn);
+            // a property without tenants comes back as a single row of null tenant columns
+            if (!rs.wasNull()) tenants.add(joinedTenantRows.mapResult(rs));
+        }
+
+        void finish() {
+            if (current == null) return;
+
+            action.accept(new PropertyWithTenants(current, tenants));
+            properties++;
+            current = null;
+        }
+    }
+
+    @Override
+    public ChangeFeed<PropertyBaseData> propertyChangesSince(String ownerId, long seq, int limit)
+            throws SQLException {
+        // timing is logged by the query
+        return propertyChanges.since(ownerId, seq, limit);
+    }
+
     @Override
     public List<PropertyBaseData> listAllVacantProperties() throws SQLException {
         long start = System.currentTimeMillis();
 
         try {
-            List<PropertyBaseData> result = DAOUtils.queryForList(getConn(), listVacantProperties, null,
-                    this::mapPropertyBaseData);
+            List<PropertyBaseData> result = DAOUtils.queryForList(getConn(), listVacantProperties.get(), null,
+                    propertyRows);
 
             long dur = System.currentTimeMillis() - start;
             getLogger().log(INFO, "[SQLStats] ALL_VACANT_PROPERTIES_QUERY returned {1} rows in {2} ms.",
@@ -141,18 +303,9 @@ public class PropertyMySqlDAO extends AbstractMySqlDAO implements PropertyDAO {
     public void insertNewProperty(PropertyBaseData property) throws SQLException {
         long start = System.currentTimeMillis();
 
-        try (CallableStatement cs = insertNewProperty) {
-            cs.setString(1, property.getPropertyType());
-            cs.setString(2, property.getPropertyAddress());
-            cs.setString(3, property.getCityCode());
-            cs.setInt(4, property.getNumberOfRooms());
-            cs.setInt(5, property.getNumberOfTenants());
-            cs.setBigDecimal(6, property.getRentalFee());
-            cs.setDate(7, null);
-            cs.setString(8, property.getOwnerID());
-            cs.setString(9, property.getVacancyIndicator());
-
-            cs.executeQuery();
+        try {
+            // the statement belongs to this DAO and is reused, so it must not be closed here
+            bindProperties(insertNewProperty.get(), Collections.singletonList(property)).executeUpdate();
 
             long dur = System.currentTimeMillis() - start;
             getLogger().log(INFO, "[SQLStats] INSERT_NEW_PROPERTY_STATEMENT {0} owned by {1} inserted into " +
@@ -165,16 +318,80 @@ public class PropertyMySqlDAO extends AbstractMySqlDAO implements PropertyDAO {
         }
     }
 
+    @Override
+    public int insertProperties(List<PropertyBaseData> properties) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        try {
+            int rows = properties.isEmpty() ? 0 : collatedUpdateExecutor(properties, batch -> {
+                if (batch.size() == getCollateSize()) {
+                    return bindProperties(insertPropertiesBatch.get(), batch).executeUpdate();
+                }
+
+                // the final partial batch gets a statement of its own size
+                String sql = INSERT_PROPERTIES_TEMPLATE.replace("??",
+                        DAOUtils.mkValuesList(batch.size(), INSERT_PROPERTIES_COLUMNS));
+
+                try (PreparedStatement ps = getConn().prepareStatement(sql)) {
+                    return bindProperties(ps, batch).executeUpdate();
+                }
+            });
+
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(INFO, "[SQLStats] INSERT_PROPERTIES_STATEMENT [{0}] inserted {1} rows in {2} ms.",
+                    new Object[]{DAOUtils.mkPrintList(properties), rows, dur});
+            return rows;
+        } catch (Exception e) {
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] INSERT_PROPERTIES_STATEMENT [{0}] failed ({1}) in {2} ms.",
+                    new Object[]{DAOUtils.mkPrintList(properties), e.getMessage().trim(), dur});
+            throw e;
+        }
+    }
+
+    /**
+     * Bind a batch of properties to a multi-row insert built from {@code INSERT_PROPERTIES_TEMPLATE}
+     *
+     * @param ps    the insert statement, with exactly {@code batch.size()} rows of parameters
+     * @param batch the properties to insert
+     * @return the statement, ready for execution
+     * @throws SQLException if a parameter cannot be set
+     */
+    private static PreparedStatement bindProperties(PreparedStatement ps, List<PropertyBaseData> batch)
+            throws SQLException {
+        int i = 0;
+
+        for (PropertyBaseData property : batch) {
+            ps.setString(++i, property.getPropertyType());
+            ps.setString(++i, property.getPropertyAddress());
+            ps.setString(++i, property.getCityCode());
+            ps.setInt(++i, property.getNumberOfRooms());
+            ps.setInt(++i, property.getNumberOfBathrooms());
+            ps.setInt(++i, property.getGarageCount());
+            ps.setBigDecimal(++i, property.getSquareFootage());
+            ps.setBigDecimal(++i, property.getFrontYardFootage());
+            ps.setBigDecimal(++i, property.getBackyardFootage());
+            ps.setInt(++i, property.getNumberOfTenants());
+            ps.setBigDecimal(++i, property.getRentalFee());
+            ps.setDate(++i, DAOUtils.asSqlDate(property.getLastPaymentDate()));
+            ps.setString(++i, property.getOwnerID());
+            ps.setString(++i, property.getVacancyIndicator());
+        }
+
+        return ps;
+    }
+
     @Override
     public void updateRentalFee(BigDecimal newRentalFee, int propertyId, String ownerId) throws SQLException {
         long start = System.currentTimeMillis();
         //I could have added a query to
-        try(CallableStatement cs = updatePropertyFee){
-            cs.setBigDecimal(1, newRentalFee);
-            cs.setInt(2, propertyId);
-            cs.setString(3, ownerId);
+        try {
+            PreparedStatement ps = updatePropertyFee.get();
+            ps.setBigDecimal(1, newRentalFee);
+            ps.setInt(2, propertyId);
+            ps.setString(3, ownerId);
 
-            cs.executeUpdate();
+            ps.executeUpdate();
 
             long dur = System.currentTimeMillis() - start;
             getLogger().log(INFO, "[SQLStats] UPDATE_RENTAL_FEE_STATEMENT updated {0} to {1}/month in {2} ms.",
@@ -186,4 +403,64 @@ public class PropertyMySqlDAO extends AbstractMySqlDAO implements PropertyDAO {
             throw e;
         }
     }
+
+    @Override
+    public int updateRentalFees(List<RentalFeeUpdate> updates) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        try {
+            int rows = updates.isEmpty() ? 0 : collatedUpdateExecutor(updates, batch -> {
+                if (batch.size() == getCollateSize()) {
+                    return bindRentalFees(updatePropertyFeesBatch.get(), batch).executeUpdate();
+                }
+
+                // the final partial batch gets a statement of its own size
+                try (PreparedStatement ps = getConn().prepareStatement(mkUpdateRentalFees(batch.size()))) {
+                    return bindRentalFees(ps, batch).executeUpdate();
+                }
+            });
+
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(INFO, "[SQLStats] UPDATE_RENTAL_FEES_STATEMENT [{0}] updated {1} rows in {2} ms.",
+                    new Object[]{DAOUtils.mkPrintList(updates), rows, dur});
+            return rows;
+        } catch (Exception e) {
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] UPDATE_RENTAL_FEES_STATEMENT [{0}] failed ({1}) in {2} ms.",
+                    new Object[]{DAOUtils.mkPrintList(updates), e.getMessage().trim(), dur});
+            throw e;
+        }
+    }
+
+    /**
+     * Build an update setting the rental fee of <em>n</em> properties in one statement. The new fees are picked
+     * by a {@code case} on the property id, and the {@code where} clause matches (property id, owner id) pairs
+     * so a property is only updated for its owner.
+     *
+     * @param n the number of properties updated by the statement
+     * @return the update statement, taking <em>n</em> (id, fee) pairs followed by <em>n</em> (id, owner) pairs
+     */
+    private static String mkUpdateRentalFees(int n) {
+        return "update /* UPDATE_RENTAL_FEES_STATEMENT */ property\n"
+                + "set property_rental_fee = case property_ID "
+                + String.join(" ", Collections.nCopies(n, "when ? then ?")) + " end\n"
+                + "where (property_ID, property_owner_id) in " + DAOUtils.mkInList(n, 2);
+    }
+
+    private static PreparedStatement bindRentalFees(PreparedStatement ps, List<RentalFeeUpdate> batch)
+            throws SQLException {
+        int i = 0;
+
+        for (RentalFeeUpdate update : batch) {
+            ps.setInt(++i, update.getPropertyId());
+            ps.setBigDecimal(++i, update.getRentalFee());
+        }
+
+        for (RentalFeeUpdate update : batch) {
+            ps.setInt(++i, update.getPropertyId());
+            ps.setString(++i, update.getOwnerId());
+        }
+
+        return ps;
+    }
 }
@@ -0,0 +1,26 @@
+package dao;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a DAO interface method that only reads, so a DAO created with
+ * {@link DAOFactory#createReplicated} may send it to a replica instead of the primary.
+ * Unmarked methods are treated as writes.
+ *
+ * @author Joshua Escareno
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ReadOnly {
+    /**
+     * @return whether a slow call may be repeated on a second database, keeping whichever answer
+     * comes first. Methods that hand rows to a consumer must not be hedged, or the consumer would
+     * see them twice.
+     */
+    boolean hedge() default true;
+}
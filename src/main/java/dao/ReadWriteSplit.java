@@ -0,0 +1,225 @@
+package dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the {@link ReadOnly} methods of a DAO interface to a replica and all other methods to the
+ * primary, as directed by a {@link ReplicaSet}.
+ * <p>
+ * A read that takes longer than usual is hedged: the same call is started on a second replica, or
+ * the primary if there is none, and whichever answers first is returned. "Usual" is tracked per
+ * method as a moving average and deviation of how long reads took, and a hedge is sent once a read
+ * has taken the average plus four deviations, so only the slowest few reads cost a second query.
+ * Once one of the two answers, the statement of the other is cancelled on the database.
+ * <p>
+ * Reads are only hedged when every DAO behind the split owns the connection it runs on for the
+ * length of a call, as {@linkplain DAOFactory#createPooled pooled DAOs} do. A DAO built on a shared
+ * connection would run the second query on the same connection and statements as the first.
+ *
+ * @author Joshua Escareno
+ */
+final class ReadWriteSplit<T> implements InvocationHandler {
+    private static final long HEDGE_MIN_MILLIS = 10;
+    private static final double LATENCY_WEIGHT = 0.125;
+    private static final double DEVIATION_WEIGHT = 0.25;
+
+    private final T primary;
+    private final List<T> replicas;
+    private final ReplicaSet set;
+    private final boolean hedging;
+    private final ConcurrentMap<Method, Latency> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Moving average and deviation of read times, in the manner of TCP's retransmit timer.
+     */
+    private static final class Latency {
+        private double average = -1;
+        private double deviation;
+
+        synchronized void record(long millis) {
+            if (average < 0) {
+                average = millis;
+                deviation = millis / 2.0;
+            } else {
+                deviation += DEVIATION_WEIGHT * (Math.abs(millis - average) - deviation);
+                average += LATENCY_WEIGHT * (millis - average);
+            }
+        }
+
+        synchronized long hedgeAfterMillis() {
+            if (average < 0) return HEDGE_MIN_MILLIS;
+            return Math.max(HEDGE_MIN_MILLIS, Math.round(average + 4 * deviation));
+        }
+    }
+
+    private ReadWriteSplit(T primary, List<T> replicas, ReplicaSet set) {
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas);
+        this.set = set;
+
+        boolean owned = ownsConnection(primary);
+        for (T replica : replicas) owned &= ownsConnection(replica);
+        this.hedging = owned;
+    }
+
+    /**
+     * @return whether a DAO has its connection to itself during a call: it is pooled, or it does
+     * not run on a connection at all
+     */
+    private static boolean ownsConnection(Object dao) {
+        return PooledDAO.of((BaseDAO) dao) != null || !(dao instanceof AbstractMySqlDAO);
+    }
+
+    /**
+     * @param daoClass the DAO interface
+     * @param primary  the DAO on the primary connection
+     * @param replicas the DAOs on the replica connections, in the order of the set
+     * @param set      the replica set deciding where calls go
+     * @return a DAO routing each call to one of the given DAOs
+     */
+    static <T extends BaseDAO> T create(Class<T> daoClass, T primary, List<T> replicas, ReplicaSet set) {
+        if (replicas.size() != set.size()) {
+            throw new IllegalArgumentException(replicas.size() + " DAOs for " + set.size() + " replicas");
+        }
+
+        return daoClass.cast(Proxy.newProxyInstance(daoClass.getClassLoader(), new Class<?>[]{daoClass},
+                new ReadWriteSplit<>(primary, replicas, set)));
+    }
+
+    /**
+     * @return the primary and replica DAOs behind a DAO made by {@link #create}, or an empty list
+     * for any other DAO
+     */
+    static List<BaseDAO> targets(BaseDAO dao) {
+        if (!Proxy.isProxyClass(dao.getClass())) return Collections.emptyList();
+
+        InvocationHandler handler = Proxy.getInvocationHandler(dao);
+        if (!(handler instanceof ReadWriteSplit)) return Collections.emptyList();
+
+        ReadWriteSplit<?> split = (ReadWriteSplit<?>) handler;
+        List<BaseDAO> targets = new ArrayList<>();
+        targets.add((BaseDAO) split.primary);
+        for (Object replica : split.replicas) targets.add((BaseDAO) replica);
+        return targets;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) return invokeOn(primary, method, args);
+
+        ReadOnly readOnly = method.getAnnotation(ReadOnly.class);
+
+        if (readOnly == null) {
+            try {
+                return invokeOn(primary, method, args);
+            } finally {
+                set.wrote();
+            }
+        }
+
+        int replica = set.pinned() ? -1 : set.pickReplica(-1);
+
+        if (replica < 0) {
+            set.readFromPrimary();
+            return invokeOn(primary, method, args);
+        }
+
+        set.readFromReplica();
+
+        if (!readOnly.hedge() || !hedging) return invokeOn(replicas.get(replica), method, args);
+
+        return hedged(replica, method, args);
+    }
+
+    private Object hedged(int replica, Method method, Object[] args) throws Exception {
+        Latency latency = latencies.computeIfAbsent(method, m -> new Latency());
+        CompletionService<Object> attempts = new ExecutorCompletionService<>(set.pool());
+        List<Future<Object>> started = new ArrayList<>();
+        List<PooledDAO.Call> calls = new ArrayList<>();
+        long start = System.currentTimeMillis();
+
+        started.add(attempt(attempts, calls, replicas.get(replica), method, args));
+
+        try {
+            Future<Object> done = attempts.poll(latency.hedgeAfterMillis(), TimeUnit.MILLISECONDS);
+
+            if (done == null) {
+                int second = set.pickReplica(replica);
+                T target = second < 0 ? primary : replicas.get(second);
+                started.add(attempt(attempts, calls, target, method, args));
+            }
+
+            Exception failure = null;
+
+            for (int remaining = started.size(); remaining > 0; remaining--) {
+                if (done == null) done = attempts.take();
+
+                try {
+                    Object result = done.get();
+                    latency.record(System.currentTimeMillis() - start);
+                    if (started.size() > 1) set.hedged(done == started.get(1));
+                    return result;
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = (Exception) e.getCause();
+                }
+
+                done = null;
+            }
+
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a replica", e);
+        } finally {
+            // the winner is done, so this only stops the loser, on the database as well
+            for (PooledDAO.Call call : calls) call.cancel();
+            for (Future<Object> attempt : started) attempt.cancel(true);
+        }
+    }
+
+    /**
+     * Start a call on a DAO on another thread, as a call that can be cancelled if it is pooled.
+     */
+    private static Future<Object> attempt(CompletionService<Object> attempts, List<PooledDAO.Call> calls,
+                                          Object target, Method method, Object[] args) {
+        PooledDAO<?> pooled = PooledDAO.of((BaseDAO) target);
+        if (pooled == null) return attempts.submit(() -> invokeOn(target, method, args));
+
+        PooledDAO.Call call = new PooledDAO.Call();
+        calls.add(call);
+
+        return attempts.submit(() -> {
+            try {
+                return pooled.invoke(method, args, call);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new SQLException(e);
+            }
+        });
+    }
+
+    private static Object invokeOn(Object target, Method method, Object[] args) throws Exception {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) throw (Error) cause;
+            throw (Exception) cause;
+        }
+    }
+}
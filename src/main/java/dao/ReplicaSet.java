@@ -0,0 +1,380 @@
+package dao;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * A primary database that takes the writes and the replicas that follow it, for DAOs created
+ * with {@link DAOFactory#createReplicated}. Reads go to the replicas in turn, writes to the
+ * primary. Each database is reached through a {@link ConnectionPool}, so the DAOs on it can be
+ * called from many threads at once, and may have a second pool kept for {@link Streaming} calls.
+ * <p>
+ * A replica is only read from while it is known to be close behind the primary: a probe measures
+ * how far each replica lags, and one that lags more than the allowed maximum, or whose lag cannot
+ * be measured, is left out until it catches up. Until the first probe no replica is used.
+ * <p>
+ * A session that has just written reads from the primary for a while, so it sees its own writes.
+ * Sessions are named by the caller with {@link #bindSession}; writes made outside a bound session
+ * pin nobody. The pin lasts as long as a replica in rotation may lag: the allowed maximum, plus
+ * the time a replica may have been falling behind since it was last probed.
+ *
+ * @author Joshua Escareno
+ */
+public final class ReplicaSet implements AutoCloseable {
+    private static final long LAG_UNKNOWN = -1;
+    private static final long SINGLE_CONNECTION_WAIT_MILLIS = 10_000;
+
+    /**
+     * Measures how far a replica is behind the primary.
+     */
+    @FunctionalInterface
+    public interface LagProbe {
+        /**
+         * @param replica the replica to measure
+         * @return the lag in milliseconds
+         * @throws SQLException if the replica is not replicating or cannot be reached
+         */
+        long lagMillis(Connection replica) throws SQLException;
+    }
+
+    /**
+     * Reads the lag from {@code SHOW SLAVE STATUS}, to the second.
+     */
+    public static final LagProbe SHOW_SLAVE_STATUS = replica -> {
+        try (Statement stmt = replica.createStatement();
+             ResultSet rs = stmt.executeQuery("SHOW SLAVE STATUS")) {
+            if (!rs.next()) throw new SQLException("Not a replica");
+
+            long seconds = rs.getLong("Seconds_Behind_Master");
+            if (rs.wasNull()) throw new SQLException("Replication is not running");
+            return TimeUnit.SECONDS.toMillis(seconds);
+        }
+    };
+
+    /**
+     * Ends a {@link #bindSession} scope.
+     */
+    public interface Binding extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final class Replica {
+        private final ConnectionPool pool;
+        private final ConnectionPool streams;
+        private volatile long lagMillis = LAG_UNKNOWN;
+
+        private Replica(ConnectionPool pool, ConnectionPool streams) {
+            this.pool = pool;
+            this.streams = streams;
+        }
+    }
+
+    private final ConnectionPool primary;
+    private final ConnectionPool primaryStreams;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMillis;
+    private final LagProbe probe;
+    private final ThreadLocal<String> session = new ThreadLocal<>();
+    private final ConcurrentMap<String, Long> pinnedUntil = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final ExecutorService pool;
+    private volatile ScheduledExecutorService prober;
+    private volatile long probeIntervalMillis;
+
+    private final AtomicLong primaryReads = new AtomicLong();
+    private final AtomicLong replicaReads = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    private static Logger getLogger() {
+        return Logger.getLogger(ReplicaSet.class.getName());
+    }
+
+    /**
+     * @param primary        the connections that take the writes
+     * @param primaryStreams connections to the primary for streaming calls
+     * @param replicas       connections to each replica of the primary
+     * @param replicaStreams connections to each replica for streaming calls, in the order of
+     *                       {@code replicas}
+     * @param maxLagMillis   how far a replica may be behind and still be read from
+     * @param probe          how to measure a replica's lag
+     */
+    public ReplicaSet(ConnectionPool primary, ConnectionPool primaryStreams, List<ConnectionPool> replicas,
+                      List<ConnectionPool> replicaStreams, long maxLagMillis, LagProbe probe) {
+        if (replicaStreams.size() != replicas.size()) {
+            throw new IllegalArgumentException(replicas.size() + " replicas but " + replicaStreams.size()
+                    + " stream pools");
+        }
+
+        this.primary = primary;
+        this.primaryStreams = primaryStreams;
+        this.maxLagMillis = maxLagMillis;
+        this.probe = probe;
+
+        for (int i = 0; i < replicas.size(); i++) {
+            this.replicas.add(new Replica(replicas.get(i), replicaStreams.get(i)));
+        }
+
+        AtomicInteger threads = new AtomicInteger();
+        this.pool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "replica-read-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public ReplicaSet(ConnectionPool primary, ConnectionPool primaryStreams, List<ConnectionPool> replicas,
+                      List<ConnectionPool> replicaStreams, long maxLagMillis) {
+        this(primary, primaryStreams, replicas, replicaStreams, maxLagMillis, SHOW_SLAVE_STATUS);
+    }
+
+    /**
+     * A replica set whose streaming calls share the pools of the other calls.
+     *
+     * @param primary      the connections that take the writes
+     * @param replicas     connections to each replica of the primary
+     * @param maxLagMillis how far a replica may be behind and still be read from
+     * @param probe        how to measure a replica's lag
+     */
+    public ReplicaSet(ConnectionPool primary, List<ConnectionPool> replicas, long maxLagMillis, LagProbe probe) {
+        this(primary, primary, replicas, replicas, maxLagMillis, probe);
+    }
+
+    public ReplicaSet(ConnectionPool primary, List<ConnectionPool> replicas, long maxLagMillis) {
+        this(primary, replicas, maxLagMillis, SHOW_SLAVE_STATUS);
+    }
+
+    /**
+     * A replica set with a single connection to each database, which the callers take turns with.
+     *
+     * @param primary      the connection that takes the writes
+     * @param replicas     connections to replicas of the primary
+     * @param maxLagMillis how far a replica may be behind and still be read from
+     * @param probe        how to measure a replica's lag
+     */
+    public ReplicaSet(Connection primary, List<Connection> replicas, long maxLagMillis, LagProbe probe) {
+        this(ConnectionPool.of(primary, SINGLE_CONNECTION_WAIT_MILLIS), single(replicas), maxLagMillis, probe);
+    }
+
+    private static List<ConnectionPool> single(List<Connection> connections) {
+        List<ConnectionPool> pools = new ArrayList<>();
+        for (Connection conn : connections) pools.add(ConnectionPool.of(conn, SINGLE_CONNECTION_WAIT_MILLIS));
+        return pools;
+    }
+
+    public ConnectionPool primary() {
+        return primary;
+    }
+
+    /**
+     * @return the connections to the primary for {@link Streaming} calls
+     */
+    public ConnectionPool primaryStreams() {
+        return primaryStreams;
+    }
+
+    /**
+     * @return the number of replicas, in rotation or not
+     */
+    public int size() {
+        return replicas.size();
+    }
+
+    public ConnectionPool replica(int replica) {
+        return replicas.get(replica).pool;
+    }
+
+    /**
+     * @return the connections to a replica for {@link Streaming} calls
+     */
+    public ConnectionPool replicaStreams(int replica) {
+        return replicas.get(replica).streams;
+    }
+
+    /**
+     * Measure every replica's lag now, taking replicas in or out of rotation.
+     */
+    public void probe() {
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(i);
+            boolean wasInRotation = inRotation(replica);
+
+            try {
+                replica.lagMillis = lagMillis(replica.pool);
+            } catch (SQLException e) {
+                if (replica.lagMillis != LAG_UNKNOWN) {
+                    getLogger().log(WARNING, "Unable to measure lag of replica {0}: {1}",
+                            new Object[]{i, e.getMessage()});
+                }
+                replica.lagMillis = LAG_UNKNOWN;
+            }
+
+            if (wasInRotation != inRotation(replica)) {
+                getLogger().log(INFO, "Replica {0} {1} rotation, {2} ms behind",
+                        new Object[]{i, wasInRotation ? "out of" : "back in", replica.lagMillis});
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        pinnedUntil.values().removeIf(until -> until <= now);
+    }
+
+    private long lagMillis(ConnectionPool pool) throws SQLException {
+        Connection conn = pool.borrow();
+
+        try {
+            return probe.lagMillis(conn);
+        } finally {
+            pool.release(conn);
+        }
+    }
+
+    /**
+     * Probe the replicas now and then every {@code intervalMillis} on a background thread, until
+     * this set is closed.
+     */
+    public synchronized void probeEvery(long intervalMillis) {
+        if (prober != null) throw new IllegalStateException("Already probing");
+
+        probeIntervalMillis = intervalMillis;
+        prober = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "replica-lag-probe");
+            t.setDaemon(true);
+            return t;
+        });
+        prober.scheduleWithFixedDelay(this::probe, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Name the session the calling thread works for, until the binding is closed. Reads in a
+     * session that has written recently go to the primary.
+     *
+     * @param key the session, for example the owner signed in; null for none
+     * @return the binding, to be closed when the thread is done with the session
+     */
+    public Binding bindSession(String key) {
+        String previous = session.get();
+        session.set(key);
+
+        return () -> {
+            if (previous == null) session.remove();
+            else session.set(previous);
+        };
+    }
+
+    /**
+     * Send a session's reads to the primary for as long as a replica may lag behind a write
+     * made now, plus {@code extraMillis} for writes that reach the primary later.
+     */
+    public void pin(String key, long extraMillis) {
+        if (key == null) return;
+
+        long until = System.currentTimeMillis() + maxLagMillis + probeIntervalMillis + extraMillis;
+        pinnedUntil.merge(key, until, Math::max);
+    }
+
+    void wrote() {
+        writes.incrementAndGet();
+        pin(session.get(), 0);
+    }
+
+    boolean pinned() {
+        String key = session.get();
+        if (key == null) return false;
+
+        Long until = pinnedUntil.get(key);
+        return until != null && until > System.currentTimeMillis();
+    }
+
+    /**
+     * @param except a replica not to pick, or -1
+     * @return the next replica in rotation, or -1 if there is none
+     */
+    int pickReplica(int except) {
+        int n = replicas.size();
+        if (n == 0) return -1;
+
+        int start = Math.floorMod(next.getAndIncrement(), n);
+
+        for (int i = 0; i < n; i++) {
+            int replica = (start + i) % n;
+            if (replica != except && inRotation(replicas.get(replica))) return replica;
+        }
+
+        return -1;
+    }
+
+    private boolean inRotation(Replica replica) {
+        long lag = replica.lagMillis;
+        return lag != LAG_UNKNOWN && lag <= maxLagMillis;
+    }
+
+    ExecutorService pool() {
+        return pool;
+    }
+
+    void readFromPrimary() {
+        primaryReads.incrementAndGet();
+    }
+
+    void readFromReplica() {
+        replicaReads.incrementAndGet();
+    }
+
+    void hedged(boolean won) {
+        hedges.incrementAndGet();
+        if (won) hedgesWon.incrementAndGet();
+    }
+
+    /**
+     * Build a plain text report of replica lag and where reads went.
+     *
+     * @return the report, one {@code name value} pair per line
+     */
+    public String metrics() {
+        StringBuilder out = new StringBuilder();
+        int inRotation = 0;
+
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get(i);
+            if (inRotation(replica)) inRotation++;
+            out.append("replicas.").append(i).append(".lag_ms ").append(replica.lagMillis).append('\n');
+        }
+
+        out.append("replicas.in_rotation ").append(inRotation).append('\n')
+                .append("replicas.reads.primary ").append(primaryReads.get()).append('\n')
+                .append("replicas.reads.replica ").append(replicaReads.get()).append('\n')
+                .append("replicas.reads.hedged ").append(hedges.get()).append('\n')
+                .append("replicas.reads.hedge_won ").append(hedgesWon.get()).append('\n')
+                .append("replicas.writes ").append(writes.get()).append('\n')
+                .append("replicas.pinned_sessions ").append(pinnedUntil.size()).append('\n');
+        return out.toString();
+    }
+
+    /**
+     * Stop probing and hedging. The connection pools are left open.
+     */
+    @Override
+    public void close() {
+        if (prober != null) prober.shutdownNow();
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,108 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The change feed of a table spread over shards. Each shard numbers its changes by itself, so a
+ * position in the merged feed is one change sequence per shard. Consumers still pass a single
+ * number: the cursor a page returns stands for the resume marks of the shards' pages, and is
+ * looked up again when they ask for the next page.
+ * <p>
+ * Resume marks may trail what was read, so consumers keep the last cursor they were given rather
+ * than the highest. Cursors are kept in memory, the {@value #MAX_CURSORS} used most recently; one
+ * forgotten since, or from before a restart, is refused with an {@link UnknownCursorException}
+ * and the consumer starts again from 0. Cursors are numbered on from the start time, so one from
+ * before a restart is not mistaken for a new one.
+ *
+ * @author Joshua Escareno
+ */
+final class ShardCursors {
+    static final int MAX_CURSORS = 10_000;
+
+    /**
+     * Reads one page of one shard's feed.
+     */
+    interface ShardFeed<T> {
+        ChangeFeed<T> since(int shard, long seq, int limit) throws SQLException;
+    }
+
+    private final ShardRouter router;
+    private final String name;
+    private final Map<Long, long[]> cursors = new LinkedHashMap<Long, long[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest) {
+            return size() > MAX_CURSORS;
+        }
+    };
+    private long lastCursor = System.currentTimeMillis() << 16;
+
+    /**
+     * @param router the shards
+     * @param name   the name of the feed, used in logs
+     */
+    ShardCursors(ShardRouter router, String name) {
+        this.router = router;
+        this.name = name;
+    }
+
+    /**
+     * Read every shard's feed after the positions of a cursor, at most an even share of the limit
+     * from each, and merge the pages. The rows of a shard stay in their order; rows of different
+     * shards are never the same row, so their order does not matter.
+     *
+     * @param cursor the cursor of the previous page, or 0
+     * @param limit  the most changes to return, though at least one per shard is asked for
+     * @param feed   reads the feed of one shard
+     * @return the merged page, with the cursor of the shards' resume marks as its marks
+     * @throws UnknownCursorException if the cursor is not known
+     * @throws SQLException            if a shard's feed cannot be read
+     */
+    <T> ChangeFeed<T> since(long cursor, int limit, ShardFeed<T> feed) throws SQLException {
+        if (limit < 1) throw new IllegalArgumentException("limit must be >= 1, but is " + limit);
+
+        long[] positions = positions(cursor);
+        int share = Math.max(1, limit / router.size());
+        List<ChangeFeed<T>> pages = router.scatter(name, i -> () -> feed.since(i, positions[i], share));
+
+        List<T> upserts = new ArrayList<>();
+        int[] deletedIds = new int[0];
+        long[] reached = new long[positions.length];
+        boolean hasMore = false;
+
+        for (int i = 0; i < pages.size(); i++) {
+            ChangeFeed<T> page = pages.get(i);
+            upserts.addAll(page.getUpserts());
+
+            int deleted = deletedIds.length;
+            deletedIds = Arrays.copyOf(deletedIds, deleted + page.getDeletedIds().length);
+            System.arraycopy(page.getDeletedIds(), 0, deletedIds, deleted, page.getDeletedIds().length);
+
+            reached[i] = page.getResumeMark();
+            hasMore |= page.hasMore();
+        }
+
+        return new ChangeFeed<>(upserts, deletedIds, cursor(cursor, positions, reached), hasMore);
+    }
+
+    private synchronized long[] positions(long cursor) throws SQLException {
+        if (cursor == 0) return new long[router.size()];
+
+        long[] positions = cursors.get(cursor);
+        if (positions == null) {
+            throw new UnknownCursorException("Unknown " + name + " cursor " + cursor);
+        }
+        return positions;
+    }
+
+    private synchronized long cursor(long cursor, long[] from, long[] reached) {
+        if (Arrays.equals(from, reached)) return cursor;
+
+        cursors.put(++lastCursor, reached);
+        return lastCursor;
+    }
+}
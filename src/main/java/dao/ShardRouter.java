@@ -0,0 +1,207 @@
+package dao;
+
+import service.SlumlordConnection;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Decides which of several databases, or shards, a property and its tenants live on, and runs
+ * queries that concern every shard in parallel.
+ * <p>
+ * A property is placed by its city code: a hash of the code picks the shard, unless the city has
+ * been pinned to one. Changing the number of shards moves most cities, so growing the cluster
+ * takes a migration. Tenants live on the shard of their property.
+ * <p>
+ * Every shard connection hands out auto increment ids in steps of the shard count, starting at
+ * its own index plus one, which keeps ids unique across shards. An id does not tell its shard,
+ * though, as rows inserted elsewhere or with ids of their own (the data generator's) need not
+ * follow the steps. Lookups by property id ask every shard for the city code stored with the
+ * property once, and remember the shard of that city.
+ *
+ * @author Joshua Escareno
+ */
+public final class ShardRouter implements AutoCloseable {
+    private static final String PROPERTY_CITY_QUERY
+            = "select /* PROPERTY_CITY_QUERY */ property_city_code from property where property_ID = ?";
+
+    private final List<Connection> connections;
+    private final Map<String, Integer> pinnedCities;
+    private final ExecutorService pool;
+    private final ConcurrentMap<Integer, Integer> propertyShards = new ConcurrentHashMap<>();
+
+    private static Logger getLogger() {
+        return Logger.getLogger(ShardRouter.class.getName());
+    }
+
+    /**
+     * @param connections  one connection per shard; their order is the shard index and must not
+     *                     change once data has been written
+     * @param pinnedCities cities placed on a given shard instead of by hash
+     */
+    public ShardRouter(List<Connection> connections, Map<String, Integer> pinnedCities) {
+        if (connections.isEmpty()) throw new IllegalArgumentException("At least one shard is required");
+
+        for (int shard : pinnedCities.values()) {
+            if (shard < 0 || shard >= connections.size()) {
+                throw new IllegalArgumentException("No shard " + shard + " among " + connections.size());
+            }
+        }
+
+        this.connections = Collections.unmodifiableList(new ArrayList<>(connections));
+        this.pinnedCities = new HashMap<>(pinnedCities);
+
+        for (int shard = 0; shard < connections.size(); shard++) {
+            stepAutoIncrement(connections.get(shard), shard, connections.size());
+        }
+
+        AtomicInteger threads = new AtomicInteger();
+        this.pool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "shard-query-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public ShardRouter(List<Connection> connections) {
+        this(connections, Collections.emptyMap());
+    }
+
+    /**
+     * @return a router over the shards listed in the {@code JDBC_SHARDS} environment variable
+     */
+    public static ShardRouter fromEnvironment() {
+        return new ShardRouter(SlumlordConnection.getShardInstances(System.getenv()));
+    }
+
+    private static void stepAutoIncrement(Connection conn, int shard, int shards) {
+        String sql = "set session auto_increment_increment = " + shards
+                + ", auto_increment_offset = " + (shard + 1);
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            throw new RuntimeException("Unable to set up auto increment ids on shard " + shard, e);
+        }
+    }
+
+    public int size() {
+        return connections.size();
+    }
+
+    public Connection connection(int shard) {
+        return connections.get(shard);
+    }
+
+    /**
+     * @return the shard properties of a city are stored on
+     */
+    public int shardForCity(String cityCode) {
+        Integer pinned = pinnedCities.get(cityCode);
+        if (pinned != null) return pinned;
+
+        CRC32 crc = new CRC32();
+        crc.update(String.valueOf(cityCode).getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % connections.size());
+    }
+
+    /**
+     * @return the shard a property, and so its tenants, is stored on, or -1 if no shard has it
+     * @throws SQLException if the shards cannot be asked
+     */
+    public int shardForProperty(int propertyId) throws SQLException {
+        Integer known = propertyShards.get(propertyId);
+        if (known != null) return known;
+
+        // a row holding the city code, which may be null, or null if the shard has no such property
+        List<String[]> cities = scatter("PROPERTY_CITY_QUERY", shard -> () -> {
+            try (PreparedStatement ps = connections.get(shard).prepareStatement(PROPERTY_CITY_QUERY)) {
+                ps.setInt(1, propertyId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? new String[]{rs.getString(1)} : null;
+                }
+            }
+        });
+
+        for (int shard = 0; shard < cities.size(); shard++) {
+            if (cities.get(shard) == null) continue;
+
+            int byCity = shardForCity(cities.get(shard)[0]);
+            if (byCity != shard) {
+                getLogger().log(WARNING, "Property {0} of city {1} is on shard {2} instead of {3}",
+                        new Object[]{propertyId, cities.get(shard)[0], shard, byCity});
+                byCity = shard;
+            }
+            propertyShards.put(propertyId, byCity);
+            return byCity;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Run a query on every shard at once and wait for all of them.
+     *
+     * @param query the query for a given shard index
+     * @param <R>   the result type
+     * @return the results, in shard order
+     * @throws SQLException the first failure; the other shards still run to completion
+     */
+    public <R> List<R> scatter(String name, IntFunction<Callable<R>> query) throws SQLException {
+        long start = System.currentTimeMillis();
+        List<Future<R>> futures = new ArrayList<>();
+
+        for (int shard = 0; shard < connections.size(); shard++) futures.add(pool.submit(query.apply(shard)));
+
+        List<R> results = new ArrayList<>();
+        SQLException failure = null;
+
+        for (Future<R> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure != null) continue;
+                if (e.getCause() instanceof SQLException) failure = (SQLException) e.getCause();
+                else if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                else failure = new SQLException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for shards", e);
+            }
+        }
+
+        if (failure != null) throw failure;
+
+        getLogger().log(INFO, "[SQLStats] {0} on {1} shards in {2} ms.",
+                new Object[]{name, connections.size(), System.currentTimeMillis() - start});
+        return results;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
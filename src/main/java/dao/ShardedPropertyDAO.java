@@ -0,0 +1,157 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * A {@link PropertyDAO} spread over the shards of a {@link ShardRouter}, with one PropertyDAO per
+ * shard. Inserts go to the shard of the property's city, and so do updates, found by the city
+ * code stored with the property; queries by owner or vacancy run on every shard in parallel and
+ * are merged in property id order. Streaming queries visit the shards one after the other
+ * instead, so the consumer is never called from two threads.
+ * <p>
+ * Change sequence numbers are handed out by each shard separately; the change feed merges the
+ * shards' feeds, with a {@link ShardCursors} cursor as its high-water mark.
+ *
+ * @author Joshua Escareno
+ */
+public class ShardedPropertyDAO implements PropertyDAO {
+    private final ShardRouter router;
+    private final List<PropertyDAO> shards;
+    private final ShardCursors propertyChanges;
+
+    public ShardedPropertyDAO(ShardRouter router, List<PropertyDAO> shards) {
+        if (shards.size() != router.size()) {
+            throw new IllegalArgumentException(shards.size() + " DAOs for " + router.size() + " shards");
+        }
+
+        this.router = router;
+        this.shards = new ArrayList<>(shards);
+        this.propertyChanges = new ShardCursors(router, "propertyChangesSince");
+    }
+
+    /**
+     * @return the DAO of one shard
+     */
+    public PropertyDAO shard(int shard) {
+        return shards.get(shard);
+    }
+
+    @Override
+    public List<PropertyBaseData> listAllPropertiesByOwner(String ownerId) throws SQLException {
+        return merge(router.scatter("listAllPropertiesByOwner",
+                i -> () -> shards.get(i).listAllPropertiesByOwner(ownerId)), PropertyBaseData::getPropertyId);
+    }
+
+    @Override
+    public String lookupPropertyOwner(int propertyId) throws SQLException {
+        int shard = router.shardForProperty(propertyId);
+        return shard < 0 ? null : shards.get(shard).lookupPropertyOwner(propertyId);
+    }
+
+    @Override
+    public int streamAllPropertiesByOwner(String ownerId, Consumer<PropertyBaseData> action) throws SQLException {
+        int rows = 0;
+        for (PropertyDAO shard : shards) rows += shard.streamAllPropertiesByOwner(ownerId, action);
+        return rows;
+    }
+
+    @Override
+    public List<PropertyWithTenants> listAllPropertiesWithTenantsByOwner(String ownerId) throws SQLException {
+        return merge(router.scatter("listAllPropertiesWithTenantsByOwner",
+                i -> () -> shards.get(i).listAllPropertiesWithTenantsByOwner(ownerId)),
+                p -> p.getProperty().getPropertyId());
+    }
+
+    @Override
+    public int streamAllPropertiesWithTenantsByOwner(String ownerId, Consumer<PropertyWithTenants> action)
+            throws SQLException {
+        int rows = 0;
+        for (PropertyDAO shard : shards) rows += shard.streamAllPropertiesWithTenantsByOwner(ownerId, action);
+        return rows;
+    }
+
+    @Override
+    public ChangeFeed<PropertyBaseData> propertyChangesSince(String ownerId, long seq, int limit)
+            throws SQLException {
+        return propertyChanges.since(seq, limit, (i, shardSeq, share) ->
+                shards.get(i).propertyChangesSince(ownerId, shardSeq, share));
+    }
+
+    @Override
+    public List<PropertyBaseData> listAllVacantProperties() throws SQLException {
+        return merge(router.scatter("listAllVacantProperties",
+                i -> () -> shards.get(i).listAllVacantProperties()), PropertyBaseData::getPropertyId);
+    }
+
+    @Override
+    public void insertNewProperty(PropertyBaseData property) throws SQLException {
+        shards.get(router.shardForCity(property.getCityCode())).insertNewProperty(property);
+    }
+
+    @Override
+    public int insertProperties(List<PropertyBaseData> properties) throws SQLException {
+        List<List<PropertyBaseData>> byShard = split(properties, p -> router.shardForCity(p.getCityCode()));
+        return sum(router.scatter("insertProperties", i -> () ->
+                byShard.get(i).isEmpty() ? 0 : shards.get(i).insertProperties(byShard.get(i))));
+    }
+
+    @Override
+    public void updateRentalFee(BigDecimal newRentalFee, int propertyId, String ownerId) throws SQLException {
+        // a property no shard has is not updated, as the database would not
+        int shard = router.shardForProperty(propertyId);
+        if (shard >= 0) shards.get(shard).updateRentalFee(newRentalFee, propertyId, ownerId);
+    }
+
+    @Override
+    public int updateRentalFees(List<RentalFeeUpdate> updates) throws SQLException {
+        List<List<RentalFeeUpdate>> byShard = splitByProperty(router, updates, RentalFeeUpdate::getPropertyId);
+        return sum(router.scatter("updateRentalFees", i -> () ->
+                byShard.get(i).isEmpty() ? 0 : shards.get(i).updateRentalFees(byShard.get(i))));
+    }
+
+    /**
+     * @return the items grouped by the shard of their property, in their original order within each
+     * shard, leaving out items of properties no shard has
+     */
+    static <T> List<List<T>> splitByProperty(ShardRouter router, List<T> items, ToIntFunction<T> propertyId)
+            throws SQLException {
+        List<List<T>> byShard = new ArrayList<>();
+        for (int i = 0; i < router.size(); i++) byShard.add(new ArrayList<>());
+        for (T item : items) {
+            int shard = router.shardForProperty(propertyId.applyAsInt(item));
+            if (shard >= 0) byShard.get(shard).add(item);
+        }
+        return byShard;
+    }
+
+    /**
+     * @return the items grouped by shard, in their original order within each shard
+     */
+    static <T> List<List<T>> split(List<T> items, ToIntFunction<T> shardOf, int shards) {
+        List<List<T>> byShard = new ArrayList<>();
+        for (int i = 0; i < shards; i++) byShard.add(new ArrayList<>());
+        for (T item : items) byShard.get(shardOf.applyAsInt(item)).add(item);
+        return byShard;
+    }
+
+    static <T> List<T> merge(List<List<T>> results, ToIntFunction<T> id) {
+        List<T> merged = new ArrayList<>();
+        for (List<T> result : results) merged.addAll(result);
+        merged.sort(Comparator.comparingInt(id));
+        return merged;
+    }
+
+    static int sum(List<Integer> counts) {
+        return counts.stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private <T> List<List<T>> split(List<T> items, ToIntFunction<T> shardOf) {
+        return split(items, shardOf, router.size());
+    }
+}
@@ -0,0 +1,54 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link SlumlordDAO} over the shards of a {@link ShardRouter}. Every property references its
+ * owner, and the property may be on any shard, so every shard holds every slumlord: writes go to
+ * all of them, the first shard first, and reads to the first shard.
+ * <p>
+ * The shards are written one after the other, not in one transaction; a write failing on a later
+ * shard is reported, and leaves the shards before it written.
+ *
+ * @author Joshua Escareno
+ */
+public class ShardedSlumlordDAO implements SlumlordDAO {
+    private final List<SlumlordDAO> shards;
+
+    public ShardedSlumlordDAO(ShardRouter router, List<SlumlordDAO> shards) {
+        if (shards.size() != router.size()) {
+            throw new IllegalArgumentException(shards.size() + " DAOs for " + router.size() + " shards");
+        }
+
+        this.shards = new ArrayList<>(shards);
+    }
+
+    @Override
+    public SlumData lookupSlumData(String userName) throws SQLException {
+        return shards.get(0).lookupSlumData(userName);
+    }
+
+    @Override
+    public void registerNewSlumlord(SlumData newbie) throws SQLException {
+        // a user name taken is found on the first shard, before anything is written elsewhere
+        shards.get(0).registerNewSlumlord(newbie);
+
+        for (int i = 1; i < shards.size(); i++) {
+            if (shards.get(i).lookupSlumData(newbie.getUserName()) == null) shards.get(i).registerNewSlumlord(newbie);
+        }
+    }
+
+    @Override
+    public String lookupPasswordHash(String userName) throws SQLException {
+        return shards.get(0).lookupPasswordHash(userName);
+    }
+
+    @Override
+    public boolean setPasswordHash(String userName, String passwordHash) throws SQLException {
+        boolean set = shards.get(0).setPasswordHash(userName, passwordHash);
+        for (int i = 1; set && i < shards.size(); i++) shards.get(i).setPasswordHash(userName, passwordHash);
+        return set;
+    }
+}
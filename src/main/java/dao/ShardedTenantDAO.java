@@ -0,0 +1,91 @@
+package dao;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A {@link TenantDAO} spread over the shards of a {@link ShardRouter}, with one TenantDAO per
+ * shard. Tenants live on the shard of their property, so lookups by property go to one shard and
+ * lookups by a list of properties to the shards those properties are on. Streaming by owner
+ * visits the shards one after the other; each property's tenants still arrive together, but the
+ * properties are only in order within a shard.
+ * <p>
+ * As with {@link ShardedPropertyDAO}, the change feed merges the shards' feeds.
+ *
+ * @author Joshua Escareno
+ */
+public class ShardedTenantDAO implements TenantDAO {
+    private final ShardRouter router;
+    private final List<TenantDAO> shards;
+    private final ShardCursors tenantChanges;
+
+    public ShardedTenantDAO(ShardRouter router, List<TenantDAO> shards) {
+        if (shards.size() != router.size()) {
+            throw new IllegalArgumentException(shards.size() + " DAOs for " + router.size() + " shards");
+        }
+
+        this.router = router;
+        this.shards = new ArrayList<>(shards);
+        this.tenantChanges = new ShardCursors(router, "tenantChangesSince");
+    }
+
+    /**
+     * @return the DAO of one shard
+     */
+    public TenantDAO shard(int shard) {
+        return shards.get(shard);
+    }
+
+    @Override
+    public List<TenantData> listTenantsByProperty(int propertyId) throws SQLException {
+        int shard = router.shardForProperty(propertyId);
+        return shard < 0 ? new ArrayList<>() : shards.get(shard).listTenantsByProperty(propertyId);
+    }
+
+    @Override
+    public int streamTenantsByProperty(int propertyId, Consumer<TenantData> action) throws SQLException {
+        int shard = router.shardForProperty(propertyId);
+        return shard < 0 ? 0 : shards.get(shard).streamTenantsByProperty(propertyId, action);
+    }
+
+    @Override
+    public int streamTenantsByOwner(String ownerId, Consumer<TenantData> action) throws SQLException {
+        int rows = 0;
+        for (TenantDAO shard : shards) rows += shard.streamTenantsByOwner(ownerId, action);
+        return rows;
+    }
+
+    @Override
+    public ChangeFeed<TenantData> tenantChangesSince(String ownerId, long seq, int limit) throws SQLException {
+        return tenantChanges.since(seq, limit, (i, shardSeq, share) ->
+                shards.get(i).tenantChangesSince(ownerId, shardSeq, share));
+    }
+
+    @Override
+    public List<TenantData> listTenantByProperties(List<Integer> propertyIds) throws SQLException {
+        List<List<Integer>> byShard = ShardedPropertyDAO.splitByProperty(router, propertyIds, Integer::intValue);
+        List<List<TenantData>> results = router.scatter("listTenantByProperties", i -> () ->
+                byShard.get(i).isEmpty() ? new ArrayList<>() : shards.get(i).listTenantByProperties(byShard.get(i)));
+
+        List<TenantData> merged = new ArrayList<>();
+        for (List<TenantData> result : results) merged.addAll(result);
+        return merged;
+    }
+
+    @Override
+    public int insertTenants(List<TenantData> tenants) throws SQLException {
+        for (TenantData t : tenants) {
+            if (router.shardForProperty(t.getPropertyId()) < 0) {
+                throw new SQLIntegrityConstraintViolationException("Property " + t.getPropertyId() + " of tenant "
+                        + t.getFirstName() + " " + t.getLastName() + " does not exist");
+            }
+        }
+
+        List<List<TenantData>> byShard = ShardedPropertyDAO.splitByProperty(router, tenants, TenantData::getPropertyId);
+        return ShardedPropertyDAO.sum(router.scatter("insertTenants", i -> () ->
+                byShard.get(i).isEmpty() ? 0 : shards.get(i).insertTenants(byShard.get(i))));
+    }
+}
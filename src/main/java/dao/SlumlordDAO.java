@@ -1,5 +1,7 @@
 package dao;
 
+import mapping.Column;
+import mapping.RowMapped;
 
 import java.io.Serializable;
 import java.sql.SQLException;
@@ -17,9 +19,11 @@ public interface SlumlordDAO extends BaseDAO {
     /**
      * A method to get the user record from the database
      * @param userName the userName that we are querying for must be unique in the db
-     * @return a SlumData object used to get user data to be used else where in the application
+     * @return a SlumData object used to get user data to be used else where in the application, or null if
+     * there is no such user
      * @throws SQLException if the query cannot be executed
      */
+    @ReadOnly
     SlumData lookupSlumData(String userName) throws SQLException;
 
     /**
@@ -30,8 +34,28 @@ public interface SlumlordDAO extends BaseDAO {
     void registerNewSlumlord(SlumData newbie) throws SQLException;
 
     /**
-     * data access class for the {@code SLUMLORD} table
+     * A method to get the password hash a user logs in with, see {@code service.Passwords}
+     * @param userName the user
+     * @return the stored hash, or null if there is no such user or they have no password yet
+     * @throws SQLException if the query cannot be executed
+     */
+    @ReadOnly
+    String lookupPasswordHash(String userName) throws SQLException;
+
+    /**
+     * A method to set the password hash a user logs in with, see {@code service.Passwords}
+     * @param userName the user
+     * @param passwordHash the hash, never the password itself
+     * @return whether there is such a user
+     * @throws SQLException if the update cannot be completed
+     */
+    boolean setPasswordHash(String userName, String passwordHash) throws SQLException;
+
+    /**
+     * data access class for the {@code SLUMLORD} table. The table is keyed by user name and has no id column,
+     * so {@code pid} is 0 when read from it
      */
+    @RowMapped(table = "slumlord")
     final class SlumData implements Serializable {
         private final int pid;
         private final String userName;
@@ -40,11 +64,11 @@ public interface SlumlordDAO extends BaseDAO {
         private final LocalDate dob;
 
         public SlumData(
-                int pid,
-                String userName,
-                String firstName,
-                String lastName,
-                LocalDate dob
+                @Column(value = "slumlord_ID", optional = true) int pid,
+                @Column("slumlord_user_name") String userName,
+                @Column("slumlord_first_name") String firstName,
+                @Column("slumlord_last_name") String lastName,
+                @Column("slumlord_dob") LocalDate dob
         ) {
             this.pid = pid;
             this.userName = userName;
@@ -0,0 +1,40 @@
+package dao;
+
+import java.sql.SQLException;
+
+/**
+ * A {@link SlumlordDAO} answering from an {@link InMemoryStore} instead of the database.
+ *
+ * @author Joshua Escareno
+ */
+public class SlumlordInMemoryDAO implements SlumlordDAO {
+    private final InMemoryStore store;
+
+    public SlumlordInMemoryDAO() {
+        this(InMemoryStore.shared());
+    }
+
+    public SlumlordInMemoryDAO(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public SlumData lookupSlumData(String userName) {
+        return store.slumlord(userName);
+    }
+
+    @Override
+    public void registerNewSlumlord(SlumData newbie) throws SQLException {
+        store.insertSlumlord(newbie);
+    }
+
+    @Override
+    public String lookupPasswordHash(String userName) {
+        return store.passwordHash(userName);
+    }
+
+    @Override
+    public boolean setPasswordHash(String userName, String passwordHash) {
+        return store.setPasswordHash(userName, passwordHash);
+    }
+}
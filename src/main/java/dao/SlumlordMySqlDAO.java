@@ -1,12 +1,11 @@
 package dao;
 
+import util.ColumnMapper;
 import util.DAOUtils;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.LocalDate;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -22,7 +21,7 @@ public class SlumlordMySqlDAO extends AbstractMySqlDAO implements SlumlordDAO {
 
     private static final String RETRIEVE_SLUMLORD_INFO_QUERY
             = "select /* RETRIEVE_SLUMLORD_INFO_QUERY */\n"
-            + " * \n"
+            + " " + SlumDataMapper.COLUMNS + "\n"
             + "from slumlord\n"
             + "where slumlord_user_name = ?";
 
@@ -30,28 +29,32 @@ public class SlumlordMySqlDAO extends AbstractMySqlDAO implements SlumlordDAO {
             = "insert into slumlord(slumlord_user_name, slumlord_first_name, slumlord_last_name, slumlord_dob)\n"
             + "values(?,?,?,?)";
 
+    private static final String RETRIEVE_PASSWORD_HASH_QUERY
+            = "select /* RETRIEVE_PASSWORD_HASH_QUERY */ slumlord_password_hash\n"
+            + "from slumlord\n"
+            + "where slumlord_user_name = ?";
+
+    private static final String SET_PASSWORD_HASH_STATEMENT
+            = "update slumlord set slumlord_password_hash = ?\n"
+            + "where slumlord_user_name = ?";
+
     private static Logger getLogger() {
         return Logger.getLogger(SlumlordMySqlDAO.class.getName());
     }
 
-    private final PreparedStatement retrieveSlumlord;
-    private final PreparedStatement registerSlumlord;
+    private final ColumnMapper<SlumData> slumlordRows = new ColumnMapper<>(SlumDataMapper.INSTANCE);
+    private final LazyStatement retrieveSlumlord;
+    private final LazyStatement registerSlumlord;
+    private final LazyStatement retrievePasswordHash;
+    private final LazyStatement setPasswordHash;
 
     public SlumlordMySqlDAO(Connection conn) {
         super(conn);
 
-        this.retrieveSlumlord = prepareQuery(RETRIEVE_SLUMLORD_INFO_QUERY);
-        this.registerSlumlord = prepareQuery(REGISTER_NEW_SLUMLORD_STATEMENT);
-    }
-
-    private SlumData mapSlumlordData(ResultSet rs) throws SQLException {
-        int pid = rs.getInt(1);
-        String userName = rs.getString(2);
-        String firstName = rs.getString(3);
-        String lastName = rs.getString(4);
-        LocalDate dob = DAOUtils.getLocalDate(rs, 5);
-
-        return new SlumData(pid, userName, firstName, lastName, dob);
+        this.retrieveSlumlord = hot(lazyQuery(RETRIEVE_SLUMLORD_INFO_QUERY));
+        this.registerSlumlord = lazyQuery(REGISTER_NEW_SLUMLORD_STATEMENT);
+        this.retrievePasswordHash = lazyQuery(RETRIEVE_PASSWORD_HASH_QUERY);
+        this.setPasswordHash = lazyQuery(SET_PASSWORD_HASH_STATEMENT);
     }
 
     @Override
@@ -59,13 +62,14 @@ public class SlumlordMySqlDAO extends AbstractMySqlDAO implements SlumlordDAO {
         long start = System.currentTimeMillis();
 
         try {
-            List<SlumData> user = DAOUtils.queryForList(getConn(), retrieveSlumlord, ps -> {
+            List<SlumData> user = DAOUtils.queryForList(getConn(), retrieveSlumlord.get(), ps -> {
                 ps.setString(1, userName);
-            }, this::mapSlumlordData);
+            }, slumlordRows);
 
             long dur = System.currentTimeMillis() - start;
-            getLogger().log(INFO, "[SQLStats] Retrieved user {0} in {1} ms.", new Object[]{userName, dur});
-            return user.get(0);
+            getLogger().log(INFO, "[SQLStats] Retrieved user {0} ({1} rows) in {2} ms.",
+                    new Object[]{userName, user.size(), dur});
+            return user.isEmpty() ? null : user.get(0);
         } catch (Exception e) {
             long dur = System.currentTimeMillis() - start;
             getLogger().log(WARNING, "[SQLStats] Cannot find {0} RETRIEVE_SLUMLORD_INFO_QUERY failed ({1}) in {2} ms."
@@ -78,11 +82,14 @@ public class SlumlordMySqlDAO extends AbstractMySqlDAO implements SlumlordDAO {
     public void registerNewSlumlord(SlumData newSlumlord) throws SQLException{
         long start = System.currentTimeMillis();
 
-        try(PreparedStatement ps = registerSlumlord){
+        try{
+            // the statement belongs to this DAO and is reused, so it must not be closed here
+            PreparedStatement ps = registerSlumlord.get();
             ps.setString(1, newSlumlord.getUserName());
             ps.setString(2, newSlumlord.getFirstName());
             ps.setString(3, newSlumlord.getLastName());
             ps.setDate(4, DAOUtils.asSqlDate(newSlumlord.getDob()));
+            ps.executeUpdate();
 
             long dur = System.currentTimeMillis() - start;
             getLogger().log(INFO, "[SQLStats] REGISTER_NEW_SLUMLORD [{0}] succeeded in {1} ms.",
@@ -95,5 +102,48 @@ public class SlumlordMySqlDAO extends AbstractMySqlDAO implements SlumlordDAO {
         }
     }
 
+    @Override
+    public String lookupPasswordHash(String userName) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        try {
+            List<String> hashes = DAOUtils.queryForList(getConn(), retrievePasswordHash.get(), ps -> {
+                ps.setString(1, userName);
+            }, rs -> rs.getString(1));
 
+            long dur = System.currentTimeMillis() - start;
+            // the hash itself is never logged
+            getLogger().log(INFO, "[SQLStats] Retrieved the password hash of {0} ({1} rows) in {2} ms.",
+                    new Object[]{userName, hashes.size(), dur});
+            return hashes.isEmpty() ? null : hashes.get(0);
+        } catch (Exception e) {
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] RETRIEVE_PASSWORD_HASH_QUERY for {0} failed ({1}) in {2} ms.",
+                    new Object[]{userName, e.getMessage().trim(), dur});
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean setPasswordHash(String userName, String passwordHash) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        try {
+            // the statement belongs to this DAO and is reused, so it must not be closed here
+            PreparedStatement ps = setPasswordHash.get();
+            ps.setString(1, passwordHash);
+            ps.setString(2, userName);
+            int rows = ps.executeUpdate();
+
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(INFO, "[SQLStats] SET_PASSWORD_HASH [{0}] updated {1} rows in {2} ms.",
+                    new Object[]{userName, rows, dur});
+            return rows > 0;
+        } catch (Exception e) {
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] SET_PASSWORD_HASH [{0}] failed ({1}) in {2} ms.",
+                    new Object[]{userName, e.getMessage().trim(), dur});
+            throw e;
+        }
+    }
 }
@@ -0,0 +1,21 @@
+package dao;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a DAO interface method that hands rows to a consumer while its query runs, so it holds
+ * its connection for as long as the consumer takes, for example while it writes to a slow client.
+ * A DAO created with {@link DAOFactory#createPooled(Class, ConnectionPool, ConnectionPool)} runs
+ * these methods on connections of their own.
+ *
+ * @author Joshua Escareno
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Streaming {
+}
@@ -1,9 +1,14 @@
 package dao;
 
+import mapping.Column;
+import mapping.RowMapped;
+
 import java.io.Serializable;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 /**
  * DAO for the {@code TENANT} table in the database
@@ -18,19 +23,68 @@ public interface TenantDAO extends BaseDAO {
      * @return returns a list of tenant information
      * @throws SQLException if the query cannot be executed
      */
+    @ReadOnly
     List<TenantData> listTenantsByProperty(int propertyId) throws SQLException;
 
     /**
-     * A method to retrieve all the tenants for a list of given property ids
+     * A method to stream the tenants inhabiting a property, handing each one to {@code action}
+     * as it is read from the database
+     * @param propertyId the property that we are searching for tenants in
+     * @param action called once for every tenant
+     * @return the number of tenants streamed
+     * @throws SQLException if the query cannot be executed
+     */
+    @ReadOnly(hedge = false)
+    @Streaming
+    int streamTenantsByProperty(int propertyId, Consumer<TenantData> action) throws SQLException;
+
+    /**
+     * A method to stream the tenants of every property an owner has, ordered by property, handing each one to
+     * {@code action} as it is read from the database
+     * @param ownerId the owner whose tenants we are searching for
+     * @param action called once for every tenant
+     * @return the number of tenants streamed
+     * @throws SQLException if the query cannot be executed
+     */
+    @ReadOnly(hedge = false)
+    @Streaming
+    int streamTenantsByOwner(String ownerId, Consumer<TenantData> action) throws SQLException;
+
+    /**
+     * A method to retrieve the tenants inserted, updated or deleted after a change sequence, for consumers keeping
+     * their own copy of the table up to date
+     * @param ownerId only changes to tenants of this owner's properties, with those moved to another owner as
+     *                deletes, or all changes if null
+     * @param seq the high-water mark of the previous page, or 0 for everything
+     * @param limit the most changes to return
+     * @return one page of changes
+     * @throws SQLException if the query cannot be executed
+     */
+    @ReadOnly
+    ChangeFeed<TenantData> tenantChangesSince(String ownerId, long seq, int limit) throws SQLException;
+
+    /**
+     * A method to retrieve all the tenants for a list of given property ids. The list may be of any length; long
+     * lists are split up or joined through a temporary table, whichever has been measured to be faster
      * @param propertyIds the list of properties that we need tenant info from
      * @return a list of tenant information
      * @throws SQLException if the query cannot be executed
      */
+    @ReadOnly
     List<TenantData> listTenantByProperties(List<Integer> propertyIds) throws  SQLException;
 
+    /**
+     * A method to insert many tenant records with as few round trips as possible, using multi-row inserts
+     * @param tenants the tenants to be inserted; their ids are ignored
+     * @return the number of rows inserted
+     * @throws SQLException if one of the inserts cannot be executed
+     */
+    int insertTenants(List<TenantData> tenants) throws SQLException;
+
     /**
      * Data access class for the tenant table
      */
+    @RowMapped(table = "tenant")
     final class TenantData implements Serializable {
         private final int pid;
         private final String firstName;
@@ -43,15 +97,15 @@ public interface TenantDAO extends BaseDAO {
         private final int propertyId;
 
         public TenantData(
-                int pid,
-                String firstName,
-                String lastName,
-                LocalDate dob,
-                String phoneNumber,
-                String address,
-                String city,
-                String zipCode,
-                int propertId
+                @Column("tenant_ID") int pid,
+                @Column("tenant_first_name") String firstName,
+                @Column("tenant_last_name") String lastName,
+                @Column("tenant_dob") LocalDate dob,
+                @Column("tenant_phone_number") String phoneNumber,
+                @Column("tenant_address") String address,
+                @Column(value = "tenant_city", canonical = true) String city,
+                @Column(value = "tenant_zipCode", canonical = true) String zipCode,
+                @Column("tenant_property_ID") int propertId
         ) {
             this.pid = pid;
             this.firstName = firstName;
@@ -99,5 +153,25 @@ public interface TenantDAO extends BaseDAO {
         public String getZipCode() {
             return zipCode;
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TenantData)) return false;
+            TenantData other = (TenantData) o;
+            return pid == other.pid
+                    && propertyId == other.propertyId
+                    && Objects.equals(firstName, other.firstName)
+                    && Objects.equals(lastName, other.lastName)
+                    && Objects.equals(dob, other.dob)
+                    && Objects.equals(phoneNumber, other.phoneNumber)
+                    && Objects.equals(address, other.address)
+                    && Objects.equals(city, other.city)
+                    && Objects.equals(zipCode, other.zipCode);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * pid + propertyId;
+        }
     }
 }
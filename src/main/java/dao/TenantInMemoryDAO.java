@@ -0,0 +1,64 @@
+package dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * A {@link TenantDAO} answering from an {@link InMemoryStore} instead of the database. Tenants
+ * come in property order and then tenant id order, as the MySQL queries return them.
+ *
+ * @author Joshua Escareno
+ */
+public class TenantInMemoryDAO implements TenantDAO {
+    private final InMemoryStore store;
+
+    public TenantInMemoryDAO() {
+        this(InMemoryStore.shared());
+    }
+
+    public TenantInMemoryDAO(InMemoryStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public List<TenantData> listTenantsByProperty(int propertyId) {
+        return store.tenantsByProperty(propertyId);
+    }
+
+    @Override
+    public int streamTenantsByProperty(int propertyId, Consumer<TenantData> action) {
+        List<TenantData> tenants = store.tenantsByProperty(propertyId);
+        tenants.forEach(action);
+        return tenants.size();
+    }
+
+    @Override
+    public int streamTenantsByOwner(String ownerId, Consumer<TenantData> action) {
+        int rows = 0;
+        for (PropertyDAO.PropertyBaseData p : store.propertiesByOwner(ownerId)) {
+            rows += streamTenantsByProperty(p.getPropertyId(), action);
+        }
+        return rows;
+    }
+
+    @Override
+    public ChangeFeed<TenantData> tenantChangesSince(String ownerId, long seq, int limit) {
+        return store.tenantChangesSince(ownerId, seq, limit);
+    }
+
+    @Override
+    public List<TenantData> listTenantByProperties(List<Integer> propertyIds) {
+        List<TenantData> result = new ArrayList<>();
+        for (int propertyId : new TreeSet<>(propertyIds)) result.addAll(store.tenantsByProperty(propertyId));
+        return result;
+    }
+
+    @Override
+    public int insertTenants(List<TenantData> tenants) throws SQLException {
+        store.insertTenants(tenants);
+        return tenants.size();
+    }
+}
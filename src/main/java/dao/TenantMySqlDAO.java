@@ -1,10 +1,11 @@
 package dao;
 
+import util.ColumnMapper;
 import util.DAOUtils;
 
 import java.sql.*;
-import java.time.LocalDate;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 import static java.util.logging.Level.INFO;
@@ -14,7 +15,7 @@ public class TenantMySqlDAO extends AbstractMySqlDAO implements TenantDAO {
 
     private static final String RETRIEVE_TENANTS_BY_PROPERTY
             = "select /* RETRIEVE_TENANTS_BY_PROPERTY */\n"
-            + "* \n"//again we should never do this
+            + TenantDataMapper.COLUMNS + "\n"
             + "from tenant\n"
             + "where tenant_property_ID = ?";
 
@@ -22,8 +23,50 @@ public class TenantMySqlDAO extends AbstractMySqlDAO implements TenantDAO {
             = RETRIEVE_TENANTS_BY_PROPERTY.replace("where tenant_property_ID = ?",
             "where tenant_property_ID in ??");
 
-    private final PreparedStatement retrieveTenants;
-    private final PreparedStatement listTenants;
+    private static final String TENANT_LOOKUP_TABLE = "tmp_tenant_property_ids";
+
+    private static final String RETRIEVE_TENANTS_BY_PROPERTIES_JOIN
+            = "select /* RETRIEVE_TENANTS_BY_PROPERTIES_JOIN */\n"
+            + TenantDataMapper.COLUMNS + "\n"
+            + "from " + TENANT_LOOKUP_TABLE + "\n"
+            + "join tenant on tenant_property_ID = " + TENANT_LOOKUP_TABLE + ".id";
+
+    private static final String RETRIEVE_TENANTS_BY_OWNER
+            = "select /* RETRIEVE_TENANTS_BY_OWNER */\n"
+            + TenantDataMapper.COLUMNS + "\n"
+            + "from tenant\n"
+            + "join property on property_ID = tenant_property_ID\n"
+            + "where property_owner_id = ?\n"
+            + "order by tenant_property_ID, tenant_ID";
+
+    private static final String TENANT_CHANGES_QUERY
+            = "select /* TENANT_CHANGES_QUERY */\n"
+            + TenantDataMapper.COLUMNS + ", tenant_change_seq\n"
+            + "from tenant\n"
+            + "where tenant_change_seq > ?\n"
+            + "order by tenant_change_seq\n"
+            + "limit ?";
+
+    private static final String OWNER_TENANT_CHANGES_QUERY
+            = TENANT_CHANGES_QUERY.replace("from tenant\nwhere tenant_change_seq > ?",
+            "from tenant\njoin property on property_ID = tenant_property_ID\n"
+                    + "where property_owner_id = ?\nand tenant_change_seq > ?");
+
+    private static final String INSERT_TENANTS_TEMPLATE
+            = "insert /* INSERT_TENANTS_STATEMENT */ into tenant(tenant_first_name, tenant_last_name, "
+            + "tenant_phone_number, tenant_dob, tenant_address, tenant_city, tenant_zipCode, tenant_property_ID)\n"
+            + "values ??";
+
+    private static final int INSERT_TENANTS_COLUMNS = 8;
+
+    // every tenant select starts with the same select list, so they can share one mapper
+    private final ColumnMapper<TenantData> tenantRows = new ColumnMapper<>(TenantDataMapper.INSTANCE);
+    private final LazyStatement retrieveTenants;
+    private final LazyStatement streamTenants;
+    private final LazyStatement streamTenantsByOwner;
+    private final BulkLookup<TenantData> listTenants;
+    private final LazyStatement insertTenantsBatch;
+    private final ChangeFeedQuery<TenantData> tenantChanges;
 
     private static Logger getLogger() {
         return Logger.getLogger(TenantMySqlDAO.class.getName());
@@ -31,22 +74,16 @@ public class TenantMySqlDAO extends AbstractMySqlDAO implements TenantDAO {
 
     public TenantMySqlDAO(Connection conn) {
         super(conn);
-        this.retrieveTenants = prepareQuery(RETRIEVE_TENANTS_BY_PROPERTY);
-        this.listTenants = prepareQuery(RETRIEVE_TENANTS_BY_PROPERTIES);
-    }
-
-    private TenantData mapTenantData(ResultSet rs) throws SQLException {
-        int pid = rs.getInt(1);
-        String firstName = rs.getString(2);
-        String lastName = rs.getString(3);
-        LocalDate dob = DAOUtils.getLocalDate(rs, 4);
-        String phoneNumber = rs.getString(5);
-        String address = rs.getString(6);
-        String city = rs.getString(7);
-        String zipCode = rs.getString(8);
-        int propertyId = rs.getInt(9);
-
-        return new TenantData(pid, firstName, lastName, dob, phoneNumber, address, city, zipCode, propertyId);
+        this.retrieveTenants = hot(lazyQuery(RETRIEVE_TENANTS_BY_PROPERTY));
+        this.streamTenants = lazyStreamingQuery(RETRIEVE_TENANTS_BY_PROPERTY);
+        this.streamTenantsByOwner = lazyStreamingQuery(RETRIEVE_TENANTS_BY_OWNER);
+        this.listTenants = new BulkLookup<>(conn, "RETRIEVE_TENANTS_BY_PROPERTIES", RETRIEVE_TENANTS_BY_PROPERTIES,
+                RETRIEVE_TENANTS_BY_PROPERTIES_JOIN, TENANT_LOOKUP_TABLE, getCollateSize(), tenantRows);
+        this.insertTenantsBatch = lazyQuery(() -> INSERT_TENANTS_TEMPLATE.replace("??",
+                DAOUtils.mkValuesList(getCollateSize(), INSERT_TENANTS_COLUMNS)));
+        this.tenantChanges = new ChangeFeedQuery<>(conn, "TENANT_CHANGES_QUERY", "T", "tenant_change_seq",
+                TENANT_CHANGES_QUERY, OWNER_TENANT_CHANGES_QUERY, tenantRows);
+        this.tenantChanges.statements().forEach(this::hot);
     }
 
     @Override
@@ -54,9 +91,9 @@ public class TenantMySqlDAO extends AbstractMySqlDAO implements TenantDAO {
         long start = System.currentTimeMillis();
 
         try {
-            List<TenantData> result = DAOUtils.queryForList(getConn(), retrieveTenants, ps -> {
+            List<TenantData> result = DAOUtils.queryForList(getConn(), retrieveTenants.get(), ps -> {
                 ps.setInt(1, propertyId);
-            }, this::mapTenantData);
+            }, tenantRows);
 
             long dur = System.currentTimeMillis() - start;
             getLogger().log(INFO, "[SQLStats] RETRIEVE_TENANTS_BY_PROPERTY [pid: {0}] returned {1} rows in {2}ms.",
@@ -70,26 +107,111 @@ public class TenantMySqlDAO extends AbstractMySqlDAO implements TenantDAO {
         }
     }
 
+    @Override
+    public int streamTenantsByProperty(int propertyId, Consumer<TenantData> action) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        try {
+            int rows = DAOUtils.queryRows(getConn(), streaming(streamTenants), ps -> {
+                ps.setInt(1, propertyId);
+            }, rs -> action.accept(tenantRows.mapResult(rs)));
+
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(INFO, "[SQLStats] RETRIEVE_TENANTS_BY_PROPERTY [pid: {0}] streamed {1} rows in {2}ms.",
+                    new Object[]{propertyId, rows, dur});
+            return rows;
+        } catch (Exception e) {
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] RETRIEVE_TENANTS_BY_PROPERTY [pid: {0}] stream failed({1}) in {2}ms.",
+                    new Object[]{propertyId, e.getMessage().trim(), dur});
+            throw e;
+        }
+    }
+
+    @Override
+    public int streamTenantsByOwner(String ownerId, Consumer<TenantData> action) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        try {
+            int rows = DAOUtils.queryRows(getConn(), streaming(streamTenantsByOwner), ps -> {
+                ps.setString(1, ownerId);
+            }, rs -> action.accept(tenantRows.mapResult(rs)));
+
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(INFO, "[SQLStats] RETRIEVE_TENANTS_BY_OWNER ({0}) streamed {1} rows in {2}ms.",
+                    new Object[]{ownerId, rows, dur});
+            return rows;
+        } catch (Exception e) {
+            long dur = System.currentTimeMillis() - start;
+            getLogger().log(WARNING, "[SQLStats] RETRIEVE_TENANTS_BY_OWNER ({0}) stream failed({1}) in {2}ms.",
+                    new Object[]{ownerId, e.getMessage().trim(), dur});
+            throw e;
+        }
+    }
+
+    @Override
+    void cancel() throws SQLException {
+        super.cancel();
+        listTenants.cancel();
+    }
+
+    @Override
+    public ChangeFeed<TenantData> tenantChangesSince(String ownerId, long seq, int limit) throws SQLException {
+        // timing is logged by the query
+        return tenantChanges.since(ownerId, seq, limit);
+    }
+
     @Override
     public List<TenantData> listTenantByProperties(List<Integer> propertyIds) throws  SQLException {
+        // timing is logged per strategy by the lookup
+        return listTenants.lookup(propertyIds);
+    }
+
+    @Override
+    public int insertTenants(List<TenantData> tenants) throws SQLException {
         long start = System.currentTimeMillis();
 
-        try{
-            List<TenantData> result = DAOUtils.queryForList(getConn(), listTenants, ps -> {
-                int i =0, collateSize = getCollateSize();
-                for(Integer pid : propertyIds) ps.setInt(++i, pid);
-                while(i < collateSize) ps.setNull(++i, Types.INTEGER);
-            }, this::mapTenantData);
+        try {
+            int rows = tenants.isEmpty() ? 0 : collatedUpdateExecutor(tenants, batch -> {
+                if (batch.size() == getCollateSize()) {
+                    return bindTenants(insertTenantsBatch.get(), batch).executeUpdate();
+                }
+
+                // the final partial batch gets a statement of its own size
+                String sql = INSERT_TENANTS_TEMPLATE.replace("??",
+                        DAOUtils.mkValuesList(batch.size(), INSERT_TENANTS_COLUMNS));
+
+                try (PreparedStatement ps = getConn().prepareStatement(sql)) {
+                    return bindTenants(ps, batch).executeUpdate();
+                }
+            });
 
             long dur = System.currentTimeMillis() - start;
-            getLogger().log(INFO, "[SQLStats] RETRIEVE_TENANTS_BY_PROPERTIES[{0}] retrieved {1} rows in {2} ms.",
-                    new Object[]{DAOUtils.mkPrintList(propertyIds), result.size(), dur});
-            return result;
-        }catch(Exception e){
+            getLogger().log(INFO, "[SQLStats] INSERT_TENANTS_STATEMENT [{0}] inserted {1} rows in {2} ms.",
+                    new Object[]{DAOUtils.mkPrintList(tenants), rows, dur});
+            return rows;
+        } catch (Exception e) {
             long dur = System.currentTimeMillis() - start;
-            getLogger().log(WARNING,  "[SQLStats] RETRIEVE_TENANTS_BY_PROPERTIES[{0}] failed({1}) in {2} ms.",
-                    new Object[]{DAOUtils.mkPrintList(propertyIds), e.getMessage().trim(), dur});
+            getLogger().log(WARNING, "[SQLStats] INSERT_TENANTS_STATEMENT [{0}] failed({1}) in {2} ms.",
+                    new Object[]{DAOUtils.mkPrintList(tenants), e.getMessage().trim(), dur});
             throw e;
         }
     }
+
+    private static PreparedStatement bindTenants(PreparedStatement ps, List<TenantData> batch) throws SQLException {
+        int i = 0;
+
+        for (TenantData tenant : batch) {
+            ps.setString(++i, tenant.getFirstName());
+            ps.setString(++i, tenant.getLastName());
+            ps.setString(++i, tenant.getPhoneNumber());
+            ps.setDate(++i, DAOUtils.asSqlDate(tenant.getDob()));
+            ps.setString(++i, tenant.getAddress());
+            ps.setString(++i, tenant.getCity());
+            ps.setString(++i, tenant.getZipCode());
+            ps.setInt(++i, tenant.getPropertyId());
+        }
+
+        return ps;
+    }
 }
@@ -0,0 +1,15 @@
+package dao;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown by a change feed given a cursor it does not know, or no longer knows. The reader has to
+ * start again from 0; {@link ChangeFeed#read} does so.
+ *
+ * @author Joshua Escareno
+ */
+public class UnknownCursorException extends SQLException {
+    public UnknownCursorException(String reason) {
+        super(reason);
+    }
+}
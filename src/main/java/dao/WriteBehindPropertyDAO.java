@@ -0,0 +1,437 @@
+package dao;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * A {@link PropertyDAO} that buffers rental fee updates and writes them behind the caller.
+ * {@code updateRentalFee} only records the new fee; updates to the same property are coalesced
+ * so only the last one is written. The buffer is flushed through {@link #updateRentalFees} once
+ * it holds {@code maxPending} properties, or every {@code flushIntervalMs} otherwise, so a bulk
+ * repricing costs one statement per collation instead of one round trip per property.
+ * <p>
+ * Reads through this DAO see buffered fees as if they were already written. Because the
+ * write happens later, {@code updateRentalFee} no longer reports database errors. A batch that
+ * fails is retried one update at a time. An update the database rejects goes back in the buffer
+ * for the next flush, and is only dropped, and logged as severe, once it failed
+ * {@value #MAX_ATTEMPTS} flushes in a row. On a connection failure everything is kept for the
+ * next flush. Failed flushes, retried and dropped updates are counted in {@link #metrics()}, and
+ * each dropped update is handed to the listener given, whose copies of the fee are wrong now that
+ * reads no longer see it.
+ * {@link #close()} flushes what is left, and is also run by a shutdown hook so a normal JVM exit
+ * does not lose updates.
+ *
+ * @author Joshua Escareno
+ */
+public class WriteBehindPropertyDAO extends ForwardingPropertyDAO implements AutoCloseable {
+    /**
+     * The number of flushes in a row an update may fail before it is dropped
+     */
+    static final int MAX_ATTEMPTS = 3;
+
+    private final int maxPending;
+    private final Consumer<RentalFeeUpdate> onDrop;
+    private final ScheduledExecutorService flusher;
+    private final Thread shutdownHook;
+    private final Object flushLock = new Object();
+
+    // guarded by this
+    private Map<Integer, RentalFeeUpdate> pending = new LinkedHashMap<>();
+    private Map<Integer, RentalFeeUpdate> inFlight = Collections.emptyMap();
+    private final Map<Integer, Integer> failedAttempts = new HashMap<>();
+    private boolean flushRequested;
+    private boolean closed;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong retriedUpdates = new AtomicLong();
+    private final AtomicLong droppedUpdates = new AtomicLong();
+
+    private static Logger getLogger() {
+        return Logger.getLogger(WriteBehindPropertyDAO.class.getName());
+    }
+
+    /**
+     * @param delegate        the DAO writing to the database
+     * @param maxPending      the number of buffered properties that triggers a flush
+     * @param flushIntervalMs the longest an update stays buffered while the database is reachable
+     */
+    public WriteBehindPropertyDAO(PropertyDAO delegate, int maxPending, long flushIntervalMs) {
+        this(delegate, maxPending, flushIntervalMs, update -> {
+        });
+    }
+
+    /**
+     * @param delegate        the DAO writing to the database
+     * @param maxPending      the number of buffered properties that triggers a flush
+     * @param flushIntervalMs the longest an update stays buffered while the database is reachable
+     * @param onDrop          told of every update given up on, on the thread that gave up
+     */
+    public WriteBehindPropertyDAO(PropertyDAO delegate, int maxPending, long flushIntervalMs,
+                                  Consumer<RentalFeeUpdate> onDrop) {
+        super(delegate);
+        this.maxPending = maxPending;
+        this.onDrop = onDrop;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rental-fee-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs,
+                TimeUnit.MILLISECONDS);
+        this.shutdownHook = new Thread(this::close, "rental-fee-write-behind-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    @Override
+    public void updateRentalFee(BigDecimal newRentalFee, int propertyId, String ownerId) {
+        boolean trigger;
+
+        synchronized (this) {
+            if (closed) throw new IllegalStateException("write-behind buffer is closed");
+
+            pending.put(propertyId, new RentalFeeUpdate(propertyId, ownerId, newRentalFee));
+            // a new fee gets attempts of its own
+            failedAttempts.remove(propertyId);
+            trigger = pending.size() >= maxPending && !flushRequested;
+            if (trigger) flushRequested = true;
+        }
+
+        if (trigger) flusher.execute(this::flushQuietly);
+    }
+
+    /**
+     * Write a batch of fees straight through. Buffered fees for the same properties are
+     * discarded first, so they cannot overwrite these later.
+     */
+    @Override
+    public int updateRentalFees(List<RentalFeeUpdate> updates) throws SQLException {
+        synchronized (flushLock) {
+            synchronized (this) {
+                for (RentalFeeUpdate update : updates) {
+                    pending.remove(update.getPropertyId());
+                    failedAttempts.remove(update.getPropertyId());
+                }
+            }
+
+            return super.updateRentalFees(updates);
+        }
+    }
+
+    /**
+     * Write every buffered update now.
+     *
+     * @return the number of rows updated
+     * @throws SQLException if the database cannot be reached; the updates stay buffered
+     */
+    public int flush() throws SQLException {
+        // flushes run one at a time, or a later fee could be overwritten by an earlier one
+        synchronized (flushLock) {
+            List<RentalFeeUpdate> batch;
+
+            synchronized (this) {
+                flushRequested = false;
+                if (pending.isEmpty()) return 0;
+
+                inFlight = pending;
+                pending = new LinkedHashMap<>();
+                batch = new ArrayList<>(inFlight.values());
+            }
+
+            long start = System.currentTimeMillis();
+            List<RentalFeeUpdate> rejected = new ArrayList<>();
+            int rows;
+
+            try {
+                rows = writeBatch(batch, rejected);
+            } catch (SQLException e) {
+                failedFlushes.incrementAndGet();
+                requeue();
+                throw e;
+            }
+
+            List<RentalFeeUpdate> dropped = retryOrDrop(batch, rejected);
+            dropped.forEach(onDrop);
+            flushes.incrementAndGet();
+            rowsWritten.addAndGet(rows);
+
+            getLogger().log(INFO, "Flushed {0} rental fee updates ({1} rows, {2} rejected) in {3} ms",
+                    new Object[]{batch.size(), rows, rejected.size(), System.currentTimeMillis() - start});
+            return rows;
+        }
+    }
+
+    /**
+     * Write a batch, falling back to one update at a time to find the ones the database rejects.
+     *
+     * @param rejected where the updates the database rejects are added
+     */
+    private int writeBatch(List<RentalFeeUpdate> batch, List<RentalFeeUpdate> rejected) throws SQLException {
+        try {
+            return delegate().updateRentalFees(batch);
+        } catch (SQLException e) {
+            if (isConnectionFailure(e)) throw e;
+
+            getLogger().log(WARNING, "Batched rental fee update failed ({0}), retrying one at a time",
+                    String.valueOf(e.getMessage()).trim());
+        }
+
+        int rows = 0;
+
+        for (RentalFeeUpdate update : batch) {
+            try {
+                rows += delegate().updateRentalFees(Collections.singletonList(update));
+            } catch (SQLException e) {
+                if (isConnectionFailure(e)) throw e;
+
+                getLogger().log(WARNING, "Rental fee update {0} rejected ({1})",
+                        new Object[]{update, String.valueOf(e.getMessage()).trim()});
+                rejected.add(update);
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Finish a flush: forget the failures of the updates written, and put the rejected ones back
+     * in the buffer, unless they failed too often or a newer fee for the property came in.
+     *
+     * @return the updates dropped
+     */
+    private synchronized List<RentalFeeUpdate> retryOrDrop(List<RentalFeeUpdate> batch,
+                                                           List<RentalFeeUpdate> rejected) {
+        inFlight = Collections.emptyMap();
+        List<RentalFeeUpdate> dropped = new ArrayList<>();
+
+        if (!failedAttempts.isEmpty()) {
+            for (RentalFeeUpdate update : batch) {
+                if (!rejected.contains(update)) failedAttempts.remove(update.getPropertyId());
+            }
+        }
+
+        for (RentalFeeUpdate update : rejected) {
+            int propertyId = update.getPropertyId();
+            if (pending.containsKey(propertyId)) continue;
+
+            int attempts = failedAttempts.merge(propertyId, 1, Integer::sum);
+
+            if (attempts < MAX_ATTEMPTS) {
+                pending.put(propertyId, update);
+                retriedUpdates.incrementAndGet();
+            } else {
+                failedAttempts.remove(propertyId);
+                droppedUpdates.incrementAndGet();
+                dropped.add(update);
+                getLogger().log(SEVERE, "Dropping rental fee update {0} after {1} failed attempts",
+                        new Object[]{update, attempts});
+            }
+        }
+        return dropped;
+    }
+
+    /**
+     * Put a failed batch back in front of the buffer. Properties updated again in the meantime
+     * keep their newer fee.
+     */
+    private synchronized void requeue() {
+        Map<Integer, RentalFeeUpdate> merged = new LinkedHashMap<>(inFlight);
+        merged.putAll(pending);
+        pending = merged;
+        inFlight = Collections.emptyMap();
+    }
+
+    private static boolean isConnectionFailure(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("08");
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException e) {
+            getLogger().log(WARNING, "Rental fee flush failed ({0}), will retry",
+                    String.valueOf(e.getMessage()).trim());
+        } catch (RuntimeException e) {
+            // a scheduled task that throws is never run again
+            getLogger().log(WARNING, "Rental fee flush failed", e);
+        }
+    }
+
+    /**
+     * Stop accepting updates and write the ones still buffered. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+
+        flusher.shutdown();
+
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+            flush();
+        } catch (SQLException e) {
+            List<RentalFeeUpdate> lost = takeAll();
+            droppedUpdates.addAndGet(lost.size());
+            getLogger().log(SEVERE, "Final rental fee flush failed, {0} updates lost ({1})",
+                    new Object[]{lost.size(), String.valueOf(e.getMessage()).trim()});
+            lost.forEach(onDrop);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // already shutting down
+            }
+        }
+    }
+
+    /**
+     * Empty the buffer, once nothing more can be written.
+     *
+     * @return the updates that were in it
+     */
+    private synchronized List<RentalFeeUpdate> takeAll() {
+        Map<Integer, RentalFeeUpdate> all = new LinkedHashMap<>(inFlight);
+        all.putAll(pending);
+        inFlight = Collections.emptyMap();
+        pending = new LinkedHashMap<>();
+        return new ArrayList<>(all.values());
+    }
+
+    /**
+     * @return the number of properties with a fee not yet written
+     */
+    public synchronized int pendingCount() {
+        Map<Integer, RentalFeeUpdate> all = new HashMap<>(inFlight);
+        all.putAll(pending);
+        return all.size();
+    }
+
+    /**
+     * @return the write-behind counters, one {@code name value} pair per line, see
+     * {@code website.jetty.MetricsServlet}
+     */
+    public String metrics() {
+        return "write_behind.pending " + pendingCount() + '\n'
+                + "write_behind.flushes " + flushes.get() + '\n'
+                + "write_behind.rows_written " + rowsWritten.get() + '\n'
+                + "write_behind.failed_flushes " + failedFlushes.get() + '\n'
+                + "write_behind.retried_updates " + retriedUpdates.get() + '\n'
+                + "write_behind.dropped_updates " + droppedUpdates.get() + '\n';
+    }
+
+    /**
+     * @return the number of updates given up on, after failing too often or when a final flush
+     * failed
+     */
+    public long droppedUpdates() {
+        return droppedUpdates.get();
+    }
+
+    // reads see buffered fees
+
+    @Override
+    public List<PropertyBaseData> listAllPropertiesByOwner(String ownerId) throws SQLException {
+        Map<Integer, RentalFeeUpdate> fees = snapshot();
+        return overlay(fees, super.listAllPropertiesByOwner(ownerId));
+    }
+
+    @Override
+    public int streamAllPropertiesByOwner(String ownerId, Consumer<PropertyBaseData> action) throws SQLException {
+        Map<Integer, RentalFeeUpdate> fees = snapshot();
+        return super.streamAllPropertiesByOwner(ownerId, property -> action.accept(overlay(fees, property)));
+    }
+
+    @Override
+    public List<PropertyWithTenants> listAllPropertiesWithTenantsByOwner(String ownerId) throws SQLException {
+        Map<Integer, RentalFeeUpdate> fees = snapshot();
+        List<PropertyWithTenants> result = super.listAllPropertiesWithTenantsByOwner(ownerId);
+        if (fees.isEmpty()) return result;
+
+        List<PropertyWithTenants> overlaid = new ArrayList<>(result.size());
+        for (PropertyWithTenants p : result) overlaid.add(overlay(fees, p));
+        return overlaid;
+    }
+
+    @Override
+    public int streamAllPropertiesWithTenantsByOwner(String ownerId, Consumer<PropertyWithTenants> action)
+            throws SQLException {
+        Map<Integer, RentalFeeUpdate> fees = snapshot();
+        return super.streamAllPropertiesWithTenantsByOwner(ownerId, p -> action.accept(overlay(fees, p)));
+    }
+
+    @Override
+    public ChangeFeed<PropertyBaseData> propertyChangesSince(String ownerId, long seq, int limit)
+            throws SQLException {
+        Map<Integer, RentalFeeUpdate> fees = snapshot();
+        ChangeFeed<PropertyBaseData> page = super.propertyChangesSince(ownerId, seq, limit);
+        if (fees.isEmpty()) return page;
+
+        return new ChangeFeed<>(overlay(fees, page.getUpserts()), page.getDeletedIds(), page.getHighWaterMark(),
+                page.getResumeMark(), page.hasMore());
+    }
+
+    @Override
+    public List<PropertyBaseData> listAllVacantProperties() throws SQLException {
+        Map<Integer, RentalFeeUpdate> fees = snapshot();
+        return overlay(fees, super.listAllVacantProperties());
+    }
+
+    /**
+     * Take the buffered fees before reading, so a fee flushed while the query runs is not missed.
+     */
+    private synchronized Map<Integer, RentalFeeUpdate> snapshot() {
+        if (pending.isEmpty() && inFlight.isEmpty()) return Collections.emptyMap();
+
+        Map<Integer, RentalFeeUpdate> fees = new HashMap<>(inFlight);
+        fees.putAll(pending);
+        return fees;
+    }
+
+    private static List<PropertyBaseData> overlay(Map<Integer, RentalFeeUpdate> fees,
+                                                  List<PropertyBaseData> properties) {
+        if (fees.isEmpty()) return properties;
+
+        List<PropertyBaseData> overlaid = new ArrayList<>(properties.size());
+        for (PropertyBaseData property : properties) overlaid.add(overlay(fees, property));
+        return overlaid;
+    }
+
+    private static PropertyWithTenants overlay(Map<Integer, RentalFeeUpdate> fees, PropertyWithTenants p) {
+        PropertyBaseData property = overlay(fees, p.getProperty());
+        return property == p.getProperty() ? p : new PropertyWithTenants(property, p.getTenants());
+    }
+
+    private static PropertyBaseData overlay(Map<Integer, RentalFeeUpdate> fees, PropertyBaseData property) {
+        RentalFeeUpdate update = fees.get(property.getPropertyId());
+
+        // the update only applies to the owner's own property, as it will in the database
+        if (update == null || !Objects.equals(update.getOwnerId(), property.getOwnerID())) return property;
+
+        return property.withRentalFee(update.getRentalFee());
+    }
+}
@@ -7,6 +7,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Logger;
 
 import static java.util.logging.Level.INFO;
@@ -29,19 +32,86 @@ public class DBDriver {
     private static final Integer MAXADDRLENGTH = 40;
     private static final String SLUMLORD_FIELDS = "slumlord_user_name varchar(30) not null unique, "
             + "slumlord_first_name varchar(30), slumlord_last_name varchar(30), slumlord_dob date, "
-            + "primary key (slumlord_user_name)";
+            + "slumlord_password_hash varchar(128), primary key (slumlord_user_name)";
     private static final String PROPERTY_FIELDS = "property_ID int auto_increment, "
             + "property_type varchar(1), property_address varchar(" + MAXADDRLENGTH + ") unique, "
             + "property_city_code varchar(" + CITYCODELENGTH + "), property_numRooms int, "
             + "property_numBrooms int, property_garage_count int, property_sqr_foot int, "
             + "property_frontY_sqr_foot int, property_backY_sqr_foot int, property_num_tenants int, "
             + "property_rental_fee numeric(6,2), property_last_payment_date date, property_owner_id varchar(30), "
-            + "property_vacancy_ind varchar(1), primary key (property_ID), foreign key (property_owner_id) "
+            + "property_vacancy_ind varchar(1), property_change_seq bigint not null default 0, "
+            + "primary key (property_ID), key property_change (property_change_seq), "
+            + "key property_owner_change (property_owner_id, property_change_seq), foreign key (property_owner_id) "
             + "references slumlord (slumlord_user_name)";
     private static final String TENANT_FIELDS = "tenant_ID int auto_increment, tenant_first_name varchar(30), "
             + "tenant_last_name varchar(30), tenant_phone_number varchar(10), tenant_dob date, tenant_address "
             + "varchar(40), tenant_city varchar(20), tenant_zipCode varchar(5), tenant_property_ID int, "
-            + "primary key (tenant_ID), foreign key (tenant_property_ID) references property (property_ID)";
+            + "tenant_change_seq bigint not null default 0, primary key (tenant_ID), "
+            + "key tenant_change (tenant_change_seq), foreign key (tenant_property_ID) references property (property_ID)";
+    //partitioned tables cannot have foreign keys, and their unique keys must include the partitioning column
+    private static final String PAYMENT_FIELDS = "payment_ID bigint auto_increment, payment_property_ID int not null, "
+            + "payment_tenant_ID int, payment_amount numeric(8,2) not null, payment_date date not null, "
+            + "payment_recorded_at timestamp default current_timestamp, primary key (payment_ID, payment_date), "
+            + "key payment_property_date (payment_property_ID, payment_date)";
+    //every insert, update and delete on property and tenant draws a number from change_seq, so consumers can
+    //ask for the changes after the last number they saw. Deleted rows leave a tombstone behind, and so do rows
+    //moving to another owner, marked moved, for the feed of the owner they left. A row moving back to an owner
+    //takes away the tombstone it left there, as the row is in that owner's feed again
+    private static final String CHANGE_SEQ_FIELDS = "seq bigint auto_increment, primary key (seq)";
+    private static final String CHANGE_TOMBSTONE_FIELDS = "tombstone_seq bigint not null, "
+            + "tombstone_table char(1) not null, tombstone_row_ID int not null, tombstone_owner_id varchar(30), "
+            + "tombstone_moved boolean not null default false, "
+            + "primary key (tombstone_seq), key tombstone_table_seq (tombstone_table, tombstone_seq), "
+            + "key tombstone_owner_seq (tombstone_owner_id, tombstone_table, tombstone_seq), "
+            + "key tombstone_row (tombstone_table, tombstone_row_ID)";
+    private static final String NEXT_CHANGE_SEQ = "INSERT INTO change_seq VALUES (NULL); ";
+    private static final String TOMBSTONE = "INSERT INTO change_tombstone VALUES (LAST_INSERT_ID(), ";
+    private static final String OWNER_OF = "(SELECT property_owner_id FROM property WHERE property_ID = ";
+    private static final String[][] CHANGE_TRIGGERS = {
+            {"property_change_insert", "BEFORE INSERT ON property FOR EACH ROW BEGIN " + NEXT_CHANGE_SEQ
+                    + "SET NEW.property_change_seq = LAST_INSERT_ID(); END"},
+            {"property_change_update", "BEFORE UPDATE ON property FOR EACH ROW BEGIN " + NEXT_CHANGE_SEQ
+                    + "SET NEW.property_change_seq = LAST_INSERT_ID(); END"},
+            //the tenants move along with their property, each leaving a tombstone with the old owner
+            {"property_change_move", "AFTER UPDATE ON property FOR EACH ROW BEGIN "
+                    + "DECLARE done BOOLEAN DEFAULT FALSE; DECLARE moved INT; "
+                    + "DECLARE tenants CURSOR FOR SELECT tenant_ID FROM tenant "
+                    + "WHERE tenant_property_ID = NEW.property_ID; "
+                    + "DECLARE CONTINUE HANDLER FOR NOT FOUND SET done = TRUE; "
+                    + "IF NOT (OLD.property_owner_id <=> NEW.property_owner_id) THEN "
+                    + "DELETE FROM change_tombstone WHERE tombstone_moved "
+                    + "AND tombstone_owner_id = NEW.property_owner_id "
+                    + "AND ((tombstone_table = 'P' AND tombstone_row_ID = NEW.property_ID) "
+                    + "OR (tombstone_table = 'T' AND tombstone_row_ID IN "
+                    + "(SELECT tenant_ID FROM tenant WHERE tenant_property_ID = NEW.property_ID))); "
+                    + "IF OLD.property_owner_id IS NOT NULL THEN "
+                    + NEXT_CHANGE_SEQ + TOMBSTONE + "'P', OLD.property_ID, OLD.property_owner_id, TRUE); "
+                    + "OPEN tenants; moving: LOOP FETCH tenants INTO moved; IF done THEN LEAVE moving; END IF; "
+                    + NEXT_CHANGE_SEQ + TOMBSTONE + "'T', moved, OLD.property_owner_id, TRUE); "
+                    + "END LOOP; CLOSE tenants; END IF; "
+                    + "UPDATE tenant SET tenant_change_seq = 0 WHERE tenant_property_ID = NEW.property_ID; "
+                    + "END IF; END"},
+            {"property_change_delete", "AFTER DELETE ON property FOR EACH ROW BEGIN " + NEXT_CHANGE_SEQ
+                    + TOMBSTONE + "'P', OLD.property_ID, OLD.property_owner_id, FALSE); END"},
+            {"tenant_change_insert", "BEFORE INSERT ON tenant FOR EACH ROW BEGIN " + NEXT_CHANGE_SEQ
+                    + "SET NEW.tenant_change_seq = LAST_INSERT_ID(); END"},
+            {"tenant_change_update", "BEFORE UPDATE ON tenant FOR EACH ROW BEGIN "
+                    + "DECLARE old_owner, new_owner VARCHAR(30); "
+                    + "IF NOT (OLD.tenant_property_ID <=> NEW.tenant_property_ID) THEN "
+                    + "SET old_owner = " + OWNER_OF + "OLD.tenant_property_ID); "
+                    + "SET new_owner = " + OWNER_OF + "NEW.tenant_property_ID); "
+                    + "IF NOT (old_owner <=> new_owner) THEN "
+                    + "DELETE FROM change_tombstone WHERE tombstone_moved AND tombstone_owner_id = new_owner "
+                    + "AND tombstone_table = 'T' AND tombstone_row_ID = NEW.tenant_ID; "
+                    + "IF old_owner IS NOT NULL THEN "
+                    + NEXT_CHANGE_SEQ + TOMBSTONE + "'T', OLD.tenant_ID, old_owner, TRUE); END IF; "
+                    + "END IF; END IF; "
+                    + NEXT_CHANGE_SEQ + "SET NEW.tenant_change_seq = LAST_INSERT_ID(); END"},
+            {"tenant_change_delete", "AFTER DELETE ON tenant FOR EACH ROW BEGIN " + NEXT_CHANGE_SEQ
+                    + TOMBSTONE + "'T', OLD.tenant_ID, " + OWNER_OF + "OLD.tenant_property_ID), FALSE); END"}
+    };
+    private static final YearMonth PAYMENT_FIRST_MONTH = YearMonth.of(2019, 1);
+    private static final int PAYMENT_MONTHS_AHEAD = 12;
     
     private static Connection db; 
     
@@ -51,12 +121,20 @@ public class DBDriver {
     public DBDriver() {
     }
     
+    /**
+     * Sets up the database on localhost, or, when server URLs such as jdbc:mysql://localhost:3307/ are given,
+     * one shard on each of them.
+     * @param args server URLs of the shards, in shard order
+     */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            provisionShards(Arrays.asList(args));
+            return;
+        }
+
         createDB();
         db = dbConnect();
-        createTable(db, "slumlord");
-        createTable(db, "property");
-        createTable(db, "tenant");
+        createSchema(db);
         
         try { //closes connection to database after tables were created
             db.close();
@@ -65,11 +143,77 @@ public class DBDriver {
                     e.getMessage());
         }
     }
+
+    /**
+     * Sets up the same database on every server of a sharded install, see dao.ShardRouter. Each shard also gets
+     * its own auto increment step and offset, so property IDs stay unique across shards and tell which shard they
+     * are on. Setting those globally takes the SUPER privilege; without it the router still sets them on its own
+     * sessions, but inserts from anywhere else would hand out clashing IDs.
+     * <p>
+     * Properties reference their owner, so slumlord rows have to be inserted on every shard.
+     * @param serverUrls server URLs of the shards, in shard order
+     */
+    public static void provisionShards(List<String> serverUrls) {
+        for (int shard = 0; shard < serverUrls.size(); shard++) {
+            String serverUrl = serverUrls.get(shard);
+            getLogger().log(INFO, "Provisioning shard {0} of {1} on {2}",
+                    new Object[]{shard, serverUrls.size(), serverUrl});
+
+            createDB(serverUrl);
+            Connection conn = dbConnect(serverUrl);
+            if (conn == null) {
+                continue;
+            }
+
+            createSchema(conn);
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("SET GLOBAL auto_increment_increment = " + serverUrls.size());
+                stmt.executeUpdate("SET GLOBAL auto_increment_offset = " + (shard + 1));
+            } catch (SQLException e) {
+                getLogger().log(WARNING, "Could not set the auto increment step on shard {0}. Error: {1}",
+                        new Object[]{shard, e.getMessage()});
+            }
+
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                getLogger().log(WARNING, "Error closing connection to shard {0}. Error: {1}",
+                        new Object[]{shard, e.getMessage()});
+            }
+        }
+    }
+
+    /**
+     * Creates the tables, password hashes, change tracking and payment partitions, skipping whatever already
+     * exists.
+     * @param conn connection to the database
+     */
+    public static void createSchema(Connection conn) {
+        createTable(conn, "slumlord");
+        createTable(conn, "property");
+        createTable(conn, "tenant");
+        createTable(conn, "payment");
+        createTable(conn, "change_seq");
+        createTable(conn, "change_tombstone");
+        addPasswordHashes(conn);
+        addChangeTracking(conn);
+        addPaymentPartitions(conn);
+    }
     
     /**
      * Checks if database already exists, and if database is not found this method will create it.
      */
     public static void createDB() {
+        createDB(DB_URL);
+    }
+
+    /**
+     * Checks if database already exists on the given server, and if database is not found this method will
+     * create it.
+     * @param serverUrl JDBC URL of the server, without a database name
+     */
+    public static void createDB(String serverUrl) {
         boolean exists = false;
         Connection conn = null;
         Statement stmt = null;
@@ -77,8 +221,8 @@ public class DBDriver {
         
         try {
             Class.forName(JDBC_DRIVER); 
-            getLogger().log(INFO, "Connecting to localhost");
-            conn = DriverManager.getConnection(DB_URL, USER, PASS);  
+            getLogger().log(INFO, "Connecting to {0}", serverUrl);
+            conn = DriverManager.getConnection(serverUrl, USER, PASS);  
             
             getLogger().log(INFO, "Checking if database exists already");
             resultSet = conn.getMetaData().getCatalogs();            
@@ -113,8 +257,27 @@ public class DBDriver {
      * @return connection to database
      */
     public static Connection dbConnect() {
+        return dbConnect(DB_URL);
+    }
+
+    /**
+     * A method to connect to the database on the given server.
+     * @param serverUrl JDBC URL of the server, without a database name
+     * @return connection to database
+     */
+    public static Connection dbConnect(String serverUrl) {
+        return dbConnect(serverUrl, "");
+    }
+
+    /**
+     * A method to connect to the database on the given server, with extra connection properties.
+     * @param serverUrl JDBC URL of the server, without a database name
+     * @param properties connection properties, such as ?rewriteBatchedStatements=true, or an empty string
+     * @return connection to database
+     */
+    public static Connection dbConnect(String serverUrl, String properties) {
         Connection conn = null;
-        String connString = DB_URL + DB_NAME;
+        String connString = serverUrl + DB_NAME + properties;
         
         try {
             conn = DriverManager.getConnection(connString, USER, PASS);
@@ -148,7 +311,8 @@ public class DBDriver {
             }
             
             //tries to create table anyways, just in case
-            sql = "CREATE TABLE IF NOT EXISTS " + tableName + " (" + getTableFields(tableName) + ");";
+            sql = "CREATE TABLE IF NOT EXISTS " + tableName + " (" + getTableFields(tableName) + ")"
+                    + getTableOptions(tableName) + ";";
             stmt = conn.createStatement();
             stmt.executeUpdate(sql);
             if (!exists) {
@@ -195,9 +359,159 @@ public class DBDriver {
                 return PROPERTY_FIELDS;
             case "tenant":
                 return TENANT_FIELDS;
+            case "payment":
+                return PAYMENT_FIELDS;
+            case "change_seq":
+                return CHANGE_SEQ_FIELDS;
+            case "change_tombstone":
+                return CHANGE_TOMBSTONE_FIELDS;
         }
         return null;
     }
+
+    /**
+     * Gets the SQL that goes after the column list when a table is created, such as its partitioning
+     * @param tableName name of table
+     * @return SQL string, empty if the table has no options
+     */
+    public static String getTableOptions(String tableName) {
+        if (tableName.equals("payment")) {
+            //one partition per month, so queries by date range only read the months they need and old
+            //months can be archived by dropping their partition. pmax catches anything not yet covered
+            StringBuilder sql = new StringBuilder(" PARTITION BY RANGE COLUMNS(payment_date) (");
+            YearMonth last = YearMonth.now().plusMonths(PAYMENT_MONTHS_AHEAD);
+            for (YearMonth month = PAYMENT_FIRST_MONTH; !month.isAfter(last); month = month.plusMonths(1)) {
+                sql.append(paymentPartition(month)).append(", ");
+            }
+            return sql.append("PARTITION pmax VALUES LESS THAN (MAXVALUE))").toString();
+        }
+        return "";
+    }
+
+    /**
+     * Adds monthly partitions to the payment table for the months ahead that do not have one yet. The web server
+     * runs this daily, so there are always partitions for a year of payments.
+     * @param conn connection to the database
+     */
+    public static void addPaymentPartitions(Connection conn) {
+        addPaymentPartitions(conn, YearMonth.now().plusMonths(PAYMENT_MONTHS_AHEAD));
+    }
+
+    /**
+     * Adds monthly partitions to the payment table up to and including the given month, by splitting them
+     * off the pmax partition. Meant to be run periodically so payments never pile up in pmax.
+     * @param conn connection to the database
+     * @param through the last month that should have its own partition
+     */
+    public static void addPaymentPartitions(Connection conn, YearMonth through) {
+        String query = "SELECT partition_name FROM information_schema.partitions WHERE table_schema = DATABASE() "
+                + "AND table_name = 'payment' AND partition_name <> 'pmax'";
+        YearMonth latest = null;
+
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
+            while (rs.next()) {
+                String name = rs.getString(1); //partitions are named pYYYYMM
+                YearMonth month = YearMonth.of(Integer.parseInt(name.substring(1, 5)),
+                        Integer.parseInt(name.substring(5, 7)));
+                if (latest == null || month.isAfter(latest)) {
+                    latest = month;
+                }
+            }
+
+            if (latest == null || !through.isAfter(latest)) {
+                getLogger().log(INFO, "Payment partitions already cover {0}", through);
+                return;
+            }
+
+            StringBuilder sql = new StringBuilder("ALTER TABLE payment REORGANIZE PARTITION pmax INTO (");
+            for (YearMonth month = latest.plusMonths(1); !month.isAfter(through); month = month.plusMonths(1)) {
+                sql.append(paymentPartition(month)).append(", ");
+            }
+            sql.append("PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+            stmt.executeUpdate(sql.toString());
+            getLogger().log(INFO, "Added payment partitions from {0} through {1}",
+                    new Object[]{latest.plusMonths(1), through});
+        } catch (SQLException e) {
+            getLogger().log(SEVERE, "Error adding payment partitions through {0}. Error: {1}",
+                    new Object[]{through, e.getMessage()});
+        }
+    }
+
+    /**
+     * Adds the password hash column to slumlord tables created before it existed. Slumlords without a hash cannot
+     * log in until one is set with service.Passwords.
+     * @param conn connection to the database
+     */
+    public static void addPasswordHashes(Connection conn) {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = conn.getMetaData().getColumns(null, null, "slumlord", "slumlord_password_hash")) {
+            if (!rs.next()) {
+                stmt.executeUpdate("ALTER TABLE slumlord ADD COLUMN slumlord_password_hash varchar(128)");
+                getLogger().log(INFO, "Added slumlord_password_hash to slumlord table");
+            }
+        } catch (SQLException e) {
+            getLogger().log(SEVERE, "Error adding password hashes. Error: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Sets up the change feed on the property and tenant tables: adds the change sequence columns, and the moved
+     * flag of tombstones, to tables created before they existed, and (re)creates the triggers that maintain them.
+     * Requires the change_seq and change_tombstone tables.
+     * @param conn connection to the database
+     */
+    public static void addChangeTracking(Connection conn) {
+        try (Statement stmt = conn.createStatement()) {
+            for (String table : new String[]{"property", "tenant"}) {
+                String column = table + "_change_seq";
+                try (ResultSet rs = conn.getMetaData().getColumns(null, null, table, column)) {
+                    if (!rs.next()) {
+                        stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN " + column
+                                + " bigint not null default 0, ADD KEY " + table + "_change (" + column + ")");
+                        getLogger().log(INFO, "Added {0} to {1} table", new Object[]{column, table});
+                    }
+                }
+            }
+
+            try (ResultSet rs = conn.getMetaData().getColumns(null, null, "change_tombstone", "tombstone_moved")) {
+                if (!rs.next()) {
+                    stmt.executeUpdate("ALTER TABLE change_tombstone ADD COLUMN tombstone_moved boolean not null "
+                            + "default false, ADD KEY tombstone_row (tombstone_table, tombstone_row_ID)");
+                    getLogger().log(INFO, "Added tombstone_moved to change_tombstone table");
+                }
+            }
+
+            for (String[] trigger : CHANGE_TRIGGERS) {
+                stmt.executeUpdate("DROP TRIGGER IF EXISTS " + trigger[0]);
+                stmt.executeUpdate("CREATE TRIGGER " + trigger[0] + " " + trigger[1]);
+            }
+            getLogger().log(INFO, "Created {0} change tracking triggers", CHANGE_TRIGGERS.length);
+        } catch (SQLException e) {
+            getLogger().log(SEVERE, "Error setting up change tracking. Error: {0}", e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the numbers change_seq has handed out, except the latest. Only the latest is needed to keep the
+     * sequence going, also across restarts, which reset the auto increment counter to the highest row plus one.
+     * Feed consumers never read change_seq, only the numbers copied into the rows and tombstones, so this can run
+     * whatever mark they have reached.
+     * @param conn connection to the database
+     */
+    public static void pruneChangeSeq(Connection conn) {
+        try (Statement stmt = conn.createStatement()) {
+            int rows = stmt.executeUpdate("DELETE FROM change_seq WHERE seq < (SELECT max_seq FROM "
+                    + "(SELECT MAX(seq) AS max_seq FROM change_seq) latest)");
+            getLogger().log(INFO, "Pruned {0} rows from change_seq", rows);
+        } catch (SQLException e) {
+            getLogger().log(WARNING, "Error pruning change_seq. Error: {0}", e.getMessage());
+        }
+    }
+
+    private static String paymentPartition(YearMonth month) {
+        return String.format("PARTITION p%04d%02d VALUES LESS THAN ('%s')",
+                month.getYear(), month.getMonthValue(), month.plusMonths(1).atDay(1));
+    }
     
     /**
      * Gets name of database
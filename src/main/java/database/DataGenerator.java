@@ -0,0 +1,418 @@
+package database;
+
+import dao.PropertyDAO.PropertyBaseData;
+import dao.SlumlordDAO.SlumData;
+import dao.TenantDAO.TenantData;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.SEVERE;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Fills the database set up by {@link DBDriver} with made up slumlords, properties and tenants, for load
+ * testing at a scale we do not have real data for. Usage:
+ * <pre>
+ *     DataGenerator &lt;slumlords&gt; &lt;properties&gt; &lt;tenants&gt; [seed] [serverUrl]
+ * </pre>
+ * The data is skewed the way real data is: a few slumlords own many properties and most own one or two,
+ * and a few cities have most of the properties. Rent follows floor space and city, and vacant properties
+ * have no tenants. The same seed gives the same data, so runs can be compared. The tenant count is a
+ * target; the number generated comes close to it.
+ * <p>
+ * Slumlords are named owner0000001 and so on, and are inserted only once, so running the generator again
+ * adds properties and tenants to the same slumlords. Properties are numbered after the highest property ID
+ * already in the table.
+ * @author Alex Costello
+ */
+public class DataGenerator {
+    private static final String DB_URL = "jdbc:mysql://localhost/";
+    //sends each batch as one multi-row insert instead of a round trip per row
+    private static final String CONNECTION_PROPERTIES = "?rewriteBatchedStatements=true";
+    private static final int BATCH_SIZE = 5000;
+    private static final long DEFAULT_SEED = 2251;
+    private static final double OWNER_SKEW = 1.1;
+    private static final double CITY_SKEW = 0.9;
+    private static final double VACANCY_RATE = 0.07;
+    private static final double BASE_RENT_PER_SQR_FOOT = 0.85;
+    private static final BigDecimal MAX_RENTAL_FEE = new BigDecimal("9999.99");
+    private static final String INSERT_SLUMLORD = "INSERT IGNORE INTO slumlord(slumlord_user_name, "
+            + "slumlord_first_name, slumlord_last_name, slumlord_dob) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_PROPERTY = "INSERT INTO property(property_ID, property_type, "
+            + "property_address, property_city_code, property_numRooms, property_numBrooms, property_garage_count, "
+            + "property_sqr_foot, property_frontY_sqr_foot, property_backY_sqr_foot, property_num_tenants, "
+            + "property_rental_fee, property_last_payment_date, property_owner_id, property_vacancy_ind) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_TENANT = "INSERT INTO tenant(tenant_first_name, tenant_last_name, "
+            + "tenant_phone_number, tenant_dob, tenant_address, tenant_city, tenant_zipCode, tenant_property_ID) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String[] FIRST_NAMES = {"James", "Mary", "John", "Patricia", "Robert", "Jennifer",
+            "Michael", "Linda", "William", "Elizabeth", "David", "Barbara", "Richard", "Susan", "Joseph", "Jessica",
+            "Thomas", "Sarah", "Carlos", "Karen", "Daniel", "Maria", "Matthew", "Lisa", "Anthony", "Nancy", "Mark",
+            "Betty", "Jose", "Sandra", "Steven", "Ashley", "Andrew", "Emily", "Kenneth", "Donna", "Joshua", "Michelle",
+            "Kevin", "Carol", "Brian", "Amanda", "George", "Melissa", "Juan", "Deborah", "Luis", "Stephanie"};
+    private static final String[] LAST_NAMES = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia",
+            "Miller", "Davis", "Rodriguez", "Martinez", "Hernandez", "Lopez", "Gonzalez", "Wilson", "Anderson",
+            "Thomas", "Taylor", "Moore", "Jackson", "Martin", "Lee", "Perez", "Thompson", "White", "Harris",
+            "Sanchez", "Clark", "Ramirez", "Lewis", "Robinson", "Walker", "Young", "Allen", "King", "Wright",
+            "Torres", "Nguyen", "Hill", "Flores", "Green", "Chavez", "Baca", "Montoya", "Trujillo", "Romero"};
+    private static final String[] STREETS = {"Main", "Central", "Lomas", "Menaul", "Montgomery", "Academy",
+            "Paseo del Norte", "Coors", "Rio Grande", "Candelaria", "Indian School", "Constitution", "Zuni",
+            "Gibson", "Girard", "Carlisle", "San Mateo", "Louisiana", "Wyoming", "Juan Tabo", "Tramway", "Eubank",
+            "Osuna", "Jefferson", "Washington", "School", "Demo", "Plumb Branch", "Cerrillos", "Canyon", "Alameda",
+            "Griegos", "Pennsylvania", "Moon", "Chelwood", "Dallas", "Texas", "Utah", "Virginia", "Arno"};
+    private static final String[] STREET_SUFFIXES = {"St.", "Ave.", "Rd.", "Dr.", "Ln.", "Ct.", "Blvd.", "Way"};
+    //most popular first; each city has a code, a name and the first three digits of its zip codes
+    private static final String[][] CITIES = {{"ABQ", "Albuquerque", "871"}, {"SAF", "Santa Fe", "875"},
+            {"LCR", "Las Cruces", "880"}, {"RRA", "Rio Rancho", "871"}, {"ROS", "Roswell", "882"},
+            {"FAR", "Farmington", "874"}, {"CLO", "Clovis", "881"}, {"HOB", "Hobbs", "882"},
+            {"ALA", "Alamogordo", "883"}, {"CAR", "Carlsbad", "882"}, {"GAL", "Gallup", "873"},
+            {"LOV", "Los Lunas", "870"}, {"SIL", "Silver City", "880"}, {"TAO", "Taos", "875"},
+            {"POR", "Portales", "881"}, {"ESP", "Espanola", "875"}, {"DEM", "Deming", "880"},
+            {"GRA", "Grants", "870"}, {"BEL", "Belen", "870"}, {"RUI", "Ruidoso", "883"}};
+    //apartments, single family houses and villas
+    private static final String[] PROPERTY_TYPES = {"A", "S", "V"};
+    private static final double[] PROPERTY_TYPE_WEIGHTS = {0.5, 0.38, 0.12};
+    private static final double[] ROOM_WEIGHTS = {0.14, 0.3, 0.3, 0.15, 0.08, 0.03};
+
+    private final Random random;
+    private final Zipf cities = new Zipf(CITIES.length, CITY_SKEW);
+    private final double[] cityRentFactors = new double[CITIES.length];
+
+    /**
+     * Picks numbers from 0 to n - 1, with number k picked in proportion to 1 / (k + 1)^s
+     */
+    static final class Zipf {
+        private final double[] cumulative;
+
+        /**
+         * @param n how many numbers to pick from
+         * @param s the skew, 0 for even odds; around 1 for the usual "few have most" distribution
+         */
+        Zipf(int n, double s) {
+            if (n < 1) {
+                throw new IllegalArgumentException("n < 1");
+            }
+            cumulative = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1 / Math.pow(k + 1, s);
+                cumulative[k] = sum;
+            }
+            for (int k = 0; k < n; k++) {
+                cumulative[k] /= sum;
+            }
+        }
+
+        int next(Random random) {
+            int found = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(found >= 0 ? found : -found - 1, cumulative.length - 1);
+        }
+    }
+
+    /**
+     * A made up property, with the tenants living there
+     */
+    static final class GeneratedProperty {
+        final PropertyBaseData property;
+        final List<TenantData> tenants;
+
+        GeneratedProperty(PropertyBaseData property, List<TenantData> tenants) {
+            this.property = property;
+            this.tenants = tenants;
+        }
+    }
+
+    /**
+     * @param seed seed of the random numbers; the same seed gives the same data
+     */
+    public DataGenerator(long seed) {
+        random = new Random(seed);
+        //the more popular the city, the higher the rent
+        for (int i = 0; i < CITIES.length; i++) {
+            cityRentFactors[i] = 1.3 - 0.6 * i / (CITIES.length - 1);
+        }
+    }
+
+    /**
+     * Generates data into the local database, or the server given.
+     * @param args slumlord, property and tenant counts, then optionally the seed and server URL
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("usage: DataGenerator <slumlords> <properties> <tenants> [seed] [serverUrl]");
+            System.exit(2);
+        }
+
+        int slumlords = Integer.parseInt(args[0]);
+        int properties = Integer.parseInt(args[1]);
+        int tenants = Integer.parseInt(args[2]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_SEED;
+        String serverUrl = args.length > 4 ? args[4] : DB_URL;
+
+        DBDriver.createDB(serverUrl);
+        Connection conn = DBDriver.dbConnect(serverUrl, CONNECTION_PROPERTIES);
+        if (conn == null) {
+            System.exit(1);
+        }
+
+        try {
+            DBDriver.createSchema(conn);
+            new DataGenerator(seed).generate(conn, slumlords, properties, tenants);
+        } catch (SQLException e) {
+            getLogger().log(SEVERE, "Error generating data. Error: {0}", e.getMessage());
+            System.exit(1);
+        } finally {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                getLogger().log(WARNING, "Error closing database connection after running. Error: {0}",
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Inserts the slumlords, then the properties with their tenants, committing every batch.
+     * @param conn connection to the database
+     * @param slumlords number of slumlords
+     * @param properties number of properties
+     * @param tenants number of tenants to aim for
+     * @return the number of tenants inserted
+     * @throws SQLException if the data cannot be inserted
+     */
+    public int generate(Connection conn, int slumlords, int properties, int tenants) throws SQLException {
+        long start = System.currentTimeMillis();
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+
+        try (Statement stmt = conn.createStatement()) {
+            //the rows are known to be consistent, so skip checking them one by one
+            stmt.execute("SET unique_checks = 0");
+            stmt.execute("SET foreign_key_checks = 0");
+
+            insertSlumlords(conn, slumlords);
+            int inserted = insertProperties(conn, slumlords, properties, tenants, firstPropertyId(conn));
+
+            stmt.execute("SET foreign_key_checks = 1");
+            stmt.execute("SET unique_checks = 1");
+            getLogger().log(INFO, "Generated {0} slumlords, {1} properties and {2} tenants in {3} ms",
+                    new Object[]{slumlords, properties, inserted, System.currentTimeMillis() - start});
+            return inserted;
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void insertSlumlords(Connection conn, int count) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(INSERT_SLUMLORD)) {
+            for (int n = 0; n < count; n++) {
+                SlumData slumlord = slumlord(n);
+                ps.setString(1, slumlord.getUserName());
+                ps.setString(2, slumlord.getFirstName());
+                ps.setString(3, slumlord.getLastName());
+                ps.setDate(4, Date.valueOf(slumlord.getDob()));
+                ps.addBatch();
+
+                if ((n + 1) % BATCH_SIZE == 0 || n + 1 == count) {
+                    ps.executeBatch();
+                    conn.commit();
+                    getLogger().log(INFO, "Inserted {0} of {1} slumlords", new Object[]{n + 1, count});
+                }
+            }
+        }
+    }
+
+    private int insertProperties(Connection conn, int slumlords, int count, int tenants, int firstId)
+            throws SQLException {
+        Zipf owners = new Zipf(slumlords, OWNER_SKEW);
+        double tenantsPerOccupied = count == 0 ? 0 : tenants / (count * (1 - VACANCY_RATE));
+        List<TenantData> pending = new ArrayList<>();
+        int inserted = 0;
+
+        try (PreparedStatement properties = conn.prepareStatement(INSERT_PROPERTY);
+             PreparedStatement tenantRows = conn.prepareStatement(INSERT_TENANT)) {
+            for (int n = 0; n < count; n++) {
+                GeneratedProperty generated = property(firstId + n, owners, tenantsPerOccupied);
+                bindProperty(properties, generated.property);
+                properties.addBatch();
+                pending.addAll(generated.tenants);
+
+                if ((n + 1) % BATCH_SIZE == 0 || n + 1 == count) {
+                    properties.executeBatch();
+                    for (TenantData tenant : pending) {
+                        bindTenant(tenantRows, tenant);
+                        tenantRows.addBatch();
+                    }
+                    tenantRows.executeBatch();
+                    conn.commit();
+
+                    inserted += pending.size();
+                    pending.clear();
+                    getLogger().log(INFO, "Inserted {0} of {1} properties and {2} tenants",
+                            new Object[]{n + 1, count, inserted});
+                }
+            }
+        }
+        return inserted;
+    }
+
+    private static int firstPropertyId(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(property_ID), 0) FROM property")) {
+            rs.next();
+            return rs.getInt(1) + 1;
+        }
+    }
+
+    private static void bindProperty(PreparedStatement ps, PropertyBaseData p) throws SQLException {
+        int i = 0;
+        ps.setInt(++i, p.getPropertyId());
+        ps.setString(++i, p.getPropertyType());
+        ps.setString(++i, p.getPropertyAddress());
+        ps.setString(++i, p.getCityCode());
+        ps.setInt(++i, p.getNumberOfRooms());
+        ps.setInt(++i, p.getNumberOfBathrooms());
+        ps.setInt(++i, p.getGarageCount());
+        ps.setBigDecimal(++i, p.getSquareFootage());
+        ps.setBigDecimal(++i, p.getFrontYardFootage());
+        ps.setBigDecimal(++i, p.getBackyardFootage());
+        ps.setInt(++i, p.getNumberOfTenants());
+        ps.setBigDecimal(++i, p.getRentalFee());
+        ps.setDate(++i, Date.valueOf(p.getLastPaymentDate()));
+        ps.setString(++i, p.getOwnerID());
+        ps.setString(++i, p.getVacancyIndicator());
+    }
+
+    private static void bindTenant(PreparedStatement ps, TenantData t) throws SQLException {
+        int i = 0;
+        ps.setString(++i, t.getFirstName());
+        ps.setString(++i, t.getLastName());
+        ps.setString(++i, t.getPhoneNumber());
+        ps.setDate(++i, Date.valueOf(t.getDob()));
+        ps.setString(++i, t.getAddress());
+        ps.setString(++i, t.getCity());
+        ps.setString(++i, t.getZipCode());
+        ps.setInt(++i, t.getPropertyId());
+    }
+
+    /**
+     * @param n number of the slumlord, from 0
+     * @return the slumlord
+     */
+    SlumData slumlord(int n) {
+        LocalDate dob = LocalDate.of(1940, 1, 1).plusDays(random.nextInt(60 * 365));
+        return new SlumData(0, ownerName(n), pick(FIRST_NAMES), pick(LAST_NAMES), dob);
+    }
+
+    /**
+     * @param n number of a slumlord, from 0
+     * @return the user name of the slumlord
+     */
+    static String ownerName(int n) {
+        return String.format("owner%07d", n);
+    }
+
+    /**
+     * @param id ID of the property
+     * @param owners picks the owner
+     * @param tenantsPerOccupied how many tenants an occupied property has on average
+     * @return the property, with its tenants
+     */
+    GeneratedProperty property(int id, Zipf owners, double tenantsPerOccupied) {
+        int city = cities.next(random);
+        String type = PROPERTY_TYPES[pickWeighted(PROPERTY_TYPE_WEIGHTS)];
+        boolean apartment = type.equals("A");
+        int rooms = pickWeighted(ROOM_WEIGHTS) + 1;
+        int bathrooms = Math.max(1, rooms / 2 + (random.nextBoolean() ? 1 : 0));
+        int garages = apartment ? 0 : random.nextInt(Math.min(rooms, 3) + 1);
+        double floor = Math.max(300, 350 + 380 * rooms + 150 * random.nextGaussian());
+        double front = apartment ? 0 : Math.max(0, 400 + 200 * random.nextGaussian());
+        double back = apartment ? 0 : Math.max(0, 900 + 500 * random.nextGaussian());
+        //rent per square foot is roughly log-normal around the city's usual rate
+        BigDecimal rent = BigDecimal.valueOf(floor * BASE_RENT_PER_SQR_FOOT * cityRentFactors[city]
+                * Math.exp(0.25 * random.nextGaussian())).setScale(0, RoundingMode.HALF_UP).setScale(2);
+        boolean vacant = random.nextDouble() < VACANCY_RATE;
+        int tenantCount = vacant ? 0 : Math.min(2 * rooms, 1 + poisson(Math.max(0, tenantsPerOccupied - 1)));
+        String address = address(id);
+
+        PropertyBaseData property = new PropertyBaseData(id, type, address, CITIES[city][0], rooms, bathrooms,
+                garages, BigDecimal.valueOf(Math.round(floor)), BigDecimal.valueOf(Math.round(front)),
+                BigDecimal.valueOf(Math.round(back)), tenantCount, rent.min(MAX_RENTAL_FEE),
+                LocalDate.now().minusDays(random.nextInt(vacant ? 365 : 60)), ownerName(owners.next(random)),
+                vacant ? "V" : "O");
+
+        List<TenantData> tenants = new ArrayList<>(tenantCount);
+        for (int t = 0; t < tenantCount; t++) {
+            tenants.add(new TenantData(0, pick(FIRST_NAMES), pick(LAST_NAMES),
+                    LocalDate.now().minusYears(18).minusDays(random.nextInt(62 * 365)),
+                    String.format("505%07d", random.nextInt(10_000_000)), address, CITIES[city][1],
+                    CITIES[city][2] + String.format("%02d", random.nextInt(100)), id));
+        }
+        return new GeneratedProperty(property, tenants);
+    }
+
+    /**
+     * Addresses are made from the property ID, so they are unique as the table requires.
+     * @param id ID of the property
+     * @return the street address
+     */
+    static String address(int id) {
+        int streets = STREETS.length * STREET_SUFFIXES.length;
+        int street = id % streets;
+        return (id / streets + 1) + " " + STREETS[street % STREETS.length] + " "
+                + STREET_SUFFIXES[street / STREETS.length];
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private int pickWeighted(double[] weights) {
+        double r = random.nextDouble();
+        for (int i = 0; i < weights.length - 1; i++) {
+            r -= weights[i];
+            if (r < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    private int poisson(double mean) {
+        double limit = Math.exp(-mean);
+        double product = random.nextDouble();
+        int k = 0;
+        while (product > limit) {
+            product *= random.nextDouble();
+            k++;
+        }
+        return k;
+    }
+
+    /**
+     * For logging errors and information about running this class.
+     * @return the logged action
+     */
+    private static Logger getLogger() {
+        return Logger.getLogger(DataGenerator.class.getName());
+    }
+}
@@ -3,20 +3,23 @@ package driver;
 
 import Serialize.SerialSender;
 import dao.DAOFactory;
+import dao.PaymentDAO;
+import dao.PaymentDAO.PaymentData;
 import dao.PropertyDAO.*;
 import dao.PropertyDAO;
 import dao.SlumlordDAO;
 import dao.TenantDAO;
+import dao.WriteBehindPropertyDAO;
 import database.DBDriver;
+import driver.NoticeScheduler.Notice;
 import util.DAOUtils;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.time.LocalDate;
-import java.time.Period;
+import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -29,24 +32,34 @@ import static java.util.logging.Level.*;
  */
 
 public class Driver {
+    static final int FEE_BUFFER_SIZE = 1000;
+    static final long FEE_FLUSH_INTERVAL_MS = 200;
+
     String OwnerID = "ID"; //Place Holder until I can grab data from database and website
     String todo = null; //What the driver is supposed to do
-    PropertyDAO DAO = DAOFactory.create(PropertyDAO.class);
-    SlumlordDAO SDAO = DAOFactory.create(SlumlordDAO.class);
-    TenantDAO TDAO = DAOFactory.create(TenantDAO.class);
+    // rent changes are buffered and written in batches behind the caller; reads see them right away
+    PropertyDAO DAO = new WriteBehindPropertyDAO(DAOFactory.createLazily(PropertyDAO.class), FEE_BUFFER_SIZE,
+            FEE_FLUSH_INTERVAL_MS, this::feeDropped);
+    SlumlordDAO SDAO = DAOFactory.createLazily(SlumlordDAO.class);
+    TenantDAO TDAO = DAOFactory.createLazily(TenantDAO.class);
+    PaymentDAO PDAO = DAOFactory.createLazily(PaymentDAO.class);
     DBDriver DBD = new DBDriver();
     BigDecimal rent;
+    NoticeScheduler notices = new NoticeScheduler((notice, property) ->
+            getLogger().log(INFO, "{0} notice due for [{1}]", new Object[]{notice, property.getPropertyAddress()}));
+    boolean noticesScheduled = false;
 
-    public Driver() {
-        try {
-            List<PropertyDAO.PropertyBaseData> Properties = DAO.listAllPropertiesByOwner(OwnerID);
-            getLogger().log(INFO, "Grabbing property list");
-        } catch (SQLException e) {
-            System.out.println("SQL Exception occurred");
-            System.out.println(e.getErrorCode());
-            getLogger().log(WARNING, "SQL try-catch caught something");
-        }
-
+    /**
+     * Connects the DAOs and loads the notice schedule ahead of the first command, which otherwise
+     * does both on demand
+     * @throws SQLException
+     */
+    public void warmUp() throws SQLException {
+        DAOFactory.warmUp(DAO);
+        DAOFactory.warmUp(SDAO);
+        DAOFactory.warmUp(TDAO);
+        DAOFactory.warmUp(PDAO);
+        catchUpNotices();
     }
 
     /**
@@ -106,6 +119,21 @@ public class Driver {
         return Logger.getLogger(Driver.class.getName());
     }
 
+    /**
+     * Brings the notice schedule up to date with property changes and fires the notices due today
+     * @throws SQLException
+     */
+    private synchronized void catchUpNotices() throws SQLException {
+        if (!noticesScheduled) {
+            getLogger().log(INFO, "Grabbing property list");
+            notices.rebuild(DAO, LocalDate.now());
+            noticesScheduled = true;
+        } else {
+            notices.refresh(DAO);
+        }
+        notices.advance(LocalDate.now());
+    }
+
     /**
      * Serializes the list of properties by owner
      * @param ownerID The owner that is requesting the info
@@ -154,18 +182,8 @@ public class Driver {
      * @throws SQLException
      */
     public List<PropertyBaseData> upcomingRentalNotice(String ownerID) throws SQLException {
-        List<PropertyBaseData> result = DAO.listAllPropertiesByOwner(ownerID);
-
-        result = result.stream()
-                .map(property -> {
-                    int daysTillRentDue = Period.between(LocalDate.now(), property.getLastPaymentDate()).getDays();
-
-                    if (daysTillRentDue == 15)
-                        return property;
-                    else return null;
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        catchUpNotices();
+        List<PropertyBaseData> result = notices.dueToday(ownerID, Notice.RENT_DUE);
 
         getLogger().log(INFO, "Rent due notice sent to [{0}]", DAOUtils.mkPrintList(result.stream().map(PropertyBaseData::getPropertyAddress).collect(Collectors.toList())));
         SerialSender.send(result);
@@ -179,19 +197,10 @@ public class Driver {
      * @throws SQLException
      */
     public List<PropertyBaseData> firstNoPay(String ownerID) throws SQLException {
-        List<PropertyBaseData> result = DAO.listAllPropertiesByOwner(ownerID);
-
-        result = result.stream()
-                .map(property -> {
-                    int daysSincePaid = Period.between(LocalDate.now(), property.getLastPaymentDate()).getDays();
-
-                    if (daysSincePaid >= 37) {
-                        rent.add(property.getRentalFee().multiply(new BigDecimal(1.15)));
-                        return property;
-                    } else return null;
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        catchUpNotices();
+        List<PropertyBaseData> result = notices.reachedAtLeast(ownerID, Notice.FIRST_LATE);
+
+        result.forEach(property -> rent.add(property.getRentalFee().multiply(new BigDecimal(1.15))));
         getLogger().log(INFO, "Rent due notice sent to [{0}]", DAOUtils.mkPrintList(result.stream().map(PropertyBaseData::getPropertyAddress).collect(Collectors.toList())));
         return result;
     }
@@ -203,19 +212,10 @@ public class Driver {
      * @throws SQLException
      */
     public List<PropertyBaseData> SecondNoPay(String ownerID) throws SQLException {
-        List<PropertyBaseData> result = DAO.listAllPropertiesByOwner(ownerID);
-
-        result = result.stream()
-                .map(property -> {
-                    int daysSincePaid = Period.between(LocalDate.now(), property.getLastPaymentDate()).getDays();
-
-                    if (daysSincePaid >= 60) {
-                        rent.add(property.getRentalFee().multiply(new BigDecimal(1.225)));
-                        return property;
-                    } else return null;
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        catchUpNotices();
+        List<PropertyBaseData> result = notices.reachedAtLeast(ownerID, Notice.SECOND_LATE);
+
+        result.forEach(property -> rent.add(property.getRentalFee().multiply(new BigDecimal(1.225))));
         getLogger().log(INFO, "Second Rent due notice sent to [{0}]", DAOUtils.mkPrintList(result.stream().map(PropertyBaseData::getPropertyAddress).collect(Collectors.toList())));
         return result;
     }
@@ -227,23 +227,78 @@ public class Driver {
      * @throws SQLException
      */
     public List<PropertyBaseData> ThirdNoPay(String ownerID) throws SQLException {
-        List<PropertyBaseData> result = DAO.listAllPropertiesByOwner(ownerID);
+        catchUpNotices();
+        List<PropertyBaseData> result = notices.reachedAtLeast(ownerID, Notice.EVICTION);
         List<PropertyBaseData> vacancies = DAO.listAllVacantProperties();
-        result = result.stream()
-                .map(property -> {
-                    int daysSincePaid = Period.between(LocalDate.now(), property.getLastPaymentDate()).getDays();
-
-                    if (daysSincePaid >= 75)
-                        return property;
-                    else return null;
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
         vacancies.addAll(result);
         getLogger().log(INFO, "Eviction notice sent to [{0}]", DAOUtils.mkPrintList(result.stream().map(PropertyBaseData::getPropertyAddress).collect(Collectors.toList())));
         return result;
     }
 
+    /**
+     * Records a batch of payments in the ledger, then moves the notices of the properties paid for
+     * @param payments The payments received
+     * @return The number of payments recorded
+     * @throws SQLException if the batch cannot be recorded, in which case none of it is
+     */
+    public int paymentsReceived(List<PaymentData> payments) throws SQLException {
+        int recorded = PDAO.recordPayments(payments);
+        payments.forEach(payment -> notices.onPayment(payment.getPropertyId(), payment.getPaymentDate()));
+        return recorded;
+    }
+
+    /**
+     * Records a payment and moves the property's notices to start from it
+     * @param propertyId The property paid for
+     * @param amount The amount paid
+     * @param paymentDate The day of the payment
+     * @throws SQLException if the payment cannot be recorded, in which case the notices stay as they were
+     */
+    public void paymentReceived(int propertyId, BigDecimal amount, LocalDate paymentDate) throws SQLException {
+        paymentsReceived(Collections.singletonList(new PaymentData(0, propertyId, null, amount, paymentDate)));
+    }
+
+    /**
+     * Changes the rent of a property and the notices still to be sent for it. Nothing changes if
+     * the property is not the owner's. The new rent is written behind this call; if the database
+     * never takes it, the notices go back to the rent it has, see {@link #feeDropped}.
+     * @param ownerID The owner of the property
+     * @param propertyId The property
+     * @param newRentalFee Its new rent
+     * @return whether the rent was changed
+     * @throws SQLException if the owner of the property cannot be looked up
+     */
+    public boolean changeRentalFee(String ownerID, int propertyId, BigDecimal newRentalFee) throws SQLException {
+        if (!ownerID.equals(DAO.lookupPropertyOwner(propertyId))) {
+            getLogger().log(WARNING, "Property {0} is not {1}''s, rent left as it was",
+                    new Object[]{propertyId, ownerID});
+            return false;
+        }
+
+        DAO.updateRentalFee(newRentalFee, propertyId, ownerID);
+        notices.onFeeChange(propertyId, newRentalFee);
+        return true;
+    }
+
+    /**
+     * Puts the rent the database kept back into the notices, after a buffered rent change was
+     * given up on
+     * @param update The rent change given up on
+     */
+    void feeDropped(RentalFeeUpdate update) {
+        try {
+            for (PropertyBaseData property : DAO.listAllPropertiesByOwner(update.getOwnerId())) {
+                if (property.getPropertyId() == update.getPropertyId()) {
+                    notices.onFeeChange(property.getPropertyId(), property.getRentalFee());
+                }
+            }
+        } catch (SQLException e) {
+            getLogger().log(WARNING, "Rent of property {0} not reloaded after a dropped change ({1}), "
+                    + "the notices keep {2} until the next rebuild",
+                    new Object[]{update.getPropertyId(), e.getMessage(), update.getRentalFee()});
+        }
+    }
+
     /**
      * A list of all current vacancies
      * @return The list of all current vacancies
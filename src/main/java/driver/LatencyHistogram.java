@@ -0,0 +1,100 @@
+package driver;
+
+/**
+ * Counts latencies in microseconds into buckets that get wider as the latencies get longer, so any
+ * percentile can be read back to within about 3% without keeping every sample. Values under 64 are
+ * counted exactly; above that every power of two is split into 32 buckets.
+ * <p>
+ * Not thread safe: give each thread its own histogram and {@link #add} them up at the end.
+ *
+ * @author Dexter Elliott
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT = 2 * SUB_BUCKETS;
+
+    private final long[] counts = new long[EXACT + (64 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS];
+    private long total;
+    private long sum;
+    private long max;
+
+    /**
+     * Counts a latency
+     * @param micros The latency in microseconds; negative values count as 0
+     */
+    public void record(long micros) {
+        micros = Math.max(0, micros);
+        counts[index(micros)]++;
+        total++;
+        sum += micros;
+        max = Math.max(max, micros);
+    }
+
+    /**
+     * Adds the counts of another histogram to this one
+     * @param other The histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * @return The number of latencies counted
+     */
+    public long count() {
+        return total;
+    }
+
+    /**
+     * @return The longest latency counted, in microseconds
+     */
+    public long max() {
+        return max;
+    }
+
+    /**
+     * @return The average latency, in microseconds
+     */
+    public double mean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+    /**
+     * Finds the latency that the given percentage of latencies are at or under
+     * @param percent From 0 to 100, for example 99.9
+     * @return The latency in microseconds, rounded up to the top of its bucket
+     */
+    public long percentile(double percent) {
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percent / 100 * total));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(highestIn(i), max);
+        }
+        return max;
+    }
+
+    static int index(long micros) {
+        if (micros < EXACT) return (int) micros;
+
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return EXACT + (shift - 1) * SUB_BUCKETS + (int) (micros >>> shift) - SUB_BUCKETS;
+    }
+
+    static long highestIn(int index) {
+        if (index < EXACT) return index;
+
+        int shift = (index - EXACT) / SUB_BUCKETS + 1;
+        long lowest = (long) ((index - EXACT) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
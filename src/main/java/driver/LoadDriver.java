@@ -0,0 +1,360 @@
+package driver;
+
+import dao.BaseDAO;
+import dao.DAOFactory;
+import dao.PropertyDAO;
+import dao.SlumlordDAO;
+import dao.TenantDAO;
+import service.SlumlordConnection;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Load test for the DAOs and the driver commands, meant to be run against a database filled by
+ * database.DataGenerator. Usage:
+ * <pre>
+ *     LoadDriver [workload] [threads] [seconds] [warmupSeconds] [opsPerSecond]
+ * </pre>
+ * The workload is {@code read} or {@code mixed}, which also updates rental fees. Each thread has its
+ * own connection and DAOs and runs operations picked at random by weight, for owners and
+ * properties sampled from the database. Operations in the warm-up are not counted.
+ * <p>
+ * Without a rate every thread starts its next operation as soon as the last one is done. With a
+ * rate, operations are started on a fixed schedule and latency is measured from when an operation
+ * was due, not when it started, so a slow database shows up as latency instead of quietly lowering
+ * the load.
+ * <p>
+ * At the end it prints the throughput and latency percentiles of every operation.
+ *
+ * @author Dexter Elliott
+ */
+public class LoadDriver {
+    private static final int SAMPLE_CHUNKS = 50;
+    private static final int SAMPLE_CHUNK_SIZE = 200;
+    private static final int LOOKUP_BATCH = 10;
+    // keep the loggers from being collected, which would lose the levels set on them
+    private static final List<Logger> QUIETED = new ArrayList<>();
+
+    private final List<Operation> operations = new ArrayList<>();
+    private final List<Integer> propertyIds = new ArrayList<>();
+    private final List<String> owners = new ArrayList<>();
+    private final ThreadLocal<Worker> workers = new ThreadLocal<>();
+    private final Driver driver = new Driver();
+    private double totalWeight;
+
+    /**
+     * One kind of request in the workload
+     */
+    @FunctionalInterface
+    interface Action {
+        void run(Worker worker, Random random) throws Exception;
+    }
+
+    private static final class Operation {
+        private final String name;
+        private final double weight;
+        private final Action action;
+
+        Operation(String name, double weight, Action action) {
+            this.name = name;
+            this.weight = weight;
+            this.action = action;
+        }
+    }
+
+    /**
+     * The connection and DAOs of one thread, and what it has measured
+     */
+    final class Worker implements AutoCloseable {
+        private final Connection conn;
+        final PropertyDAO propertyDAO;
+        final TenantDAO tenantDAO;
+        final SlumlordDAO slumlordDAO;
+        private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+        private final Map<String, Long> errors = new LinkedHashMap<>();
+
+        Worker(Connection conn) {
+            this.conn = conn;
+            this.propertyDAO = DAOFactory.create(PropertyDAO.class, conn);
+            this.tenantDAO = DAOFactory.create(TenantDAO.class, conn);
+            this.slumlordDAO = DAOFactory.create(SlumlordDAO.class, conn);
+        }
+
+        String owner(Random random) {
+            return owners.get(random.nextInt(owners.size()));
+        }
+
+        int propertyId(Random random) {
+            return propertyIds.get(random.nextInt(propertyIds.size()));
+        }
+
+        @Override
+        public void close() throws SQLException {
+            DAOFactory.release(conn);
+            conn.close();
+        }
+    }
+
+    /**
+     * Will log info in case of an error
+     *
+     * @return the logged action
+     */
+    private static Logger getLogger() {
+        return Logger.getLogger(LoadDriver.class.getName());
+    }
+
+    public static void main(String[] args) throws Exception {
+        String workload = args.length > 0 ? args[0] : "read";
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+        int warmupSeconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        double opsPerSecond = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+
+        if (!workload.equals("read") && !workload.equals("mixed")) {
+            System.err.println("usage: LoadDriver [read|mixed] [threads] [seconds] [warmupSeconds] [opsPerSecond]");
+            System.exit(2);
+        }
+
+        // one line per query would drown the results
+        for (String name : new String[]{"dao", "driver.Driver", "service.SlumlordConnection"}) {
+            Logger logger = Logger.getLogger(name);
+            logger.setLevel(WARNING);
+            QUIETED.add(logger);
+        }
+
+        LoadDriver load = new LoadDriver(workload.equals("mixed"));
+        System.out.print(load.run(threads, seconds, warmupSeconds, opsPerSecond));
+    }
+
+    /**
+     * @param writes whether the workload includes writes
+     */
+    LoadDriver(boolean writes) {
+        operation("property.listByOwner", 30, (w, r) -> w.propertyDAO.listAllPropertiesByOwner(w.owner(r)));
+        operation("property.listWithTenantsByOwner", 10,
+                (w, r) -> w.propertyDAO.listAllPropertiesWithTenantsByOwner(w.owner(r)));
+        operation("tenant.listByProperty", 20, (w, r) -> w.tenantDAO.listTenantsByProperty(w.propertyId(r)));
+        operation("tenant.listByProperties", 5, (w, r) -> {
+            List<Integer> ids = new ArrayList<>();
+            for (int i = 0; i < LOOKUP_BATCH; i++) ids.add(w.propertyId(r));
+            w.tenantDAO.listTenantByProperties(ids);
+        });
+        operation("slumlord.lookup", 15, (w, r) -> w.slumlordDAO.lookupSlumData(w.owner(r)));
+        operation("property.listVacant", 1, (w, r) -> w.propertyDAO.listAllVacantProperties());
+        operation("driver.totalRentDue", 5, (w, r) -> driver.totalRentDue(w.owner(r)));
+        operation("driver.upcomingRentalNotice", 5, (w, r) -> driver.upcomingRentalNotice(w.owner(r)));
+
+        if (writes) {
+            operation("property.updateRentalFee", 10, (w, r) -> {
+                int sampled = r.nextInt(propertyIds.size());
+                w.propertyDAO.updateRentalFee(BigDecimal.valueOf(500 + r.nextInt(2000)).setScale(2),
+                        propertyIds.get(sampled), owners.get(sampled));
+            });
+        }
+
+        // the driver is shared like it would be in a server, but every thread reaches the
+        // database over its own connection
+        driver.DAO = perThread(PropertyDAO.class, w -> w.propertyDAO);
+        driver.TDAO = perThread(TenantDAO.class, w -> w.tenantDAO);
+        driver.SDAO = perThread(SlumlordDAO.class, w -> w.slumlordDAO);
+    }
+
+    private void operation(String name, double weight, Action action) {
+        operations.add(new Operation(name, weight, action));
+        totalWeight += weight;
+    }
+
+    /**
+     * @return a DAO that hands every call to the DAO of the calling thread's worker
+     */
+    private <T extends BaseDAO> T perThread(Class<T> daoClass, Function<Worker, T> dao) {
+        return daoClass.cast(Proxy.newProxyInstance(daoClass.getClassLoader(), new Class<?>[]{daoClass},
+                (proxy, method, args) -> {
+                    try {
+                        return method.invoke(dao.apply(workers.get()), args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                }));
+    }
+
+    /**
+     * Runs the workload and reports on it
+     *
+     * @param threads       The number of threads sending requests
+     * @param seconds       How long to measure for
+     * @param warmupSeconds How long to run before measuring
+     * @param opsPerSecond  The total rate to start operations at, or 0 to go as fast as possible
+     * @return The report
+     * @throws Exception if the database cannot be reached
+     */
+    String run(int threads, int seconds, int warmupSeconds, double opsPerSecond) throws Exception {
+        List<Worker> all = new ArrayList<>();
+        for (int i = 0; i < threads; i++) all.add(new Worker(SlumlordConnection.openInstance(System.getenv())));
+
+        try {
+            sample(all.get(0).conn);
+            workers.set(all.get(0));
+            driver.warmUp();
+            getLogger().log(INFO, "Sampled {0} properties of {1} owners; warming up for {2} s",
+                    new Object[]{propertyIds.size(), owners.size(), warmupSeconds});
+
+            long startNanos = System.nanoTime();
+            long measureFrom = startNanos + TimeUnit.SECONDS.toNanos(warmupSeconds);
+            long measureUntil = measureFrom + TimeUnit.SECONDS.toNanos(seconds);
+            long intervalNanos = opsPerSecond > 0 ? (long) (threads * 1e9 / opsPerSecond) : 0;
+            List<Thread> running = new ArrayList<>();
+
+            for (int i = 0; i < threads; i++) {
+                Worker worker = all.get(i);
+                long offset = intervalNanos * i / threads;
+                Thread t = new Thread(() -> work(worker, startNanos + offset, intervalNanos, measureFrom, measureUntil),
+                        "load-" + i);
+                t.start();
+                running.add(t);
+            }
+            for (Thread t : running) t.join();
+
+            return report(all, seconds);
+        } finally {
+            for (Worker worker : all) worker.close();
+        }
+    }
+
+    private void work(Worker worker, long firstDue, long intervalNanos, long measureFrom, long measureUntil) {
+        workers.set(worker);
+        Random random = ThreadLocalRandom.current();
+        long due = firstDue;
+
+        while (true) {
+            long now = System.nanoTime();
+
+            if (intervalNanos > 0) {
+                if (due > now) {
+                    sleepNanos(due - now);
+                }
+            } else {
+                due = now;
+            }
+            if (due >= measureUntil) return;
+
+            Operation op = pick(random);
+            boolean failed = false;
+
+            try {
+                op.action.run(worker, random);
+            } catch (Exception e) {
+                failed = true;
+            }
+
+            if (due >= measureFrom) {
+                long micros = (System.nanoTime() - due) / 1000;
+                worker.latencies.computeIfAbsent(op.name, n -> new LatencyHistogram()).record(micros);
+                if (failed) worker.errors.merge(op.name, 1L, Long::sum);
+            }
+            due += intervalNanos;
+        }
+    }
+
+    private Operation pick(Random random) {
+        double r = random.nextDouble() * totalWeight;
+        for (Operation op : operations) {
+            r -= op.weight;
+            if (r < 0) return op;
+        }
+        return operations.get(operations.size() - 1);
+    }
+
+    private static void sleepNanos(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Picks properties, and their owners, from chunks starting at random property IDs, so owners with
+     * more properties are picked more often, as they would be in real traffic.
+     */
+    private void sample(Connection conn) throws SQLException {
+        int min;
+        int max;
+
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MIN(property_ID), MAX(property_ID) FROM property")) {
+            rs.next();
+            min = rs.getInt(1);
+            max = rs.getInt(2);
+        }
+
+        Random random = new Random();
+
+        try (PreparedStatement ps = conn.prepareStatement("SELECT property_ID, property_owner_id FROM property "
+                + "WHERE property_ID >= ? ORDER BY property_ID LIMIT " + SAMPLE_CHUNK_SIZE)) {
+            for (int chunk = 0; chunk < SAMPLE_CHUNKS; chunk++) {
+                ps.setInt(1, min + random.nextInt(Math.max(1, max - min + 1)));
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        propertyIds.add(rs.getInt(1));
+                        owners.add(rs.getString(2));
+                    }
+                }
+            }
+        }
+
+        if (propertyIds.isEmpty()) {
+            throw new IllegalStateException("No properties to load test with; run database.DataGenerator first");
+        }
+    }
+
+    private String report(List<Worker> all, int seconds) {
+        Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+        Map<String, Long> errors = new LinkedHashMap<>();
+        LatencyHistogram overall = new LatencyHistogram();
+
+        for (Operation op : operations) latencies.put(op.name, new LatencyHistogram());
+        for (Worker worker : all) {
+            worker.latencies.forEach((name, h) -> latencies.get(name).add(h));
+            worker.errors.forEach((name, n) -> errors.merge(name, n, Long::sum));
+        }
+        latencies.values().forEach(overall::add);
+        latencies.put("all", overall);
+        errors.put("all", errors.values().stream().mapToLong(Long::longValue).sum());
+
+        StringBuilder sb = new StringBuilder(String.format("%-32s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+
+        for (Map.Entry<String, LatencyHistogram> e : latencies.entrySet()) {
+            LatencyHistogram h = e.getValue();
+            if (h.count() == 0) continue;
+
+            sb.append(String.format("%-32s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", e.getKey(), h.count(),
+                    errors.getOrDefault(e.getKey(), 0L), (double) h.count() / seconds,
+                    h.percentile(50) / 1000.0, h.percentile(90) / 1000.0, h.percentile(99) / 1000.0,
+                    h.percentile(99.9) / 1000.0, h.max() / 1000.0));
+        }
+        return sb.toString();
+    }
+}
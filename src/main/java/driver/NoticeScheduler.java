@@ -0,0 +1,298 @@
+package driver;
+
+import dao.ChangeFeed;
+import dao.PropertyDAO;
+import dao.PropertyDAO.PropertyBaseData;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+
+/**
+ * Keeps the next rent notice of every property in a queue ordered by the day it comes due, so
+ * finding the notices due today costs one queue poll per notice instead of a scan of every
+ * property. Each property only has its next notice queued; when that one fires, the one after
+ * it is queued.
+ * <p>
+ * A payment moves a property's whole schedule. Rather than search the queue, the property's
+ * generation is bumped and the new notice is queued; entries of an older generation are
+ * dropped when they reach the head of the queue.
+ *
+ * @author Dexter Elliott
+ */
+public class NoticeScheduler {
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     * The notices sent after a payment, in order, and how many days after the payment each is due.
+     */
+    public enum Notice {
+        RENT_DUE(15),
+        FIRST_LATE(37),
+        SECOND_LATE(60),
+        EVICTION(75);
+
+        private final int daysAfterPayment;
+
+        Notice(int daysAfterPayment) {
+            this.daysAfterPayment = daysAfterPayment;
+        }
+
+        public int getDaysAfterPayment() {
+            return daysAfterPayment;
+        }
+
+        Notice next() {
+            return ordinal() + 1 < values().length ? values()[ordinal() + 1] : null;
+        }
+    }
+
+    /**
+     * Receives notices as they come due.
+     */
+    @FunctionalInterface
+    public interface NoticeListener {
+        void onNotice(Notice notice, PropertyBaseData property);
+    }
+
+    private static final class Tracked {
+        PropertyBaseData property;
+        int generation;
+        Notice reached;
+        long reachedDay;
+    }
+
+    private static final class Scheduled {
+        final long day;
+        final int propertyId;
+        final int generation;
+        final Notice notice;
+
+        Scheduled(long day, int propertyId, int generation, Notice notice) {
+            this.day = day;
+            this.propertyId = propertyId;
+            this.generation = generation;
+            this.notice = notice;
+        }
+    }
+
+    private final NoticeListener listener;
+    private final PriorityQueue<Scheduled> queue = new PriorityQueue<>((a, b) -> Long.compare(a.day, b.day));
+    private final Map<Integer, Tracked> tracked = new HashMap<>();
+    private final Map<String, Set<Integer>> byOwner = new HashMap<>();
+    private long today = Long.MIN_VALUE;
+    private long highWaterMark;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(NoticeScheduler.class.getName());
+    }
+
+    /**
+     * @param listener called for every notice as it comes due
+     */
+    public NoticeScheduler(NoticeListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Load every property, dropping whatever was tracked before. Notices that came due before
+     * {@code today} are counted as already sent.
+     *
+     * @param dao   where to load the properties from
+     * @param today the current day
+     * @throws SQLException if the properties cannot be read
+     */
+    public synchronized void rebuild(PropertyDAO dao, LocalDate today) throws SQLException {
+        long start = System.currentTimeMillis();
+
+        queue.clear();
+        tracked.clear();
+        byOwner.clear();
+        highWaterMark = 0;
+        this.today = today.toEpochDay();
+        refresh(dao);
+
+        getLogger().log(INFO, "Scheduled notices for {0} properties in {1} ms.",
+                new Object[]{tracked.size(), System.currentTimeMillis() - start});
+    }
+
+    /**
+     * Pick up properties added, changed, or deleted since the last rebuild or refresh, from the
+     * property change feed.
+     *
+     * @param dao where to read the changes from
+     * @throws SQLException if the changes cannot be read
+     */
+    public synchronized void refresh(PropertyDAO dao) throws SQLException {
+        ChangeFeed<PropertyBaseData> page;
+
+        do {
+            page = ChangeFeed.read(seq -> dao.propertyChangesSince(null, seq, PAGE_SIZE), highWaterMark);
+            for (PropertyBaseData property : page.getUpserts()) track(property);
+            for (int propertyId : page.getDeletedIds()) untrack(propertyId);
+            highWaterMark = page.getResumeMark();
+        } while (page.hasMore());
+    }
+
+    /**
+     * Fire every notice due on or before {@code date}.
+     *
+     * @param date the current day
+     * @return the number of notices fired
+     */
+    public synchronized int advance(LocalDate date) {
+        today = Math.max(today, date.toEpochDay());
+        int fired = 0;
+
+        while (!queue.isEmpty() && queue.peek().day <= today) {
+            Scheduled next = queue.poll();
+            Tracked t = tracked.get(next.propertyId);
+            if (t == null || t.generation != next.generation) continue;
+
+            t.reached = next.notice;
+            t.reachedDay = next.day;
+            schedule(next.propertyId, t, next.notice.next());
+
+            listener.onNotice(next.notice, t.property);
+            fired++;
+        }
+
+        return fired;
+    }
+
+    /**
+     * Start a property's schedule over after a payment.
+     *
+     * @param propertyId  the property paid for
+     * @param paymentDate the day of the payment
+     */
+    public synchronized void onPayment(int propertyId, LocalDate paymentDate) {
+        Tracked t = tracked.get(propertyId);
+        if (t == null) return;
+
+        LocalDate last = t.property.getLastPaymentDate();
+        if (last != null && !paymentDate.isAfter(last)) return;
+
+        PropertyBaseData p = t.property;
+        track(new PropertyBaseData(p.getPropertyId(), p.getPropertyType(), p.getPropertyAddress(), p.getCityCode(),
+                p.getNumberOfRooms(), p.getNumberOfBathrooms(), p.getGarageCount(), p.getSquareFootage(),
+                p.getFrontYardFootage(), p.getBackyardFootage(), p.getNumberOfTenants(), p.getRentalFee(),
+                paymentDate, p.getOwnerID(), p.getVacancyIndicator()));
+    }
+
+    /**
+     * Use a new rental fee in the notices still to come. The schedule itself does not change.
+     *
+     * @param propertyId the property
+     * @param rentalFee  its new fee
+     */
+    public synchronized void onFeeChange(int propertyId, BigDecimal rentalFee) {
+        Tracked t = tracked.get(propertyId);
+        if (t != null) t.property = t.property.withRentalFee(rentalFee);
+    }
+
+    /**
+     * @param ownerId the owner
+     * @param notice  the notice
+     * @return the owner's properties whose most recent notice is {@code notice} or a later one
+     */
+    public synchronized List<PropertyBaseData> reachedAtLeast(String ownerId, Notice notice) {
+        List<PropertyBaseData> result = new ArrayList<>();
+
+        for (int propertyId : byOwner.getOrDefault(ownerId, new LinkedHashSet<>())) {
+            Tracked t = tracked.get(propertyId);
+            if (t.reached != null && t.reached.compareTo(notice) >= 0) result.add(t.property);
+        }
+
+        return result;
+    }
+
+    /**
+     * @param ownerId the owner
+     * @param notice  the notice
+     * @return the owner's properties for which {@code notice} came due today
+     */
+    public synchronized List<PropertyBaseData> dueToday(String ownerId, Notice notice) {
+        List<PropertyBaseData> result = new ArrayList<>();
+
+        for (int propertyId : byOwner.getOrDefault(ownerId, new LinkedHashSet<>())) {
+            Tracked t = tracked.get(propertyId);
+            if (t.reached == notice && t.reachedDay == today) result.add(t.property);
+        }
+
+        return result;
+    }
+
+    private void track(PropertyBaseData property) {
+        Tracked t = tracked.get(property.getPropertyId());
+
+        if (t == null) {
+            t = new Tracked();
+            tracked.put(property.getPropertyId(), t);
+        } else if (Objects.equals(t.property.getLastPaymentDate(), property.getLastPaymentDate())) {
+            if (!Objects.equals(t.property.getOwnerID(), property.getOwnerID())) {
+                byOwner.get(t.property.getOwnerID()).remove(property.getPropertyId());
+                byOwner.computeIfAbsent(property.getOwnerID(), k -> new LinkedHashSet<>()).add(property.getPropertyId());
+            }
+            t.property = property;
+            return;
+        } else {
+            byOwner.get(t.property.getOwnerID()).remove(property.getPropertyId());
+        }
+
+        t.property = property;
+        t.generation++;
+        t.reached = null;
+        byOwner.computeIfAbsent(property.getOwnerID(), k -> new LinkedHashSet<>()).add(property.getPropertyId());
+
+        LocalDate paid = property.getLastPaymentDate();
+        if (paid == null) return;
+
+        // notices that came due while nobody was watching count as sent
+        Notice next = Notice.values()[0];
+        while (next != null && paid.toEpochDay() + next.getDaysAfterPayment() < today) {
+            t.reached = next;
+            t.reachedDay = paid.toEpochDay() + next.getDaysAfterPayment();
+            next = next.next();
+        }
+
+        schedule(property.getPropertyId(), t, next);
+        compact();
+    }
+
+    private void untrack(int propertyId) {
+        Tracked t = tracked.remove(propertyId);
+        if (t != null) byOwner.get(t.property.getOwnerID()).remove(propertyId);
+    }
+
+    private void schedule(int propertyId, Tracked t, Notice notice) {
+        if (notice == null || t.property.getLastPaymentDate() == null) return;
+
+        long day = t.property.getLastPaymentDate().toEpochDay() + notice.getDaysAfterPayment();
+        queue.add(new Scheduled(day, propertyId, t.generation, notice));
+    }
+
+    /**
+     * Drop stale entries once they outnumber the live ones, so frequent payments cannot grow
+     * the queue without bound.
+     */
+    private void compact() {
+        if (queue.size() <= 2 * tracked.size() + 64) return;
+
+        queue.removeIf(s -> {
+            Tracked t = tracked.get(s.propertyId);
+            return t == null || t.generation != s.generation;
+        });
+    }
+}
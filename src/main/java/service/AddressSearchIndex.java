@@ -0,0 +1,674 @@
+package service;
+
+import dao.ChangeFeed;
+import dao.PropertyDAO;
+import dao.PropertyDAO.PropertyBaseData;
+import dao.TenantDAO;
+import dao.TenantDAO.TenantData;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * An in-memory index of property and tenant addresses for typeahead. Addresses are normalized
+ * to lower case words, and two structures are kept over them:
+ * <ul>
+ * <li>a <b>trie</b> holding every address from each of its word starts, so {@code "main"} finds
+ * {@code "12 Main St"} as well as {@code "Main"} does, in time proportional to the query and the
+ * number of hits rather than the number of addresses. Only the first {@value #MAX_DEPTH}
+ * characters from each word start are in the trie, so an address takes space in proportion to
+ * its words rather than to the square of its length; hits for longer queries are checked against
+ * the address itself, and</li>
+ * <li><b>trigram</b> posting lists, for queries with a typo. Candidates come only from the
+ * rarest trigrams of the query, enough of them that any address sharing the required share of
+ * trigrams must turn up, and are then scored exactly.</li>
+ * </ul>
+ * Both are kept per owner, for the addresses of the owner's properties and their tenants, so a
+ * search for one owner never walks past another owner's addresses. {@link #search} returns prefix
+ * matches first and fills up with fuzzy ones. Like {@link PropertyAttributeIndex} it is loaded and
+ * kept current from the change feeds.
+ *
+ * @author Joshua Escareno
+ */
+public class AddressSearchIndex implements AutoCloseable {
+    private static final int PAGE_SIZE = 1000;
+    private static final double FUZZY_MIN_SHARE = 0.5;
+    private static final int MAX_WORD = 63;
+    static final int MAX_DEPTH = 20;
+
+    private static final Comparator<Hit> RANKING = Comparator.comparingDouble((Hit h) -> -h.score)
+            .thenComparingInt(h -> h.address.length())
+            .thenComparing(h -> h.address);
+
+    public enum Kind {PROPERTY, TENANT}
+
+    /**
+     * One address found, with a score between 0 and 1.
+     */
+    public static final class Hit implements Serializable {
+        private final Kind kind;
+        private final int id;
+        private final int propertyId;
+        private final String address;
+        private final double score;
+
+        Hit(Entry entry, double score) {
+            this.kind = entry.kind;
+            this.id = entry.id;
+            this.propertyId = entry.propertyId;
+            this.address = entry.address;
+            this.score = score;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return the property id or the tenant id, depending on the kind
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return the property the address belongs to, for a tenant the one they rent
+         */
+        public int getPropertyId() {
+            return propertyId;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + id + " " + address + " (" + score + ")";
+        }
+    }
+
+    private static final class Entry {
+        final Kind kind;
+        final int id;
+        final int propertyId;
+        final String address;
+        final String normalized;
+        final long[] grams;
+        /**
+         * the owner whose partition holds the entry, null for properties without an owner and
+         * tenants of properties not seen yet
+         */
+        String ownerId;
+
+        Entry(Kind kind, int id, int propertyId, String address) {
+            this.kind = kind;
+            this.id = id;
+            this.propertyId = propertyId;
+            this.address = address;
+            this.normalized = normalize(address);
+            this.grams = trigrams(normalized);
+        }
+    }
+
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        IntList postings;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+
+        Node addChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) return children[i];
+
+            i = -i - 1;
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            System.arraycopy(keys, i, keys, i + 1, keys.length - i - 1);
+            System.arraycopy(children, i, children, i + 1, children.length - i - 1);
+            keys[i] = c;
+            return children[i] = new Node();
+        }
+    }
+
+    /**
+     * The addresses of one owner's properties and their tenants.
+     */
+    private static final class Partition {
+        final Node root = new Node();
+        final Map<Long, IntList> gramPostings = new HashMap<>();
+        int size;
+    }
+
+    private static final class IntList {
+        int[] values = new int[2];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        void remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Entry> entries = new ArrayList<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private final Map<Long, Integer> ordinals = new HashMap<>();
+    private final Map<Integer, String> propertyOwners = new HashMap<>();
+    private final Map<Integer, Set<Integer>> tenantsByProperty = new HashMap<>();
+    private final Map<String, Partition> partitions = new HashMap<>();
+    private long propertyHighWaterMark;
+    private long tenantHighWaterMark;
+    private ScheduledExecutorService refresher;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(AddressSearchIndex.class.getName());
+    }
+
+    /**
+     * Read both change feeds from where the last refresh stopped, or from the start. Refreshes
+     * run one at a time, so an older page is never applied over a newer one.
+     *
+     * @return the number of properties and tenants added, changed or deleted
+     * @throws SQLException if the changes cannot be read
+     */
+    public synchronized int refresh(PropertyDAO propertyDAO, TenantDAO tenantDAO) throws SQLException {
+        long start = System.currentTimeMillis();
+        int changes = 0;
+
+        // properties first, so tenants of new properties already have an owner
+        ChangeFeed<PropertyBaseData> properties;
+        do {
+            properties = ChangeFeed.read(seq -> propertyDAO.propertyChangesSince(null, seq, PAGE_SIZE),
+                    watermark(Kind.PROPERTY));
+
+            lock.writeLock().lock();
+            try {
+                for (PropertyBaseData p : properties.getUpserts()) putProperty(p);
+                for (int propertyId : properties.getDeletedIds()) removeProperty(propertyId);
+                propertyHighWaterMark = properties.getResumeMark();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            changes += properties.getUpserts().size() + properties.getDeletedIds().length;
+        } while (properties.hasMore());
+
+        ChangeFeed<TenantData> tenants;
+        do {
+            tenants = ChangeFeed.read(seq -> tenantDAO.tenantChangesSince(null, seq, PAGE_SIZE),
+                    watermark(Kind.TENANT));
+
+            lock.writeLock().lock();
+            try {
+                for (TenantData t : tenants.getUpserts()) {
+                    put(Kind.TENANT, t.getPid(), t.getPropertyId(), t.getAddress());
+                }
+                for (int tenantId : tenants.getDeletedIds()) remove(Kind.TENANT, tenantId);
+                tenantHighWaterMark = tenants.getResumeMark();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            changes += tenants.getUpserts().size() + tenants.getDeletedIds().length;
+        } while (tenants.hasMore());
+
+        if (changes > 0) {
+            getLogger().log(INFO, "Indexed {0} address changes in {1} ms.",
+                    new Object[]{changes, System.currentTimeMillis() - start});
+        }
+        return changes;
+    }
+
+    /**
+     * Refresh from the change feeds every {@code intervalMs} on a background thread, until
+     * {@link #close} is called.
+     */
+    public synchronized void refreshEvery(PropertyDAO propertyDAO, TenantDAO tenantDAO, long intervalMs) {
+        if (refresher != null) throw new IllegalStateException("Already refreshing");
+
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "address-search-index");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh(propertyDAO, tenantDAO);
+            } catch (Exception e) {
+                getLogger().log(WARNING, "Address index refresh failed ({0})", String.valueOf(e.getMessage()).trim());
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (refresher != null) refresher.shutdownNow();
+        refresher = null;
+    }
+
+    /**
+     * Add a property's address, or replace it.
+     */
+    public void update(PropertyBaseData property) {
+        lock.writeLock().lock();
+        try {
+            putProperty(property);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add a tenant's address, or replace it.
+     */
+    public void update(TenantData tenant) {
+        lock.writeLock().lock();
+        try {
+            put(Kind.TENANT, tenant.getPid(), tenant.getPropertyId(), tenant.getAddress());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param query   the start of any word run in the address
+     * @param k       the most hits to return
+     * @param ownerId only addresses of this owner's properties and their tenants, or all if null
+     * @return the best hits, those matching from the first word first, then shorter addresses
+     */
+    public List<Hit> prefix(String query, int k, String ownerId) {
+        lock.readLock().lock();
+        try {
+            return top(prefixHits(normalize(query), k, ownerId), k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param query   an address, possibly misspelled
+     * @param k       the most hits to return
+     * @param ownerId only addresses of this owner's properties and their tenants, or all if null
+     * @return the best hits by the share of trigrams they have in common with the query
+     */
+    public List<Hit> fuzzy(String query, int k, String ownerId) {
+        lock.readLock().lock();
+        try {
+            return top(fuzzyHits(normalize(query), k, ownerId), k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Prefix matches, then fuzzy matches if there are fewer than {@code k}.
+     */
+    public List<Hit> search(String query, int k, String ownerId) {
+        String normalized = normalize(query);
+
+        lock.readLock().lock();
+        try {
+            List<Hit> hits = top(prefixHits(normalized, k, ownerId), k);
+            if (hits.size() >= k) return hits;
+
+            Set<Long> seen = new HashSet<>();
+            for (Hit hit : hits) seen.add(key(hit.kind, hit.id));
+
+            for (Hit hit : top(fuzzyHits(normalized, k + hits.size(), ownerId), k + hits.size())) {
+                if (hits.size() == k) break;
+                if (seen.add(key(hit.kind, hit.id))) hits.add(hit);
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of addresses indexed
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ordinals.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long watermark(Kind kind) {
+        lock.readLock().lock();
+        try {
+            return kind == Kind.PROPERTY ? propertyHighWaterMark : tenantHighWaterMark;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Integer, Hit> prefixHits(String query, int k, String ownerId) {
+        Map<Integer, Hit> hits = new HashMap<>();
+        if (query.isEmpty()) return hits;
+
+        for (Partition partition : partitionsOf(ownerId)) prefixHits(partition, query, k, hits);
+        return hits;
+    }
+
+    private void prefixHits(Partition partition, String query, int k, Map<Integer, Hit> hits) {
+        Node node = partition.root;
+        for (int i = 0; i < Math.min(query.length(), MAX_DEPTH) && node != null; i++) {
+            node = node.child(query.charAt(i));
+        }
+        if (node == null) return;
+
+        // the trie stops at MAX_DEPTH, so past that the nodes only say where to look
+        boolean check = query.length() > MAX_DEPTH;
+
+        // the trie is walked in character order, so stop once there are plenty to rank from
+        int cap = Math.max(64, k * 16);
+        int found = 0;
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+
+        while (!stack.isEmpty() && found < cap) {
+            Node n = stack.pop();
+
+            if (n.postings != null) {
+                for (int p = 0; p < n.postings.size; p++) {
+                    int ordinal = n.postings.values[p] >>> 6, word = n.postings.values[p] & MAX_WORD;
+                    Entry e = entries.get(ordinal);
+                    if (check && !startsWord(e.normalized, query, word)) continue;
+
+                    Hit hit = new Hit(e, 1.0 / (1 + 0.1 * word));
+                    if (hits.merge(ordinal, hit, (a, b) -> a.score >= b.score ? a : b) == hit) found++;
+                }
+            }
+
+            for (int c = n.children.length - 1; c >= 0; c--) stack.push(n.children[c]);
+        }
+    }
+
+    private Map<Integer, Hit> fuzzyHits(String query, int k, String ownerId) {
+        Map<Integer, Hit> hits = new HashMap<>();
+        long[] grams = trigrams(query);
+        if (grams.length == 0) return hits;
+
+        // any address sharing minShared trigrams has one of the rarest (n - minShared + 1)
+        int minShared = Math.max(1, (int) Math.ceil(FUZZY_MIN_SHARE * grams.length));
+
+        for (Partition partition : partitionsOf(ownerId)) {
+            IntList[] lists = new IntList[grams.length];
+            for (int i = 0; i < grams.length; i++) {
+                lists[i] = partition.gramPostings.getOrDefault(grams[i], new IntList());
+            }
+            Arrays.sort(lists, Comparator.comparingInt((IntList l) -> l.size));
+
+            Set<Integer> candidates = new HashSet<>();
+            for (int i = 0; i < grams.length - minShared + 1; i++) {
+                for (int p = 0; p < lists[i].size; p++) candidates.add(lists[i].values[p]);
+            }
+
+            for (int ordinal : candidates) {
+                Entry e = entries.get(ordinal);
+                int shared = sharedCount(grams, e.grams);
+                if (shared >= minShared) hits.put(ordinal, new Hit(e, 2.0 * shared / (grams.length + e.grams.length)));
+            }
+        }
+
+        return hits;
+    }
+
+    /**
+     * @return the owner's partition, or every partition if the owner is null
+     */
+    private Collection<Partition> partitionsOf(String ownerId) {
+        if (ownerId == null) return partitions.values();
+
+        Partition partition = partitions.get(ownerId);
+        return partition == null ? Collections.emptyList() : Collections.singletonList(partition);
+    }
+
+    private static List<Hit> top(Map<Integer, Hit> hits, int k) {
+        PriorityQueue<Hit> best = new PriorityQueue<>(RANKING.reversed());
+
+        for (Hit hit : hits.values()) {
+            best.add(hit);
+            if (best.size() > k) best.poll();
+        }
+
+        List<Hit> result = new ArrayList<>(best);
+        result.sort(RANKING);
+        return result;
+    }
+
+    private void putProperty(PropertyBaseData p) {
+        String previousOwner = propertyOwners.put(p.getPropertyId(), p.getOwnerID());
+        put(Kind.PROPERTY, p.getPropertyId(), p.getPropertyId(), p.getPropertyAddress());
+        if (!Objects.equals(previousOwner, p.getOwnerID())) moveProperty(p.getPropertyId(), p.getOwnerID());
+    }
+
+    private void removeProperty(int propertyId) {
+        remove(Kind.PROPERTY, propertyId);
+        propertyOwners.remove(propertyId);
+        // its tenants belong to no one until it comes back
+        moveProperty(propertyId, null);
+    }
+
+    /**
+     * Move a property and its tenants to the partition of their new owner.
+     */
+    private void moveProperty(int propertyId, String ownerId) {
+        move(Kind.PROPERTY, propertyId, ownerId);
+        for (int tenantId : tenantsByProperty.getOrDefault(propertyId, Collections.emptySet())) {
+            move(Kind.TENANT, tenantId, ownerId);
+        }
+    }
+
+    private void move(Kind kind, int id, String ownerId) {
+        Integer ordinal = ordinals.get(key(kind, id));
+        if (ordinal == null) return;
+
+        Entry e = entries.get(ordinal);
+        if (Objects.equals(e.ownerId, ownerId)) return;
+
+        unindex(ordinal, e);
+        e.ownerId = ownerId;
+        index(ordinal, e);
+    }
+
+    private void put(Kind kind, int id, int propertyId, String address) {
+        Integer ordinal = ordinals.get(key(kind, id));
+
+        if (ordinal != null) {
+            Entry old = entries.get(ordinal);
+            if (old.propertyId == propertyId && String.valueOf(old.address).equals(String.valueOf(address))) return;
+            remove(kind, id);
+        }
+
+        if (address == null) return;
+
+        Entry e = new Entry(kind, id, propertyId, address);
+        e.ownerId = propertyOwners.get(propertyId);
+        ordinal = freeOrdinals.isEmpty() ? entries.size() : freeOrdinals.pop();
+        if (ordinal == entries.size()) entries.add(null);
+        entries.set(ordinal, e);
+        ordinals.put(key(kind, id), ordinal);
+        if (kind == Kind.TENANT) tenantsByProperty.computeIfAbsent(propertyId, p -> new HashSet<>()).add(id);
+
+        index(ordinal, e);
+    }
+
+    private void remove(Kind kind, int id) {
+        Integer ordinal = ordinals.remove(key(kind, id));
+        if (ordinal == null) return;
+
+        Entry e = entries.set(ordinal, null);
+        if (kind == Kind.TENANT) {
+            tenantsByProperty.computeIfPresent(e.propertyId, (p, ids) -> {
+                ids.remove(id);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+
+        unindex(ordinal, e);
+        freeOrdinals.push(ordinal);
+    }
+
+    private void index(int ordinal, Entry e) {
+        Partition partition = partitions.computeIfAbsent(e.ownerId, o -> new Partition());
+        partition.size++;
+
+        int word = 0;
+        for (int start : wordStarts(e.normalized)) {
+            Node node = partition.root;
+            int end = Math.min(e.normalized.length(), start + MAX_DEPTH);
+            for (int i = start; i < end; i++) node = node.addChild(e.normalized.charAt(i));
+            if (node.postings == null) node.postings = new IntList();
+            node.postings.add(ordinal << 6 | Math.min(word++, MAX_WORD));
+        }
+
+        for (long gram : e.grams) partition.gramPostings.computeIfAbsent(gram, g -> new IntList()).add(ordinal);
+    }
+
+    private void unindex(int ordinal, Entry e) {
+        Partition partition = partitions.get(e.ownerId);
+
+        // an owner's last address takes the partition with it; otherwise empty trie nodes are left
+        // in place, to be reused by the next similar address
+        if (--partition.size == 0) {
+            partitions.remove(e.ownerId);
+            return;
+        }
+
+        int word = 0;
+        for (int start : wordStarts(e.normalized)) {
+            Node node = partition.root;
+            int end = Math.min(e.normalized.length(), start + MAX_DEPTH);
+            for (int i = start; i < end; i++) node = node.child(e.normalized.charAt(i));
+            node.postings.remove(ordinal << 6 | Math.min(word++, MAX_WORD));
+        }
+
+        for (long gram : e.grams) {
+            IntList postings = partition.gramPostings.get(gram);
+            postings.remove(ordinal);
+            if (postings.size == 0) partition.gramPostings.remove(gram);
+        }
+    }
+
+    /**
+     * @return whether the query starts at the word it was found at, or for words past
+     * {@link #MAX_WORD}, at any of them
+     */
+    private static boolean startsWord(String normalized, String query, int word) {
+        int[] starts = wordStarts(normalized);
+        for (int w = word; w < starts.length && (w == word || word == MAX_WORD); w++) {
+            if (normalized.startsWith(query, starts[w])) return true;
+        }
+        return false;
+    }
+
+    private static long key(Kind kind, int id) {
+        return (long) kind.ordinal() << 32 | (id & 0xffffffffL);
+    }
+
+    /**
+     * @return the address in lower case, with every run of other characters than letters and
+     * digits replaced by a single space
+     */
+    static String normalize(String address) {
+        StringBuilder sb = new StringBuilder(address == null ? 0 : address.length());
+        boolean space = false;
+
+        for (int i = 0; address != null && i < address.length(); i++) {
+            char c = Character.toLowerCase(address.charAt(i));
+
+            if (Character.isLetterOrDigit(c)) {
+                if (space && sb.length() > 0) sb.append(' ');
+                sb.append(c);
+                space = false;
+            } else {
+                space = true;
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static int[] wordStarts(String normalized) {
+        IntList starts = new IntList();
+        for (int i = 0; i < normalized.length(); i++) {
+            if (i == 0 || normalized.charAt(i - 1) == ' ') starts.add(i);
+        }
+        return Arrays.copyOf(starts.values, starts.size);
+    }
+
+    /**
+     * @return the distinct trigrams of a normalized address, padded so the first characters form
+     * trigrams of their own, packed three chars to a long and sorted
+     */
+    static long[] trigrams(String normalized) {
+        if (normalized.isEmpty()) return new long[0];
+
+        String padded = "  " + normalized + " ";
+        long[] grams = new long[padded.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = (long) padded.charAt(i) << 32 | (long) padded.charAt(i + 1) << 16 | padded.charAt(i + 2);
+        }
+
+        return Arrays.stream(grams).sorted().distinct().toArray();
+    }
+
+    private static int sharedCount(long[] a, long[] b) {
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else {
+                n++;
+                i++;
+                j++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,169 @@
+package service;
+
+import dao.DAOFactory;
+import dao.PropertyDAO;
+import dao.PropertyDAO.PropertyBaseData;
+import dao.TenantDAO;
+import dao.TenantDAO.TenantData;
+import service.CsvImportPipeline.Record;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+
+/**
+ * Standalone job importing an owner's spreadsheet of properties or tenants. Usage:
+ * <pre>
+ *     BulkImport properties|tenants &lt;file.csv&gt; [rejects.csv]
+ * </pre>
+ * Column names in the header line follow the database columns without their table prefix, for
+ * example {@code address}, {@code city_code} and {@code rental_fee} for properties, or
+ * {@code first_name} and {@code property_id} for tenants. Rejected lines are written to
+ * {@code <file>.rejects.csv} unless another file is given.
+ *
+ * @author Joshua Escareno
+ */
+public class BulkImport {
+    private static final int BATCH_SIZE = 1000;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(BulkImport.class.getName());
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || !(args[0].equals("properties") || args[0].equals("tenants"))) {
+            System.err.println("usage: BulkImport properties|tenants <file.csv> [rejects.csv]");
+            System.exit(2);
+        }
+
+        Path csv = Paths.get(args[1]);
+        Path rejects = args.length > 2 ? Paths.get(args[2]) : Paths.get(args[1] + ".rejects.csv");
+        int parsers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        CsvImportPipeline.ProgressListener progress = (read, written, rejected) ->
+                getLogger().log(INFO, "Import progress: {0} read, {1} written, {2} rejected",
+                        new Object[]{read, written, rejected});
+
+        CsvImportPipeline.Result result;
+
+        if (args[0].equals("properties")) {
+            PropertyDAO dao = DAOFactory.create(PropertyDAO.class);
+            result = new CsvImportPipeline<>(BulkImport::parseProperty, dao::insertProperties, parsers, BATCH_SIZE)
+                    .run(csv, rejects, progress);
+        } else {
+            TenantDAO dao = DAOFactory.create(TenantDAO.class);
+            result = new CsvImportPipeline<>(BulkImport::parseTenant, dao::insertTenants, parsers, BATCH_SIZE)
+                    .run(csv, rejects, progress);
+        }
+
+        System.out.println(result);
+        if (result.rejected() > 0) System.out.println("Rejected lines written to " + rejects);
+    }
+
+    /**
+     * Parse and validate a property record against the limits of the {@code property} table.
+     *
+     * @param r the CSV record
+     * @return the property
+     */
+    static PropertyBaseData parseProperty(Record r) {
+        String type = length(r.require("type"), 1, "type");
+        String address = length(r.require("address"), 40, "address");
+        String cityCode = length(r.require("city_code"), 3, "city_code");
+        String ownerId = length(r.require("owner_id"), 30, "owner_id");
+        String vacancy = length(r.get("vacancy_ind"), 1, "vacancy_ind");
+        BigDecimal rentalFee = decimal(r.require("rental_fee"), "rental_fee");
+
+        if (rentalFee.scale() > 2 || rentalFee.precision() - rentalFee.scale() > 4) {
+            throw new IllegalArgumentException("rental_fee " + rentalFee + " does not fit numeric(6,2)");
+        }
+
+        return new PropertyBaseData(0, type, address, cityCode,
+                count(r.get("num_rooms"), "num_rooms"),
+                count(r.get("num_bathrooms"), "num_bathrooms"),
+                count(r.get("garage_count"), "garage_count"),
+                optionalDecimal(r.get("sqr_foot"), "sqr_foot"),
+                optionalDecimal(r.get("front_yard_sqr_foot"), "front_yard_sqr_foot"),
+                optionalDecimal(r.get("back_yard_sqr_foot"), "back_yard_sqr_foot"),
+                count(r.get("num_tenants"), "num_tenants"),
+                rentalFee,
+                date(r.get("last_payment_date"), "last_payment_date"),
+                ownerId,
+                vacancy != null ? vacancy : "V");
+    }
+
+    /**
+     * Parse and validate a tenant record against the limits of the {@code tenant} table.
+     *
+     * @param r the CSV record
+     * @return the tenant
+     */
+    static TenantData parseTenant(Record r) {
+        String phone = r.get("phone_number");
+
+        if (phone != null && !phone.matches("\\d{1,10}")) {
+            throw new IllegalArgumentException("phone_number must be up to 10 digits");
+        }
+
+        String zip = r.get("zip_code");
+
+        if (zip != null && !zip.matches("\\d{5}")) {
+            throw new IllegalArgumentException("zip_code must be 5 digits");
+        }
+
+        return new TenantData(0,
+                length(r.require("first_name"), 30, "first_name"),
+                length(r.require("last_name"), 30, "last_name"),
+                date(r.get("dob"), "dob"),
+                phone,
+                length(r.get("address"), 40, "address"),
+                length(r.get("city"), 20, "city"),
+                zip,
+                count(r.require("property_id"), "property_id"));
+    }
+
+    private static String length(String value, int max, String column) {
+        if (value != null && value.length() > max) {
+            throw new IllegalArgumentException(column + " longer than " + max + " characters");
+        }
+
+        return value;
+    }
+
+    private static int count(String value, String column) {
+        if (value == null) return 0;
+
+        try {
+            int n = Integer.parseInt(value);
+            if (n < 0) throw new IllegalArgumentException(column + " must not be negative");
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + " is not a number: " + value);
+        }
+    }
+
+    private static BigDecimal decimal(String value, String column) {
+        try {
+            BigDecimal d = new BigDecimal(value);
+            if (d.signum() < 0) throw new IllegalArgumentException(column + " must not be negative");
+            return d;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(column + " is not a number: " + value);
+        }
+    }
+
+    private static BigDecimal optionalDecimal(String value, String column) {
+        return value != null ? decimal(value, column) : null;
+    }
+
+    private static LocalDate date(String value, String column) {
+        try {
+            return value != null ? LocalDate.parse(value) : null;
+        } catch (java.time.format.DateTimeParseException e) {
+            throw new IllegalArgumentException(column + " is not a yyyy-mm-dd date: " + value);
+        }
+    }
+}
@@ -0,0 +1,475 @@
+package service;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of non-negative ints. The values are split into chunks of 65536 by their high
+ * 16 bits, and each chunk that holds anything is stored in whichever of two forms is smaller:
+ * a sorted array of the low 16 bits while it holds at most 4096 values, and a 1024 word bitset
+ * beyond that. Dense chunks are combined a word at a time, sparse ones by merging, and empty
+ * chunks cost nothing.
+ * <p>
+ * Not thread safe. {@link #and} and {@link #or} return new bitmaps and leave their inputs alone.
+ *
+ * @author Joshua Escareno
+ */
+public final class CompressedBitmap {
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    private int[] keys = new int[0];
+    private Container[] containers = new Container[0];
+    private int size;
+
+    public boolean add(int value) {
+        checkValue(value);
+        int key = value >>> 16, i = Arrays.binarySearch(keys, 0, size, key);
+
+        if (i < 0) {
+            i = -i - 1;
+            insert(i, key, new ArrayContainer());
+        }
+
+        int before = containers[i].cardinality();
+        containers[i] = containers[i].add((char) value);
+        return containers[i].cardinality() > before;
+    }
+
+    public boolean remove(int value) {
+        checkValue(value);
+        int i = Arrays.binarySearch(keys, 0, size, value >>> 16);
+        if (i < 0) return false;
+
+        int before = containers[i].cardinality();
+        containers[i] = containers[i].remove((char) value);
+        boolean removed = containers[i].cardinality() < before;
+
+        if (containers[i].cardinality() == 0) delete(i);
+        return removed;
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) return false;
+        int i = Arrays.binarySearch(keys, 0, size, value >>> 16);
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    public int cardinality() {
+        int n = 0;
+        for (int i = 0; i < size; i++) n += containers[i].cardinality();
+        return n;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @return the values in both bitmaps
+     */
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0, j = 0;
+
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container c = containers[i++].and(other.containers[j++]);
+                if (c.cardinality() > 0) result.append(keys[i - 1], c);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the number of values in both bitmaps, without building their intersection
+     */
+    public int andCardinality(CompressedBitmap other) {
+        int n = 0, i = 0, j = 0;
+
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) i++;
+            else if (keys[i] > other.keys[j]) j++;
+            else n += containers[i++].andCardinality(other.containers[j++]);
+        }
+
+        return n;
+    }
+
+    /**
+     * @return the values in either bitmap
+     */
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int i = 0, j = 0;
+
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i++].copy());
+            } else if (i == size || keys[i] > other.keys[j]) {
+                result.append(other.keys[j], other.containers[j++].copy());
+            } else {
+                result.append(keys[i], containers[i++].or(other.containers[j++]));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @return the values in this bitmap but not the other one
+     */
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) j++;
+
+            Container c = j < other.size && other.keys[j] == keys[i] ?
+                    containers[i].andNot(other.containers[j]) : containers[i].copy();
+            if (c.cardinality() > 0) result.append(keys[i], c);
+        }
+
+        return result;
+    }
+
+    /**
+     * Call {@code action} with every value, in ascending order.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) containers[i].forEach(keys[i] << 16, action);
+    }
+
+    public int[] toArray() {
+        int[] values = new int[cardinality()];
+        int[] n = {0};
+        forEach(v -> values[n[0]++] = v);
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedBitmap{" + cardinality() + " values in " + size + " chunks}";
+    }
+
+    private static void checkValue(int value) {
+        if (value < 0) throw new IllegalArgumentException("value must be >= 0, but is " + value);
+    }
+
+    private void append(int key, Container c) {
+        insert(size, key, c);
+    }
+
+    private void insert(int i, int key, Container c) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+            containers = Arrays.copyOf(containers, keys.length);
+        }
+
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = c;
+        size++;
+    }
+
+    private void delete(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+        containers[--size] = null;
+    }
+
+    /**
+     * The low 16 bits of the values in one chunk. Operations return the container holding the
+     * result, which may be a different form than the one they were called on.
+     */
+    private abstract static class Container {
+        abstract Container add(char low);
+
+        abstract Container remove(char low);
+
+        abstract boolean contains(char low);
+
+        abstract int cardinality();
+
+        abstract Container and(Container other);
+
+        abstract int andCardinality(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract void forEach(int high, IntConsumer action);
+
+        abstract Container copy();
+    }
+
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char low) {
+            int i = Arrays.binarySearch(values, 0, cardinality, low);
+            if (i >= 0) return this;
+
+            if (cardinality == ARRAY_MAX) return toBitmap().add(low);
+
+            i = -i - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = low;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            int i = Arrays.binarySearch(values, 0, cardinality, low);
+            if (i < 0) return this;
+
+            System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+            cardinality--;
+            return this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[cardinality];
+            int n = 0;
+
+            if (other instanceof BitmapContainer) {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) result[n++] = values[i];
+                }
+                return new ArrayContainer(result, n);
+            }
+
+            ArrayContainer o = (ArrayContainer) other;
+            for (int i = 0, j = 0; i < cardinality && j < o.cardinality; ) {
+                if (values[i] < o.values[j]) i++;
+                else if (values[i] > o.values[j]) j++;
+                else {
+                    result[n++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            int n = 0;
+
+            if (other instanceof BitmapContainer) {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) n++;
+                }
+                return n;
+            }
+
+            ArrayContainer o = (ArrayContainer) other;
+            for (int i = 0, j = 0; i < cardinality && j < o.cardinality; ) {
+                if (values[i] < o.values[j]) i++;
+                else if (values[i] > o.values[j]) j++;
+                else {
+                    n++;
+                    i++;
+                    j++;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) return other.or(this);
+
+            ArrayContainer o = (ArrayContainer) other;
+            char[] result = new char[cardinality + o.cardinality];
+            int n = 0, i = 0, j = 0;
+
+            while (i < cardinality || j < o.cardinality) {
+                if (j == o.cardinality || (i < cardinality && values[i] < o.values[j])) result[n++] = values[i++];
+                else if (i == cardinality || values[i] > o.values[j]) result[n++] = o.values[j++];
+                else {
+                    result[n++] = values[i++];
+                    j++;
+                }
+            }
+
+            ArrayContainer union = new ArrayContainer(result, n);
+            return n > ARRAY_MAX ? union.toBitmap() : union;
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] result = new char[cardinality];
+            int n = 0;
+
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) result[n++] = values[i];
+            }
+
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) action.accept(high | values[i]);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(1, cardinality)), cardinality);
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer(new long[WORDS]);
+            for (int i = 0; i < cardinality; i++) bitmap.add(values[i]);
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer(long[] words) {
+            this.words = words;
+            for (long w : words) cardinality += Long.bitCount(w);
+        }
+
+        @Override
+        Container add(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) == 0) {
+                words[low >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(char low) {
+            long bit = 1L << low;
+            if ((words[low >>> 6] & bit) != 0) {
+                words[low >>> 6] &= ~bit;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX ? toArray() : this;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) return other.and(this);
+
+            long[] o = ((BitmapContainer) other).words, result = new long[WORDS];
+            for (int i = 0; i < WORDS; i++) result[i] = words[i] & o[i];
+            return fit(new BitmapContainer(result));
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            if (other instanceof ArrayContainer) return other.andCardinality(this);
+
+            long[] o = ((BitmapContainer) other).words;
+            int n = 0;
+            for (int i = 0; i < WORDS; i++) n += Long.bitCount(words[i] & o[i]);
+            return n;
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer result = new BitmapContainer(words.clone());
+
+            if (other instanceof ArrayContainer) {
+                other.forEach(0, v -> result.add((char) v));
+                return result;
+            }
+
+            long[] o = ((BitmapContainer) other).words;
+            for (int i = 0; i < WORDS; i++) result.words[i] |= o[i];
+            result.cardinality = 0;
+            for (long w : result.words) result.cardinality += Long.bitCount(w);
+            return result;
+        }
+
+        @Override
+        Container andNot(Container other) {
+            long[] result = words.clone();
+
+            if (other instanceof ArrayContainer) {
+                other.forEach(0, v -> result[v >>> 6] &= ~(1L << v));
+            } else {
+                long[] o = ((BitmapContainer) other).words;
+                for (int i = 0; i < WORDS; i++) result[i] &= ~o[i];
+            }
+
+            return fit(new BitmapContainer(result));
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < WORDS; i++) {
+                for (long w = words[i]; w != 0; w &= w - 1) {
+                    action.accept(high | (i << 6) | Long.numberOfTrailingZeros(w));
+                }
+            }
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone());
+        }
+
+        private static Container fit(BitmapContainer c) {
+            return c.cardinality <= ARRAY_MAX ? c.toArray() : c;
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[cardinality];
+            int[] n = {0};
+            forEach(0, v -> values[n[0]++] = (char) v);
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+
+/**
+ * A three stage pipeline for loading large CSV files into the database:
+ * <ol>
+ * <li>the <b>reader</b> streams the file and cuts it into chunks of lines,</li>
+ * <li>several <b>parsers</b> turn chunks into validated rows in parallel, and</li>
+ * <li>a single <b>writer</b>, which owns the database connection, collects rows into batches and
+ * hands them to a {@link BatchWriter}, typically a multi-row insert.</li>
+ * </ol>
+ * The stages are connected by bounded queues, so a slow database throttles reading instead of
+ * filling the heap. Rows that fail validation, or that the database refuses, are written to a
+ * reject file together with the reason. Every stage keeps its own row count and busy time, which
+ * are logged as throughput figures at the end.
+ * <p>
+ * A stage that finishes, or fails, sends an end marker downstream, unless the import was called off
+ * by interrupting it: the stages downstream are gone then, and would never take the marker.
+ * <p>
+ * The first line of the file must be a header; parsers look fields up by column name. Fields may
+ * be quoted with {@code "}, but quoted fields cannot span lines.
+ *
+ * @param <T> the type of row being imported
+ * @author Joshua Escareno
+ */
+public class CsvImportPipeline<T> {
+    private static final int CHUNK_LINES = 1000;
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final RowParser<T> parser;
+    private final BatchWriter<T> writer;
+    private final int parserThreads;
+    private final int batchSize;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(CsvImportPipeline.class.getName());
+    }
+
+    /**
+     * @param parser        turns one CSV record into a row, or rejects it
+     * @param writer        stores a batch of rows
+     * @param parserThreads the number of parallel parsers
+     * @param batchSize     the number of rows handed to the writer at once
+     */
+    public CsvImportPipeline(RowParser<T> parser, BatchWriter<T> writer, int parserThreads, int batchSize) {
+        this.parser = parser;
+        this.writer = writer;
+        this.parserThreads = parserThreads;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Import a CSV file.
+     *
+     * @param csv        the file to import
+     * @param rejectFile where rejected lines are written, with the reason in an extra column
+     * @param progress   notified periodically while the import runs
+     * @return the final counts and per-stage metrics
+     * @throws IOException  if the input cannot be read or the reject file cannot be written
+     * @throws SQLException if the database fails in a way not attributable to individual rows
+     */
+    public Result run(Path csv, Path rejectFile, ProgressListener progress) throws IOException, SQLException {
+        BlockingQueue<Chunk> toParse = new ArrayBlockingQueue<>(parserThreads * 2);
+        BlockingQueue<Parsed<T>> toWrite = new ArrayBlockingQueue<>(parserThreads * 2);
+        Result result = new Result();
+        ExecutorService workers = Executors.newFixedThreadPool(parserThreads + 1, r -> {
+            Thread t = new Thread(r, "csv-import");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try (BufferedReader in = Files.newBufferedReader(csv, StandardCharsets.UTF_8);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectFile, StandardCharsets.UTF_8)) {
+            String headerLine = in.readLine();
+            if (headerLine == null) return result;
+
+            Header header = new Header(splitCsvLine(headerLine));
+            rejects.write(headerLine + ",reject_reason");
+            rejects.newLine();
+
+            Future<?> reader = workers.submit(() -> {
+                read(in, toParse, result.read);
+                return null;
+            });
+
+            List<Future<?>> parsers = new ArrayList<>();
+
+            for (int i = 0; i < parserThreads; i++) {
+                parsers.add(workers.submit(() -> {
+                    parse(header, toParse, toWrite, result.parsed);
+                    return null;
+                }));
+            }
+
+            write(toWrite, rejects, result, progress);
+
+            await(reader);
+            for (Future<?> parser : parsers) await(parser);
+        } finally {
+            workers.shutdownNow();
+        }
+
+        getLogger().log(INFO, "Imported {0}: {1}", new Object[]{csv, result});
+        return result;
+    }
+
+    private void read(BufferedReader in, BlockingQueue<Chunk> toParse, StageMetrics metrics)
+            throws IOException, InterruptedException {
+        long lineNumber = 1;
+        boolean calledOff = false;
+
+        try {
+            while (true) {
+                long start = System.nanoTime();
+                Chunk chunk = new Chunk(lineNumber + 1);
+                String line;
+
+                while (chunk.lines.size() < CHUNK_LINES && (line = in.readLine()) != null) {
+                    chunk.lines.add(line);
+                }
+
+                lineNumber += chunk.lines.size();
+                metrics.add(chunk.lines.size(), System.nanoTime() - start);
+
+                if (chunk.lines.isEmpty()) break;
+                toParse.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            calledOff = true;
+            throw e;
+        } finally {
+            if (!calledOff) {
+                for (int i = 0; i < parserThreads; i++) toParse.put(Chunk.END);
+            }
+        }
+    }
+
+    private void parse(Header header, BlockingQueue<Chunk> toParse, BlockingQueue<Parsed<T>> toWrite,
+                       StageMetrics metrics) throws InterruptedException {
+        boolean calledOff = false;
+
+        try {
+            Chunk chunk;
+
+            while ((chunk = toParse.take()) != Chunk.END) {
+                long start = System.nanoTime();
+                Parsed<T> parsed = new Parsed<>();
+
+                for (int i = 0; i < chunk.lines.size(); i++) {
+                    String line = chunk.lines.get(i);
+
+                    if (line.trim().isEmpty()) continue;
+
+                    try {
+                        parsed.rows.add(new Sourced<>(line, parser.parse(new Record(header, splitCsvLine(line)))));
+                    } catch (RuntimeException e) {
+                        parsed.rejects.add(new Reject(chunk.firstLine + i, line, e.getMessage()));
+                    }
+                }
+
+                metrics.add(chunk.lines.size(), System.nanoTime() - start);
+                toWrite.put(parsed);
+            }
+        } catch (InterruptedException e) {
+            calledOff = true;
+            throw e;
+        } finally {
+            if (!calledOff) toWrite.put(Parsed.end());
+        }
+    }
+
+    private void write(BlockingQueue<Parsed<T>> toWrite, BufferedWriter rejects, Result result,
+                       ProgressListener progress) throws IOException, SQLException {
+        List<Sourced<T>> batch = new ArrayList<>(batchSize);
+        int finishedParsers = 0;
+        long lastProgress = System.nanoTime();
+
+        try {
+            while (finishedParsers < parserThreads) {
+                Parsed<T> parsed = toWrite.take();
+
+                if (parsed.isEnd()) {
+                    finishedParsers++;
+                    continue;
+                }
+
+                for (Reject reject : parsed.rejects) writeReject(rejects, reject.line, reject.reason, result);
+
+                for (Sourced<T> row : parsed.rows) {
+                    batch.add(row);
+
+                    if (batch.size() == batchSize) {
+                        flush(batch, rejects, result);
+                    }
+                }
+
+                if (System.nanoTime() - lastProgress > PROGRESS_INTERVAL_NANOS) {
+                    lastProgress = System.nanoTime();
+                    progress.progress(result.read.rows(), result.written.rows(), result.rejected.get());
+                }
+            }
+
+            flush(batch, rejects, result);
+            progress.progress(result.read.rows(), result.written.rows(), result.rejected.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        }
+    }
+
+    /**
+     * Write a batch. If the database refuses it, the batch is split in halves until the rows at
+     * fault are isolated and rejected individually, so one bad row costs a handful of extra
+     * round trips rather than the whole batch.
+     */
+    private void flush(List<Sourced<T>> batch, BufferedWriter rejects, Result result)
+            throws IOException, SQLException {
+        if (batch.isEmpty()) return;
+
+        List<T> rows = new ArrayList<>(batch.size());
+        for (Sourced<T> row : batch) rows.add(row.row);
+
+        long start = System.nanoTime();
+
+        try {
+            writer.write(rows);
+            result.written.add(batch.size(), System.nanoTime() - start);
+        } catch (SQLException e) {
+            result.written.add(0, System.nanoTime() - start);
+
+            // a lost connection is not the rows' fault
+            if (e.getSQLState() != null && e.getSQLState().startsWith("08")) throw e;
+
+            if (batch.size() == 1) {
+                writeReject(rejects, batch.get(0).line, e.getMessage(), result);
+            } else {
+                int half = batch.size() / 2;
+                flush(new ArrayList<>(batch.subList(0, half)), rejects, result);
+                flush(new ArrayList<>(batch.subList(half, batch.size())), rejects, result);
+            }
+        }
+
+        batch.clear();
+    }
+
+    private static void writeReject(BufferedWriter rejects, String line, String reason, Result result)
+            throws IOException {
+        String escaped = reason == null ? "" : reason.replace("\"", "\"\"").replace('\n', ' ');
+
+        rejects.write(line + ",\"" + escaped + "\"");
+        rejects.newLine();
+        result.rejected.incrementAndGet();
+    }
+
+    private static void await(Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (java.util.concurrent.ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Import stage failed", e.getCause());
+        }
+    }
+
+    /**
+     * Split one CSV line into fields. Fields may be enclosed in double quotes, in which case
+     * commas are taken literally and {@code ""} stands for a single quote.
+     *
+     * @param line the line to split
+     * @return the fields, unquoted
+     */
+    static String[] splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * Turns one CSV record into a row. Invalid records are rejected by throwing a
+     * RuntimeException, whose message ends up in the reject file.
+     *
+     * @param <T> the row type
+     */
+    @FunctionalInterface
+    public interface RowParser<T> {
+        T parse(Record record);
+    }
+
+    /**
+     * Stores a batch of rows, typically with a single multi-row insert.
+     *
+     * @param <T> the row type
+     */
+    @FunctionalInterface
+    public interface BatchWriter<T> {
+        void write(List<T> batch) throws SQLException;
+    }
+
+    /**
+     * Notified periodically with running totals.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void progress(long read, long written, long rejected);
+    }
+
+    /**
+     * One CSV record, with fields accessible by header name.
+     */
+    public static final class Record {
+        private final Header header;
+        private final String[] fields;
+
+        Record(Header header, String[] fields) {
+            this.header = header;
+            this.fields = fields;
+        }
+
+        /**
+         * @param column the column name from the header line
+         * @return the trimmed field, or null if the column is missing or the field is empty
+         */
+        public String get(String column) {
+            Integer index = header.columns.get(column);
+
+            // optional columns may be left out of the header altogether
+            if (index == null || index >= fields.length) return null;
+
+            String value = fields[index].trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        /**
+         * @param column the column name from the header line
+         * @return the field
+         * @throws IllegalArgumentException if the column is missing or the field is empty
+         */
+        public String require(String column) {
+            String value = get(column);
+
+            if (value == null) throw new IllegalArgumentException(column + " is required");
+            return value;
+        }
+    }
+
+    /**
+     * Counts and timing for one stage. Parsers share an instance, so it is thread safe.
+     */
+    public static final class StageMetrics {
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        void add(long rows, long nanos) {
+            this.rows.addAndGet(rows);
+            this.busyNanos.addAndGet(nanos);
+        }
+
+        public long rows() {
+            return rows.get();
+        }
+
+        /**
+         * @return rows per second of time spent working in this stage, across all its threads
+         */
+        public double rowsPerSecond() {
+            long nanos = busyNanos.get();
+            return nanos == 0 ? 0 : rows.get() * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d rows, %.0f rows/s", rows(), rowsPerSecond());
+        }
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    public static final class Result {
+        private final StageMetrics read = new StageMetrics();
+        private final StageMetrics parsed = new StageMetrics();
+        private final StageMetrics written = new StageMetrics();
+        private final AtomicLong rejected = new AtomicLong();
+
+        public StageMetrics read() {
+            return read;
+        }
+
+        public StageMetrics parsed() {
+            return parsed;
+        }
+
+        public StageMetrics written() {
+            return written;
+        }
+
+        public long rejected() {
+            return rejected.get();
+        }
+
+        @Override
+        public String toString() {
+            return "read " + read + "; parsed " + parsed + "; written " + written + "; rejected " + rejected;
+        }
+    }
+
+    private static final class Header {
+        private final Map<String, Integer> columns = new HashMap<>();
+
+        Header(String[] names) {
+            for (int i = 0; i < names.length; i++) columns.put(names[i].trim(), i);
+        }
+    }
+
+    private static final class Chunk {
+        private static final Chunk END = new Chunk(-1);
+
+        private final long firstLine;
+        private final List<String> lines = new ArrayList<>(CHUNK_LINES);
+
+        Chunk(long firstLine) {
+            this.firstLine = firstLine;
+        }
+    }
+
+    private static final class Sourced<T> {
+        private final String line;
+        private final T row;
+
+        Sourced(String line, T row) {
+            this.line = line;
+            this.row = row;
+        }
+    }
+
+    private static final class Parsed<T> {
+        private final List<Sourced<T>> rows = new ArrayList<>();
+        private final List<Reject> rejects = new ArrayList<>();
+        private boolean end;
+
+        static <T> Parsed<T> end() {
+            Parsed<T> parsed = new Parsed<>();
+            parsed.end = true;
+            return parsed;
+        }
+
+        boolean isEnd() {
+            return end;
+        }
+    }
+
+    private static final class Reject {
+        private final String line;
+        private final String reason;
+
+        Reject(long lineNumber, String line, String reason) {
+            this.line = line;
+            this.reason = "line " + lineNumber + ": " + reason;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package service;
+
+import dao.DAOFactory;
+import dao.SlumlordDAO;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.io.Console;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Hashes and checks the passwords slumlords log in with. A hash is stored as
+ * {@code pbkdf2-sha256$<iterations>$<salt>$<hash>}, salt and hash in base64, so the iteration count can be
+ * raised later without breaking the hashes already stored. Also a standalone job setting a password:
+ * <pre>
+ *     Passwords &lt;userName&gt;
+ * </pre>
+ * which asks for the password on the console rather than taking it as an argument, so it does not end up in
+ * the shell history.
+ *
+ * @author Joshua Escareno
+ */
+public final class Passwords {
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String SCHEME = "pbkdf2-sha256";
+    private static final int ITERATIONS = 100_000;
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Checked against when a user has no hash, so that a login takes as long whether the user exists or not
+     */
+    private static final String DUMMY_HASH = hash("not a password".toCharArray());
+
+    private Passwords() {
+    }
+
+    /**
+     * @param password the password
+     * @return a salted hash of the password, to be stored in its place
+     */
+    public static String hash(char[] password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+
+        Base64.Encoder base64 = Base64.getEncoder();
+        return SCHEME + "$" + ITERATIONS + "$" + base64.encodeToString(salt) + "$"
+                + base64.encodeToString(pbkdf2(password, salt, ITERATIONS));
+    }
+
+    /**
+     * Check a password against a stored hash. A null or unreadable hash matches no password, but still costs a
+     * full check.
+     *
+     * @param password the password given
+     * @param stored   the hash made by {@link #hash}, or null if there is none
+     * @return whether the password is the one hashed
+     */
+    public static boolean verify(char[] password, String stored) {
+        String[] parts = stored == null ? null : stored.split("\\$");
+        boolean readable = parts != null && parts.length == 4 && parts[0].equals(SCHEME);
+
+        if (!readable) parts = DUMMY_HASH.split("\\$");
+
+        try {
+            Base64.Decoder base64 = Base64.getDecoder();
+            byte[] expected = base64.decode(parts[3]);
+            byte[] actual = pbkdf2(password, base64.decode(parts[2]), Integer.parseInt(parts[1]));
+
+            // compares every byte, so the time taken tells nothing about how much of the hash matched
+            return MessageDigest.isEqual(expected, actual) && readable;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static byte[] pbkdf2(char[] password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BITS);
+
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            // every Java 8 runtime has the algorithm
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Console console = System.console();
+
+        if (args.length != 1 || console == null) {
+            System.err.println("usage: Passwords <userName>, from a terminal");
+            System.exit(2);
+        }
+
+        char[] password = console.readPassword("New password for %s: ", args[0]);
+        char[] again = console.readPassword("Again: ");
+
+        if (password == null || password.length == 0 || !Arrays.equals(password, again)) {
+            System.err.println("The passwords are empty or differ; nothing changed");
+            System.exit(1);
+        }
+
+        String hash = hash(password);
+        Arrays.fill(password, ' ');
+        Arrays.fill(again, ' ');
+
+        SlumlordDAO dao = DAOFactory.create(SlumlordDAO.class);
+        if (!dao.setPasswordHash(args[0], hash)) {
+            System.err.println("There is no slumlord " + args[0]);
+            System.exit(1);
+        }
+        System.out.println("Password of " + args[0] + " set");
+    }
+}
@@ -0,0 +1,368 @@
+package service;
+
+import dao.ChangeFeed;
+import dao.PropertyDAO;
+import dao.PropertyDAO.PropertyBaseData;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * An in-memory index of properties by their searchable attributes. Every property gets a dense
+ * ordinal, and every value of every attribute a {@link CompressedBitmap} of the ordinals that
+ * have it, so a combination of filters is a handful of bitmap ANDs and ORs instead of a scan,
+ * and a facet count is the size of an intersection.
+ * <p>
+ * The index is loaded from the property change feed and kept current by reading the feed again,
+ * either on demand with {@link #refresh} or in the background with {@link #refreshEvery}. The
+ * ordinals of deleted properties are reused, so the bitmaps stay dense. Properties with a null
+ * attribute are not in any bitmap of that attribute.
+ *
+ * @author Joshua Escareno
+ */
+public class PropertyAttributeIndex implements AutoCloseable {
+    private static final int PAGE_SIZE = 1000;
+
+    /**
+     * The searchable attributes of a property.
+     */
+    public enum Attribute {
+        TYPE("type", PropertyBaseData::getPropertyType, s -> s),
+        CITY_CODE("city", PropertyBaseData::getCityCode, s -> s),
+        VACANCY("vacancy", PropertyBaseData::getVacancyIndicator, s -> s),
+        ROOMS("rooms", PropertyBaseData::getNumberOfRooms, Integer::valueOf),
+        BATHROOMS("bathrooms", PropertyBaseData::getNumberOfBathrooms, Integer::valueOf),
+        GARAGES("garages", PropertyBaseData::getGarageCount, Integer::valueOf),
+        OWNER("owner", PropertyBaseData::getOwnerID, s -> s);
+
+        private final String parameter;
+        private final Function<PropertyBaseData, Object> getter;
+        private final Function<String, Object> parser;
+
+        Attribute(String parameter, Function<PropertyBaseData, Object> getter, Function<String, Object> parser) {
+            this.parameter = parameter;
+            this.getter = getter;
+            this.parser = parser;
+        }
+
+        /**
+         * @return the name of the attribute in request parameters
+         */
+        public String getParameter() {
+            return parameter;
+        }
+
+        /**
+         * @return a value of this attribute given as text
+         * @throws NumberFormatException if a count is not a number
+         */
+        public Object parse(String value) {
+            return parser.apply(value);
+        }
+
+        Object valueOf(PropertyBaseData property) {
+            return getter.apply(property);
+        }
+    }
+
+    /**
+     * A search condition, evaluated to the bitmap of matching ordinals.
+     */
+    @FunctionalInterface
+    public interface Filter {
+        CompressedBitmap matches(PropertyAttributeIndex index);
+
+        /**
+         * Every property.
+         */
+        Filter ALL = index -> index.live;
+
+        static Filter eq(Attribute attribute, Object value) {
+            return index -> index.bitmap(attribute, value);
+        }
+
+        static Filter in(Attribute attribute, List<?> values) {
+            return index -> {
+                CompressedBitmap result = new CompressedBitmap();
+                for (Object value : values) result = result.or(index.bitmap(attribute, value));
+                return result;
+            };
+        }
+
+        static Filter and(List<Filter> filters) {
+            return index -> {
+                CompressedBitmap result = index.live;
+                for (Filter f : filters) result = result.and(f.matches(index));
+                return result;
+            };
+        }
+
+        static Filter or(List<Filter> filters) {
+            return index -> {
+                CompressedBitmap result = new CompressedBitmap();
+                for (Filter f : filters) result = result.or(f.matches(index));
+                return result;
+            };
+        }
+
+        static Filter not(Filter filter) {
+            return index -> index.live.andNot(filter.matches(index));
+        }
+    }
+
+    /**
+     * The properties matching a search, and for each requested attribute how many of them have
+     * each value.
+     */
+    public static final class SearchResult implements Serializable {
+        private final List<PropertyBaseData> properties;
+        private final Map<Attribute, Map<Object, Integer>> facets;
+
+        SearchResult(List<PropertyBaseData> properties, Map<Attribute, Map<Object, Integer>> facets) {
+            this.properties = properties;
+            this.facets = facets;
+        }
+
+        public List<PropertyBaseData> getProperties() {
+            return properties;
+        }
+
+        public Map<Attribute, Map<Object, Integer>> getFacets() {
+            return facets;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Integer> ordinals = new HashMap<>();
+    private final List<PropertyBaseData> rows = new ArrayList<>();
+    private final Deque<Integer> freeOrdinals = new ArrayDeque<>();
+    private final Map<Attribute, Map<Object, CompressedBitmap>> bitmaps = new EnumMap<>(Attribute.class);
+    private CompressedBitmap live = new CompressedBitmap();
+    private long highWaterMark;
+    private ScheduledExecutorService refresher;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(PropertyAttributeIndex.class.getName());
+    }
+
+    public PropertyAttributeIndex() {
+        for (Attribute attribute : Attribute.values()) bitmaps.put(attribute, new HashMap<>());
+    }
+
+    /**
+     * Read the property change feed from where the last refresh stopped, or from the start.
+     * Refreshes run one at a time, so an older page is never applied over a newer one.
+     *
+     * @param dao where to read the changes from
+     * @return the number of properties added, changed or deleted
+     * @throws SQLException if the changes cannot be read
+     */
+    public synchronized int refresh(PropertyDAO dao) throws SQLException {
+        long start = System.currentTimeMillis();
+        long seq;
+        int changes = 0;
+
+        lock.readLock().lock();
+        try {
+            seq = highWaterMark;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // read outside the write lock so searches are only held up while a page is applied
+        ChangeFeed<PropertyBaseData> page;
+        do {
+            page = ChangeFeed.read(from -> dao.propertyChangesSince(null, from, PAGE_SIZE), seq);
+
+            lock.writeLock().lock();
+            try {
+                for (PropertyBaseData property : page.getUpserts()) put(property);
+                for (int propertyId : page.getDeletedIds()) remove(propertyId);
+                seq = page.getResumeMark();
+                highWaterMark = seq;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            changes += page.getUpserts().size() + page.getDeletedIds().length;
+        } while (page.hasMore());
+
+        if (changes > 0) {
+            getLogger().log(INFO, "Indexed {0} property changes in {1} ms.",
+                    new Object[]{changes, System.currentTimeMillis() - start});
+        }
+        return changes;
+    }
+
+    /**
+     * Refresh from the change feed every {@code intervalMs} on a background thread, until
+     * {@link #close} is called.
+     */
+    public synchronized void refreshEvery(PropertyDAO dao, long intervalMs) {
+        if (refresher != null) throw new IllegalStateException("Already refreshing");
+
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "property-attribute-index");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh(dao);
+            } catch (Exception e) {
+                getLogger().log(WARNING, "Property index refresh failed ({0})", String.valueOf(e.getMessage()).trim());
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (refresher != null) refresher.shutdownNow();
+        refresher = null;
+    }
+
+    /**
+     * Add a property, or replace the one with the same id.
+     */
+    public void update(PropertyBaseData property) {
+        lock.writeLock().lock();
+        try {
+            put(property);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drop a property.
+     */
+    public void delete(int propertyId) {
+        lock.writeLock().lock();
+        try {
+            remove(propertyId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of properties indexed
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of properties matching the filter
+     */
+    public int count(Filter filter) {
+        lock.readLock().lock();
+        try {
+            return filter.matches(this).cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param filter  the properties to find
+     * @param limit   the most properties to return; facet counts cover all matches regardless
+     * @param facetOn the attributes to count values of among the matches
+     * @return the matching properties in index order, and the facet counts
+     */
+    public SearchResult search(Filter filter, int limit, List<Attribute> facetOn) {
+        lock.readLock().lock();
+        try {
+            CompressedBitmap matches = filter.matches(this);
+            List<PropertyBaseData> properties = new ArrayList<>(Math.min(limit, matches.cardinality()));
+
+            int[] found = matches.toArray();
+            for (int i = 0; i < found.length && i < limit; i++) properties.add(rows.get(found[i]));
+
+            Map<Attribute, Map<Object, Integer>> facets = new EnumMap<>(Attribute.class);
+            for (Attribute attribute : facetOn) {
+                Map<Object, Integer> counts = new TreeMap<>();
+                bitmaps.get(attribute).forEach((value, bitmap) -> {
+                    int n = bitmap.andCardinality(matches);
+                    if (n > 0) counts.put(value, n);
+                });
+                facets.put(attribute, counts);
+            }
+
+            return new SearchResult(properties, facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private CompressedBitmap bitmap(Attribute attribute, Object value) {
+        CompressedBitmap bitmap = value == null ? null : bitmaps.get(attribute).get(value);
+        return bitmap == null ? new CompressedBitmap() : bitmap;
+    }
+
+    private void put(PropertyBaseData property) {
+        Integer ordinal = ordinals.get(property.getPropertyId());
+
+        if (ordinal == null) {
+            ordinal = freeOrdinals.isEmpty() ? rows.size() : freeOrdinals.pop();
+            if (ordinal == rows.size()) rows.add(null);
+            ordinals.put(property.getPropertyId(), ordinal);
+            live.add(ordinal);
+        }
+
+        PropertyBaseData old = rows.get(ordinal);
+        rows.set(ordinal, property);
+
+        for (Attribute attribute : Attribute.values()) {
+            Object before = old == null ? null : attribute.valueOf(old);
+            Object after = attribute.valueOf(property);
+            if (before != null && before.equals(after)) continue;
+
+            if (before != null) clear(attribute, before, ordinal);
+            if (after != null) bitmaps.get(attribute).computeIfAbsent(after, k -> new CompressedBitmap()).add(ordinal);
+        }
+    }
+
+    private void remove(int propertyId) {
+        Integer ordinal = ordinals.remove(propertyId);
+        if (ordinal == null) return;
+
+        PropertyBaseData old = rows.set(ordinal, null);
+        for (Attribute attribute : Attribute.values()) {
+            Object before = attribute.valueOf(old);
+            if (before != null) clear(attribute, before, ordinal);
+        }
+
+        live.remove(ordinal);
+        freeOrdinals.push(ordinal);
+    }
+
+    private void clear(Attribute attribute, Object value, int ordinal) {
+        CompressedBitmap bitmap = bitmaps.get(attribute).get(value);
+        bitmap.remove(ordinal);
+        if (bitmap.isEmpty()) bitmaps.get(attribute).remove(value);
+    }
+}
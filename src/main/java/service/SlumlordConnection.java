@@ -1,6 +1,8 @@
 package service;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -21,13 +23,15 @@ public class SlumlordConnection {
     private static final String DEFAULT_USERNAME = "testuser";
 
     private static final String JDBC_CONNECTION_ENV = "JDBC_CONNECTION";
+    private static final String JDBC_SHARDS_ENV = "JDBC_SHARDS";
+    private static final String JDBC_REPLICAS_ENV = "JDBC_REPLICAS";
     private static final String PASSWORD_ENV = "PPW";
     private static final String USERNAME_PASSWORD_ENV = "UPW";
 
     private static final String GLOBAL_NAME_QUERY = "select * from global_name";
 
     private static Connection instance;
-    private static String globalName;
+    private static volatile String globalName;
 
     private SlumlordConnection() {
         throw new IllegalArgumentException(
@@ -99,14 +103,14 @@ public class SlumlordConnection {
         return globalName;
     }
 
-    public static Connection getInstance() {
+    public static synchronized Connection getInstance() {
         if (instance == null)
             instance = getInstance(System.getenv());
 
         return instance;
     }
 
-    public static Connection getInstance(Map<String, String> env) {
+    public static synchronized Connection getInstance(Map<String, String> env) {
         ConnectionParameters cp = buildConnectionParameters(env);
         Long start = System.currentTimeMillis();
 
@@ -128,6 +132,140 @@ public class SlumlordConnection {
         return instance;
     }
 
+    /**
+     * Opens a connection of its own to the database {@link #getInstance(Map)} connects to, for
+     * work that should not share the application connection, such as a load test thread. The
+     * caller closes it.
+     *
+     * @param env the environment to read the URL and credentials from
+     * @return the new connection
+     */
+    public static Connection openInstance(Map<String, String> env) {
+        ConnectionParameters cp = buildConnectionParameters(env);
+        Long start = System.currentTimeMillis();
+
+        try {
+            Connection conn = DriverManager.getConnection(cp.getUrl(), cp.getUsername(), cp.getPassword());
+
+            Long dur = System.currentTimeMillis() - start;
+            LOG.log(INFO, "[SQLStats] CONNECT[{0} as {1}] in {2} ms",
+                    new Object[]{cp.getUrl(), cp.getUsername(), dur});
+            return conn;
+        } catch (SQLException e) {
+            Long dur = System.currentTimeMillis() - start;
+            LOG.log(SEVERE, "[SQLStats] CONNECT[{0} as {1}] failed({2}) in {3} ms",
+                    new Object[]{cp.getUrl(), cp.getUsername(), e.getMessage().trim(), dur});
+            throw new RuntimeException("Unable to connect to Slumlord database.");
+        }
+    }
+
+    /**
+     * Opens one connection per shard, for the comma separated JDBC URLs in {@code JDBC_SHARDS}.
+     * Every shard is reached with the same credentials as {@link #getInstance(Map)}. These
+     * connections are not shared; the caller closes them.
+     *
+     * @param env the environment to read the shard URLs and credentials from
+     * @return the shard connections, in the order they are listed
+     */
+    public static List<Connection> getShardInstances(Map<String, String> env) {
+        return connectAll(JDBC_SHARDS_ENV, env);
+    }
+
+    /**
+     * Opens one connection per read replica, for the comma separated JDBC URLs in
+     * {@code JDBC_REPLICAS}. Every replica is reached with the same credentials as
+     * {@link #getInstance(Map)}. These connections are not shared; the caller closes them.
+     *
+     * @param env the environment to read the replica URLs and credentials from
+     * @return the replica connections, in the order they are listed
+     */
+    public static List<Connection> getReplicaInstances(Map<String, String> env) {
+        return connectAll(JDBC_REPLICAS_ENV, env);
+    }
+
+    /**
+     * @param env the environment to read the replica URLs from
+     * @return the number of read replicas listed in {@code JDBC_REPLICAS}, 0 if there are none
+     */
+    public static int countReplicas(Map<String, String> env) {
+        String urls = env.get(JDBC_REPLICAS_ENV);
+        return urls == null || urls.trim().isEmpty() ? 0 : urls.split(",").length;
+    }
+
+    /**
+     * Opens a new connection to one read replica, like {@link #getReplicaInstances(Map)} does for
+     * all of them. The caller closes it.
+     *
+     * @param env     the environment to read the replica URLs and credentials from
+     * @param replica the position of the replica in {@code JDBC_REPLICAS}
+     * @return the new connection
+     */
+    public static Connection openReplicaInstance(Map<String, String> env, int replica) {
+        String url = urls(JDBC_REPLICAS_ENV, env)[replica].trim();
+        ConnectionParameters cp = buildConnectionParameters(env);
+        Long start = System.currentTimeMillis();
+
+        try {
+            Connection conn = DriverManager.getConnection(url, cp.getUsername(), cp.getPassword());
+
+            Long dur = System.currentTimeMillis() - start;
+            LOG.log(INFO, "[SQLStats] CONNECT[{0} as {1}] in {2} ms",
+                    new Object[]{url, cp.getUsername(), dur});
+            return conn;
+        } catch (SQLException e) {
+            Long dur = System.currentTimeMillis() - start;
+            LOG.log(SEVERE, "[SQLStats] CONNECT[{0} as {1}] failed({2}) in {3} ms",
+                    new Object[]{url, cp.getUsername(), e.getMessage().trim(), dur});
+            throw new RuntimeException("Unable to connect to Slumlord database " + url + ".");
+        }
+    }
+
+    private static String[] urls(String urlsEnv, Map<String, String> env) {
+        String urls = env.get(urlsEnv);
+
+        if (urls == null || urls.trim().isEmpty()) {
+            LOG.log(SEVERE, "{0} not defined; unable to connect to slumlord database.", urlsEnv);
+            throw new IllegalArgumentException(urlsEnv + " not defined");
+        }
+
+        return urls.split(",");
+    }
+
+    private static List<Connection> connectAll(String urlsEnv, Map<String, String> env) {
+        String[] urls = urls(urlsEnv, env);
+        ConnectionParameters cp = buildConnectionParameters(env);
+        List<Connection> connections = new ArrayList<>();
+
+        for (String url : urls) {
+            url = url.trim();
+            Long start = System.currentTimeMillis();
+
+            try {
+                connections.add(DriverManager.getConnection(url, cp.getUsername(), cp.getPassword()));
+
+                Long dur = System.currentTimeMillis() - start;
+                LOG.log(INFO, "[SQLStats] CONNECT[{0} as {1}] in {2} ms",
+                        new Object[]{url, cp.getUsername(), dur});
+            } catch (SQLException e) {
+                Long dur = System.currentTimeMillis() - start;
+                LOG.log(SEVERE, "[SQLStats] CONNECT[{0} as {1}] failed({2}) in {3} ms",
+                        new Object[]{url, cp.getUsername(), e.getMessage().trim(), dur});
+
+                for (Connection conn : connections) {
+                    try {
+                        conn.close();
+                    } catch (SQLException ignored) {
+                        // already failing
+                    }
+                }
+
+                throw new RuntimeException("Unable to connect to Slumlord database " + url + ".");
+            }
+        }
+
+        return connections;
+    }
+
     /**
      * Java bean for passing around connection parameters, used mainly for testing the {@code
      * buildConnectionParameters()} method.
@@ -0,0 +1,199 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Runs the slow parts of starting up, such as connecting to the database, preparing statements
+ * and loading the search indexes, side by side on background threads, so the server can start
+ * listening right away and report when it is ready.
+ * <p>
+ * Tasks are added with {@link #task} and all started by {@link #start}. The warm-up is ready once
+ * every task has finished without error. A task that fails is logged and run again after a delay
+ * that doubles with every failure, up to a limit, so a database that was down at startup only
+ * holds the server back until it is up again; see {@link #status} for how each task went.
+ *
+ * @author Joshua Escareno
+ */
+public class WarmUp {
+    /**
+     * A step of the warm-up.
+     */
+    @FunctionalInterface
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private enum State {WAITING, RUNNING, DONE, FAILED}
+
+    private static final class Step {
+        private final String name;
+        private final Task task;
+        private volatile State state = State.WAITING;
+        private volatile long millis;
+        private volatile String error;
+        private volatile int failures;
+
+        Step(String name, Task task) {
+            this.name = name;
+            this.task = task;
+        }
+    }
+
+    static final long DEFAULT_MIN_RETRY_MS = 1000;
+    static final long DEFAULT_MAX_RETRY_MS = 60_000;
+
+    private final Map<String, Step> steps = new LinkedHashMap<>();
+    private final int threads;
+    private final long minRetryMs;
+    private final long maxRetryMs;
+    private CountDownLatch finished;
+    private ScheduledExecutorService pool;
+    private long started;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(WarmUp.class.getName());
+    }
+
+    /**
+     * @param threads the number of tasks run at once
+     */
+    public WarmUp(int threads) {
+        this(threads, DEFAULT_MIN_RETRY_MS, DEFAULT_MAX_RETRY_MS);
+    }
+
+    /**
+     * @param threads    the number of tasks run at once
+     * @param minRetryMs how long to wait before running a failed task again the first time
+     * @param maxRetryMs the longest wait between runs of a failed task
+     */
+    public WarmUp(int threads, long minRetryMs, long maxRetryMs) {
+        if (threads < 1) throw new IllegalArgumentException("threads < 1");
+        if (minRetryMs < 1 || maxRetryMs < minRetryMs) throw new IllegalArgumentException("bad retry delays");
+        this.threads = threads;
+        this.minRetryMs = minRetryMs;
+        this.maxRetryMs = maxRetryMs;
+    }
+
+    /**
+     * Add a task. Must be called before {@link #start}.
+     *
+     * @param name names the task in logs and in the status
+     * @param task the work to do
+     * @return this warm-up
+     */
+    public synchronized WarmUp task(String name, Task task) {
+        if (finished != null) throw new IllegalStateException("Already started");
+        if (steps.containsKey(name)) throw new IllegalArgumentException("Duplicate task " + name);
+
+        steps.put(name, new Step(name, task));
+        return this;
+    }
+
+    /**
+     * Start every task on daemon threads and return without waiting for them.
+     *
+     * @return this warm-up
+     */
+    public synchronized WarmUp start() {
+        if (finished != null) throw new IllegalStateException("Already started");
+
+        List<Step> all = new ArrayList<>(steps.values());
+        started = System.currentTimeMillis();
+        finished = new CountDownLatch(all.size());
+        pool = Executors.newScheduledThreadPool(Math.max(1, Math.min(threads, all.size())), r -> {
+            Thread t = new Thread(r, "warm-up");
+            t.setDaemon(true);
+            return t;
+        });
+
+        for (Step step : all) pool.execute(() -> run(step));
+        if (all.isEmpty()) pool.shutdown();
+        return this;
+    }
+
+    private void run(Step step) {
+        long stepStart = System.currentTimeMillis();
+        step.state = State.RUNNING;
+
+        try {
+            step.task.run();
+            step.millis = System.currentTimeMillis() - stepStart;
+            step.error = null;
+            step.state = State.DONE;
+            getLogger().log(INFO, "Warm-up {0} done in {1} ms", new Object[]{step.name, step.millis});
+        } catch (Exception e) {
+            step.millis = System.currentTimeMillis() - stepStart;
+            step.error = String.valueOf(e.getMessage()).trim();
+            step.state = State.FAILED;
+
+            long delay = Math.min(maxRetryMs, minRetryMs << Math.min(step.failures++, 20));
+            getLogger().log(WARNING, "Warm-up " + step.name + " failed in " + step.millis + " ms, retrying in "
+                    + delay + " ms", e);
+            pool.schedule(() -> run(step), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        finished.countDown();
+        if (finished.getCount() == 0) {
+            pool.shutdown();
+            getLogger().log(INFO, "Warm-up ready in {0} ms", System.currentTimeMillis() - started);
+        }
+    }
+
+    /**
+     * @return whether every task has finished without error
+     */
+    public boolean isReady() {
+        CountDownLatch latch;
+        synchronized (this) {
+            latch = finished;
+        }
+        return latch != null && latch.getCount() == 0;
+    }
+
+    /**
+     * Wait for every task to finish.
+     *
+     * @return whether the warm-up is ready, false if the timeout passed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        CountDownLatch latch;
+        synchronized (this) {
+            if (finished == null) throw new IllegalStateException("Not started");
+            latch = finished;
+        }
+        return latch.await(timeout, unit);
+    }
+
+    /**
+     * @return one line per task giving its state, its time once it has finished, and the error and
+     * number of failures of a task that has failed so far
+     */
+    public synchronized String status() {
+        StringBuilder sb = new StringBuilder();
+
+        for (Step step : steps.values()) {
+            sb.append(step.name).append(' ').append(step.state.name().toLowerCase());
+            if (step.state == State.DONE || step.state == State.FAILED) {
+                sb.append(' ').append(step.millis).append(" ms");
+            }
+            if (step.error != null) sb.append(" (").append(step.error).append(')');
+            if (step.failures > 0) sb.append(", ").append(step.failures).append(" failed");
+            sb.append('\n');
+        }
+
+        return sb.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package util;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A {@link DAOUtils.ResultSetMapper} that finds the columns of a {@link RowMapping} by label the first
+ * time it sees a result, and from then on reads every row by index, so mapping costs no more than a
+ * hand-written positional mapper but does not depend on the order the columns were selected in.
+ * <p>
+ * The indexes are kept after the first result, so a mapper belongs to one statement, or to statements
+ * that select the same columns in the same order. It may be shared between threads.
+ *
+ * @param <T> the type built from a row
+ * @author Joshua Escareno
+ */
+public final class ColumnMapper<T> implements DAOUtils.ResultSetMapper<T> {
+    private final RowMapping<T> mapping;
+    private volatile int[] index;
+
+    /**
+     * @param mapping reads the row once its columns are found
+     */
+    public ColumnMapper(RowMapping<T> mapping) {
+        this.mapping = mapping;
+    }
+
+    @Override
+    public T mapResult(ResultSet rs) throws SQLException {
+        return mapping.map(rs, index(rs));
+    }
+
+    /**
+     * @param rs    a result of this mapper's statement
+     * @param label the label of one of the mapping's columns
+     * @return the result set index of the column, or 0 if it is optional and missing
+     * @throws SQLException if the columns cannot be found in the result
+     */
+    public int column(ResultSet rs, String label) throws SQLException {
+        List<String> columns = mapping.columns();
+
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).equalsIgnoreCase(label)) return index(rs)[i];
+        }
+        throw new IllegalArgumentException(label + " is not a column of " + mapping.table());
+    }
+
+    private int[] index(ResultSet rs) throws SQLException {
+        int[] resolved = index;
+
+        if (resolved == null) {
+            // two threads may race to get here; they find the same indexes
+            resolved = resolve(mapping, rs.getMetaData());
+            index = resolved;
+        }
+        return resolved;
+    }
+
+    /**
+     * Find the columns of a mapping in a result.
+     *
+     * @param mapping  the mapping
+     * @param metaData the result's metadata
+     * @return the result set index of each of the mapping's columns, or 0 for a missing optional column
+     * @throws SQLException if a column that is not optional is missing
+     */
+    static int[] resolve(RowMapping<?> mapping, ResultSetMetaData metaData) throws SQLException {
+        Map<String, Integer> labels = new HashMap<>();
+
+        for (int i = metaData.getColumnCount(); i >= 1; i--) {
+            // the first of two columns with the same label wins, as with ResultSet.findColumn
+            labels.put(metaData.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+        }
+
+        List<String> columns = mapping.columns();
+        int[] resolved = new int[columns.size()];
+
+        for (int i = 0; i < resolved.length; i++) {
+            Integer at = labels.get(columns.get(i).toLowerCase(Locale.ROOT));
+
+            if (at != null) {
+                resolved[i] = at;
+            } else if (!mapping.isOptional(i)) {
+                throw new SQLException("Column " + columns.get(i) + " of " + mapping.table()
+                        + " is missing from the result");
+            }
+        }
+        return resolved;
+    }
+}
@@ -8,9 +8,11 @@ import java.sql.Connection;
 import javax.sql.DataSource;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.math.BigDecimal;
 import java.nio.charset.Charset;
 import java.sql.Date;
 import java.sql.*;
+import java.time.DateTimeException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
@@ -204,6 +206,59 @@ public interface DAOUtils {
         return ts != null ? ts.toLocalDateTime() : null;
     }
 
+    /**
+     * Decode the raw bytes of a SQL {@code DECIMAL} or integer column, as returned by
+     * {@link ResultSet#getBytes} over the text protocol, into a {@link BigDecimal}.
+     *
+     * @param text the column's bytes, digits with an optional sign and decimal point
+     * @return the column value as a BigDecimal, or null if the column was NULL
+     * @throws NumberFormatException if the bytes are not a decimal number
+     */
+    static BigDecimal decodeBigDecimal(byte[] text) {
+        if (text == null) return null;
+
+        char[] chars = new char[text.length];
+        for (int i = 0; i < text.length; i++) {
+            chars[i] = (char) text[i];
+        }
+        return new BigDecimal(chars);
+    }
+
+    /**
+     * Decode the raw bytes of a SQL {@code DATE} column, as returned by {@link ResultSet#getBytes}
+     * over the text protocol, into a {@link LocalDate} without going through {@link Date}.
+     *
+     * @param text the column's bytes, in the form {@code yyyy-MM-dd}
+     * @return the column value as a LocalDate, or null if the column was NULL
+     * @throws DateTimeException if the bytes are not a valid date, including MySQL's zero date
+     */
+    static LocalDate decodeLocalDate(byte[] text) {
+        if (text == null) return null;
+        if (text.length != 10 || text[4] != '-' || text[7] != '-') {
+            throw new DateTimeException("Not a date: " + new String(text, Charset.forName("ascii")));
+        }
+
+        return LocalDate.of(digits(text, 0, 4), digits(text, 5, 7), digits(text, 8, 10));
+    }
+
+    /**
+     * This is a <strong>private</strong> helper function used by {@code decodeLocalDate()}.
+     *
+     * @return the number written in ASCII digits from {@code from} up to {@code to}
+     */
+    static int digits(byte[] text, int from, int to) {
+        int value = 0;
+
+        for (int i = from; i < to; i++) {
+            int digit = text[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new DateTimeException("Not a date: " + new String(text, Charset.forName("ascii")));
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
     /**
      * Return an "IN" clause list containing <em>n</em> replacement parameters. Used to
      * dynamically build SQL statements that contain IN clauses for variable number of arguments.
@@ -233,6 +288,22 @@ public interface DAOUtils {
                         .collect(joining(",", "(", ")"));
     }
 
+    /**
+     * Return the row list of a multi-row {@code INSERT ... VALUES} statement containing
+     * <em>n</em> rows of <em>m</em> replacement parameters each.
+     *
+     * @param n number of rows
+     * @param m number of columns in each row
+     * @return a string of the format "(?,...),..." containing <em>n</em> rows
+     */
+    static String mkValuesList(int n, int m) {
+        if (n < 1) throw new IllegalArgumentException("n must be >= 1, but is " + n);
+
+        String inList = mkInList(n, m);
+
+        return inList.substring(1, inList.length() - 1);
+    }
+
     /**
      * Convert a collection into a string representation for logging. Collections with more than 5
      * elements are simply printed as {@code "List(n)"}.
@@ -0,0 +1,42 @@
+package util;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Reads one row into an object, taking every column from an index resolved beforehand instead of
+ * from a fixed position. Implementations are generated from the {@code @RowMapped} data classes at
+ * compile time; use them through a {@link ColumnMapper}, which resolves the indexes.
+ *
+ * @param <T> the type built from a row
+ * @author Joshua Escareno
+ */
+public interface RowMapping<T> {
+
+    /**
+     * @return the table the rows come from
+     */
+    String table();
+
+    /**
+     * @return the labels of the columns read, in the order of the indexes given to {@link #map}
+     */
+    List<String> columns();
+
+    /**
+     * @param column the position of the column in {@link #columns()}
+     * @return whether the column may be missing from the row
+     */
+    boolean isOptional(int column);
+
+    /**
+     * Build an object from the current row.
+     *
+     * @param rs    the result set, positioned on a row
+     * @param index the result set index of each column in {@link #columns()}, or 0 for a missing optional column
+     * @return the object
+     * @throws SQLException when a column cannot be read
+     */
+    T map(ResultSet rs, int[] index) throws SQLException;
+}
@@ -0,0 +1,97 @@
+package util;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded dictionary handing out one shared {@code String} per distinct column value, for columns such
+ * as city codes and vacancy indicators that repeat a few values over millions of rows. A value is looked up
+ * by the column's raw bytes, so a value already in the dictionary is never decoded into a new string.
+ * <p>
+ * The dictionary is a fixed table in which each value may sit in one of two slots picked by its hash. A new
+ * value takes a free slot, or replaces what is there, so the table never grows and a value that misses just
+ * costs a decode. Lookups take no locks and it may be shared between threads; entries are immutable, so a
+ * thread sees either a whole entry or none.
+ * <p>
+ * The raw bytes are in the connection's character set, so a dictionary should only be fed by connections
+ * using the same one.
+ *
+ * @author Joshua Escareno
+ */
+public final class StringInterner {
+    private static final class Entry {
+        private final int hash;
+        private final byte[] bytes;
+        private final String value;
+
+        Entry(int hash, byte[] bytes, String value) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.value = value;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> table;
+    private final int mask;
+
+    /**
+     * @param capacity the most values kept, rounded up to a power of two
+     */
+    public StringInterner(int capacity) {
+        if (capacity < 2) throw new IllegalArgumentException("capacity must be >= 2, but is " + capacity);
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.table = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Read a string column through the dictionary.
+     *
+     * @param rs          the result set, positioned on a row
+     * @param columnIndex the index of the column
+     * @return the shared string with the column's value, or null if the column was NULL
+     * @throws SQLException when the column cannot be read
+     */
+    public String intern(ResultSet rs, int columnIndex) throws SQLException {
+        byte[] bytes = rs.getBytes(columnIndex);
+        if (bytes == null) return null;
+
+        int hash = Arrays.hashCode(bytes);
+        int first = spread(hash) & mask;
+        int second = (first + 1) & mask;
+
+        Entry entry = table.get(first);
+        if (matches(entry, hash, bytes)) return entry.value;
+
+        Entry other = table.get(second);
+        if (matches(other, hash, bytes)) return other.value;
+
+        // a miss: let the driver decode the value, as it knows the character set
+        Entry added = new Entry(hash, bytes, rs.getString(columnIndex));
+        table.set(entry == null || other != null ? first : second, added);
+        return added.value;
+    }
+
+    /**
+     * @return the number of values in the dictionary
+     */
+    public int size() {
+        int size = 0;
+
+        for (int i = 0; i < table.length(); i++) {
+            if (table.get(i) != null) size++;
+        }
+        return size;
+    }
+
+    private static boolean matches(Entry entry, int hash, byte[] bytes) {
+        return entry != null && entry.hash == hash && Arrays.equals(entry.bytes, bytes);
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
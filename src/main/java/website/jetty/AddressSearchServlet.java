@@ -0,0 +1,65 @@
+package website.jetty;
+
+import service.AddressSearchIndex;
+import service.AddressSearchIndex.Hit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Address typeahead for the logged in owner, from the {@link AddressSearchIndex}.
+ * {@code /addresses?q=12 mai} returns the best {@code k} (default 10) addresses of the owner's
+ * properties and tenants as a serialized list of {@link Hit}s: those starting with the query
+ * first, then close misspellings.
+ *
+ * @author Kenneth Ingham
+ */
+public class AddressSearchServlet extends HttpServlet {
+    private static final int DEFAULT_K = 10;
+    private static final int MAX_K = 100;
+
+    private final AddressSearchIndex index;
+    private final SessionStore sessions;
+
+    public AddressSearchServlet(AddressSearchIndex index, SessionStore sessions) {
+        this.index = index;
+        this.sessions = sessions;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+                         HttpServletResponse response) throws ServletException, IOException {
+        String ownerId = sessions.ownerOf(request);
+
+        if (ownerId == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        String query = request.getParameter("q");
+        int k;
+
+        try {
+            String kParameter = request.getParameter("k");
+            k = kParameter == null ? DEFAULT_K : Math.max(1, Math.min(MAX_K, Integer.parseInt(kParameter)));
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "k must be a number");
+            return;
+        }
+
+        List<Hit> hits = query == null ? new ArrayList<>() : index.search(query, k, ownerId);
+
+        response.setContentType(PropertiesServlet.SERIALIZED_CONTENT_TYPE);
+        response.setHeader("Cache-Control", "private, no-cache");
+
+        try (ObjectOutputStream oos = new ObjectOutputStream(response.getOutputStream())) {
+            oos.writeObject(new ArrayList<>(hits));
+        }
+    }
+}
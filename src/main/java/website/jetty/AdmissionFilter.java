@@ -0,0 +1,186 @@
+package website.jetty;
+
+import website.jetty.AdmissionQueue.Priority;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control in front of the servlets that reach the database. Every request first has to
+ * get a token from its owner's {@link TokenBucket}, or its address's when it has no session, so a
+ * single caller polling too hard is answered with {@code 429} without affecting anyone else. The
+ * buckets of the {@value #MAX_TRACKED_OWNERS} callers seen most recently are kept; a caller
+ * forgotten since starts again with a full bucket. An endpoint may have a rate of its own, see
+ * {@link #rate}, whose buckets are kept apart from the others. It then has to get a slot in its
+ * endpoint's {@link AdmissionQueue}; requests that cannot be queued, or wait longer than the
+ * queue budget, are answered with {@code 503} and a {@code Retry-After} hint.
+ * <p>
+ * Cheap requests are queued ahead of full scans: revalidations (which usually end in a 304) and
+ * single property lookups are {@link Priority#LOOKUP}, everything else {@link Priority#SCAN}.
+ *
+ * @author Kenneth Ingham
+ */
+public class AdmissionFilter implements Filter {
+    static final int MAX_TRACKED_OWNERS = 10_000;
+
+    private final Map<String, AdmissionQueue> queues = new LinkedHashMap<>();
+    // burst and rate per second of the endpoints limited apart
+    private final Map<String, double[]> endpointRates = new HashMap<>();
+    // guarded by itself; access ordered, so the eldest bucket is the one used least recently
+    private final Map<String, TokenBucket> ownerBuckets = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TokenBucket> eldest) {
+            return size() > MAX_TRACKED_OWNERS;
+        }
+    };
+    private final double ownerBurst;
+    private final double ownerRatePerSecond;
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final SessionStore sessions;
+
+    /**
+     * @param sessions           the session store identifying the owner behind a request
+     * @param ownerBurst         the number of requests an owner may make back to back
+     * @param ownerRatePerSecond the sustained request rate allowed per owner
+     */
+    public AdmissionFilter(SessionStore sessions, double ownerBurst, double ownerRatePerSecond) {
+        this.sessions = sessions;
+        this.ownerBurst = ownerBurst;
+        this.ownerRatePerSecond = ownerRatePerSecond;
+    }
+
+    /**
+     * Put an endpoint under admission control. Must be called before the server starts.
+     *
+     * @param servletPath   the servlet path of the endpoint, for example {@code /properties}
+     * @param maxConcurrent the number of requests allowed to run at once
+     * @param maxQueued     the number of requests allowed to wait
+     * @param queueBudgetMs the longest a request may wait before it is shed
+     * @return this filter
+     */
+    public AdmissionFilter limit(String servletPath, int maxConcurrent, int maxQueued, long queueBudgetMs) {
+        queues.put(servletPath, new AdmissionQueue(servletPath.replace("/", ""),
+                maxConcurrent, maxQueued, queueBudgetMs));
+        return this;
+    }
+
+    /**
+     * Give an endpoint a request rate of its own, for endpoints much dearer or much cheaper than
+     * the rest. Must be called before the server starts.
+     *
+     * @param servletPath   the servlet path of the endpoint, which must also be {@link #limit}ed
+     * @param burst         the number of requests a caller may make back to back
+     * @param ratePerSecond the sustained request rate allowed per caller
+     * @return this filter
+     */
+    public AdmissionFilter rate(String servletPath, double burst, double ratePerSecond) {
+        endpointRates.put(servletPath, new double[]{burst, ratePerSecond});
+        return this;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse resp,
+                         FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        HttpServletResponse response = (HttpServletResponse) resp;
+        AdmissionQueue queue = queues.get(request.getServletPath());
+
+        if (queue == null) {
+            chain.doFilter(req, resp);
+            return;
+        }
+
+        String owner = sessions.ownerOf(request);
+        String caller = owner != null ? owner : "address " + request.getRemoteAddr();
+        double[] rate = endpointRates.get(request.getServletPath());
+        TokenBucket bucket = rate == null ? bucketFor(caller, ownerBurst, ownerRatePerSecond)
+                : bucketFor(request.getServletPath() + " " + caller, rate[0], rate[1]);
+
+        if (!bucket.tryAcquire()) {
+            rateLimited.incrementAndGet();
+            response.setHeader("Retry-After", "1");
+            response.sendError(429, "Request rate for " + caller + " exceeded");
+            return;
+        }
+
+        boolean admitted;
+
+        try {
+            admitted = queue.acquire(classify(request));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        if (!admitted) {
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Server busy");
+            return;
+        }
+
+        try {
+            chain.doFilter(req, resp);
+        } finally {
+            queue.release();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    /**
+     * Build a plain text report of queue depths and rejection counts.
+     *
+     * @return the report, one {@code name value} pair per line
+     */
+    public String metrics() {
+        StringBuilder out = new StringBuilder();
+
+        for (AdmissionQueue queue : queues.values()) {
+            queue.appendMetrics(out);
+        }
+
+        int tracked;
+        synchronized (ownerBuckets) {
+            tracked = ownerBuckets.size();
+        }
+
+        out.append("admission.rate_limited ").append(rateLimited.get()).append('\n')
+                .append("admission.tracked_owners ").append(tracked).append('\n');
+        return out.toString();
+    }
+
+    private static Priority classify(HttpServletRequest request) {
+        if (request.getHeader("If-None-Match") != null) return Priority.LOOKUP;
+        if (request.getParameter("property") != null) return Priority.LOOKUP;
+
+        return Priority.SCAN;
+    }
+
+    /**
+     * @param key the owner, or the address of a request without a session, and the endpoint if it
+     *            is limited apart
+     */
+    private TokenBucket bucketFor(String key, double burst, double ratePerSecond) {
+        synchronized (ownerBuckets) {
+            return ownerBuckets.computeIfAbsent(key, k -> new TokenBucket(burst, ratePerSecond));
+        }
+    }
+}
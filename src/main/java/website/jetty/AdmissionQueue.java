@@ -0,0 +1,216 @@
+package website.jetty;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the number of requests working on one endpoint at a time. Requests beyond
+ * {@code maxConcurrent} wait in a bounded queue ordered by {@link Priority}, then arrival. A
+ * request that cannot be queued, or that has waited longer than the queue wait budget, is shed
+ * so the caller can answer {@code 503} right away instead of piling up behind a saturated
+ * database connection.
+ * <p>
+ * When the queue is full, an arriving request of higher priority displaces the most recent
+ * waiter of the lowest priority, so cheap lookups keep getting through while full scans back up.
+ *
+ * @author Kenneth Ingham
+ */
+final class AdmissionQueue {
+
+    /**
+     * Admission priority. Declaration order is service order.
+     */
+    enum Priority {
+        /**
+         * Cheap requests: single record lookups and revalidations likely to end in a 304
+         */
+        LOOKUP,
+        /**
+         * Requests that scan and return a whole owner portfolio or the vacancy list
+         */
+        SCAN
+    }
+
+    private static final Comparator<Waiter> SERVICE_ORDER = Comparator
+            .comparing((Waiter w) -> w.priority)
+            .thenComparingLong(w -> w.sequence);
+
+    private final String name;
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long queueBudgetNanos;
+
+    private final PriorityQueue<Waiter> waiting = new PriorityQueue<>(SERVICE_ORDER);
+    private int running;
+    private long sequence;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong shedQueueFull = new AtomicLong();
+    private final AtomicLong shedOverBudget = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    /**
+     * @param name          the endpoint name, used for metrics
+     * @param maxConcurrent the number of requests allowed to run at once
+     * @param maxQueued     the number of requests allowed to wait
+     * @param queueBudgetMs the longest a request may wait before it is shed
+     */
+    AdmissionQueue(String name, int maxConcurrent, int maxQueued, long queueBudgetMs) {
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.queueBudgetNanos = TimeUnit.MILLISECONDS.toNanos(queueBudgetMs);
+    }
+
+    /**
+     * Wait for a slot to run in. Every successful call must be paired with a call to
+     * {@link #release()}.
+     *
+     * @param priority the priority of the request
+     * @return true if the request was admitted, false if it was shed
+     * @throws InterruptedException if the thread was interrupted while queued
+     */
+    boolean acquire(Priority priority) throws InterruptedException {
+        Waiter waiter;
+        Waiter displaced = null;
+
+        synchronized (this) {
+            if (running < maxConcurrent && waiting.isEmpty()) {
+                running++;
+                admitted.incrementAndGet();
+                return true;
+            }
+
+            if (waiting.size() >= maxQueued) {
+                displaced = lastInServiceOrder();
+
+                if (displaced == null || displaced.priority.compareTo(priority) <= 0) {
+                    shedQueueFull.incrementAndGet();
+                    return false;
+                }
+
+                waiting.remove(displaced);
+                shedQueueFull.incrementAndGet();
+            }
+
+            waiter = new Waiter(priority, sequence++);
+            waiting.add(waiter);
+        }
+
+        if (displaced != null) displaced.decided.countDown();
+
+        long start = System.nanoTime();
+        boolean decided;
+
+        try {
+            decided = waiter.decided.await(queueBudgetNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            abandon(waiter);
+            throw e;
+        } finally {
+            totalWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        synchronized (this) {
+            if (waiter.granted) {
+                admitted.incrementAndGet();
+                return true;
+            }
+
+            // not granted and still queued means the budget ran out; otherwise it was displaced
+            if (!decided && waiting.remove(waiter)) {
+                shedOverBudget.incrementAndGet();
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Give up a slot, handing it straight to the next waiter if there is one.
+     */
+    void release() {
+        Waiter next;
+
+        synchronized (this) {
+            next = waiting.poll();
+
+            if (next == null) {
+                running--;
+                return;
+            }
+
+            next.granted = true;
+        }
+
+        next.decided.countDown();
+    }
+
+    /**
+     * Append this queue's current state and counters to a metrics report, one
+     * {@code name value} pair per line.
+     *
+     * @param out the report being built
+     */
+    void appendMetrics(StringBuilder out) {
+        int queued;
+        int active;
+
+        synchronized (this) {
+            queued = waiting.size();
+            active = running;
+        }
+
+        long granted = admitted.get();
+        out.append("admission.").append(name).append(".running ").append(active).append('\n')
+                .append("admission.").append(name).append(".queued ").append(queued).append('\n')
+                .append("admission.").append(name).append(".admitted ").append(granted).append('\n')
+                .append("admission.").append(name).append(".shed_queue_full ").append(shedQueueFull.get()).append('\n')
+                .append("admission.").append(name).append(".shed_over_budget ").append(shedOverBudget.get()).append('\n')
+                .append("admission.").append(name).append(".total_wait_ms ")
+                .append(TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get())).append('\n');
+    }
+
+    /**
+     * Withdraw a waiter whose thread gave up, passing on the slot if it was granted meanwhile.
+     */
+    private void abandon(Waiter waiter) {
+        boolean granted;
+
+        synchronized (this) {
+            granted = waiter.granted;
+            waiting.remove(waiter);
+        }
+
+        if (granted) release();
+    }
+
+    private Waiter lastInServiceOrder() {
+        Waiter last = null;
+
+        for (Waiter w : waiting) {
+            if (last == null || SERVICE_ORDER.compare(w, last) > 0) last = w;
+        }
+
+        return last;
+    }
+
+    /**
+     * A queued request. {@code granted} is only written while holding the queue's lock, and is
+     * published to the waiting thread by {@code decided}.
+     */
+    private static final class Waiter {
+        private final Priority priority;
+        private final long sequence;
+        private final CountDownLatch decided = new CountDownLatch(1);
+        private boolean granted;
+
+        Waiter(Priority priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package website.jetty;
+
+import dao.ChangeFeed;
+import dao.PropertyDAO;
+import dao.PropertyDAO.PropertyBaseData;
+import dao.TenantDAO;
+import dao.TenantDAO.TenantData;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Version counters for the data sets the web interface serves: one per owner (their property
+ * list) and one for the set of vacant properties. Every change to one of those sets bumps the
+ * matching counter, so a page can be tagged with the version it was built from and a repeated
+ * poll can be answered with {@code 304 Not Modified} without touching the database.
+ * <p>
+ * Changes are picked up from the property and tenant change feeds, like the search indexes do,
+ * so writes made by any process count, not just those going through this server. The last seen
+ * state of every row is kept to tell a real change from a row the feed sends again, and to find
+ * the owner a deleted or moved row belonged to. A tag goes stale at most one refresh after the
+ * data does.
+ * <p>
+ * Counters only live in memory. Every ETag carries the epoch of this instance, so tags handed out
+ * before a restart never match again.
+ *
+ * @author Kenneth Ingham
+ */
+public class ChangeVersions implements AutoCloseable {
+    private static final int PAGE_SIZE = 1000;
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final ConcurrentMap<String, AtomicLong> ownerVersions = new ConcurrentHashMap<>();
+    private final AtomicLong vacancyVersion = new AtomicLong();
+
+    // only touched by refresh(), under the instance lock
+    private final Map<Integer, PropertyBaseData> properties = new HashMap<>();
+    private final Map<Integer, TenantData> tenants = new HashMap<>();
+    private long propertyResumeMark;
+    private long tenantResumeMark;
+    private ScheduledExecutorService refresher;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(ChangeVersions.class.getName());
+    }
+
+    /**
+     * Current version of an owner's property list.
+     *
+     * @param ownerId the owner of the properties
+     * @return the version counter, 0 if nothing has changed since startup
+     */
+    public long ownerVersion(String ownerId) {
+        AtomicLong version = ownerVersions.get(ownerId);
+
+        return version != null ? version.get() : 0L;
+    }
+
+    /**
+     * Current version of the vacant property list.
+     *
+     * @return the version counter, 0 if nothing has changed since startup
+     */
+    public long vacancyVersion() {
+        return vacancyVersion.get();
+    }
+
+    /**
+     * Record that a property owned by {@code ownerId} was inserted, updated or deleted. Any
+     * property change can move a property in or out of the vacancy set, so that version is bumped
+     * as well.
+     *
+     * @param ownerId the owner of the changed property, or null if it is not known
+     */
+    public void propertiesChanged(String ownerId) {
+        if (ownerId != null) ownerVersions.computeIfAbsent(ownerId, k -> new AtomicLong()).incrementAndGet();
+        vacancyVersion.incrementAndGet();
+    }
+
+    /**
+     * Record that the tenants of a property owned by {@code ownerId} changed. Tenant counts are
+     * part of the property rows and decide vacancy, so this bumps the same counters as a property
+     * write.
+     *
+     * @param ownerId the owner of the property whose tenants changed, or null if it is not known
+     */
+    public void tenantsChanged(String ownerId) {
+        propertiesChanged(ownerId);
+    }
+
+    /**
+     * Read both change feeds from where the last refresh stopped, or from the start, and bump the
+     * versions of the owners whose rows changed. A row moving to another owner bumps both.
+     *
+     * @return the number of properties and tenants that changed
+     * @throws SQLException if the changes cannot be read
+     */
+    public synchronized int refresh(PropertyDAO propertyDAO, TenantDAO tenantDAO) throws SQLException {
+        long start = System.currentTimeMillis();
+        int changes = 0;
+
+        // properties first, so tenants of new properties already have an owner
+        ChangeFeed<PropertyBaseData> propertyFeed;
+        do {
+            propertyFeed = ChangeFeed.read(seq -> propertyDAO.propertyChangesSince(null, seq, PAGE_SIZE),
+                    propertyResumeMark);
+            for (PropertyBaseData p : propertyFeed.getUpserts()) {
+                PropertyBaseData old = properties.put(p.getPropertyId(), p);
+                if (p.equals(old)) continue;
+
+                if (old != null && !old.getOwnerID().equals(p.getOwnerID())) propertiesChanged(old.getOwnerID());
+                propertiesChanged(p.getOwnerID());
+                changes++;
+            }
+            for (int propertyId : propertyFeed.getDeletedIds()) {
+                PropertyBaseData old = properties.remove(propertyId);
+                if (old == null) continue;
+
+                propertiesChanged(old.getOwnerID());
+                changes++;
+            }
+            propertyResumeMark = propertyFeed.getResumeMark();
+        } while (propertyFeed.hasMore());
+
+        ChangeFeed<TenantData> tenantFeed;
+        do {
+            tenantFeed = ChangeFeed.read(seq -> tenantDAO.tenantChangesSince(null, seq, PAGE_SIZE), tenantResumeMark);
+            for (TenantData t : tenantFeed.getUpserts()) {
+                TenantData old = tenants.put(t.getPid(), t);
+                if (t.equals(old)) continue;
+
+                String ownerId = ownerOf(t);
+                if (old != null && !Objects.equals(ownerOf(old), ownerId)) tenantsChanged(ownerOf(old));
+                tenantsChanged(ownerId);
+                changes++;
+            }
+            for (int tenantId : tenantFeed.getDeletedIds()) {
+                TenantData old = tenants.remove(tenantId);
+                if (old == null) continue;
+
+                tenantsChanged(ownerOf(old));
+                changes++;
+            }
+            tenantResumeMark = tenantFeed.getResumeMark();
+        } while (tenantFeed.hasMore());
+
+        if (changes > 0) {
+            getLogger().log(INFO, "Versioned {0} property and tenant changes in {1} ms.",
+                    new Object[]{changes, System.currentTimeMillis() - start});
+        }
+        return changes;
+    }
+
+    private String ownerOf(TenantData tenant) {
+        PropertyBaseData property = properties.get(tenant.getPropertyId());
+        return property != null ? property.getOwnerID() : null;
+    }
+
+    /**
+     * Refresh from the change feeds every {@code intervalMs} on a background thread, until
+     * {@link #close} is called.
+     */
+    public synchronized void refreshEvery(PropertyDAO propertyDAO, TenantDAO tenantDAO, long intervalMs) {
+        if (refresher != null) throw new IllegalStateException("Already refreshing");
+
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "change-versions");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh(propertyDAO, tenantDAO);
+            } catch (Exception e) {
+                getLogger().log(WARNING, "Change version refresh failed ({0})", String.valueOf(e.getMessage()).trim());
+            }
+        }, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (refresher != null) refresher.shutdownNow();
+        refresher = null;
+    }
+
+    /**
+     * The ETag for an owner's property list. Callers must read the tag <b>before</b> querying
+     * the database; a change picked up in between then only causes one unnecessary full response,
+     * instead of new data being cached under an old tag for good.
+     *
+     * @param ownerId the owner of the properties
+     * @return a strong ETag, including the surrounding quotes
+     */
+    public String ownerETag(String ownerId) {
+        return "\"" + epoch + "-o" + ownerVersion(ownerId) + "\"";
+    }
+
+    /**
+     * The ETag for the vacant property list. See {@link #ownerETag(String)} for ordering.
+     *
+     * @return a strong ETag, including the surrounding quotes
+     */
+    public String vacancyETag() {
+        return "\"" + epoch + "-v" + vacancyVersion() + "\"";
+    }
+
+    /**
+     * Check an {@code If-None-Match} request header against the current ETag.
+     *
+     * @param ifNoneMatch the header value, may be null
+     * @param etag        the current ETag, including quotes
+     * @return true if the client already has the current representation
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+
+            if (tag.startsWith("W/")) tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag)) return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,349 @@
+package website.jetty;
+
+import dao.PropertyDAO;
+import dao.TenantDAO;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Exports the logged in owner's portfolio for accounting. {@code /export/properties} and
+ * {@code /export/tenants} take a {@code format} parameter of {@code csv} (the default) or
+ * {@code json}, and are gzipped when the client accepts it. The CSV column names are the ones
+ * {@code service.BulkImport} reads, so an export can be imported again.
+ * <p>
+ * Rows go straight from a streaming cursor to the response without being collected first, so an
+ * export runs in constant memory whatever its size. Writes to the response block while the
+ * client is not reading, which in turn stops the cursor; a slow client holds back the query
+ * instead of building up a buffer. The query holds its connection meanwhile, so the DAOs given
+ * to this servlet must run their {@link dao.Streaming} methods on connections no other request
+ * is waiting for, as {@code WebServer} arranges with a pool kept for streams on each database.
+ * Once the first chunk has been sent a failure can no longer change the status, so the response
+ * is aborted instead and the client sees a truncated transfer rather than a short file that looks
+ * complete.
+ *
+ * @author Kenneth Ingham
+ */
+public class ExportServlet extends HttpServlet {
+    private static final String[] PROPERTY_COLUMNS = {"property_id", "type", "address", "city_code",
+            "num_rooms", "num_bathrooms", "garage_count", "sqr_foot", "front_yard_sqr_foot",
+            "back_yard_sqr_foot", "num_tenants", "rental_fee", "last_payment_date", "owner_id", "vacancy_ind"};
+
+    private static final String[] TENANT_COLUMNS = {"tenant_id", "property_id", "first_name", "last_name",
+            "dob", "phone_number", "address", "city", "zip_code"};
+
+    private final PropertyDAO propertyDAO;
+    private final TenantDAO tenantDAO;
+    private final SessionStore sessions;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(ExportServlet.class.getName());
+    }
+
+    public ExportServlet(PropertyDAO propertyDAO, TenantDAO tenantDAO, SessionStore sessions) {
+        this.propertyDAO = propertyDAO;
+        this.tenantDAO = tenantDAO;
+        this.sessions = sessions;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+                         HttpServletResponse response) throws ServletException, IOException {
+        String ownerId = sessions.ownerOf(request);
+        String dataset = request.getPathInfo();
+
+        if (ownerId == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        if (!"/properties".equals(dataset) && !"/tenants".equals(dataset)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        ExportFormat format = ExportFormat.forName(request.getParameter("format"));
+
+        if (format == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "format must be csv or json");
+            return;
+        }
+
+        String name = dataset.substring(1);
+        boolean gzip = acceptsGzip(request);
+
+        response.setContentType(format.contentType());
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + name + format.extension() + "\"");
+        response.setHeader("Cache-Control", "private, no-store");
+        response.setHeader("Vary", "Accept-Encoding");
+        if (gzip) response.setHeader("Content-Encoding", "gzip");
+
+        long start = System.currentTimeMillis();
+        OutputStream body = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192) : response.getOutputStream();
+        Writer out = new OutputStreamWriter(body, StandardCharsets.UTF_8);
+        int rows;
+
+        try {
+            if ("/properties".equals(dataset)) {
+                RowWriter writer = format.open(out, PROPERTY_COLUMNS);
+                rows = exportProperties(ownerId, writer);
+                writer.finish();
+            } else {
+                RowWriter writer = format.open(out, TENANT_COLUMNS);
+                rows = exportTenants(ownerId, writer);
+                writer.finish();
+            }
+        } catch (SQLException | IOException | UncheckedIOException e) {
+            getLogger().log(WARNING, "Export of {0} for {1} aborted ({2})",
+                    new Object[]{name, ownerId, String.valueOf(e.getMessage())});
+            // leave the response unfinished so the client cannot mistake it for a complete file
+            throw new ServletException("Export of " + name + " aborted", e);
+        }
+
+        out.close();
+        getLogger().log(INFO, "Exported {0} {1} for {2} in {3} ms",
+                new Object[]{rows, name, ownerId, System.currentTimeMillis() - start});
+    }
+
+    private int exportProperties(String ownerId, RowWriter writer) throws SQLException {
+        Object[] row = new Object[writer.columns.length];
+
+        return propertyDAO.streamAllPropertiesByOwner(ownerId, property -> {
+            int i = 0;
+            row[i++] = property.getPropertyId();
+            row[i++] = property.getPropertyType();
+            row[i++] = property.getPropertyAddress();
+            row[i++] = property.getCityCode();
+            row[i++] = property.getNumberOfRooms();
+            row[i++] = property.getNumberOfBathrooms();
+            row[i++] = property.getGarageCount();
+            row[i++] = property.getSquareFootage();
+            row[i++] = property.getFrontYardFootage();
+            row[i++] = property.getBackyardFootage();
+            row[i++] = property.getNumberOfTenants();
+            row[i++] = property.getRentalFee();
+            row[i++] = property.getLastPaymentDate();
+            row[i++] = property.getOwnerID();
+            row[i] = property.getVacancyIndicator();
+            writeRow(writer, row);
+        });
+    }
+
+    private int exportTenants(String ownerId, RowWriter writer) throws SQLException {
+        Object[] row = new Object[writer.columns.length];
+
+        return tenantDAO.streamTenantsByOwner(ownerId, tenant -> {
+            int i = 0;
+            row[i++] = tenant.getPid();
+            row[i++] = tenant.getPropertyId();
+            row[i++] = tenant.getFirstName();
+            row[i++] = tenant.getLastName();
+            row[i++] = tenant.getDob();
+            row[i++] = tenant.getPhoneNumber();
+            row[i++] = tenant.getAddress();
+            row[i++] = tenant.getCity();
+            row[i] = tenant.getZipCode();
+            writeRow(writer, row);
+        });
+    }
+
+    private static void writeRow(RowWriter writer, Object[] row) {
+        try {
+            writer.row(row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return true if the request's {@code Accept-Encoding} names gzip with a quality above 0;
+     * {@link StaticAssetServlet} asks the same
+     */
+    static boolean acceptsGzip(HttpServletRequest request) {
+        String accept = request.getHeader("Accept-Encoding");
+        if (accept == null) return false;
+
+        for (String coding : accept.split(",")) {
+            String[] parts = coding.trim().split(";");
+
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * The export formats, each with the writer that produces it.
+     */
+    enum ExportFormat {
+        CSV("text/csv; charset=utf-8", ".csv"),
+        JSON("application/json; charset=utf-8", ".json");
+
+        private final String contentType;
+        private final String extension;
+
+        ExportFormat(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        static ExportFormat forName(String name) {
+            if (name == null || name.equalsIgnoreCase("csv")) return CSV;
+            if (name.equalsIgnoreCase("json")) return JSON;
+
+            return null;
+        }
+
+        String contentType() {
+            return contentType;
+        }
+
+        String extension() {
+            return extension;
+        }
+
+        RowWriter open(Writer out, String[] columns) throws IOException {
+            return this == CSV ? new CsvRowWriter(out, columns) : new JsonRowWriter(out, columns);
+        }
+    }
+
+    /**
+     * Writes one export incrementally: the constructor writes whatever comes before the rows,
+     * {@link #row} writes one record and {@link #finish} closes the document. Nothing but the
+     * column names is kept between rows.
+     */
+    abstract static class RowWriter {
+        final Writer out;
+        final String[] columns;
+        int rows;
+
+        RowWriter(Writer out, String[] columns) {
+            this.out = out;
+            this.columns = columns;
+        }
+
+        abstract void row(Object[] values) throws IOException;
+
+        void finish() throws IOException {
+        }
+    }
+
+    static final class CsvRowWriter extends RowWriter {
+        CsvRowWriter(Writer out, String[] columns) throws IOException {
+            super(out, columns);
+            writeCsvLine(out, columns);
+        }
+
+        @Override
+        void row(Object[] values) throws IOException {
+            writeCsvLine(out, values);
+            rows++;
+        }
+    }
+
+    static final class JsonRowWriter extends RowWriter {
+        JsonRowWriter(Writer out, String[] columns) throws IOException {
+            super(out, columns);
+            out.write('[');
+        }
+
+        @Override
+        void row(Object[] values) throws IOException {
+            out.write(rows++ == 0 ? "\n{" : ",\n{");
+
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) out.write(',');
+                writeJsonString(out, columns[i]);
+                out.write(':');
+                writeJsonValue(out, values[i]);
+            }
+
+            out.write('}');
+        }
+
+        @Override
+        void finish() throws IOException {
+            out.write("\n]\n");
+        }
+    }
+
+    static void writeCsvLine(Writer out, Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) out.write(',');
+            if (values[i] == null) continue;
+
+            String value = values[i].toString();
+
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0
+                    && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                out.write(value);
+            } else {
+                out.write('"');
+                out.write(value.replace("\"", "\"\""));
+                out.write('"');
+            }
+        }
+
+        out.write("\r\n");
+    }
+
+    static void writeJsonValue(Writer out, Object value) throws IOException {
+        if (value == null) {
+            out.write("null");
+        } else if (value instanceof Number) {
+            out.write(value.toString());
+        } else {
+            writeJsonString(out, value.toString());
+        }
+    }
+
+    static void writeJsonString(Writer out, String value) throws IOException {
+        out.write('"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+
+        out.write('"');
+    }
+}
@@ -0,0 +1,30 @@
+package website.jetty;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Exposes server metrics as plain text, one {@code name value} pair per line, for scraping or
+ * a quick look with curl.
+ *
+ * @author Kenneth Ingham
+ */
+public class MetricsServlet extends HttpServlet {
+    private final Supplier<String> metrics;
+
+    public MetricsServlet(Supplier<String> metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+                         HttpServletResponse response) throws ServletException, IOException {
+        response.setContentType("text/plain; charset=utf-8");
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().write(metrics.get());
+    }
+}
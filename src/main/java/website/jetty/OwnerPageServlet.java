@@ -0,0 +1,234 @@
+package website.jetty;
+
+import dao.PropertyDAO;
+import dao.TenantDAO;
+import j2html.tags.ContainerTag;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.logging.Logger;
+
+import static j2html.TagCreator.*;
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Renders the owner pages as HTML. {@code /owner/properties} shows the logged in owner's
+ * properties and {@code /owner/tenants?property=<id>} the tenants of one of them. Both require
+ * a session.
+ * <p>
+ * The page skeletons are {@link PageTemplate}s built once. Table rows are rendered one at a time
+ * as the DAO streams them and written straight to the response, so memory use does not grow with
+ * the size of the portfolio, and the browser gets the page head before the query finishes.
+ * <p>
+ * The status and ETag are sent before the first row, so a page that fails halfway cannot take
+ * them back. Such a page ends with a row telling so and the response is then aborted, like
+ * {@link ExportServlet} does, so the client never keeps a short page under a valid tag. A client
+ * that goes away stops the query at the next row.
+ *
+ * @author Kenneth Ingham
+ */
+public class OwnerPageServlet extends HttpServlet {
+    private static final String HTML_CONTENT_TYPE = "text/html; charset=utf-8";
+
+    private static final PageTemplate PROPERTIES_PAGE = new PageTemplate(page("Properties",
+            th("Address"), th("Type"), th("City"), th("Rooms"), th("Baths"), th("Garages"),
+            th("Sq. Ft."), th("Tenants"), th("Rent"), th("Last Payment"), th("Vacancy")));
+
+    private static final PageTemplate TENANTS_PAGE = new PageTemplate(page("Tenants",
+            th("First Name"), th("Last Name"), th("Phone"), th("Date of Birth"), th("Address"),
+            th("City"), th("Zip Code")));
+
+    private final PropertyDAO propertyDAO;
+    private final TenantDAO tenantDAO;
+    private final ChangeVersions versions;
+    private final SessionStore sessions;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(OwnerPageServlet.class.getName());
+    }
+
+    public OwnerPageServlet(PropertyDAO propertyDAO, TenantDAO tenantDAO, ChangeVersions versions,
+                            SessionStore sessions) {
+        this.propertyDAO = propertyDAO;
+        this.tenantDAO = tenantDAO;
+        this.versions = versions;
+        this.sessions = sessions;
+    }
+
+    /**
+     * Build a page skeleton: a heading with a slot for the subject, and a table with the given
+     * header cells and a slot for the rows.
+     */
+    private static ContainerTag page(String title, ContainerTag... headers) {
+        return html(
+                head(
+                        meta().attr("charset", "utf-8"),
+                        title(title),
+                        style("body{font-family:Arial,Helvetica,sans-serif;margin:1em}"
+                                + "table{border-collapse:collapse}"
+                                + "th,td{border:1px solid #ccc;padding:4px 8px}"
+                                + "th{background:#333;color:#f2f2f2}")
+                ),
+                body(
+                        h1(text(title + " for "), PageTemplate.slot()),
+                        table(thead(tr(headers)), tbody(PageTemplate.slot()))
+                )
+        );
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+                         HttpServletResponse response) throws ServletException, IOException {
+        String page = request.getPathInfo();
+
+        if (sessions.ownerOf(request) == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+        } else if ("/properties".equals(page)) {
+            renderProperties(request, response);
+        } else if ("/tenants".equals(page)) {
+            renderTenants(request, response);
+        } else {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+
+    private void renderProperties(HttpServletRequest request,
+                                  HttpServletResponse response) throws ServletException, IOException {
+        String ownerId = sessions.ownerOf(request);
+        String etag = versions.ownerETag(ownerId);
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", "private, no-cache");
+
+        if (ChangeVersions.matches(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        PrintWriter out = startPage(response, PROPERTIES_PAGE, ownerId);
+
+        try {
+            propertyDAO.streamAllPropertiesByOwner(ownerId, property -> writeRow(out, tr(
+                    td(nvl(property.getPropertyAddress())),
+                    td(nvl(property.getPropertyType())),
+                    td(nvl(property.getCityCode())),
+                    td(Integer.toString(property.getNumberOfRooms())),
+                    td(Integer.toString(property.getNumberOfBathrooms())),
+                    td(Integer.toString(property.getGarageCount())),
+                    td(nvl(property.getSquareFootage())),
+                    td(Integer.toString(property.getNumberOfTenants())),
+                    td(nvl(property.getRentalFee())),
+                    td(nvl(property.getLastPaymentDate())),
+                    td(nvl(property.getVacancyIndicator()))
+            )));
+        } catch (SQLException | UncheckedIOException e) {
+            throw failPage(out, 11, "properties of " + ownerId, e);
+        }
+
+        PROPERTIES_PAGE.writeFragment(out, 2);
+    }
+
+    private void renderTenants(HttpServletRequest request,
+                               HttpServletResponse response) throws ServletException, IOException {
+        int propertyId;
+
+        try {
+            propertyId = Integer.parseInt(request.getParameter("property"));
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "numeric property parameter required");
+            return;
+        }
+
+        // someone else's property gets the same answer as one that does not exist
+        String ownerId = sessions.ownerOf(request);
+
+        try {
+            if (!ownerId.equals(propertyDAO.lookupPropertyOwner(propertyId))) {
+                getLogger().log(INFO, "{0} asked for the tenants of property {1}, which is not theirs",
+                        new Object[]{ownerId, propertyId});
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+        } catch (SQLException e) {
+            getLogger().log(WARNING, "Owner lookup of property {0} failed ({1})",
+                    new Object[]{propertyId, e.getMessage()});
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+
+        PrintWriter out = startPage(response, TENANTS_PAGE, "property " + propertyId);
+
+        try {
+            tenantDAO.streamTenantsByProperty(propertyId, tenant -> writeRow(out, tr(
+                    td(nvl(tenant.getFirstName())),
+                    td(nvl(tenant.getLastName())),
+                    td(nvl(tenant.getPhoneNumber())),
+                    td(nvl(tenant.getDob())),
+                    td(nvl(tenant.getAddress())),
+                    td(nvl(tenant.getCity())),
+                    td(nvl(tenant.getZipCode()))
+            )));
+        } catch (SQLException | UncheckedIOException e) {
+            throw failPage(out, 7, "tenants of property " + propertyId, e);
+        }
+
+        TENANTS_PAGE.writeFragment(out, 2);
+    }
+
+    /**
+     * Write everything up to the first table row and flush it, so the client can start
+     * rendering while the query is still running.
+     */
+    private static PrintWriter startPage(HttpServletResponse response, PageTemplate template,
+                                         String subject) throws IOException {
+        response.setContentType(HTML_CONTENT_TYPE);
+
+        PrintWriter out = response.getWriter();
+        template.writeFragment(out, 0);
+        text(subject).render(out);
+        template.writeFragment(out, 1);
+        out.flush();
+
+        return out;
+    }
+
+    /**
+     * Write a row, and stop the query if the client is gone. The writer keeps write errors to
+     * itself, so they have to be asked for.
+     */
+    private static void writeRow(PrintWriter out, ContainerTag row) {
+        try {
+            row.render(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (out.checkError()) throw new UncheckedIOException(new IOException("Client stopped reading"));
+    }
+
+    /**
+     * The status line is long gone by the time a streamed query fails, so the failure is
+     * reported inside the table, for a client still reading, and the response is aborted.
+     *
+     * @return the exception to abort the response with
+     */
+    private static ServletException failPage(PrintWriter out, int columns, String what, Exception e) {
+        getLogger().log(WARNING, "Rendering {0} aborted ({1})", new Object[]{what, e.getMessage()});
+        try {
+            tr(td("Unable to load all " + what + ".").attr("colspan", columns)).render(out);
+            out.flush();
+        } catch (IOException ignored) {
+            // the writer does not throw; the client may be gone, which the abort covers
+        }
+        return new ServletException("Rendering " + what + " aborted", e);
+    }
+
+    private static String nvl(Object value) {
+        return value != null ? value.toString() : "";
+    }
+}
@@ -0,0 +1,51 @@
+package website.jetty;
+
+import j2html.tags.ContainerTag;
+import j2html.tags.DomContent;
+
+import java.io.IOException;
+
+import static j2html.TagCreator.document;
+import static j2html.TagCreator.rawHtml;
+
+/**
+ * A j2html page rendered to text once, with holes ({@link #slot()}) where per-request content
+ * goes. Serving a page then only writes the precompiled fragments around whatever the servlet
+ * streams into each slot, so the static markup is never rebuilt and the dynamic part never has
+ * to be held in memory as a DOM.
+ *
+ * @author Kenneth Ingham
+ */
+final class PageTemplate {
+    private static final String SLOT = "<!--slot-->";
+
+    private final String[] fragments;
+
+    /**
+     * Render the page and split it at its slots.
+     *
+     * @param page the complete page, containing {@link #slot()} wherever content is to be filled
+     */
+    PageTemplate(ContainerTag page) {
+        this.fragments = document(page).split(SLOT, -1);
+    }
+
+    /**
+     * @return a placeholder to put into the page wherever per-request content goes
+     */
+    static DomContent slot() {
+        return rawHtml(SLOT);
+    }
+
+    /**
+     * Write the static markup preceding slot {@code index}, or the end of the page if
+     * {@code index} is one past the last slot.
+     *
+     * @param out   the writer to append to
+     * @param index the fragment number
+     * @throws IOException if writing fails
+     */
+    void writeFragment(Appendable out, int index) throws IOException {
+        out.append(fragments[index]);
+    }
+}
@@ -0,0 +1,86 @@
+package website.jetty;
+
+import dao.PropertyDAO;
+import dao.PropertyDAO.PropertyBaseData;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
+
+/**
+ * Serves property lists to the dashboards as serialized objects, the same format
+ * {@code SerialSender} uses. {@code /properties} lists the logged in owner's properties and
+ * {@code /properties/vacant} lists all vacancies; only the latter is open to anonymous users.
+ * <p>
+ * Every response carries an ETag from {@link ChangeVersions}. A poll with a matching
+ * {@code If-None-Match} gets a {@code 304 Not Modified} without a database query.
+ *
+ * @author Kenneth Ingham
+ */
+public class PropertiesServlet extends HttpServlet {
+    static final String SERIALIZED_CONTENT_TYPE = "application/x-java-serialized-object";
+
+    private final PropertyDAO propertyDAO;
+    private final ChangeVersions versions;
+    private final SessionStore sessions;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(PropertiesServlet.class.getName());
+    }
+
+    public PropertiesServlet(PropertyDAO propertyDAO, ChangeVersions versions, SessionStore sessions) {
+        this.propertyDAO = propertyDAO;
+        this.versions = versions;
+        this.sessions = sessions;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+                         HttpServletResponse response) throws ServletException, IOException {
+        boolean vacant = "/vacant".equals(request.getPathInfo());
+        String ownerId = vacant ? null : sessions.ownerOf(request);
+
+        if (!vacant && ownerId == null) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+
+        // the tag has to be taken before the query, see ChangeVersions.ownerETag()
+        String etag = vacant ? versions.vacancyETag() : versions.ownerETag(ownerId);
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", "private, no-cache");
+
+        if (ChangeVersions.matches(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        List<PropertyBaseData> properties;
+
+        try {
+            properties = vacant ?
+                    propertyDAO.listAllVacantProperties() :
+                    propertyDAO.listAllPropertiesByOwner(ownerId);
+        } catch (SQLException e) {
+            getLogger().log(WARNING, "Property lookup for {0} failed ({1})",
+                    new Object[]{vacant ? "vacancies" : ownerId, e.getMessage().trim()});
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+
+        response.setContentType(SERIALIZED_CONTENT_TYPE);
+
+        try (ObjectOutputStream oos = new ObjectOutputStream(response.getOutputStream())) {
+            oos.writeObject(new ArrayList<>(properties));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package website.jetty;
+
+import dao.ReplicaSet;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * Names the owner behind each request as the {@link ReplicaSet} session, so an owner who has just
+ * changed something reads it back from the primary rather than from a replica that may not have
+ * it yet. Any request other than a GET or HEAD pins the owner as well, which covers writes that
+ * reach the database after the request, such as buffered rental fee updates.
+ *
+ * @author Kenneth Ingham
+ */
+public class ReadYourWritesFilter implements Filter {
+    private final ReplicaSet replicas;
+    private final SessionStore sessions;
+    private final long writeDelayMs;
+
+    /**
+     * @param replicas     the replica set the DAOs behind the filtered servlets route through
+     * @param sessions     the session store identifying the owner behind a request
+     * @param writeDelayMs the longest a write may take to reach the primary after its request
+     */
+    public ReadYourWritesFilter(ReplicaSet replicas, SessionStore sessions, long writeDelayMs) {
+        this.replicas = replicas;
+        this.sessions = sessions;
+        this.writeDelayMs = writeDelayMs;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse resp, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest request = (HttpServletRequest) req;
+        String owner = sessions.ownerOf(request);
+
+        ReplicaSet.Binding binding = replicas.bindSession(owner);
+
+        try {
+            chain.doFilter(req, resp);
+        } finally {
+            binding.close();
+
+            String method = request.getMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) replicas.pin(owner, writeDelayMs);
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,50 @@
+package website.jetty;
+
+import service.WarmUp;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Answers {@code 503} with a {@code Retry-After} hint until the server has warmed up, so requests
+ * that need the database or the search indexes are not stuck behind connecting and loading.
+ * Everything else, such as the static pages, is served straight away.
+ *
+ * @author Kenneth Ingham
+ */
+public class ReadinessFilter implements Filter {
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final WarmUp warmUp;
+
+    public ReadinessFilter(WarmUp warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest req, ServletResponse resp,
+                         FilterChain chain) throws IOException, ServletException {
+        if (warmUp.isReady()) {
+            chain.doFilter(req, resp);
+            return;
+        }
+
+        HttpServletResponse response = (HttpServletResponse) resp;
+        response.setHeader("Retry-After", RETRY_AFTER_SECONDS);
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Starting up");
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
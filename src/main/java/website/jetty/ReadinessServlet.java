@@ -0,0 +1,32 @@
+package website.jetty;
+
+import service.WarmUp;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Readiness check for load balancers: {@code 200} once the server has warmed up, {@code 503}
+ * before then. The body lists the warm-up tasks and how each of them went.
+ *
+ * @author Kenneth Ingham
+ */
+public class ReadinessServlet extends HttpServlet {
+    private final WarmUp warmUp;
+
+    public ReadinessServlet(WarmUp warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+                         HttpServletResponse response) throws ServletException, IOException {
+        response.setStatus(warmUp.isReady() ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setContentType("text/plain; charset=utf-8");
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().write(warmUp.status());
+    }
+}
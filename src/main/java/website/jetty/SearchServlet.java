@@ -0,0 +1,105 @@
+package website.jetty;
+
+import service.PropertyAttributeIndex;
+import service.PropertyAttributeIndex.Attribute;
+import service.PropertyAttributeIndex.Filter;
+import service.PropertyAttributeIndex.SearchResult;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINE;
+
+/**
+ * Faceted property search from the {@link PropertyAttributeIndex}, without a database query.
+ * Each attribute is a request parameter ({@code type}, {@code city}, {@code vacancy},
+ * {@code rooms}, {@code bathrooms}, {@code garages}); a parameter given more than once matches
+ * any of its values, and different parameters must all match. Every {@code facet} parameter
+ * names an attribute to count values of among the matches, and {@code limit} caps the number of
+ * properties returned. The response is a serialized {@link SearchResult}.
+ * <p>
+ * Logged in owners search their own properties; anonymous users search the vacancies.
+ *
+ * @author Kenneth Ingham
+ */
+public class SearchServlet extends HttpServlet {
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+
+    private final PropertyAttributeIndex index;
+    private final SessionStore sessions;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(SearchServlet.class.getName());
+    }
+
+    public SearchServlet(PropertyAttributeIndex index, SessionStore sessions) {
+        this.index = index;
+        this.sessions = sessions;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+                         HttpServletResponse response) throws ServletException, IOException {
+        String ownerId = sessions.ownerOf(request);
+        List<Filter> filters = new ArrayList<>();
+        List<Attribute> facetOn = new ArrayList<>();
+        int limit;
+
+        // the scope is not taken from the request, so nobody can search another owner's properties
+        filters.add(ownerId != null ? Filter.eq(Attribute.OWNER, ownerId) : Filter.eq(Attribute.VACANCY, "V"));
+
+        try {
+            for (Attribute attribute : Attribute.values()) {
+                String[] values = request.getParameterValues(attribute.getParameter());
+                if (values == null || attribute == Attribute.OWNER) continue;
+
+                List<Object> parsed = new ArrayList<>();
+                for (String value : values) parsed.add(attribute.parse(value));
+                filters.add(Filter.in(attribute, parsed));
+            }
+
+            String[] facets = request.getParameterValues("facet");
+            for (String facet : facets == null ? new String[0] : facets) {
+                Attribute attribute = attributeNamed(facet);
+                if (attribute == null) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown facet " + facet);
+                    return;
+                }
+                facetOn.add(attribute);
+            }
+
+            String limitParameter = request.getParameter("limit");
+            limit = limitParameter == null ? DEFAULT_LIMIT : Math.min(MAX_LIMIT, Integer.parseInt(limitParameter));
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Counts must be numbers");
+            return;
+        }
+
+        long start = System.nanoTime();
+        SearchResult result = index.search(Filter.and(filters), Math.max(0, limit), facetOn);
+        getLogger().log(FINE, "Search {0} found {1} in {2} us.", new Object[]{request.getQueryString(),
+                result.getProperties().size(), (System.nanoTime() - start) / 1000});
+
+        response.setContentType(PropertiesServlet.SERIALIZED_CONTENT_TYPE);
+        response.setHeader("Cache-Control", "private, no-cache");
+
+        try (ObjectOutputStream oos = new ObjectOutputStream(response.getOutputStream())) {
+            oos.writeObject(result);
+        }
+    }
+
+    private static Attribute attributeNamed(String parameter) {
+        for (Attribute attribute : Attribute.values()) {
+            if (attribute != Attribute.OWNER && attribute.getParameter().equals(parameter)) return attribute;
+        }
+        return null;
+    }
+}
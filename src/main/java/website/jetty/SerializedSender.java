@@ -1,30 +1,80 @@
 package website.jetty;
 
 
+import dao.SlumlordDAO;
+import service.Passwords;
+
 import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.sql.SQLException;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+import static java.util.logging.Level.WARNING;
 
+/**
+ * Handles the login form. The user's password is checked against the hash in the {@code slumlord}
+ * table once, and on success they get a session cookie from the {@link SessionStore}; later
+ * requests are authenticated from memory.
+ * <p>
+ * An unknown user, a user without a password and a wrong password all get the same answer, and
+ * take as long to get it, so the form cannot be used to find out which user names exist. As the
+ * check is slow on purpose, {@code WebServer} limits the attempts per address with its
+ * {@link AdmissionFilter}.
+ */
 public class SerializedSender extends HttpServlet {
+    private static final String LANDING_PAGE = "/owner/properties";
+
+    private final SlumlordDAO slumlordDAO;
+    private final SessionStore sessions;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(SerializedSender.class.getName());
+    }
 
-    private String username;
-    private String password;
+    public SerializedSender(SlumlordDAO slumlordDAO, SessionStore sessions) {
+        this.slumlordDAO = slumlordDAO;
+        this.sessions = sessions;
+    }
 
     protected void doPost(HttpServletRequest request,
                           HttpServletResponse response) throws ServletException, IOException {
 
-        this.username = request.getParameter("username");
-        this.password = request.getParameter("password");
+        String username = request.getParameter("username");
+        String password = request.getParameter("password");
 
-    }
+        if (username == null || username.isEmpty() || password == null || password.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "username and password required");
+            return;
+        }
 
-    public String getUsername() {
-        return username;
-    }
+        String passwordHash;
+
+        try {
+            passwordHash = slumlordDAO.lookupPasswordHash(username);
+        } catch (SQLException e) {
+            getLogger().log(WARNING, "Login lookup for {0} failed ({1})",
+                    new Object[]{username, e.getMessage().trim()});
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+
+        // a null hash is checked too, see Passwords.verify
+        if (!Passwords.verify(password.toCharArray(), passwordHash)) {
+            getLogger().log(INFO, "Rejected login for {0}", username);
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
 
-    public String getPassword() {
-        return password;
+        Cookie cookie = new Cookie(SessionStore.COOKIE_NAME, sessions.issue(username));
+        cookie.setHttpOnly(true);
+        cookie.setPath("/");
+        cookie.setMaxAge(sessions.idleTimeoutSeconds());
+        response.addCookie(cookie);
+        response.sendRedirect(LANDING_PAGE);
     }
 }
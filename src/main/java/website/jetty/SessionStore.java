@@ -0,0 +1,178 @@
+package website.jetty;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.INFO;
+
+/**
+ * Session tokens for logged in slumlords. A token is issued once, after the login servlet has
+ * checked the user against the database; from then on every request is authenticated by a single
+ * map lookup. Sessions expire after a period of inactivity and are swept in the background. The
+ * store holds at most {@code maxSessions} sessions; when it is full, the session idle the longest
+ * is dropped to make room.
+ *
+ * @author Kenneth Ingham
+ */
+public class SessionStore implements AutoCloseable {
+    public static final String COOKIE_NAME = "SLUMLORD_SESSION";
+
+    private static final String OWNER_ATTRIBUTE = SessionStore.class.getName() + ".owner";
+    private static final int TOKEN_BYTES = 32;
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long idleTimeoutNanos;
+    private final int maxSessions;
+    private final ScheduledExecutorService sweeper;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(SessionStore.class.getName());
+    }
+
+    /**
+     * @param idleTimeoutSeconds how long a session stays valid without being used
+     * @param maxSessions        the maximum number of sessions held at once
+     */
+    public SessionStore(long idleTimeoutSeconds, int maxSessions) {
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        this.maxSessions = maxSessions;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+
+        long period = Math.max(1, idleTimeoutSeconds / 4);
+        sweeper.scheduleWithFixedDelay(this::sweep, period, period, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Start a session for a user that has already been authenticated.
+     *
+     * @param userName the slumlord user name
+     * @return the new session token
+     */
+    public String issue(String userName) {
+        if (sessions.size() >= maxSessions && sweep() == 0) {
+            evictLeastRecentlyUsed();
+        }
+
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        sessions.put(token, new Session(userName, System.nanoTime()));
+        return token;
+    }
+
+    /**
+     * Look up the user a token belongs to, and mark the session as used.
+     *
+     * @param token the session token, may be null
+     * @return the user name, or null if the token is unknown or expired
+     */
+    public String validate(String token) {
+        if (token == null) return null;
+
+        Session session = sessions.get(token);
+        if (session == null) return null;
+
+        long now = System.nanoTime();
+
+        if (now - session.lastAccess > idleTimeoutNanos) {
+            sessions.remove(token, session);
+            return null;
+        }
+
+        session.lastAccess = now;
+        return session.userName;
+    }
+
+    /**
+     * The owner making a request, taken from the session cookie. The result is remembered on
+     * the request, so filters and servlets can all ask without validating the token again.
+     *
+     * @param request the current request
+     * @return the user name, or null if the request has no valid session
+     */
+    public String ownerOf(HttpServletRequest request) {
+        Object cached = request.getAttribute(OWNER_ATTRIBUTE);
+        if (cached != null) return cached instanceof String ? (String) cached : null;
+
+        String owner = validate(tokenOf(request));
+        request.setAttribute(OWNER_ATTRIBUTE, owner != null ? owner : Boolean.FALSE);
+        return owner;
+    }
+
+    /**
+     * @return the idle timeout in seconds, for use as the session cookie's max age
+     */
+    public int idleTimeoutSeconds() {
+        return (int) TimeUnit.NANOSECONDS.toSeconds(idleTimeoutNanos);
+    }
+
+    /**
+     * Remove all expired sessions.
+     *
+     * @return the number of sessions removed
+     */
+    int sweep() {
+        long now = System.nanoTime();
+        int before = sessions.size();
+
+        sessions.values().removeIf(s -> now - s.lastAccess > idleTimeoutNanos);
+
+        int removed = before - sessions.size();
+        if (removed > 0) {
+            getLogger().log(INFO, "Expired {0} sessions, {1} active.", new Object[]{removed, sessions.size()});
+        }
+
+        return Math.max(removed, 0);
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+
+    private void evictLeastRecentlyUsed() {
+        Map.Entry<String, Session> oldest = null;
+
+        for (Map.Entry<String, Session> e : sessions.entrySet()) {
+            if (oldest == null || e.getValue().lastAccess - oldest.getValue().lastAccess < 0) oldest = e;
+        }
+
+        if (oldest != null) sessions.remove(oldest.getKey(), oldest.getValue());
+    }
+
+    private static String tokenOf(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) return null;
+
+        for (Cookie cookie : cookies) {
+            if (COOKIE_NAME.equals(cookie.getName())) return cookie.getValue();
+        }
+
+        return null;
+    }
+
+    private static final class Session {
+        private final String userName;
+        private volatile long lastAccess;
+
+        Session(String userName, long lastAccess) {
+            this.userName = userName;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
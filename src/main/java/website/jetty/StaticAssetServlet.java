@@ -0,0 +1,298 @@
+package website.jetty;
+
+import org.eclipse.jetty.server.HttpOutput;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.util.logging.Level.INFO;
+
+/**
+ * Serves the static files of the web interface from memory. The whole web root is loaded once at
+ * startup; compressible files are gzipped up front and whichever copy the client accepts is
+ * written straight from the heap. Every asset has a strong, content based ETag and supports single
+ * byte ranges.
+ * <p>
+ * Asset URLs are not fingerprinted, so a changed file keeps its URL. Every asset is therefore
+ * marked for revalidation and relies on its ETag for cheap {@code 304}s, rather than being cached
+ * for long and going stale in browsers after a deploy.
+ * <p>
+ * Files larger than {@code inMemoryLimit} are not loaded; they are memory mapped per request and
+ * handed to Jetty as a mapped buffer, which goes from the page cache to the socket without being
+ * copied through the heap.
+ *
+ * @author Kenneth Ingham
+ */
+public class StaticAssetServlet extends HttpServlet {
+    public static final long DEFAULT_IN_MEMORY_LIMIT = 1024 * 1024;
+
+    private static final String REVALIDATE = "public, max-age=0, must-revalidate";
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+
+    static {
+        CONTENT_TYPES.put("html", "text/html; charset=utf-8");
+        CONTENT_TYPES.put("css", "text/css; charset=utf-8");
+        CONTENT_TYPES.put("js", "application/javascript; charset=utf-8");
+        CONTENT_TYPES.put("json", "application/json; charset=utf-8");
+        CONTENT_TYPES.put("txt", "text/plain; charset=utf-8");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("jpg", "image/jpeg");
+        CONTENT_TYPES.put("jpeg", "image/jpeg");
+        CONTENT_TYPES.put("gif", "image/gif");
+        CONTENT_TYPES.put("ico", "image/x-icon");
+    }
+
+    private final Map<String, Asset> assets = new HashMap<>();
+    private final String welcomePath;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(StaticAssetServlet.class.getName());
+    }
+
+    /**
+     * Load every file below {@code root} into memory.
+     *
+     * @param root          the web root directory
+     * @param welcomePath   the path {@code /} redirects to, for example {@code /Home.html}
+     * @param inMemoryLimit files larger than this many bytes are served from disk
+     * @throws IOException if the web root cannot be read
+     */
+    public StaticAssetServlet(Path root, String welcomePath, long inMemoryLimit) throws IOException {
+        this.welcomePath = welcomePath;
+        long start = System.currentTimeMillis();
+        long bytes = 0;
+
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                String path = "/" + root.relativize(file).toString().replace('\\', '/');
+                Asset asset = Asset.load(file, inMemoryLimit);
+
+                assets.put(path, asset);
+                bytes += asset.identity != null ? asset.identity.length : 0;
+            }
+        }
+
+        long dur = System.currentTimeMillis() - start;
+        getLogger().log(INFO, "Loaded {0} static assets ({1} bytes in memory) from {2} in {3} ms.",
+                new Object[]{assets.size(), bytes, root, dur});
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request,
+                         HttpServletResponse response) throws ServletException, IOException {
+        String path = request.getPathInfo() != null ?
+                request.getServletPath() + request.getPathInfo() :
+                request.getServletPath();
+
+        if (path.isEmpty() || path.equals("/")) {
+            response.sendRedirect(welcomePath);
+            return;
+        }
+
+        Asset asset = assets.get(path);
+
+        if (asset == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        String range = request.getHeader("Range");
+        String ifRange = request.getHeader("If-Range");
+        boolean gzip = asset.gzip != null && range == null && ExportServlet.acceptsGzip(request);
+        String etag = gzip ? asset.gzipETag : asset.etag;
+
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", REVALIDATE);
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setDateHeader("Last-Modified", asset.lastModified);
+        if (asset.gzip != null) response.setHeader("Vary", "Accept-Encoding");
+
+        if (ChangeVersions.matches(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setContentType(asset.contentType);
+
+        long start = 0;
+        long length = asset.length;
+
+        if (range != null && (ifRange == null || ifRange.equals(asset.etag))) {
+            long[] span = parseRange(range, asset.length);
+
+            if (span == null) {
+                response.setHeader("Content-Range", "bytes */" + asset.length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+
+            if (span.length == 2) {
+                start = span[0];
+                length = span[1] - span[0] + 1;
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range",
+                        "bytes " + span[0] + "-" + span[1] + "/" + asset.length);
+            }
+        }
+
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+            response.setContentLength(asset.gzip.length);
+            response.getOutputStream().write(asset.gzip);
+        } else if (asset.identity != null) {
+            response.setContentLengthLong(length);
+            response.getOutputStream().write(asset.identity, (int) start, (int) length);
+        } else {
+            response.setContentLengthLong(length);
+            sendFile(asset.file, start, length, response.getOutputStream());
+        }
+    }
+
+    /**
+     * Send part of a file that is too large to keep in memory. Within Jetty the mapped region
+     * is written to the socket directly; any other container gets a plain channel transfer.
+     */
+    private static void sendFile(Path file, long start, long length, ServletOutputStream out)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (out instanceof HttpOutput) {
+                ((HttpOutput) out).sendContent(channel.map(FileChannel.MapMode.READ_ONLY, start, length));
+            } else {
+                long sent = 0;
+
+                while (sent < length) {
+                    sent += channel.transferTo(start + sent, length - sent, Channels.newChannel(out));
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse a {@code Range} header. Only a single range is supported; anything else is ignored
+     * and answered with the full content, as RFC 7233 permits.
+     *
+     * @param header the Range header value
+     * @param length the length of the asset
+     * @return {@code {first, last}} for a satisfiable range, an empty array if the header should
+     * be ignored, or null if the range cannot be satisfied
+     */
+    static long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) return new long[0];
+
+        String spec = header.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return new long[0];
+
+        try {
+            long first;
+            long last;
+
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix == 0) return null;
+                first = Math.max(0, length - suffix);
+                last = length - 1;
+            } else {
+                first = Long.parseLong(spec.substring(0, dash));
+                last = dash == spec.length() - 1 ? length - 1 :
+                        Math.min(Long.parseLong(spec.substring(dash + 1)), length - 1);
+            }
+
+            return first < length && first <= last ? new long[]{first, last} : null;
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    /**
+     * A single static file. For files held in memory both {@code identity} and (if worth it)
+     * {@code gzip} are set; large files only have {@code file}.
+     */
+    private static final class Asset {
+        private final String contentType;
+        private final long length;
+        private final long lastModified;
+        private final String etag;
+        private final String gzipETag;
+        private final byte[] identity;
+        private final byte[] gzip;
+        private final Path file;
+
+        private Asset(String contentType, long length, long lastModified, String etag,
+                      byte[] identity, byte[] gzip, Path file) {
+            this.contentType = contentType;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.etag = "\"" + etag + "\"";
+            this.gzipETag = "\"" + etag + "-gz\"";
+            this.identity = identity;
+            this.gzip = gzip;
+            this.file = file;
+        }
+
+        static Asset load(Path file, long inMemoryLimit) throws IOException {
+            String name = file.getFileName().toString();
+            String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+            String contentType = CONTENT_TYPES.getOrDefault(extension, "application/octet-stream");
+            long size = Files.size(file);
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+
+            if (size > inMemoryLimit) {
+                String etag = Long.toString(size, 36) + "-" + Long.toString(lastModified, 36);
+                return new Asset(contentType, size, lastModified, etag, null, null, file);
+            }
+
+            byte[] identity = Files.readAllBytes(file);
+            byte[] gzip = isCompressible(contentType) ? gzip(identity) : null;
+
+            if (gzip != null && gzip.length >= identity.length) gzip = null;
+
+            return new Asset(contentType, identity.length, lastModified, digest(identity),
+                    identity, gzip, null);
+        }
+
+        private static boolean isCompressible(String contentType) {
+            return contentType.startsWith("text/") || contentType.startsWith("application/javascript")
+                    || contentType.startsWith("application/json") || contentType.equals("image/svg+xml");
+        }
+
+        private static byte[] gzip(byte[] data) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2);
+
+            try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+                out.write(data);
+            }
+
+            return bytes.toByteArray();
+        }
+
+        private static String digest(byte[] data) {
+            try {
+                byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(hash).substring(0, 22);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 not available", e);
+            }
+        }
+    }
+}
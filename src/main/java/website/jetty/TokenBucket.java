@@ -0,0 +1,41 @@
+package website.jetty;
+
+/**
+ * A classic token bucket: holds up to {@code capacity} tokens and refills at a fixed rate. Each
+ * admitted request takes one token; a request finding the bucket empty is over its rate.
+ *
+ * @author Kenneth Ingham
+ */
+final class TokenBucket {
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    TokenBucket(double capacity, double tokensPerSecond) {
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / 1e9;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take a token if one is available.
+     *
+     * @return true if the request is within its rate
+     */
+    synchronized boolean tryAcquire() {
+        refill();
+
+        if (tokens < 1) return false;
+
+        tokens -= 1;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
@@ -1,10 +1,36 @@
 package website.jetty;
-import org.eclipse.jetty.server.Handler;
+import dao.BaseDAO;
+import dao.ConnectionPool;
+import dao.DAOFactory;
+import dao.PropertyDAO;
+import dao.ReplicaSet;
+import dao.SlumlordDAO;
+import dao.TenantDAO;
+import dao.WriteBehindPropertyDAO;
+import database.DBDriver;
 import org.eclipse.jetty.server.Server;
-import org.eclipse.jetty.server.handler.DefaultHandler;
-import org.eclipse.jetty.server.handler.HandlerList;
-import org.eclipse.jetty.server.handler.ResourceHandler;
+import org.eclipse.jetty.servlet.FilterHolder;
 import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import service.AddressSearchIndex;
+import service.PropertyAttributeIndex;
+import service.SlumlordConnection;
+import service.WarmUp;
+
+import javax.servlet.DispatcherType;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.WARNING;
 
 /**
  * Run the Slumlords web interface server.  Based heavily on one of the Jetty
@@ -13,6 +39,101 @@ import org.eclipse.jetty.servlet.ServletHandler;
  * @author Kenneth Ingham
  */
 public class WebServer {
+    private static final String WEB_ROOT_PROPERTY = "slumlord.web.root";
+    private static final String DEFAULT_WEB_ROOT = "src/main/java/website/html";
+    private static final String WELCOME_PATH = "/Home.html";
+    private static final long SESSION_IDLE_TIMEOUT_SECONDS = 30 * 60;
+    private static final int MAX_SESSIONS = 100_000;
+    private static final int FEE_BUFFER_SIZE = 1000;
+    private static final long FEE_FLUSH_INTERVAL_MS = 200;
+    private static final long SEARCH_INDEX_REFRESH_MS = 1000;
+    private static final long CHANGE_VERSIONS_REFRESH_MS = 1000;
+    private static final long REPLICA_MAX_LAG_MS = 2000;
+    private static final long REPLICA_PROBE_INTERVAL_MS = 1000;
+    private static final int WARM_UP_THREADS = 4;
+    // enough for the admission limits below, the index refreshers and the fee flusher at once
+    private static final int CONNECTIONS_PER_DATABASE = 16;
+    // one for each /owner and /export request admitted at once
+    private static final int STREAM_CONNECTIONS = 6;
+    private static final long CONNECTION_WAIT_MS = 5000;
+    // each login hashes the password on purpose slowly, see Passwords
+    private static final double LOGIN_BURST = 5;
+    private static final double LOGIN_RATE_PER_SECOND = 0.2;
+    private static final long PAYMENT_PARTITIONS_INTERVAL_HOURS = 24;
+    private static final long CHANGE_SEQ_PRUNE_INTERVAL_MINUTES = 60;
+
+    private static Logger getLogger() {
+        return Logger.getLogger(WebServer.class.getName());
+    }
+
+    /**
+     * @return connections to one database, opened as requests need them
+     */
+    private static ConnectionPool pool(ConnectionPool.Opener opener) {
+        return new ConnectionPool(CONNECTIONS_PER_DATABASE, CONNECTION_WAIT_MS, opener);
+    }
+
+    /**
+     * @return connections to one database kept for streaming queries, which hold their connection
+     * for as long as the client takes to read the rows
+     */
+    private static ConnectionPool streams(ConnectionPool.Opener opener) {
+        return new ConnectionPool(STREAM_CONNECTIONS, CONNECTION_WAIT_MS, opener);
+    }
+
+    /**
+     * @return the primary and its read replicas, each with connections kept for streaming queries,
+     * or null when no replicas are configured
+     */
+    private static ReplicaSet replicas(ConnectionPool primary, ConnectionPool primaryStreams) {
+        int count = SlumlordConnection.countReplicas(System.getenv());
+        if (count == 0) return null;
+
+        List<ConnectionPool> pools = new ArrayList<>();
+        List<ConnectionPool> streams = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int replica = i;
+            ConnectionPool.Opener opener = () -> SlumlordConnection.openReplicaInstance(System.getenv(), replica);
+            pools.add(pool(opener));
+            streams.add(streams(opener));
+        }
+
+        ReplicaSet replicas = new ReplicaSet(primary, primaryStreams, pools, streams, REPLICA_MAX_LAG_MS);
+        replicas.probeEvery(REPLICA_PROBE_INTERVAL_MS);
+        return replicas;
+    }
+
+    /**
+     * @return a DAO that takes a connection of its own for every call, so servlets and background
+     * threads can share it. Streaming calls run on the stream pool of the database they go to:
+     * {@code streams} for the primary, or the replica's own.
+     */
+    private static <T extends BaseDAO> T create(Class<T> daoClass, ConnectionPool primary, ConnectionPool streams,
+                                                ReplicaSet replicas) {
+        return replicas == null ? DAOFactory.createPooled(daoClass, primary, streams)
+                : DAOFactory.createReplicated(daoClass, replicas);
+    }
+
+    /**
+     * Run a database upkeep job now and then every {@code period}, on a connection of the pool.
+     */
+    private static void maintain(ScheduledExecutorService maintenance, String job, ConnectionPool pool,
+                                 Consumer<Connection> task, long period, TimeUnit unit) {
+        maintenance.scheduleWithFixedDelay(() -> {
+            try {
+                Connection conn = pool.borrow();
+
+                try {
+                    task.accept(conn);
+                } finally {
+                    pool.release(conn);
+                }
+            } catch (SQLException | RuntimeException e) {
+                // a scheduled task that throws is never run again
+                getLogger().log(WARNING, "Database upkeep job {0} failed ({1})", new Object[]{job, e.getMessage()});
+            }
+        }, 0, period, unit);
+    }
 
     public static void main(String[] args) throws Exception {
         // Create a basic jetty server object that will listen on port 8080.
@@ -24,13 +145,6 @@ public class WebServer {
         ServletHandler handler = new ServletHandler();
         server.setHandler(handler);
 
-        //Testing some stuff for jetty serving static files
-        ResourceHandler resourceHandler = new ResourceHandler();
-        resourceHandler.setDirectoriesListed(true);
-        resourceHandler.setWelcomeFiles(new String[]{ "html/Home.html" });
-        //set resource base dir to this dir
-        resourceHandler.setResourceBase(".");
-
         // Passing in the class for the Servlet allows jetty to instantiate an
         // instance of that Servlet and mount it on a given context path.
         // IMPORTANT:
@@ -39,9 +153,112 @@ public class WebServer {
         //handler.addServletWithMapping(PropertyForm.class, "/property/*");
         //handler.addServletWithMapping(TenantForm.class, "/tenant/*");
         //handler.addServletWithMapping(Director.class, "/");
-        HandlerList handlers = new HandlerList();
-        handlers.setHandlers(new Handler[] {resourceHandler, new DefaultHandler()});
-        server.setHandler(handler);
+
+        // Logins are checked against the database once; after that the session cookie is
+        // validated from memory on every request.
+        SessionStore sessions = new SessionStore(SESSION_IDLE_TIMEOUT_SECONDS, MAX_SESSIONS);
+
+        // Every servlet and background thread runs its DAO calls on a pooled connection of its
+        // own; connections are opened as they are first needed.
+        // With JDBC_REPLICAS set, reads are spread over the replicas and writes go to the
+        // primary. Owners who have just changed something read from the primary for a while.
+        // Owner pages and exports stream their rows on connections kept apart on each database, so
+        // a client slow to read an export holds up other streams at most.
+        ConnectionPool.Opener primaryOpener = () -> SlumlordConnection.openInstance(System.getenv());
+        ConnectionPool primary = pool(primaryOpener);
+        ConnectionPool streams = streams(primaryOpener);
+
+        // Payments go into monthly partitions, which have to exist before the month starts.
+        ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "database-upkeep");
+            t.setDaemon(true);
+            return t;
+        });
+        maintain(maintenance, "payment partitions", primary, DBDriver::addPaymentPartitions,
+                PAYMENT_PARTITIONS_INTERVAL_HOURS, TimeUnit.HOURS);
+        // Every change draws a row from change_seq, of which only the latest is needed.
+        maintain(maintenance, "change sequence", primary, DBDriver::pruneChangeSeq,
+                CHANGE_SEQ_PRUNE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+        ReplicaSet replicas = replicas(primary, streams);
+        SlumlordDAO slumlordDAO = create(SlumlordDAO.class, primary, streams, replicas);
+        handler.addServletWithMapping(new ServletHolder(new SerializedSender(slumlordDAO, sessions)), "/login");
+
+        // The ETags served by PropertiesServlet and OwnerPageServlet are versions kept current
+        // from the change feeds, so they go stale whoever changes the data. Rental fee updates
+        // are buffered and written in batches behind the request; reads already see the
+        // buffered fees, so a fee given up on changes the owner's pages back.
+        ChangeVersions versions = new ChangeVersions();
+        PropertyDAO propertyStore = create(PropertyDAO.class, primary, streams, replicas);
+        WriteBehindPropertyDAO propertyDAO = new WriteBehindPropertyDAO(propertyStore, FEE_BUFFER_SIZE,
+                FEE_FLUSH_INTERVAL_MS, update -> versions.propertiesChanged(update.getOwnerId()));
+        handler.addServletWithMapping(new ServletHolder(new PropertiesServlet(propertyDAO, versions, sessions)),
+                "/properties/*");
+        TenantDAO tenantDAO = create(TenantDAO.class, primary, streams, replicas);
+        handler.addServletWithMapping(new ServletHolder(new OwnerPageServlet(propertyDAO,
+                tenantDAO, versions, sessions)), "/owner/*");
+        handler.addServletWithMapping(new ServletHolder(new ExportServlet(propertyDAO, tenantDAO, sessions)),
+                "/export/*");
+
+        // Searches are answered from in-memory indexes that follow the change feeds, so they
+        // never touch the database.
+        PropertyAttributeIndex searchIndex = new PropertyAttributeIndex();
+        handler.addServletWithMapping(new ServletHolder(new SearchServlet(searchIndex, sessions)), "/search");
+        AddressSearchIndex addressIndex = new AddressSearchIndex();
+        handler.addServletWithMapping(new ServletHolder(new AddressSearchServlet(addressIndex, sessions)),
+                "/addresses");
+
+        // The versions and indexes follow the change feeds from the start, whether or not the
+        // database is up yet.
+        versions.refreshEvery(propertyDAO, tenantDAO, CHANGE_VERSIONS_REFRESH_MS);
+        searchIndex.refreshEvery(propertyDAO, SEARCH_INDEX_REFRESH_MS);
+        addressIndex.refreshEvery(propertyDAO, tenantDAO, SEARCH_INDEX_REFRESH_MS);
+
+        // Connecting, preparing statements and loading the indexes run side by side while the
+        // server starts, and are tried again until they work. Until they are all done, requests
+        // needing them are answered with a 503.
+        WarmUp warmUp = new WarmUp(WARM_UP_THREADS)
+                .task("connection", () -> primary.release(primary.borrow()))
+                .task("slumlords", () -> DAOFactory.warmUp(slumlordDAO))
+                .task("properties", () -> DAOFactory.warmUp(propertyStore))
+                .task("tenants", () -> DAOFactory.warmUp(tenantDAO))
+                .task("versions", () -> versions.refresh(propertyDAO, tenantDAO))
+                .task("search index", () -> searchIndex.refresh(propertyDAO))
+                .task("address index", () -> addressIndex.refresh(propertyDAO, tenantDAO));
+        FilterHolder readiness = new FilterHolder(new ReadinessFilter(warmUp));
+        for (String path : new String[]{"/login", "/properties/*", "/owner/*", "/export/*", "/search", "/addresses"}) {
+            handler.addFilterWithMapping(readiness, path, EnumSet.of(DispatcherType.REQUEST));
+        }
+        handler.addServletWithMapping(new ServletHolder(new ReadinessServlet(warmUp)), "/admin/ready");
+
+        // Everything that reaches the database is admitted through per-owner rate limits and
+        // bounded per-endpoint queues, so overload is shed quickly instead of queueing up.
+        // Logins come without a session, so they are limited per address, and much tighter.
+        AdmissionFilter admission = new AdmissionFilter(sessions, 20, 5)
+                .limit("/login", 2, 16, 1000)
+                .rate("/login", LOGIN_BURST, LOGIN_RATE_PER_SECOND)
+                .limit("/properties", 4, 64, 250)
+                .limit("/owner", 4, 64, 250)
+                .limit("/export", 2, 8, 1000);
+        FilterHolder admissionHolder = new FilterHolder(admission);
+        handler.addFilterWithMapping(admissionHolder, "/login", EnumSet.of(DispatcherType.REQUEST));
+        handler.addFilterWithMapping(admissionHolder, "/properties/*", EnumSet.of(DispatcherType.REQUEST));
+        handler.addFilterWithMapping(admissionHolder, "/owner/*", EnumSet.of(DispatcherType.REQUEST));
+        handler.addFilterWithMapping(admissionHolder, "/export/*", EnumSet.of(DispatcherType.REQUEST));
+        if (replicas != null) {
+            FilterHolder readYourWrites = new FilterHolder(
+                    new ReadYourWritesFilter(replicas, sessions, FEE_FLUSH_INTERVAL_MS));
+            handler.addFilterWithMapping(readYourWrites, "/*", EnumSet.of(DispatcherType.REQUEST));
+        }
+        handler.addServletWithMapping(new ServletHolder(new MetricsServlet(() -> admission.metrics()
+                + propertyDAO.metrics() + (replicas == null ? "" : replicas.metrics()))), "/admin/metrics");
+
+        // Static pages are loaded into memory and gzipped once, then served from the default
+        // mapping. Everything not claimed by a servlet above ends up here.
+        StaticAssetServlet assets = new StaticAssetServlet(
+                Paths.get(System.getProperty(WEB_ROOT_PROPERTY, DEFAULT_WEB_ROOT)),
+                WELCOME_PATH, StaticAssetServlet.DEFAULT_IN_MEMORY_LIMIT);
+        handler.addServletWithMapping(new ServletHolder(assets), "/");
+
         // Alternate, more general approach.  Not finished.
         // See https://git.eclipse.org/c/jetty/org.eclipse.jetty.project.git/tree/examples/embedded/src/main/java/org/eclipse/jetty/embedded/ManyHandlers.java
 //        ContextHandler context = new ContextHandler();
@@ -49,6 +266,7 @@ public class WebServer {
 //        context.setHandler(new HelloHandler());
 
         // Note that a server is a thread.  Start it.
+        warmUp.start();
         server.start();
 
         // Wait for the server thread to finish.
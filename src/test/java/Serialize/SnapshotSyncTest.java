@@ -0,0 +1,169 @@
+package Serialize;
+
+import dao.PropertyBuilder;
+import dao.PropertyDAO.PropertyBaseData;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SnapshotSyncTest {
+    private SnapshotSyncSender sender;
+    private SnapshotSyncReceiver receiver;
+    private List<PropertyBaseData> properties;
+
+    private static PropertyBaseData property(int id, String fee) {
+        return PropertyBuilder.property(id).city("80202")
+                .footage(new BigDecimal("1500.00"), new BigDecimal("200.00"), null).tenants(2).fee(fee)
+                .lastPayment(LocalDate.of(2019, 10, 1)).vacancy("O").build();
+    }
+
+    private static byte[] serialize(Object message) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(message);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static SyncMessage roundTrip(SyncMessage message) throws IOException {
+        try (SyncInputStream in = new SyncInputStream(new ByteArrayInputStream(serialize(message)))) {
+            return in.readMessage();
+        }
+    }
+
+    private void exchange(SyncMessage message) throws IOException {
+        sender.receive(roundTrip(receiver.receive(roundTrip(message))));
+    }
+
+    private static void assertSameProperties(List<PropertyBaseData> expected, List<PropertyBaseData> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getPropertyId(), actual.get(i).getPropertyId());
+            assertEquals(0, PropertyField.diff(PropertyField.valuesOf(expected.get(i)),
+                    PropertyField.valuesOf(actual.get(i))));
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        sender = new SnapshotSyncSender();
+        receiver = new SnapshotSyncReceiver();
+        properties = new ArrayList<>();
+        for (int id = 1; id <= 100; id++) properties.add(property(id, "1200.00"));
+
+        SyncMessage first = sender.update(properties);
+        assertTrue(first instanceof SyncMessage.FullSnapshot);
+        exchange(first);
+    }
+
+    @Test
+    public void sendsOnlyTheChangedFieldAfterAnAck() throws Exception {
+        properties.set(41, properties.get(41).withRentalFee(new BigDecimal("1350.00")));
+
+        SyncMessage message = sender.update(properties);
+        SyncMessage.Delta delta = (SyncMessage.Delta) message;
+        assertEquals(1, delta.getChanged().size());
+        assertEquals(42, delta.getChanged().get(0).getPropertyId());
+        assertEquals(1, delta.getChanged().get(0).size());
+
+        exchange(message);
+        assertEquals(2, receiver.getVersion());
+        assertSameProperties(properties, receiver.getProperties());
+        assertNull(sender.update(properties));
+    }
+
+    @Test
+    public void appliesAddsAndRemoves() throws Exception {
+        properties.remove(0);
+        properties.add(property(101, "900.00"));
+
+        exchange(sender.update(properties));
+
+        assertSameProperties(properties, receiver.getProperties());
+    }
+
+    @Test
+    public void waitsForTheAckBeforeSendingMore() {
+        properties.set(0, properties.get(0).withRentalFee(BigDecimal.ONE));
+        assertTrue(sender.update(properties) instanceof SyncMessage.Delta);
+
+        properties.set(1, properties.get(1).withRentalFee(BigDecimal.TEN));
+        assertNull(sender.update(properties));
+    }
+
+    @Test
+    public void resyncsInFullOnVersionMismatch() throws Exception {
+        SnapshotSyncReceiver restarted = new SnapshotSyncReceiver();
+        properties.set(0, properties.get(0).withRentalFee(BigDecimal.ONE));
+
+        SyncMessage reply = restarted.receive(sender.update(properties));
+        assertTrue(reply instanceof SyncMessage.ResyncRequest);
+        sender.receive(reply);
+
+        SyncMessage full = sender.update(properties);
+        assertTrue(full instanceof SyncMessage.FullSnapshot);
+        sender.receive(restarted.receive(full));
+        assertSameProperties(properties, restarted.getProperties());
+    }
+
+    @Test
+    public void syncsOverASocketAgainAfterEachAck() throws Exception {
+        SnapshotSyncSender session = new SnapshotSyncSender();
+        SnapshotSyncReceiver remote = new SnapshotSyncReceiver();
+
+        try (SerialReceiver serial = new SerialReceiver(remote, 0)) {
+            serial.listen();
+
+            SyncMessage reply = SerialSender.sync(session, properties, "localhost", serial.getPort());
+            assertTrue(reply instanceof SyncMessage.Ack);
+            assertEquals(1, remote.getVersion());
+
+            properties.set(9, properties.get(9).withRentalFee(new BigDecimal("1350.00")));
+            reply = SerialSender.sync(session, properties, "localhost", serial.getPort());
+            assertTrue(reply instanceof SyncMessage.Ack);
+            assertEquals(2, reply.getVersion());
+            assertSameProperties(properties, remote.getProperties());
+
+            assertNull(SerialSender.sync(session, properties, "localhost", serial.getPort()));
+        }
+    }
+
+    @Test
+    public void refusesClassesThatAreNotPartOfASyncMessage() throws IOException {
+        List<Object> list = new ArrayList<>();
+        list.add(new java.util.Date());
+
+        try (SyncInputStream in = new SyncInputStream(new ByteArrayInputStream(serialize(list)))) {
+            in.readMessage();
+            fail("expected the class to be refused");
+        } catch (InvalidClassException expected) {
+            assertTrue(expected.getMessage().contains("java.util.Date"));
+        }
+    }
+
+    @Test
+    public void startsOverWhenNoReplyComes() throws Exception {
+        SnapshotSyncSender session = new SnapshotSyncSender();
+        int port;
+        try (SerialReceiver closed = new SerialReceiver(new SnapshotSyncReceiver(), 0)) {
+            port = closed.getPort();
+        }
+
+        assertNull(SerialSender.sync(session, properties, "localhost", port));
+        assertTrue(session.update(properties) instanceof SyncMessage.FullSnapshot);
+    }
+}
@@ -0,0 +1,55 @@
+package dao;
+
+import dao.BulkLookupPlanner.Strategy;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BulkLookupPlannerTest {
+    private BulkLookupPlanner planner;
+
+    @Before
+    public void createPlanner() {
+        planner = new BulkLookupPlanner(1000);
+    }
+
+    @Test
+    public void listsThatFitOneCollationUseOneBucketedInList() {
+        assertEquals(Strategy.BUCKETED_IN_LIST, planner.choose(1));
+        assertEquals(Strategy.BUCKETED_IN_LIST, planner.choose(1000));
+    }
+
+    @Test
+    public void bucketsArePowersOfTwoCappedAtTheCollateSize() {
+        assertEquals(8, planner.bucketSize(1));
+        assertEquals(8, planner.bucketSize(8));
+        assertEquals(16, planner.bucketSize(9));
+        assertEquals(512, planner.bucketSize(300));
+        assertEquals(1000, planner.bucketSize(513));
+    }
+
+    @Test
+    public void unmeasuredListsFollowThePriorThenTryTheOtherStrategy() {
+        assertEquals(Strategy.COLLATED_IN_LIST, planner.choose(3000));
+        planner.record(Strategy.COLLATED_IN_LIST, 3000, 3_000_000);
+        assertEquals(Strategy.TEMP_TABLE_JOIN, planner.choose(3000));
+
+        assertEquals(Strategy.TEMP_TABLE_JOIN, planner.choose(50_000));
+    }
+
+    @Test
+    public void cheaperStrategyWinsAndRunnerUpIsStillSampled() {
+        planner.record(Strategy.COLLATED_IN_LIST, 3000, 9_000_000);
+        planner.record(Strategy.TEMP_TABLE_JOIN, 3000, 3_000_000);
+
+        int collated = 0;
+        for (int i = 0; i < BulkLookupPlanner.EXPLORE_INTERVAL; i++) {
+            if (planner.choose(3000) == Strategy.COLLATED_IN_LIST) collated++;
+        }
+
+        assertEquals(1, collated);
+        assertNull(planner.estimate(Strategy.TEMP_TABLE_JOIN, 100_000));
+    }
+}
@@ -0,0 +1,72 @@
+package dao;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeFeedQueryTest {
+
+    @Test
+    public void mergesUpsertsAndTombstonesInSequenceOrder() {
+        List<String> rows = Arrays.asList("a", "b");
+        List<Long> seqs = Arrays.asList(11L, 14L);
+        List<long[]> deletes = Arrays.asList(new long[]{12, 7}, new long[]{13, 8});
+
+        ChangeFeed<String> page = ChangeFeedQuery.merge(rows, seqs, deletes, 10, 10);
+
+        assertEquals(rows, page.getUpserts());
+        assertArrayEquals(new int[]{7, 8}, page.getDeletedIds());
+        assertEquals(14, page.getHighWaterMark());
+        assertFalse(page.hasMore());
+        assertEquals("the last page is read again", 0, page.getResumeMark());
+    }
+
+    @Test
+    public void cutsThePageAtTheLimitAndReportsMore() {
+        List<String> rows = Arrays.asList("a", "b", "c");
+        List<Long> seqs = Arrays.asList(11L, 13L, 15L);
+        List<long[]> deletes = Collections.singletonList(new long[]{12, 7});
+
+        ChangeFeed<String> page = ChangeFeedQuery.merge(rows, seqs, deletes, 10, 3);
+
+        assertEquals(Arrays.asList("a", "b"), page.getUpserts());
+        assertArrayEquals(new int[]{7}, page.getDeletedIds());
+        assertEquals(13, page.getHighWaterMark());
+        assertTrue(page.hasMore());
+        assertEquals(13, page.getResumeMark());
+    }
+
+    @Test
+    public void lastPageResumesBehindItsNewestChange() {
+        long newest = 5_000;
+        List<String> rows = Arrays.asList("a", "b");
+        List<Long> seqs = Arrays.asList(newest - 1, newest);
+
+        ChangeFeed<String> page = ChangeFeedQuery.merge(rows, seqs, Collections.emptyList(), newest - 2, 10);
+        assertEquals(newest - ChangeFeedQuery.RESUME_LAG, page.getResumeMark());
+
+        // a change committed late, below what was read, is in the next page
+        List<String> again = Arrays.asList("late", "a", "b");
+        List<Long> againSeqs = Arrays.asList(newest - 3, newest - 1, newest);
+        page = ChangeFeedQuery.merge(again, againSeqs, Collections.emptyList(), page.getResumeMark(), 10);
+        assertEquals(again, page.getUpserts());
+        assertEquals("nothing newer keeps the mark", newest - ChangeFeedQuery.RESUME_LAG, page.getResumeMark());
+    }
+
+    @Test
+    public void emptyPageKeepsTheMark() {
+        ChangeFeed<String> page = ChangeFeedQuery.merge(Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList(), 42, 10);
+
+        assertTrue(page.isEmpty());
+        assertEquals(42, page.getHighWaterMark());
+        assertEquals(42, page.getResumeMark());
+    }
+}
@@ -0,0 +1,114 @@
+package dao;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConnectionPoolTest {
+    private final AtomicInteger opened = new AtomicInteger();
+
+    /**
+     * A connection that only knows whether it has been closed.
+     */
+    private Connection connection() {
+        opened.incrementAndGet();
+        AtomicBoolean closed = new AtomicBoolean();
+
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "isClosed":
+                            return closed.get();
+                        case "close":
+                            closed.set(true);
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    public void reusesReturnedConnections() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(2, 0, this::connection);
+
+        Connection first = pool.borrow();
+        Connection second = pool.borrow();
+        assertNotSame(first, second);
+        assertTrue(ConnectionPool.isPooled(first));
+
+        pool.release(first);
+        assertSame(first, pool.borrow());
+        assertEquals(2, opened.get());
+    }
+
+    @Test
+    public void waitsForAConnectionOnlySoLong() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(1, 50, this::connection);
+        Connection only = pool.borrow();
+
+        try {
+            pool.borrow();
+            fail("expected the pool to be exhausted");
+        } catch (SQLException e) {
+            assertEquals("No connection came free in 50 ms; all 1 are in use", e.getMessage());
+        }
+
+        new Thread(() -> pool.release(only)).start();
+        assertSame(only, pool.borrow());
+    }
+
+    @Test
+    public void replacesClosedConnections() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(1, 0, this::connection);
+        Connection first = pool.borrow();
+        first.close();
+        pool.release(first);
+
+        assertFalse(ConnectionPool.isPooled(first));
+        assertNotSame(first, pool.borrow());
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void closesConnectionsAsTheyComeBack() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(2, 0, this::connection);
+        Connection idle = pool.borrow();
+        Connection lent = pool.borrow();
+        pool.release(idle);
+
+        pool.close();
+        assertTrue(idle.isClosed());
+        assertFalse(lent.isClosed());
+
+        pool.release(lent);
+        assertTrue(lent.isClosed());
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void leavesASingleConnectionOpen() throws SQLException {
+        Connection shared = connection();
+        ConnectionPool pool = ConnectionPool.of(shared, 0);
+
+        assertSame(shared, pool.borrow());
+        pool.release(shared);
+        pool.close();
+        assertFalse(shared.isClosed());
+    }
+}
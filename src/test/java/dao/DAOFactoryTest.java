@@ -0,0 +1,239 @@
+package dao;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class DAOFactoryTest {
+    private final AtomicInteger prepared = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private Connection conn;
+
+    /**
+     * A connection that counts the statements prepared on it; the statements themselves do nothing.
+     */
+    private Connection connection(AtomicBoolean closed) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "prepareStatement":
+                            prepared.incrementAndGet();
+                            return Proxy.newProxyInstance(getClass().getClassLoader(),
+                                    new Class<?>[]{PreparedStatement.class}, (ps, m, a) -> null);
+                        case "isClosed":
+                            return closed.get();
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Before
+    public void setUp() {
+        conn = connection(closed);
+    }
+
+    @Test
+    public void reusesDAOsPerConnection() {
+        SlumlordDAO first = DAOFactory.create(SlumlordDAO.class, conn);
+        int statements = prepared.get();
+
+        assertSame(first, DAOFactory.create(SlumlordDAO.class, conn));
+        assertSame(first, DAOFactory.create(SlumlordDAO.class, () -> conn));
+        assertEquals(statements, prepared.get());
+
+        assertNotSame(first, DAOFactory.create(SlumlordDAO.class, connection(new AtomicBoolean())));
+    }
+
+    @Test
+    public void releasedAndClosedConnectionsGetNewDAOs() {
+        SlumlordDAO first = DAOFactory.create(SlumlordDAO.class, conn);
+
+        DAOFactory.release(conn);
+        SlumlordDAO second = DAOFactory.create(SlumlordDAO.class, conn);
+        assertNotSame(first, second);
+
+        closed.set(true);
+        DAOFactory.create(SlumlordDAO.class, connection(new AtomicBoolean()));
+        closed.set(false);
+        assertNotSame(second, DAOFactory.create(SlumlordDAO.class, conn));
+    }
+
+    @Test
+    public void lazyDAOsAreBuiltOnFirstUse() throws Exception {
+        AtomicInteger built = new AtomicInteger();
+        SlumlordDAO lazy = DAOFactory.createLazily(SlumlordDAO.class, () -> {
+            built.incrementAndGet();
+            return DAOFactory.create(SlumlordDAO.class, conn);
+        });
+
+        assertEquals("Lazy SlumlordDAO", lazy.toString());
+        assertEquals(0, built.get());
+
+        assertEquals(1, DAOFactory.warmUp(lazy));
+        assertEquals(1, prepared.get());
+        assertEquals(1, built.get());
+
+        assertEquals(0, DAOFactory.warmUp(lazy));
+        assertEquals(1, built.get());
+    }
+
+    @Test
+    public void preparesStatementsOnFirstUse() throws Exception {
+        DAOFactory.create(SlumlordDAO.class, conn);
+        assertEquals(0, prepared.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void lazyDAOsFailWithoutAnImplementation() throws Exception {
+        DAOFactory.warmUp(DAOFactory.createLazily(BaseDAO.class, () -> DAOFactory.create(BaseDAO.class, conn)));
+    }
+
+    @Test
+    public void pooledDAOsGiveConcurrentCallsTheirOwnConnection() throws Exception {
+        // each query waits for the other one, so they only finish if they run side by side
+        CyclicBarrier bothRunning = new CyclicBarrier(2);
+        Set<Connection> used = ConcurrentHashMap.newKeySet();
+        ConnectionPool pool = new ConnectionPool(2, 1000,
+                () -> queryingConnection(bothRunning, used, new ArrayList<>()));
+        SlumlordDAO dao = DAOFactory.createPooled(SlumlordDAO.class, pool);
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<?> first = threads.submit(() -> dao.lookupSlumData("a"));
+            Future<?> second = threads.submit(() -> dao.lookupSlumData("b"));
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+        } finally {
+            threads.shutdownNow();
+        }
+
+        assertEquals(2, used.size());
+        assertEquals(2, pool.size());
+        assertEquals("Pooled SlumlordDAO", dao.toString());
+        // both connections' DAOs have prepared their statement already
+        assertEquals(0, DAOFactory.warmUp(dao));
+    }
+
+    /**
+     * A connection whose queries return no rows, once they have met at the barrier. The fetch sizes asked for
+     * are noted down.
+     */
+    private Connection queryingConnection(CyclicBarrier barrier, Set<Connection> used, List<Integer> fetchSizes) {
+        ResultSet empty = (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (rs, m, a) -> m.getName().equals("next") ? false : null);
+
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "prepareStatement":
+                            prepared.incrementAndGet();
+                            return Proxy.newProxyInstance(getClass().getClassLoader(),
+                                    new Class<?>[]{PreparedStatement.class}, (ps, m, a) -> {
+                                        if (m.getName().equals("setFetchSize")) fetchSizes.add((Integer) a[0]);
+                                        if (!m.getName().equals("executeQuery")) return null;
+                                        used.add((Connection) proxy);
+                                        barrier.await(5, TimeUnit.SECONDS);
+                                        return empty;
+                                    });
+                        case "isClosed":
+                            return false;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    @Test
+    public void streamsOnlyOnConnectionsOfTheirOwn() throws Exception {
+        List<Integer> fetchSizes = new ArrayList<>();
+        CyclicBarrier alone = new CyclicBarrier(1);
+        Connection shared = queryingConnection(alone, ConcurrentHashMap.newKeySet(), fetchSizes);
+        ConnectionPool pool = new ConnectionPool(1, 0,
+                () -> queryingConnection(alone, ConcurrentHashMap.newKeySet(), fetchSizes));
+
+        DAOFactory.create(TenantDAO.class, shared).streamTenantsByProperty(1, tenant -> { });
+        DAOFactory.createPooled(TenantDAO.class, pool).streamTenantsByProperty(1, tenant -> { });
+
+        assertEquals(Arrays.asList(0, Integer.MIN_VALUE), fetchSizes);
+    }
+
+    @Test
+    public void streamingCallsTakeConnectionsFromTheirOwnPool() throws Exception {
+        CyclicBarrier alone = new CyclicBarrier(1);
+        ConnectionPool pool = new ConnectionPool(1, 0,
+                () -> queryingConnection(alone, ConcurrentHashMap.newKeySet(), new ArrayList<>()));
+        ConnectionPool streams = new ConnectionPool(1, 0,
+                () -> queryingConnection(alone, ConcurrentHashMap.newKeySet(), new ArrayList<>()));
+        TenantDAO dao = DAOFactory.createPooled(TenantDAO.class, pool, streams);
+
+        Connection held = pool.borrow();
+        dao.streamTenantsByProperty(1, tenant -> { });
+        pool.release(held);
+
+        assertEquals(1, streams.size());
+        dao.listTenantsByProperty(1);
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void replicatedStreamingCallsTakeConnectionsFromTheStreamPools() throws Exception {
+        CyclicBarrier alone = new CyclicBarrier(1);
+        List<ConnectionPool> pools = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            pools.add(new ConnectionPool(1, 0,
+                    () -> queryingConnection(alone, ConcurrentHashMap.newKeySet(), new ArrayList<>())));
+        }
+        ConnectionPool primary = pools.get(0), primaryStreams = pools.get(1);
+        ConnectionPool replica = pools.get(2), replicaStreams = pools.get(3);
+
+        try (ReplicaSet replicas = new ReplicaSet(primary, primaryStreams, Collections.singletonList(replica),
+                Collections.singletonList(replicaStreams), 1000, conn -> 0L)) {
+            TenantDAO dao = DAOFactory.createReplicated(TenantDAO.class, replicas);
+
+            // no replica is in rotation before the first probe
+            dao.streamTenantsByProperty(1, tenant -> { });
+            assertEquals(1, primaryStreams.size());
+
+            replicas.probe();
+            dao.streamTenantsByProperty(1, tenant -> { });
+            assertEquals(1, replicaStreams.size());
+            assertEquals(0, primary.size());
+        }
+    }
+
+    @Test
+    public void returnsNullWithoutAnImplementation() {
+        assertNull(DAOFactory.create(BaseDAO.class, conn));
+    }
+}
@@ -0,0 +1,217 @@
+package dao;
+
+import dao.PropertyDAO.PropertyBaseData;
+import dao.PropertyDAO.RentalFeeUpdate;
+import dao.SlumlordDAO.SlumData;
+import dao.TenantDAO.TenantData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InMemoryDAOTest {
+    private InMemoryStore store;
+    private PropertyDAO properties;
+    private TenantDAO tenants;
+    private SlumlordDAO slumlords;
+
+    private static PropertyBaseData property(String address, String owner, String vacancy) {
+        return PropertyBuilder.property().type("A").address(address).fee("1000.00").owner(owner).vacancy(vacancy)
+                .build();
+    }
+
+    private static TenantData tenant(String name, int propertyId) {
+        return new TenantData(0, name, "Doe", LocalDate.of(1990, 1, 1), "5055550100", "1 Main St.",
+                "Albuquerque", "87101", propertyId);
+    }
+
+    private static List<Integer> ids(List<PropertyBaseData> properties) {
+        return properties.stream().map(PropertyBaseData::getPropertyId).collect(Collectors.toList());
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        store = new InMemoryStore();
+        properties = new PropertyInMemoryDAO(store);
+        tenants = new TenantInMemoryDAO(store);
+        slumlords = new SlumlordInMemoryDAO(store);
+
+        slumlords.registerNewSlumlord(new SlumData(0, "eugene", "Eugene", "Powell", LocalDate.of(1987, 4, 16)));
+        slumlords.registerNewSlumlord(new SlumData(0, "lar", "Larissa", "Wallis", LocalDate.of(1993, 10, 12)));
+        properties.insertProperties(Arrays.asList(property("1 Main St.", "eugene", "O"),
+                property("2 Main St.", "lar", "V"), property("3 Main St.", "eugene", "V")));
+        tenants.insertTenants(Arrays.asList(tenant("Ann", 3), tenant("Bob", 1), tenant("Cy", 3)));
+    }
+
+    @After
+    public void tearDown() {
+        DAOFactory.setImplementationResolver(ImplementationResolver.fromSystemProperty());
+    }
+
+    @Test
+    public void looksUpByOwnerPropertyAndVacancy() throws SQLException {
+        assertEquals(Arrays.asList(1, 3), ids(properties.listAllPropertiesByOwner("eugene")));
+        assertEquals(Arrays.asList(2, 3), ids(properties.listAllVacantProperties()));
+        assertTrue(properties.listAllPropertiesByOwner("nobody").isEmpty());
+
+        assertEquals(Arrays.asList("Ann", "Cy"), tenants.listTenantsByProperty(3).stream()
+                .map(TenantData::getFirstName).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("Bob", "Ann", "Cy"), tenants.listTenantByProperties(Arrays.asList(3, 1, 3))
+                .stream().map(TenantData::getFirstName).collect(Collectors.toList()));
+        assertEquals(2, properties.listAllPropertiesWithTenantsByOwner("eugene").get(1).getTenants().size());
+        assertEquals("Larissa", slumlords.lookupSlumData("lar").getFirstName());
+        assertNull(slumlords.lookupSlumData("nobody"));
+        assertEquals("lar", properties.lookupPropertyOwner(2));
+        assertNull(properties.lookupPropertyOwner(99));
+    }
+
+    @Test
+    public void keepsPasswordHashesOfKnownUsers() throws SQLException {
+        assertNull(slumlords.lookupPasswordHash("lar"));
+        assertTrue(slumlords.setPasswordHash("lar", "hash"));
+        assertEquals("hash", slumlords.lookupPasswordHash("lar"));
+
+        assertFalse(slumlords.setPasswordHash("nobody", "hash"));
+        assertNull(slumlords.lookupPasswordHash("nobody"));
+    }
+
+    @Test
+    public void checksKeysLikeTheDatabase() throws SQLException {
+        for (Runnable insert : Arrays.<Runnable>asList(
+                () -> insert(() -> properties.insertNewProperty(property("1 Main St.", "lar", "V"))),
+                () -> insert(() -> properties.insertNewProperty(property("9 Main St.", "nobody", "V"))),
+                () -> insert(() -> tenants.insertTenants(Collections.singletonList(tenant("Dee", 99)))),
+                () -> insert(() -> slumlords.registerNewSlumlord(new SlumData(0, "lar", null, null, null))))) {
+            insert.run();
+        }
+
+        // a batch with one bad row inserts nothing
+        insert(() -> properties.insertProperties(Arrays.asList(property("8 Main St.", "lar", "V"),
+                property("8 Main St.", "lar", "V"))));
+        assertEquals(1, properties.listAllPropertiesByOwner("lar").size());
+    }
+
+    private interface Insert {
+        void run() throws SQLException;
+    }
+
+    private static void insert(Insert insert) {
+        try {
+            insert.run();
+            fail("expected a key violation");
+        } catch (SQLIntegrityConstraintViolationException expected) {
+            // as the database would
+        } catch (SQLException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    public void updatesOnlyTheOwnersFees() throws SQLException {
+        properties.updateRentalFee(new BigDecimal("1200.00"), 1, "lar");
+        assertEquals(new BigDecimal("1000.00"), properties.listAllPropertiesByOwner("eugene").get(0).getRentalFee());
+
+        assertEquals(1, properties.updateRentalFees(Arrays.asList(new RentalFeeUpdate(1, "eugene",
+                new BigDecimal("1200.00")), new RentalFeeUpdate(2, "eugene", new BigDecimal("1.00")))));
+        assertEquals(new BigDecimal("1200.00"), properties.listAllPropertiesByOwner("eugene").get(0).getRentalFee());
+        assertEquals(Arrays.asList(1, 3), ids(properties.listAllPropertiesByOwner("eugene")));
+    }
+
+    @Test
+    public void keepsChangeFeeds() throws SQLException {
+        ChangeFeed<PropertyBaseData> page = properties.propertyChangesSince(null, 0, 2);
+        assertEquals(Arrays.asList(1, 2), ids(page.getUpserts()));
+        assertTrue(page.hasMore());
+
+        page = properties.propertyChangesSince(null, page.getHighWaterMark(), 2);
+        assertEquals(Collections.singletonList(3), ids(page.getUpserts()));
+        assertFalse(page.hasMore());
+
+        long seen = page.getHighWaterMark();
+        properties.updateRentalFee(new BigDecimal("1.00"), 1, "eugene");
+        store.removeProperty(3);
+        page = properties.propertyChangesSince("eugene", seen, 10);
+        assertEquals(Collections.singletonList(1), ids(page.getUpserts()));
+        assertEquals(3, page.getDeletedIds()[0]);
+        assertTrue(properties.propertyChangesSince("lar", seen, 10).isEmpty());
+
+        // the tenants of a deleted property no longer belong to its owner
+        assertEquals(1, tenants.tenantChangesSince("eugene", 0, 10).getUpserts().size());
+    }
+
+    @Test
+    public void movesLeaveADeleteWithTheOldOwner() throws SQLException {
+        long seen = properties.propertyChangesSince(null, 0, 10).getHighWaterMark();
+        long seenTenants = tenants.tenantChangesSince(null, 0, 10).getHighWaterMark();
+        store.putProperty(property("3 Main St.", "lar", "V").withPropertyId(3));
+
+        ChangeFeed<PropertyBaseData> page = properties.propertyChangesSince("eugene", seen, 10);
+        assertTrue(page.getUpserts().isEmpty());
+        assertArrayEquals(new int[]{3}, page.getDeletedIds());
+        assertEquals(Collections.singletonList(3), ids(properties.propertyChangesSince("lar", seen, 10).getUpserts()));
+        assertEquals(0, properties.propertyChangesSince(null, seen, 10).getDeletedIds().length);
+
+        // Ann and Cy went along
+        assertEquals(2, tenants.tenantChangesSince("eugene", seenTenants, 10).getDeletedIds().length);
+        assertEquals(2, tenants.tenantChangesSince("lar", seenTenants, 10).getUpserts().size());
+
+        // moving back takes the delete away again
+        store.putProperty(property("3 Main St.", "eugene", "V").withPropertyId(3));
+        page = properties.propertyChangesSince("eugene", seen, 10);
+        assertEquals(Collections.singletonList(3), ids(page.getUpserts()));
+        assertEquals(0, page.getDeletedIds().length);
+        assertArrayEquals(new int[]{3}, properties.propertyChangesSince("lar", seen, 10).getDeletedIds());
+
+        // a tenant moving to another owner's property
+        store.putTenant(new TenantData(2, "Bob", "Doe", LocalDate.of(1990, 1, 1), "5055550100", "1 Main St.",
+                "Albuquerque", "87101", 2));
+        assertArrayEquals(new int[]{2}, tenants.tenantChangesSince("eugene", seenTenants, 10).getDeletedIds());
+    }
+
+    @Test
+    public void followsAnotherStore() throws SQLException {
+        InMemoryStore copy = new InMemoryStore();
+        assertEquals(6, copy.refresh(properties, tenants));
+
+        properties.updateRentalFee(new BigDecimal("1.00"), 2, "lar");
+        store.removeProperty(1);
+        assertEquals(2, copy.refresh(properties, tenants));
+        assertEquals(0, copy.refresh(properties, tenants));
+
+        PropertyDAO copied = new PropertyInMemoryDAO(copy);
+        assertEquals(Collections.singletonList(3), ids(copied.listAllPropertiesByOwner("eugene")));
+        assertEquals(new BigDecimal("1.00"), copied.listAllPropertiesByOwner("lar").get(0).getRentalFee());
+        assertEquals(2, new TenantInMemoryDAO(copy).listTenantsByProperty(3).size());
+    }
+
+    @Test
+    public void factoryPicksTheFirstImplementationFound() {
+        DAOFactory.setImplementationResolver(ImplementationResolver.byKind("InMemory", "MySql"));
+
+        PropertyDAO dao = DAOFactory.create(PropertyDAO.class, () -> {
+            throw new AssertionError("in-memory DAOs need no connection");
+        });
+        assertTrue(dao instanceof PropertyInMemoryDAO);
+        assertSame(dao, DAOFactory.create(PropertyDAO.class, (Connection) null));
+
+        DAOFactory.setImplementationResolver(ImplementationResolver.byKind("Nonexistent"));
+        assertNull(DAOFactory.create(PropertyDAO.class, (Connection) null));
+    }
+}
@@ -0,0 +1,100 @@
+package dao;
+
+import dao.PaymentDAO.PaymentData;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class PaymentMySqlDAOTest {
+    private final List<String> calls = new ArrayList<>();
+
+    private static PaymentData payment(int propertyId, String date) {
+        return new PaymentData(0, propertyId, null, new BigDecimal("950.00"), LocalDate.parse(date));
+    }
+
+    /**
+     * A connection logging its transaction calls and the statements run, by the comment naming them. The
+     * statement named {@code failing} throws instead.
+     */
+    private Connection connection(String failing) {
+        ClassLoader loader = PaymentMySqlDAOTest.class.getClassLoader();
+        boolean[] autoCommit = {true};
+
+        return (Connection) Proxy.newProxyInstance(loader, new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getAutoCommit":
+                            return autoCommit[0];
+                        case "setAutoCommit":
+                            autoCommit[0] = (Boolean) args[0];
+                            calls.add("autoCommit " + args[0]);
+                            return null;
+                        case "commit":
+                        case "rollback":
+                            calls.add(method.getName());
+                            return null;
+                        case "prepareStatement":
+                            String sql = (String) args[0];
+                            String name = sql.substring(sql.indexOf("/* ") + 3, sql.indexOf(" */"));
+                            return Proxy.newProxyInstance(loader, new Class<?>[]{PreparedStatement.class},
+                                    (statement, call, callArgs) -> {
+                                        if (!call.getName().equals("executeUpdate")) return null;
+                                        calls.add(name);
+                                        if (name.equals(failing)) {
+                                            throw new SQLException("Lock wait timeout exceeded", "40001");
+                                        }
+                                        return 1;
+                                    });
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    @Test
+    public void datesMoveAfterThePaymentsCommit() throws SQLException {
+        PaymentDAO dao = new PaymentMySqlDAO(connection(null), 2);
+
+        dao.recordPayments(Arrays.asList(payment(1, "2019-11-01"), payment(2, "2019-11-02"),
+                payment(1, "2019-11-03")));
+
+        // the dates are updated outside of the transaction, so no property row is held while it runs
+        assertEquals(Arrays.asList("autoCommit false", "INSERT_PAYMENTS_STATEMENT", "INSERT_PAYMENTS_STATEMENT",
+                "commit", "autoCommit true", "ADVANCE_LAST_PAYMENT_DATES_STATEMENT"), calls);
+    }
+
+    @Test
+    public void failedDateUpdateKeepsThePayments() throws SQLException {
+        PaymentDAO dao = new PaymentMySqlDAO(connection("ADVANCE_LAST_PAYMENT_DATES_STATEMENT"), 2);
+
+        // not thrown, so the caller does not record the payments again
+        dao.recordPayments(Arrays.asList(payment(1, "2019-11-01"), payment(2, "2019-11-02")));
+        assertEquals(Arrays.asList("autoCommit false", "INSERT_PAYMENTS_STATEMENT", "commit", "autoCommit true",
+                "ADVANCE_LAST_PAYMENT_DATES_STATEMENT"), calls);
+    }
+
+    @Test
+    public void failedInsertRollsBackTheBatch() {
+        PaymentDAO dao = new PaymentMySqlDAO(connection("INSERT_PAYMENTS_STATEMENT"), 2);
+
+        try {
+            dao.recordPayments(Arrays.asList(payment(1, "2019-11-01"), payment(2, "2019-11-02")));
+            fail("expected the failed insert to be reported");
+        } catch (SQLException e) {
+            assertEquals("40001", e.getSQLState());
+        }
+
+        assertEquals(Arrays.asList("autoCommit false", "INSERT_PAYMENTS_STATEMENT", "rollback", "autoCommit true"),
+                calls);
+    }
+}
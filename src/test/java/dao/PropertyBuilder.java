@@ -0,0 +1,116 @@
+package dao;
+
+import dao.PropertyDAO.PropertyBaseData;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Builds the properties used by the tests, each column defaulted so a test only names what it is about
+ */
+public class PropertyBuilder {
+    private int propertyId;
+    private String propertyType = "House";
+    private String propertyAddress = "1 Main St";
+    private String cityCode = "ABQ";
+    private int numberOfRooms = 3;
+    private int numberOfBathrooms = 2;
+    private int garageCount = 1;
+    private BigDecimal squareFootage = BigDecimal.TEN;
+    private BigDecimal frontYardFootage = BigDecimal.ONE;
+    private BigDecimal backyardFootage = BigDecimal.ONE;
+    private int numberOfTenants;
+    private BigDecimal rentalFee = new BigDecimal("900.00");
+    private LocalDate lastPaymentDate = LocalDate.of(2019, 1, 1);
+    private String ownerID = "owner";
+    private String vacancyIndicator = "V";
+
+    public static PropertyBuilder property() {
+        return new PropertyBuilder();
+    }
+
+    /**
+     * A property with the given id, at "{id} Main St"
+     */
+    public static PropertyBuilder property(int propertyId) {
+        return new PropertyBuilder().id(propertyId).address(propertyId + " Main St");
+    }
+
+    public PropertyBuilder id(int propertyId) {
+        this.propertyId = propertyId;
+        return this;
+    }
+
+    public PropertyBuilder type(String propertyType) {
+        this.propertyType = propertyType;
+        return this;
+    }
+
+    public PropertyBuilder address(String propertyAddress) {
+        this.propertyAddress = propertyAddress;
+        return this;
+    }
+
+    public PropertyBuilder city(String cityCode) {
+        this.cityCode = cityCode;
+        return this;
+    }
+
+    public PropertyBuilder rooms(int numberOfRooms) {
+        this.numberOfRooms = numberOfRooms;
+        return this;
+    }
+
+    public PropertyBuilder bathrooms(int numberOfBathrooms) {
+        this.numberOfBathrooms = numberOfBathrooms;
+        return this;
+    }
+
+    public PropertyBuilder garages(int garageCount) {
+        this.garageCount = garageCount;
+        return this;
+    }
+
+    public PropertyBuilder footage(BigDecimal squareFootage, BigDecimal frontYardFootage, BigDecimal backyardFootage) {
+        this.squareFootage = squareFootage;
+        this.frontYardFootage = frontYardFootage;
+        this.backyardFootage = backyardFootage;
+        return this;
+    }
+
+    public PropertyBuilder tenants(int numberOfTenants) {
+        this.numberOfTenants = numberOfTenants;
+        return this;
+    }
+
+    public PropertyBuilder fee(String rentalFee) {
+        this.rentalFee = new BigDecimal(rentalFee);
+        return this;
+    }
+
+    public PropertyBuilder fee(BigDecimal rentalFee) {
+        this.rentalFee = rentalFee;
+        return this;
+    }
+
+    public PropertyBuilder lastPayment(LocalDate lastPaymentDate) {
+        this.lastPaymentDate = lastPaymentDate;
+        return this;
+    }
+
+    public PropertyBuilder owner(String ownerID) {
+        this.ownerID = ownerID;
+        return this;
+    }
+
+    public PropertyBuilder vacancy(String vacancyIndicator) {
+        this.vacancyIndicator = vacancyIndicator;
+        return this;
+    }
+
+    public PropertyBaseData build() {
+        return new PropertyBaseData(propertyId, propertyType, propertyAddress, cityCode, numberOfRooms,
+                numberOfBathrooms, garageCount, squareFootage, frontYardFootage, backyardFootage, numberOfTenants,
+                rentalFee, lastPaymentDate, ownerID, vacancyIndicator);
+    }
+}
@@ -8,6 +8,8 @@ import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+
 public class PropertyDAOIntegrationTest {
     private static final String JDBC_CONNECTION = "jdbc:mysql://localhost/slumlord";
     private static PropertyDAO dao;
@@ -28,5 +30,18 @@ public class PropertyDAOIntegrationTest {
         List<PropertyDAO.PropertyBaseData> result = dao.listAllVacantProperties();
     }
 
+    @Test
+    public void propertiesWithTenantsMatchesOneQueryPerProperty() throws SQLException {
+        Connection conn = DriverManager.getConnection(JDBC_CONNECTION, "root", "password");
+        TenantDAO tenantDAO = DAOFactory.create(TenantDAO.class, conn);
+        List<PropertyDAO.PropertyWithTenants> result = dao.listAllPropertiesWithTenantsByOwner("eagerbeaver");
+
+        assertEquals(dao.listAllPropertiesByOwner("eagerbeaver").size(), result.size());
+        for (PropertyDAO.PropertyWithTenants p : result) {
+            assertEquals(tenantDAO.listTenantsByProperty(p.getProperty().getPropertyId()).size(),
+                    p.getTenants().size());
+        }
+    }
+
 
 }
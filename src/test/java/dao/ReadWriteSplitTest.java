@@ -0,0 +1,246 @@
+package dao;
+
+import dao.SlumlordDAO.SlumData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReadWriteSplitTest {
+    private final Map<Connection, Long> lag = new HashMap<>();
+    private final List<String> writes = new ArrayList<>();
+    private Connection replicaA;
+    private Connection replicaB;
+    private ReplicaSet replicas;
+    private SlumlordDAO dao;
+
+    /**
+     * A DAO answering lookups with its own name, after an optional delay.
+     */
+    private SlumlordDAO fake(String name, long delayMs) {
+        return new SlumlordDAO() {
+            @Override
+            public SlumData lookupSlumData(String userName) {
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new SlumData(0, name, null, null, null);
+            }
+
+            @Override
+            public void registerNewSlumlord(SlumData newbie) {
+                writes.add(name + " " + newbie.getUserName());
+            }
+
+            @Override
+            public String lookupPasswordHash(String userName) {
+                return name;
+            }
+
+            @Override
+            public boolean setPasswordHash(String userName, String passwordHash) {
+                writes.add(name + " " + userName);
+                return true;
+            }
+        };
+    }
+
+    private static Connection connection() {
+        return (Connection) Proxy.newProxyInstance(ReadWriteSplitTest.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) ->
+                        method.getName().equals("hashCode") ? System.identityHashCode(proxy)
+                                : method.getName().equals("equals") ? proxy == args[0]
+                                : method.getName().equals("isClosed") ? false : null);
+    }
+
+    /**
+     * A connection whose queries return no rows after {@code delayMs}, or fail as soon as they are cancelled.
+     */
+    private static Connection querying(long delayMs, AtomicInteger cancelled) {
+        ClassLoader loader = ReadWriteSplitTest.class.getClassLoader();
+        ResultSet empty = (ResultSet) Proxy.newProxyInstance(loader, new Class<?>[]{ResultSet.class},
+                (rs, method, args) -> method.getName().equals("next") ? false : null);
+
+        return (Connection) Proxy.newProxyInstance(loader, new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    AtomicReference<CountDownLatch> running = new AtomicReference<>(new CountDownLatch(1));
+                    return Proxy.newProxyInstance(loader, new Class<?>[]{PreparedStatement.class}, (ps, m, a) -> {
+                        switch (m.getName()) {
+                            case "executeQuery":
+                                CountDownLatch cancel = new CountDownLatch(1);
+                                running.set(cancel);
+                                if (cancel.await(delayMs, TimeUnit.MILLISECONDS)) {
+                                    throw new SQLException("Query execution was interrupted");
+                                }
+                                return empty;
+                            case "cancel":
+                                cancelled.incrementAndGet();
+                                running.get().countDown();
+                                return null;
+                            default:
+                                return null;
+                        }
+                    });
+                case "isClosed":
+                    return false;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private void setUp(long delayA, long delayB) {
+        replicaA = connection();
+        replicaB = connection();
+        lag.put(replicaA, 0L);
+        lag.put(replicaB, 0L);
+
+        replicas = new ReplicaSet(connection(), Arrays.asList(replicaA, replicaB), 1000, conn -> {
+            Long millis = lag.get(conn);
+            if (millis == null) throw new SQLException("Replication is not running");
+            return millis;
+        });
+        dao = ReadWriteSplit.create(SlumlordDAO.class, fake("primary", 0),
+                Arrays.asList(fake("a", delayA), fake("b", delayB)), replicas);
+    }
+
+    private String read() throws SQLException {
+        return dao.lookupSlumData("x").getUserName();
+    }
+
+    @Before
+    public void setUp() {
+        setUp(0, 0);
+    }
+
+    @After
+    public void tearDown() {
+        replicas.close();
+    }
+
+    @Test
+    public void readsFromThePrimaryUntilReplicasAreProbed() throws SQLException {
+        assertEquals("primary", read());
+
+        replicas.probe();
+        String first = read(), second = read();
+        assertTrue(!first.equals("primary") && !second.equals("primary"));
+        assertTrue(!first.equals(second));
+        assertEquals(first, read());
+    }
+
+    @Test
+    public void writesGoToThePrimary() throws SQLException {
+        replicas.probe();
+        dao.registerNewSlumlord(new SlumData(0, "newbie", null, null, null));
+
+        assertEquals(Arrays.asList("primary newbie"), writes);
+    }
+
+    @Test
+    public void leavesOutLaggingReplicas() throws SQLException {
+        lag.put(replicaA, 5000L);
+        replicas.probe();
+        assertEquals(Arrays.asList("b", "b"), Arrays.asList(read(), read()));
+
+        lag.remove(replicaB);
+        replicas.probe();
+        assertEquals("primary", read());
+
+        lag.put(replicaA, 10L);
+        replicas.probe();
+        assertEquals("a", read());
+    }
+
+    @Test
+    public void sessionsReadTheirOwnWrites() throws SQLException {
+        replicas.probe();
+
+        ReplicaSet.Binding owner = replicas.bindSession("owner");
+        assertTrue(!read().equals("primary"));
+        dao.registerNewSlumlord(new SlumData(0, "newbie", null, null, null));
+        assertEquals("primary", read());
+        owner.close();
+
+        ReplicaSet.Binding someoneElse = replicas.bindSession("someone else");
+        assertTrue(!read().equals("primary"));
+        someoneElse.close();
+
+        assertTrue(!read().equals("primary"));
+    }
+
+    @Test
+    public void hedgesSlowReads() throws SQLException {
+        replicas.close();
+        setUp(2000, 0);
+        replicas.probe();
+
+        for (int i = 0; i < 4; i++) {
+            long start = System.currentTimeMillis();
+            assertEquals("b", read());
+            assertTrue(System.currentTimeMillis() - start < 1000);
+        }
+
+        assertTrue(replicas.metrics().matches("(?s).*replicas\\.reads\\.hedge_won [1-9].*"));
+    }
+
+    @Test
+    public void hedgedReadsCancelTheLosingStatement() throws SQLException {
+        AtomicInteger cancelled = new AtomicInteger();
+        replicas.close();
+        replicas = new ReplicaSet(new ConnectionPool(2, 1000, () -> querying(0, new AtomicInteger())),
+                Arrays.asList(new ConnectionPool(2, 1000, () -> querying(5000, cancelled)),
+                        new ConnectionPool(2, 1000, () -> querying(0, new AtomicInteger()))),
+                1000, conn -> 0L);
+        replicas.probe();
+        SlumlordDAO pooled = DAOFactory.createReplicated(SlumlordDAO.class, replicas);
+
+        for (int i = 0; i < 4; i++) {
+            long start = System.currentTimeMillis();
+            assertNull(pooled.lookupSlumData("x"));
+            assertTrue(System.currentTimeMillis() - start < 1000);
+        }
+
+        assertTrue(cancelled.get() > 0);
+    }
+
+    @Test
+    public void readsOnSharedConnectionsAreNotHedged() throws SQLException {
+        AtomicInteger cancelled = new AtomicInteger();
+        replicas.probe();
+        SlumlordDAO shared = ReadWriteSplit.create(SlumlordDAO.class,
+                DAOFactory.create(SlumlordDAO.class, querying(0, cancelled)),
+                Arrays.asList(DAOFactory.create(SlumlordDAO.class, querying(100, cancelled)),
+                        DAOFactory.create(SlumlordDAO.class, querying(0, cancelled))), replicas);
+
+        for (int i = 0; i < 4; i++) assertNull(shared.lookupSlumData("x"));
+
+        assertTrue(replicas.metrics().contains("replicas.reads.hedged 0\n"));
+        assertEquals(0, cancelled.get());
+    }
+}
@@ -0,0 +1,208 @@
+package dao;
+
+import dao.PropertyDAO.PropertyBaseData;
+import dao.SlumlordDAO.SlumData;
+import org.junit.Test;
+import util.ColumnMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class RowMapperTest {
+    private static final List<String> PROPERTY_LABELS = Arrays.asList(PropertyBaseDataMapper.COLUMNS.split(", "));
+
+    @Test
+    public void selectListFollowsTheSchemaNames() {
+        assertEquals("property_ID", PROPERTY_LABELS.get(0));
+        assertEquals(15, PROPERTY_LABELS.size());
+        assertEquals("slumlord_user_name, slumlord_first_name, slumlord_last_name, slumlord_dob",
+                SlumDataMapper.COLUMNS);
+    }
+
+    @Test
+    public void columnsAreFoundByLabelWhateverTheirOrder() throws SQLException {
+        List<String> labels = new ArrayList<>(PROPERTY_LABELS);
+        Collections.reverse(labels);
+        labels.add(3, "property_change_seq");
+
+        ResultSet rs = resultSet(labels, propertyRow(labels, 7, "12 Elm St"), new AtomicInteger());
+        PropertyBaseData property = new ColumnMapper<>(PropertyBaseDataMapper.INSTANCE).mapResult(rs);
+
+        assertEquals(7, property.getPropertyId());
+        assertEquals("12 Elm St", property.getPropertyAddress());
+        assertEquals(3, property.getNumberOfRooms());
+        assertEquals(2, property.getNumberOfBathrooms());
+        assertEquals(new BigDecimal("950.00"), property.getRentalFee());
+        assertEquals(LocalDate.of(2019, 11, 1), property.getLastPaymentDate());
+        assertEquals("bob", property.getOwnerID());
+    }
+
+    @Test
+    public void columnsAreResolvedOncePerMapper() throws SQLException {
+        AtomicInteger metaDataCalls = new AtomicInteger();
+        ColumnMapper<PropertyBaseData> mapper = new ColumnMapper<>(PropertyBaseDataMapper.INSTANCE);
+
+        for (int id = 1; id <= 3; id++) {
+            ResultSet rs = resultSet(PROPERTY_LABELS, propertyRow(PROPERTY_LABELS, id, id + " Elm St"), metaDataCalls);
+            assertEquals(id, mapper.mapResult(rs).getPropertyId());
+        }
+
+        assertEquals(1, metaDataCalls.get());
+    }
+
+    @Test
+    public void lowCardinalityColumnsShareTheirStrings() throws SQLException {
+        ColumnMapper<PropertyBaseData> mapper = new ColumnMapper<>(PropertyBaseDataMapper.INSTANCE);
+
+        PropertyBaseData first = mapper.mapResult(
+                resultSet(PROPERTY_LABELS, propertyRow(PROPERTY_LABELS, 1, "1 Elm St"), new AtomicInteger()));
+        PropertyBaseData second = mapper.mapResult(
+                resultSet(PROPERTY_LABELS, propertyRow(PROPERTY_LABELS, 2, "2 Elm St"), new AtomicInteger()));
+
+        assertEquals("bob", second.getOwnerID());
+        assertSame(first.getOwnerID(), second.getOwnerID());
+    }
+
+    @Test
+    public void columnsAreDecodedOnce() throws SQLException {
+        PropertyBaseData property = new ColumnMapper<>(PropertyBaseDataMapper.INSTANCE).mapResult(
+                resultSet(PROPERTY_LABELS, propertyRow(PROPERTY_LABELS, 4, "4 Elm St"), new AtomicInteger()));
+
+        BigDecimal rentalFee = property.getRentalFee();
+        assertSame(rentalFee, property.getRentalFee());
+        assertSame(property.getLastPaymentDate(), property.getLastPaymentDate());
+
+        // a NULL column has no bytes left to decode either
+        assertNull(property.getSquareFootage());
+        assertNull(property.getSquareFootage());
+    }
+
+    @Test
+    public void serializedPropertyCarriesItsDecodedColumns() throws Exception {
+        PropertyBaseData property = new ColumnMapper<>(PropertyBaseDataMapper.INSTANCE).mapResult(
+                resultSet(PROPERTY_LABELS, propertyRow(PROPERTY_LABELS, 5, "5 Elm St"), new AtomicInteger()));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(property);
+        }
+
+        PropertyBaseData copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (PropertyBaseData) in.readObject();
+        }
+
+        assertEquals(5, copy.getPropertyId());
+        assertEquals(new BigDecimal("950.00"), copy.getRentalFee());
+        assertEquals(LocalDate.of(2019, 11, 1), copy.getLastPaymentDate());
+        assertNull(copy.getSquareFootage());
+        assertEquals(new BigDecimal("975.00"), copy.withRentalFee(new BigDecimal("975.00")).getRentalFee());
+    }
+
+    @Test
+    public void missingColumnIsAnError() {
+        List<String> labels = new ArrayList<>(PROPERTY_LABELS);
+        labels.remove("property_rental_fee");
+
+        try {
+            new ColumnMapper<>(PropertyBaseDataMapper.INSTANCE)
+                    .mapResult(resultSet(labels, propertyRow(labels, 1, "1 Elm St"), new AtomicInteger()));
+            fail("expected the missing column to be reported");
+        } catch (SQLException e) {
+            assertEquals("Column property_rental_fee of property is missing from the result", e.getMessage());
+        }
+    }
+
+    @Test
+    public void missingOptionalColumnGetsItsDefault() throws SQLException {
+        List<String> labels = Arrays.asList("slumlord_user_name", "slumlord_first_name", "slumlord_last_name",
+                "slumlord_dob");
+        Object[] row = {"bob", "Bob", "Loblaw", null};
+
+        SlumData slumlord = new ColumnMapper<>(SlumDataMapper.INSTANCE)
+                .mapResult(resultSet(labels, row, new AtomicInteger()));
+
+        assertEquals(0, slumlord.getPid());
+        assertEquals("bob", slumlord.getUserName());
+        assertEquals("Loblaw", slumlord.getLastName());
+        assertNull(slumlord.getDob());
+    }
+
+    private static Object[] propertyRow(List<String> labels, int id, String address) {
+        Object[] row = new Object[labels.size()];
+
+        for (int i = 0; i < row.length; i++) {
+            switch (labels.get(i)) {
+                case "property_ID": row[i] = id; break;
+                case "property_address": row[i] = address; break;
+                case "property_numRooms": row[i] = 3; break;
+                case "property_numBrooms": row[i] = 2; break;
+                case "property_rental_fee": row[i] = new BigDecimal("950.00"); break;
+                case "property_last_payment_date": row[i] = Date.valueOf("2019-11-01"); break;
+                // a new String per row, as the driver would make
+                case "property_owner_id": row[i] = new String("bob"); break;
+                default: row[i] = null;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * A single row result set, counting how often its metadata is asked for
+     */
+    private static ResultSet resultSet(List<String> labels, Object[] row, AtomicInteger metaDataCalls) {
+        ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(
+                RowMapperTest.class.getClassLoader(), new Class<?>[]{ResultSetMetaData.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount": return labels.size();
+                        case "getColumnLabel": return labels.get((Integer) args[0] - 1);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        Object[] last = new Object[1];
+
+        return (ResultSet) Proxy.newProxyInstance(RowMapperTest.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getMetaData")) {
+                        metaDataCalls.incrementAndGet();
+                        return metaData;
+                    }
+                    if (method.getName().equals("wasNull")) return last[0] == null;
+                    if (args == null || !(args[0] instanceof Integer)) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+
+                    Object value = row[(Integer) args[0] - 1];
+                    last[0] = value;
+                    switch (method.getName()) {
+                        case "getInt": return value == null ? 0 : value;
+                        case "getBytes": return value == null ? null : value.toString().getBytes(UTF_8);
+                        case "getString":
+                        case "getBigDecimal":
+                        case "getDate": return value;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,151 @@
+package dao;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardRouterTest {
+    private List<List<String>> executed;
+    private List<Map<Integer, String>> cities;
+    private ShardRouter router;
+
+    /**
+     * A connection logging the statements executed, and answering the city queries from a map of
+     * property ids to city codes.
+     */
+    static Connection connection(List<String> log, Map<Integer, String> cities) {
+        ClassLoader loader = ShardRouterTest.class.getClassLoader();
+        Statement stmt = (Statement) Proxy.newProxyInstance(loader,
+                new Class<?>[]{Statement.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("execute")) log.add((String) args[0]);
+                    return method.getReturnType() == boolean.class ? false : null;
+                });
+
+        return (Connection) Proxy.newProxyInstance(loader, new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            if (method.getName().equals("createStatement")) return stmt;
+            if (!method.getName().equals("prepareStatement")) return null;
+
+            log.add((String) args[0]);
+            int[] id = new int[1];
+            return Proxy.newProxyInstance(loader, new Class<?>[]{PreparedStatement.class}, (ps, call, callArgs) -> {
+                if (call.getName().equals("setInt")) id[0] = (Integer) callArgs[1];
+                if (!call.getName().equals("executeQuery")) return null;
+
+                boolean[] found = {cities.containsKey(id[0])};
+                return Proxy.newProxyInstance(loader, new Class<?>[]{ResultSet.class}, (rs, get, getArgs) -> {
+                    switch (get.getName()) {
+                        case "next":
+                            boolean next = found[0];
+                            found[0] = false;
+                            return next;
+                        case "getString":
+                            return cities.get(id[0]);
+                        default:
+                            return null;
+                    }
+                });
+            });
+        });
+    }
+
+    @Before
+    public void setUp() {
+        executed = new ArrayList<>();
+        cities = new ArrayList<>();
+        List<Connection> connections = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            List<String> log = new ArrayList<>();
+            Map<Integer, String> shardCities = new HashMap<>();
+            executed.add(log);
+            cities.add(shardCities);
+            connections.add(connection(log, shardCities));
+        }
+
+        router = new ShardRouter(connections, Collections.singletonMap("802", 2));
+    }
+
+    @After
+    public void tearDown() {
+        router.close();
+    }
+
+    @Test
+    public void stepsAutoIncrementIdsPerShard() {
+        for (int shard = 0; shard < 3; shard++) {
+            assertEquals(Collections.singletonList("set session auto_increment_increment = 3, "
+                    + "auto_increment_offset = " + (shard + 1)), executed.get(shard));
+        }
+    }
+
+    @Test
+    public void findsPropertiesByTheirStoredCity() throws SQLException {
+        // an id of its own, which the auto increment steps would have put on shard 1
+        cities.get(2).put(5, "802");
+        int queries = executed.get(0).size();
+
+        assertEquals(2, router.shardForProperty(5));
+        assertEquals(2, router.shardForProperty(5));
+        assertEquals("the shard is remembered", queries + 1, executed.get(0).size());
+
+        assertEquals(-1, router.shardForProperty(6));
+        cities.get(router.shardForCity(null)).put(6, null);
+        assertEquals(router.shardForCity(null), router.shardForProperty(6));
+    }
+
+    @Test
+    public void placesCitiesByHashUnlessPinned() {
+        assertEquals(2, router.shardForCity("802"));
+
+        for (String city : Arrays.asList("100", "303", "719", null)) {
+            int shard = router.shardForCity(city);
+            assertTrue(shard >= 0 && shard < 3);
+            assertEquals(shard, router.shardForCity(city));
+        }
+    }
+
+    @Test
+    public void scattersToEveryShardInOrder() throws SQLException {
+        assertEquals(Arrays.asList(0, 10, 20), router.scatter("test", i -> () -> i * 10));
+    }
+
+    @Test
+    public void scatterRethrowsTheFirstFailure() {
+        try {
+            router.scatter("test", i -> () -> {
+                if (i > 0) throw new SQLException("shard " + i);
+                return i;
+            });
+            fail();
+        } catch (SQLException e) {
+            assertEquals("shard 1", e.getMessage());
+        }
+    }
+
+    @Test
+    public void splitsItemsByShardKeepingTheirOrder() {
+        List<List<Integer>> byShard = ShardedPropertyDAO.split(Arrays.asList(1, 2, 3, 4, 5, 7),
+                id -> (id - 1) % 3, router.size());
+
+        assertEquals(Arrays.asList(1, 4, 7), byShard.get(0));
+        assertEquals(Arrays.asList(2, 5), byShard.get(1));
+        assertEquals(Collections.singletonList(3), byShard.get(2));
+    }
+}
@@ -0,0 +1,154 @@
+package dao;
+
+import dao.PropertyDAO.PropertyBaseData;
+import dao.SlumlordDAO.SlumData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardedDAOTest {
+    private List<InMemoryStore> stores;
+    private List<Map<Integer, String>> cities;
+    private ShardRouter router;
+    private PropertyDAO properties;
+    private SlumlordDAO slumlords;
+
+    private static PropertyBaseData property(String address, String city) {
+        return PropertyBuilder.property().type("A").address(address).city(city).fee("1000.00").owner("eugene").build();
+    }
+
+    private static List<Integer> ids(List<PropertyBaseData> properties) {
+        return properties.stream().map(PropertyBaseData::getPropertyId).sorted().collect(Collectors.toList());
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        stores = new ArrayList<>();
+        cities = new ArrayList<>();
+        List<Connection> connections = new ArrayList<>();
+        List<PropertyDAO> propertyShards = new ArrayList<>();
+        List<SlumlordDAO> slumlordShards = new ArrayList<>();
+
+        for (int i = 0; i < 2; i++) {
+            InMemoryStore store = new InMemoryStore();
+            Map<Integer, String> shardCities = new HashMap<>();
+            stores.add(store);
+            cities.add(shardCities);
+            connections.add(ShardRouterTest.connection(new ArrayList<>(), shardCities));
+            propertyShards.add(new PropertyInMemoryDAO(store));
+            slumlordShards.add(new SlumlordInMemoryDAO(store));
+        }
+
+        Map<String, Integer> pinned = new HashMap<>();
+        pinned.put("ABQ", 0);
+        pinned.put("SF", 1);
+        router = new ShardRouter(connections, pinned);
+        properties = new ShardedPropertyDAO(router, propertyShards);
+        slumlords = new ShardedSlumlordDAO(router, slumlordShards);
+
+        slumlords.registerNewSlumlord(new SlumData(0, "eugene", "Eugene", "Powell", LocalDate.of(1987, 4, 16)));
+        // the second shard's ids start further on, as its auto increment offset would have it
+        stores.get(1).putProperty(property("100 Market St.", "SF").withPropertyId(100));
+        properties.insertProperties(Arrays.asList(property("1 Main St.", "ABQ"), property("2 Main St.", "ABQ"),
+                property("3 Main St.", "ABQ"), property("101 Market St.", "SF"), property("102 Market St.", "SF")));
+
+        for (int i = 0; i < stores.size(); i++) {
+            for (PropertyBaseData p : new PropertyInMemoryDAO(stores.get(i)).listAllPropertiesByOwner("eugene")) {
+                cities.get(i).put(p.getPropertyId(), p.getCityCode());
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        router.close();
+    }
+
+    @Test
+    public void everyShardKnowsEverySlumlord() throws SQLException {
+        for (InMemoryStore store : stores) {
+            assertNotNull(new SlumlordInMemoryDAO(store).lookupSlumData("eugene"));
+        }
+
+        try {
+            slumlords.registerNewSlumlord(new SlumData(0, "eugene", null, null, null));
+            fail("expected the user name to be taken");
+        } catch (SQLIntegrityConstraintViolationException expected) {
+            assertEquals("Eugene", slumlords.lookupSlumData("eugene").getFirstName());
+        }
+
+        assertTrue(slumlords.setPasswordHash("eugene", "hash"));
+        assertEquals("hash", new SlumlordInMemoryDAO(stores.get(1)).lookupPasswordHash("eugene"));
+    }
+
+    @Test
+    public void findsPropertiesByTheShardOfTheirCity() throws SQLException {
+        assertEquals("eugene", properties.lookupPropertyOwner(101));
+        assertEquals("eugene", properties.lookupPropertyOwner(2));
+        assertNull(properties.lookupPropertyOwner(7));
+
+        properties.updateRentalFee(new BigDecimal("1.00"), 101, "eugene");
+        assertEquals(new BigDecimal("1.00"), new PropertyInMemoryDAO(stores.get(1))
+                .listAllPropertiesByOwner("eugene").get(1).getRentalFee());
+    }
+
+    @Test
+    public void mergesTheShardsFeeds() throws SQLException {
+        ChangeFeed<PropertyBaseData> page = properties.propertyChangesSince(null, 0, 4);
+        assertEquals(Arrays.asList(1, 2, 100, 101), ids(page.getUpserts()));
+        assertTrue(page.hasMore());
+
+        page = properties.propertyChangesSince(null, page.getHighWaterMark(), 4);
+        assertEquals(Arrays.asList(3, 102), ids(page.getUpserts()));
+        assertFalse(page.hasMore());
+
+        long seen = page.getHighWaterMark();
+        assertTrue(properties.propertyChangesSince(null, seen, 4).isEmpty());
+        assertEquals("nothing new keeps the cursor", seen, properties.propertyChangesSince(null, seen, 4)
+                .getHighWaterMark());
+
+        properties.updateRentalFee(new BigDecimal("1.00"), 101, "eugene");
+        stores.get(0).removeProperty(3);
+        page = properties.propertyChangesSince("eugene", seen, 4);
+        assertEquals(Collections.singletonList(101), ids(page.getUpserts()));
+        assertEquals(3, page.getDeletedIds()[0]);
+        assertTrue(page.getHighWaterMark() > seen);
+
+        try {
+            properties.propertyChangesSince(null, page.getHighWaterMark() + 1, 4);
+            fail("expected the cursor not to be known");
+        } catch (UnknownCursorException expected) {
+            // start again from 0
+        }
+    }
+
+    @Test
+    public void forgottenCursorReadsTheFeedAgain() throws SQLException {
+        long forgotten = properties.propertyChangesSince(null, 0, 100).getHighWaterMark() + 1;
+
+        ChangeFeed<PropertyBaseData> page = ChangeFeed.read(
+                seq -> properties.propertyChangesSince(null, seq, 100), forgotten);
+        assertEquals(Arrays.asList(1, 2, 3, 100, 101, 102), ids(page.getUpserts()));
+        assertFalse(page.hasMore());
+    }
+}
@@ -0,0 +1,243 @@
+package dao;
+
+import dao.PropertyDAO.PropertyBaseData;
+import dao.PropertyDAO.RentalFeeUpdate;
+import dao.SlumlordDAO.SlumData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WriteBehindPropertyDAOTest {
+    private static final long NEVER = 3_600_000;
+
+    private InMemoryStore store;
+    private PropertyDAO database;
+    private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+    private final Set<Integer> rejectedIds = ConcurrentHashMap.newKeySet();
+    private volatile boolean connectionDown;
+    private WriteBehindPropertyDAO dao;
+
+    private static PropertyBaseData property(String address, String owner) {
+        return PropertyBuilder.property().type("A").address(address).fee("1000.00").owner(owner).vacancy("O").build();
+    }
+
+    @Before
+    public void setUp() throws SQLException {
+        store = new InMemoryStore();
+        new SlumlordInMemoryDAO(store).registerNewSlumlord(new SlumData(0, "eugene", "Eugene", "Powell", null));
+        new SlumlordInMemoryDAO(store).registerNewSlumlord(new SlumData(0, "lar", "Larissa", "Wallis", null));
+
+        PropertyDAO memory = new PropertyInMemoryDAO(store);
+        memory.insertProperties(Arrays.asList(property("1 Main St.", "eugene"), property("2 Main St.", "eugene"),
+                property("3 Main St.", "lar")));
+
+        // the database, failing the way MySQL does when told to
+        database = new ForwardingPropertyDAO(memory) {
+            @Override
+            public int updateRentalFees(List<RentalFeeUpdate> updates) throws SQLException {
+                batchSizes.add(updates.size());
+                if (connectionDown) throw new SQLNonTransientConnectionException("Communications link failure", "08S01");
+
+                for (RentalFeeUpdate update : updates) {
+                    if (rejectedIds.contains(update.getPropertyId())) {
+                        throw new SQLException("Out of range value for column 'property_rental_fee'", "22003");
+                    }
+                }
+                return super.updateRentalFees(updates);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        if (dao != null) dao.close();
+    }
+
+    private BigDecimal storedFee(int propertyId) {
+        return store.property(propertyId).getRentalFee();
+    }
+
+    private static BigDecimal fee(String value) {
+        return new BigDecimal(value);
+    }
+
+    @Test
+    public void buffersAndCoalescesUpdatesUntilFlushed() throws SQLException {
+        dao = new WriteBehindPropertyDAO(database, 10, NEVER);
+
+        dao.updateRentalFee(fee("1100.00"), 1, "eugene");
+        dao.updateRentalFee(fee("1200.00"), 1, "eugene");
+        dao.updateRentalFee(fee("1300.00"), 2, "eugene");
+
+        assertEquals(2, dao.pendingCount());
+        assertTrue(batchSizes.isEmpty());
+        assertEquals(fee("1000.00"), storedFee(1));
+
+        assertEquals(2, dao.flush());
+        assertEquals(Collections.singletonList(2), batchSizes);
+        assertEquals(fee("1200.00"), storedFee(1));
+        assertEquals(fee("1300.00"), storedFee(2));
+        assertEquals(0, dao.pendingCount());
+        assertEquals(0, dao.flush());
+    }
+
+    @Test
+    public void readsSeeBufferedFeesOfTheOwnersOwnProperties() throws SQLException {
+        dao = new WriteBehindPropertyDAO(database, 10, NEVER);
+
+        dao.updateRentalFee(fee("1100.00"), 1, "eugene");
+        // not lar's property, so the database would not update it either
+        dao.updateRentalFee(fee("5.00"), 2, "lar");
+
+        List<PropertyBaseData> properties = dao.listAllPropertiesByOwner("eugene");
+        assertEquals(fee("1100.00"), properties.get(0).getRentalFee());
+        assertEquals(fee("1000.00"), properties.get(1).getRentalFee());
+
+        List<BigDecimal> streamed = new ArrayList<>();
+        dao.streamAllPropertiesByOwner("eugene", p -> streamed.add(p.getRentalFee()));
+        assertEquals(Arrays.asList(fee("1100.00"), fee("1000.00")), streamed);
+        assertEquals(fee("1000.00"), storedFee(1));
+    }
+
+    @Test
+    public void flushesOnceTheBufferIsFull() throws Exception {
+        dao = new WriteBehindPropertyDAO(database, 2, NEVER);
+
+        dao.updateRentalFee(fee("1100.00"), 1, "eugene");
+        assertEquals(1, dao.pendingCount());
+        dao.updateRentalFee(fee("1200.00"), 2, "eugene");
+
+        awaitFlushed();
+        assertEquals(Collections.singletonList(2), batchSizes);
+        assertEquals(fee("1200.00"), storedFee(2));
+    }
+
+    @Test
+    public void flushesEveryInterval() throws Exception {
+        dao = new WriteBehindPropertyDAO(database, 10, 20);
+
+        dao.updateRentalFee(fee("1100.00"), 1, "eugene");
+
+        awaitFlushed();
+        assertEquals(fee("1100.00"), storedFee(1));
+    }
+
+    @Test
+    public void keepsEverythingWhileTheConnectionIsDown() throws SQLException {
+        dao = new WriteBehindPropertyDAO(database, 10, NEVER);
+        dao.updateRentalFee(fee("1100.00"), 1, "eugene");
+        connectionDown = true;
+
+        try {
+            dao.flush();
+            fail("expected the connection failure to be reported");
+        } catch (SQLException e) {
+            assertEquals("08S01", e.getSQLState());
+        }
+
+        // a newer fee taken while the flush failed wins over the requeued one
+        dao.updateRentalFee(fee("1200.00"), 1, "eugene");
+        assertEquals(1, dao.pendingCount());
+        assertTrue(dao.metrics().contains("write_behind.failed_flushes 1\n"));
+
+        connectionDown = false;
+        assertEquals(1, dao.flush());
+        assertEquals(fee("1200.00"), storedFee(1));
+        assertEquals(0, dao.droppedUpdates());
+    }
+
+    @Test
+    public void retriesRejectedUpdatesThenDropsThem() throws SQLException {
+        List<RentalFeeUpdate> dropped = new ArrayList<>();
+        dao = new WriteBehindPropertyDAO(database, 10, NEVER, dropped::add);
+        rejectedIds.add(1);
+
+        dao.updateRentalFee(fee("1100.00"), 1, "eugene");
+        dao.updateRentalFee(fee("1200.00"), 2, "eugene");
+
+        // the batch fails, then each update is tried on its own
+        assertEquals(1, dao.flush());
+        assertEquals(Arrays.asList(2, 1, 1), batchSizes);
+        assertEquals(fee("1200.00"), storedFee(2));
+        assertEquals(1, dao.pendingCount());
+
+        for (int attempt = 2; attempt <= WriteBehindPropertyDAO.MAX_ATTEMPTS; attempt++) {
+            assertTrue(dropped.isEmpty());
+            assertEquals(0, dao.flush());
+        }
+        assertEquals(1, dropped.size());
+        assertEquals(fee("1100.00"), dropped.get(0).getRentalFee());
+
+        assertEquals(0, dao.pendingCount());
+        assertEquals(1, dao.droppedUpdates());
+        assertTrue(dao.metrics().contains("write_behind.retried_updates " + (WriteBehindPropertyDAO.MAX_ATTEMPTS - 1)));
+        assertEquals(fee("1000.00"), storedFee(1));
+    }
+
+    @Test
+    public void newFeeStartsItsAttemptsOver() throws SQLException {
+        dao = new WriteBehindPropertyDAO(database, 10, NEVER);
+        rejectedIds.add(1);
+
+        dao.updateRentalFee(fee("1100.00"), 1, "eugene");
+        for (int attempt = 1; attempt < WriteBehindPropertyDAO.MAX_ATTEMPTS; attempt++) dao.flush();
+
+        rejectedIds.clear();
+        dao.updateRentalFee(fee("1150.00"), 1, "eugene");
+        assertEquals(1, dao.flush());
+        assertEquals(fee("1150.00"), storedFee(1));
+        assertEquals(0, dao.droppedUpdates());
+    }
+
+    @Test
+    public void closeFlushesAndRefusesFurtherUpdates() {
+        dao = new WriteBehindPropertyDAO(database, 10, NEVER);
+        dao.updateRentalFee(fee("1100.00"), 1, "eugene");
+
+        dao.close();
+        assertEquals(fee("1100.00"), storedFee(1));
+
+        try {
+            dao.updateRentalFee(fee("1200.00"), 1, "eugene");
+            fail("expected a closed buffer to refuse updates");
+        } catch (IllegalStateException expected) {
+            // closed
+        }
+    }
+
+    @Test
+    public void updatesLostOnCloseAreReported() {
+        List<RentalFeeUpdate> dropped = new ArrayList<>();
+        dao = new WriteBehindPropertyDAO(database, 10, NEVER, dropped::add);
+        dao.updateRentalFee(fee("1100.00"), 1, "eugene");
+
+        connectionDown = true;
+        dao.close();
+        assertEquals(1, dropped.size());
+        assertEquals(1, dao.droppedUpdates());
+        assertEquals(0, dao.pendingCount());
+    }
+
+    private void awaitFlushed() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (dao.pendingCount() > 0 || batchSizes.isEmpty()) {
+            if (System.currentTimeMillis() > deadline) fail("the buffer was not flushed");
+            Thread.sleep(5);
+        }
+    }
+}
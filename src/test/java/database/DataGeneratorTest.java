@@ -0,0 +1,74 @@
+package database;
+
+import dao.PropertyDAO.PropertyBaseData;
+import dao.TenantDAO.TenantData;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataGeneratorTest {
+    @Test
+    public void rowsFitTheSchema() {
+        DataGenerator generator = new DataGenerator(1);
+        DataGenerator.Zipf owners = new DataGenerator.Zipf(100, 1.1);
+
+        for (int id = 1; id <= 5000; id++) {
+            DataGenerator.GeneratedProperty generated = generator.property(id, owners, 2.5);
+            PropertyBaseData p = generated.property;
+
+            assertTrue(p.getPropertyAddress().length() <= 40);
+            assertEquals(3, p.getCityCode().length());
+            assertTrue(p.getRentalFee().compareTo(new BigDecimal("9999.99")) <= 0);
+            assertTrue(p.getRentalFee().signum() > 0);
+            assertTrue(p.getOwnerID().length() <= 30);
+            assertEquals(p.getNumberOfTenants(), generated.tenants.size());
+            if (p.getVacancyIndicator().equals("V")) assertEquals(0, generated.tenants.size());
+
+            for (TenantData t : generated.tenants) {
+                assertEquals(id, t.getPropertyId());
+                assertEquals(p.getPropertyAddress(), t.getAddress());
+                assertTrue(t.getPhoneNumber().matches("\\d{10}"));
+                assertTrue(t.getZipCode().matches("\\d{5}"));
+                assertTrue(t.getCity().length() <= 20);
+            }
+        }
+    }
+
+    @Test
+    public void addressesAreUnique() {
+        Set<String> addresses = new HashSet<>();
+        for (int id = 1; id <= 100_000; id++) assertTrue(addresses.add(DataGenerator.address(id)));
+    }
+
+    @Test
+    public void sameSeedSameData() {
+        DataGenerator.Zipf owners = new DataGenerator.Zipf(100, 1.1);
+        PropertyBaseData a = new DataGenerator(7).property(1, owners, 2).property;
+        PropertyBaseData b = new DataGenerator(7).property(1, owners, 2).property;
+
+        assertEquals(a.getPropertyAddress(), b.getPropertyAddress());
+        assertEquals(a.getCityCode(), b.getCityCode());
+        assertEquals(a.getRentalFee(), b.getRentalFee());
+        assertEquals(a.getOwnerID(), b.getOwnerID());
+    }
+
+    @Test
+    public void fewOwnersHaveMostProperties() {
+        DataGenerator.Zipf zipf = new DataGenerator.Zipf(1000, 1.1);
+        Random random = new Random(3);
+        int top = 0;
+
+        for (int i = 0; i < 100_000; i++) {
+            if (zipf.next(random) < 10) top++;
+        }
+
+        // the top 1% of owners have a third or more of the properties
+        assertTrue(top > 30_000);
+    }
+}
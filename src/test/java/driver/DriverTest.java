@@ -0,0 +1,96 @@
+package driver;
+
+import dao.InMemoryStore;
+import dao.PaymentDAO;
+import dao.PaymentInMemoryDAO;
+import dao.PropertyBuilder;
+import dao.PropertyDAO.RentalFeeUpdate;
+import dao.PropertyInMemoryDAO;
+import dao.SlumlordDAO.SlumData;
+import dao.SlumlordInMemoryDAO;
+import driver.NoticeScheduler.Notice;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DriverTest {
+    private static final LocalDate TODAY = LocalDate.of(2019, 11, 1);
+    private static final BigDecimal RENT = new BigDecimal("1200.00");
+
+    private Driver driver;
+
+    @Before
+    public void setUp() throws SQLException {
+        InMemoryStore store = new InMemoryStore();
+        new SlumlordInMemoryDAO(store).registerNewSlumlord(new SlumData(0, "owner", "Eugene", "Powell", null));
+
+        driver = new Driver();
+        driver.DAO = new PropertyInMemoryDAO(store);
+        driver.PDAO = new PaymentInMemoryDAO(store);
+        driver.DAO.insertNewProperty(PropertyBuilder.property().tenants(1).fee(RENT).lastPayment(TODAY.minusDays(40))
+                .vacancy("O").build());
+        driver.notices.rebuild(driver.DAO, TODAY);
+    }
+
+    @Test
+    public void paymentOutlastsTheNextRefresh() throws SQLException {
+        assertEquals(1, driver.notices.reachedAtLeast("owner", Notice.FIRST_LATE).size());
+
+        driver.paymentReceived(1, RENT, TODAY);
+        assertTrue(driver.notices.reachedAtLeast("owner", Notice.FIRST_LATE).isEmpty());
+
+        // the property comes back through the change feed with the date of the payment
+        driver.notices.refresh(driver.DAO);
+        assertTrue(driver.notices.reachedAtLeast("owner", Notice.FIRST_LATE).isEmpty());
+        assertEquals(TODAY, driver.DAO.listAllPropertiesByOwner("owner").get(0).getLastPaymentDate());
+        assertEquals(1, driver.PDAO.listPaymentsByProperty(1, TODAY, TODAY).size());
+    }
+
+    @Test
+    public void feeChangesOnlyForTheOwner() throws SQLException {
+        assertFalse(driver.changeRentalFee("someone else", 1, new BigDecimal("1.00")));
+        assertEquals(RENT, driver.notices.reachedAtLeast("owner", Notice.FIRST_LATE).get(0).getRentalFee());
+        assertEquals(RENT, driver.DAO.listAllPropertiesByOwner("owner").get(0).getRentalFee());
+
+        BigDecimal raised = new BigDecimal("1300.00");
+        assertTrue(driver.changeRentalFee("owner", 1, raised));
+        assertEquals(raised, driver.notices.reachedAtLeast("owner", Notice.FIRST_LATE).get(0).getRentalFee());
+        assertEquals(raised, driver.DAO.listAllPropertiesByOwner("owner").get(0).getRentalFee());
+    }
+
+    @Test
+    public void droppedFeeChangeRestoresTheStoredFee() {
+        BigDecimal raised = new BigDecimal("1300.00");
+        // the change was buffered but never written
+        driver.notices.onFeeChange(1, raised);
+
+        driver.feeDropped(new RentalFeeUpdate(1, "owner", raised));
+        assertEquals(RENT, driver.notices.reachedAtLeast("owner", Notice.FIRST_LATE).get(0).getRentalFee());
+    }
+
+    @Test
+    public void paymentNotRecordedLeavesTheNotices() {
+        driver.PDAO = (PaymentDAO) Proxy.newProxyInstance(PaymentDAO.class.getClassLoader(),
+                new Class<?>[]{PaymentDAO.class}, (proxy, method, args) -> {
+                    throw new SQLException("Lock wait timeout exceeded", "40001");
+                });
+
+        try {
+            driver.paymentReceived(1, RENT, TODAY);
+            fail("expected the failed payment to be reported");
+        } catch (SQLException e) {
+            assertEquals("40001", e.getSQLState());
+        }
+
+        assertEquals(1, driver.notices.reachedAtLeast("owner", Notice.FIRST_LATE).size());
+    }
+}
@@ -0,0 +1,54 @@
+package driver;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void countsShortLatenciesExactly() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 50; i++) h.record(i);
+
+        assertEquals(50, h.count());
+        assertEquals(25, h.percentile(50));
+        assertEquals(50, h.percentile(100));
+        assertEquals(25.5, h.mean(), 1e-9);
+    }
+
+    @Test
+    public void percentilesAreWithinThreePercent() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1_000_000; i++) h.record(i);
+
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            double expected = p / 100 * 1_000_000;
+            long actual = h.percentile(p);
+            assertTrue(p + ": " + actual, actual >= expected && actual <= expected * 1.032);
+        }
+        assertEquals(1_000_000, h.max());
+    }
+
+    @Test
+    public void bucketsCoverEveryValue() {
+        for (long v : new long[]{0, 63, 64, 65, 127, 128, 1_000_003, Long.MAX_VALUE}) {
+            assertTrue(LatencyHistogram.highestIn(LatencyHistogram.index(v)) >= v);
+        }
+        assertTrue(LatencyHistogram.index(Long.MAX_VALUE) > LatencyHistogram.index(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    public void addsUp() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(5000);
+        b.record(5000);
+
+        a.add(b);
+        assertEquals(3, a.count());
+        assertEquals(5000, a.max());
+        assertTrue(a.percentile(50) >= 5000);
+    }
+}
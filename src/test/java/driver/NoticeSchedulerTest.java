@@ -0,0 +1,98 @@
+package driver;
+
+import dao.ChangeFeed;
+import dao.PropertyBuilder;
+import dao.PropertyDAO;
+import dao.PropertyDAO.PropertyBaseData;
+import driver.NoticeScheduler.Notice;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NoticeSchedulerTest {
+    private static final LocalDate TODAY = LocalDate.of(2019, 11, 1);
+
+    private final List<String> fired = new ArrayList<>();
+    private final List<PropertyBaseData> changes = new ArrayList<>();
+    private NoticeScheduler scheduler;
+    private PropertyDAO dao;
+
+    private static PropertyBaseData property(int id, LocalDate lastPayment) {
+        return PropertyBuilder.property(id).city("80202").tenants(1).fee("1200.00").lastPayment(lastPayment)
+                .vacancy("O").build();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        // a DAO whose change feed returns everything queued since the last read
+        dao = (PropertyDAO) Proxy.newProxyInstance(PropertyDAO.class.getClassLoader(),
+                new Class<?>[]{PropertyDAO.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("propertyChangesSince")) throw new UnsupportedOperationException();
+                    List<PropertyBaseData> page = new ArrayList<>(changes);
+                    changes.clear();
+                    return new ChangeFeed<>(page, new int[0], (Long) args[1] + page.size(), false);
+                });
+        scheduler = new NoticeScheduler((notice, property) -> fired.add(notice + " " + property.getPropertyId()));
+
+        changes.addAll(Arrays.asList(
+                property(1, TODAY.minusDays(15)),
+                property(2, TODAY.minusDays(40)),
+                property(3, TODAY.minusDays(5))));
+        scheduler.rebuild(dao, TODAY);
+    }
+
+    @Test
+    public void countsPastNoticesAsSentAndFiresTodays() {
+        assertEquals(1, scheduler.advance(TODAY));
+        assertEquals(Arrays.asList("RENT_DUE 1"), fired);
+
+        assertEquals(1, scheduler.dueToday("owner", Notice.RENT_DUE).size());
+        assertEquals(2, scheduler.reachedAtLeast("owner", Notice.FIRST_LATE).get(0).getPropertyId());
+    }
+
+    @Test
+    public void firesEachStageOnItsDay() {
+        scheduler.advance(TODAY);
+        fired.clear();
+
+        scheduler.advance(TODAY.plusDays(20));
+        assertEquals(Arrays.asList("RENT_DUE 3", "SECOND_LATE 2"), fired);
+
+        fired.clear();
+        scheduler.advance(TODAY.plusDays(60));
+        assertEquals(Arrays.asList("FIRST_LATE 1", "FIRST_LATE 3", "EVICTION 2", "SECOND_LATE 1", "SECOND_LATE 3",
+                "EVICTION 1"), fired);
+    }
+
+    @Test
+    public void paymentRestartsTheSchedule() throws Exception {
+        scheduler.onPayment(2, TODAY);
+        assertTrue(scheduler.reachedAtLeast("owner", Notice.FIRST_LATE).isEmpty());
+
+        changes.add(property(1, TODAY));
+        scheduler.refresh(dao);
+
+        scheduler.advance(TODAY.plusDays(14));
+        assertEquals(Arrays.asList("RENT_DUE 3"), fired);
+
+        assertEquals(2, scheduler.advance(TODAY.plusDays(15)));
+        assertEquals(2, scheduler.dueToday("owner", Notice.RENT_DUE).size());
+    }
+
+    @Test
+    public void feeChangeShowsInLaterNotices() {
+        scheduler.onFeeChange(1, new BigDecimal("1300.00"));
+        scheduler.advance(TODAY);
+
+        assertEquals(new BigDecimal("1300.00"), scheduler.dueToday("owner", Notice.RENT_DUE).get(0).getRentalFee());
+    }
+}
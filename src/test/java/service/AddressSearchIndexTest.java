@@ -0,0 +1,103 @@
+package service;
+
+import dao.PropertyBuilder;
+import dao.PropertyDAO.PropertyBaseData;
+import dao.TenantDAO.TenantData;
+import org.junit.Before;
+import org.junit.Test;
+import service.AddressSearchIndex.Hit;
+import service.AddressSearchIndex.Kind;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AddressSearchIndexTest {
+    private AddressSearchIndex index;
+
+    private static PropertyBaseData property(int id, String address, String owner) {
+        return PropertyBuilder.property(id).address(address).city("80202").owner(owner).vacancy("O").build();
+    }
+
+    private static List<String> addresses(List<Hit> hits) {
+        return hits.stream().map(Hit::getAddress).collect(Collectors.toList());
+    }
+
+    @Before
+    public void setUp() {
+        index = new AddressSearchIndex();
+        index.update(property(1, "12 Main St", "a"));
+        index.update(property(2, "1200 Maple Ave.", "a"));
+        index.update(property(3, "45 Mainland Rd", "b"));
+        index.update(property(4, "7 Elm St, Apt 2", "a"));
+        index.update(new TenantData(10, "Ann", "Lee", null, "555", "99 Main Street", "Denver", "80202", 4));
+    }
+
+    @Test
+    public void normalizesAddresses() {
+        assertEquals("7 elm st apt 2", AddressSearchIndex.normalize(" 7 Elm St., Apt #2 "));
+    }
+
+    @Test
+    public void findsPrefixesFromAnyWord() {
+        assertEquals(Arrays.asList("12 Main St", "1200 Maple Ave."), addresses(index.prefix("12", 10, null)));
+        assertEquals(Arrays.asList("12 Main St", "45 Mainland Rd", "99 Main Street"),
+                addresses(index.prefix("main", 10, null)));
+        assertEquals(Arrays.asList("12 Main St"), addresses(index.prefix("main", 1, null)));
+    }
+
+    @Test
+    public void findsMisspellings() {
+        List<Hit> hits = index.fuzzy("12 Mian St", 3, null);
+
+        assertEquals("12 Main St", hits.get(0).getAddress());
+        assertTrue(hits.get(0).getScore() > 0.5);
+    }
+
+    @Test
+    public void searchFillsUpWithFuzzyMatchesAndKeepsToTheOwner() {
+        List<Hit> hits = index.search("main st", 5, "a");
+
+        assertEquals(Arrays.asList("12 Main St", "99 Main Street"), addresses(hits.subList(0, 2)));
+        assertEquals(Kind.TENANT, hits.get(1).getKind());
+        assertTrue(hits.stream().allMatch(h -> h.getPropertyId() != 3));
+
+        assertEquals("7 Elm St, Apt 2", index.search("elm stree", 5, "a").get(0).getAddress());
+    }
+
+    @Test
+    public void followsAddressChanges() {
+        index.update(property(1, "300 Oak Blvd", "a"));
+
+        assertEquals(Arrays.asList("300 Oak Blvd"), addresses(index.prefix("oak", 10, null)));
+        assertTrue(index.prefix("12 main", 10, null).isEmpty());
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void tenantsMoveWithTheirPropertysOwner() {
+        assertEquals(Arrays.asList("99 Main Street"), addresses(index.prefix("99", 10, "a")));
+
+        index.update(property(4, "7 Elm St, Apt 2", "b"));
+        assertTrue(index.prefix("99", 10, "a").isEmpty());
+        assertTrue(index.prefix("7 elm", 10, "a").isEmpty());
+        assertEquals(Arrays.asList("99 Main Street"), addresses(index.prefix("99", 10, "b")));
+        assertEquals(Arrays.asList("7 Elm St, Apt 2"), addresses(index.prefix("7 elm", 10, "b")));
+        assertEquals(5, index.size());
+    }
+
+    @Test
+    public void checksQueriesLongerThanTheTrie() {
+        index.update(property(5, "1 Kensingtonpalacegardensroad North", "a"));
+        index.update(property(6, "2 Kensingtonpalacegardenswalk", "a"));
+        assertTrue("kensingtonpalacegardensroad".length() > AddressSearchIndex.MAX_DEPTH);
+
+        assertEquals(Arrays.asList("1 Kensingtonpalacegardensroad North"),
+                addresses(index.prefix("kensingtonpalacegardensroad", 10, "a")));
+        assertEquals(2, index.prefix("kensingtonpalacegardens", 10, "a").size());
+        assertTrue(index.prefix("kensingtonpalacegardensroad", 10, "b").isEmpty());
+    }
+}
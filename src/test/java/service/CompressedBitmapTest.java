@@ -0,0 +1,80 @@
+package service;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompressedBitmapTest {
+
+    private static int[] toArray(BitSet bits) {
+        return bits.stream().toArray();
+    }
+
+    private static CompressedBitmap fill(Random random, BitSet bits, int n, int range) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i < n; i++) {
+            int v = random.nextInt(range);
+            bits.set(v);
+            bitmap.add(v);
+        }
+        return bitmap;
+    }
+
+    @Test
+    public void addRemoveAndContains() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+
+        assertTrue(bitmap.add(5));
+        assertFalse(bitmap.add(5));
+        assertTrue(bitmap.add(70000));
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(6));
+
+        assertTrue(bitmap.remove(5));
+        assertFalse(bitmap.remove(5));
+        assertArrayEquals(new int[]{70000}, bitmap.toArray());
+    }
+
+    @Test
+    public void matchesBitSetAcrossSparseAndDenseChunks() {
+        Random random = new Random(42);
+
+        // chunk densities on both sides of the array/bitset switch
+        for (int n : new int[]{100, 5000, 60000, 200000}) {
+            BitSet a = new BitSet(), b = new BitSet();
+            CompressedBitmap x = fill(random, a, n, 300000), y = fill(random, b, n / 2, 300000);
+
+            BitSet and = (BitSet) a.clone();
+            and.and(b);
+            BitSet or = (BitSet) a.clone();
+            or.or(b);
+            BitSet andNot = (BitSet) a.clone();
+            andNot.andNot(b);
+
+            assertArrayEquals(toArray(a), x.toArray());
+            assertArrayEquals(toArray(and), x.and(y).toArray());
+            assertEquals(and.cardinality(), x.andCardinality(y));
+            assertArrayEquals(toArray(or), x.or(y).toArray());
+            assertArrayEquals(toArray(andNot), x.andNot(y).toArray());
+        }
+    }
+
+    @Test
+    public void shrinksBackAfterRemoves() {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int i = 0; i < 10000; i++) bitmap.add(i);
+        for (int i = 0; i < 9990; i++) bitmap.remove(i);
+
+        assertEquals(10, bitmap.cardinality());
+        assertTrue(bitmap.contains(9995));
+
+        for (int i = 9990; i < 10000; i++) bitmap.remove(i);
+        assertTrue(bitmap.isEmpty());
+    }
+}
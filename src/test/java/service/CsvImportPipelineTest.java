@@ -0,0 +1,158 @@
+package service;
+
+import dao.PropertyDAO.PropertyBaseData;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class CsvImportPipelineTest {
+    private static final CsvImportPipeline.ProgressListener QUIET = (read, written, rejected) -> {
+    };
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path csv(String... lines) throws IOException {
+        Path csv = folder.newFile().toPath();
+        Files.write(csv, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return csv;
+    }
+
+    private List<String> rejects(Path rejectFile) throws IOException {
+        return Files.readAllLines(rejectFile, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void splitsQuotedFields() {
+        assertArrayEquals(new String[]{"a", "b, c", "say \"hi\"", ""},
+                CsvImportPipeline.splitCsvLine("a,\"b, c\",\"say \"\"hi\"\"\","));
+    }
+
+    @Test
+    public void optionalColumnsMayBeLeftOutOfTheHeader() throws Exception {
+        Path csv = csv("type,address,city_code,owner_id,rental_fee",
+                "H,1 Main St.,ABQ,eugene,950.00");
+        Path rejectFile = folder.newFile().toPath();
+        List<PropertyBaseData> written = Collections.synchronizedList(new ArrayList<>());
+
+        CsvImportPipeline.Result result = new CsvImportPipeline<>(BulkImport::parseProperty, written::addAll, 2, 10)
+                .run(csv, rejectFile, QUIET);
+
+        assertEquals(0, result.rejected());
+        assertEquals(1, written.size());
+
+        PropertyBaseData property = written.get(0);
+        assertEquals("1 Main St.", property.getPropertyAddress());
+        assertEquals(new BigDecimal("950.00"), property.getRentalFee());
+        assertEquals("V", property.getVacancyIndicator());
+        assertEquals(0, property.getNumberOfRooms());
+        assertNull(property.getSquareFootage());
+        assertNull(property.getLastPaymentDate());
+    }
+
+    @Test
+    public void rejectsInvalidLinesWithTheirReason() throws Exception {
+        Path csv = csv("type,address,city_code,owner_id,rental_fee",
+                "H,1 Main St.,ABQ,eugene,950.00",
+                "H,2 Main St.,ABQ,eugene,",
+                "",
+                "H,3 Main St.,ALBQ,eugene,950.00",
+                "H,4 Main St.,ABQ,eugene,950.00");
+        Path rejectFile = folder.newFile().toPath();
+        List<PropertyBaseData> written = Collections.synchronizedList(new ArrayList<>());
+
+        CsvImportPipeline.Result result = new CsvImportPipeline<>(BulkImport::parseProperty, written::addAll, 2, 10)
+                .run(csv, rejectFile, QUIET);
+
+        assertEquals(2, written.size());
+        assertEquals(2, result.rejected());
+        assertEquals(5, result.read().rows());
+        assertEquals(Arrays.asList("type,address,city_code,owner_id,rental_fee,reject_reason",
+                "H,2 Main St.,ABQ,eugene,,\"line 3: rental_fee is required\"",
+                "H,3 Main St.,ALBQ,eugene,950.00,\"line 5: city_code longer than 3 characters\""),
+                rejects(rejectFile));
+    }
+
+    @Test
+    public void rowsTheDatabaseRefusesAreIsolatedFromTheirBatch() throws Exception {
+        Path csv = csv("name", "a", "b", "bad", "c", "d", "e");
+        Path rejectFile = folder.newFile().toPath();
+        List<String> written = new ArrayList<>();
+        List<Integer> batchSizes = new ArrayList<>();
+
+        CsvImportPipeline.Result result = new CsvImportPipeline<>(r -> r.require("name"), batch -> {
+            batchSizes.add(batch.size());
+            if (batch.contains("bad")) throw new SQLException("Data too long for column 'name'", "22001");
+            written.addAll(batch);
+        }, 1, 6).run(csv, rejectFile, QUIET);
+
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), written);
+        assertEquals(1, result.rejected());
+        assertEquals(5, result.written().rows());
+        assertEquals("bad,\"Data too long for column 'name'\"", rejects(rejectFile).get(1));
+        // only the halves holding the bad row are split again
+        assertEquals(Arrays.asList(6, 3, 1, 2, 1, 1, 3), batchSizes);
+    }
+
+    @Test
+    public void lostConnectionEndsTheImport() throws Exception {
+        Path csv = csv("name", "a", "b");
+        Path rejectFile = folder.newFile().toPath();
+
+        try {
+            new CsvImportPipeline<>(r -> r.require("name"), batch -> {
+                throw new SQLNonTransientConnectionException("Communications link failure", "08S01");
+            }, 1, 10).run(csv, rejectFile, QUIET);
+            fail("expected the lost connection to end the import");
+        } catch (SQLException e) {
+            assertEquals("08S01", e.getSQLState());
+        }
+
+        assertEquals(1, rejects(rejectFile).size());
+    }
+
+    @Test
+    public void failedImportLeavesNoStageBehind() throws Exception {
+        List<String> lines = new ArrayList<>(Collections.singletonList("name"));
+        for (int i = 0; i < 50_000; i++) lines.add("row" + i);
+        Path csv = csv(lines.toArray(new String[0]));
+
+        try {
+            new CsvImportPipeline<>(r -> r.require("name"), batch -> {
+                // long enough for the reader and parsers to fill their queues
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new SQLNonTransientConnectionException("Communications link failure", "08S01");
+            }, 2, 10).run(csv, folder.newFile().toPath(), QUIET);
+            fail("expected the lost connection to end the import");
+        } catch (SQLException expected) {
+            // the reader and parsers were stopped with their queues full
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (Thread.getAllStackTraces().keySet().stream().anyMatch(t -> t.getName().equals("csv-import"))) {
+            if (System.currentTimeMillis() > deadline) fail("import threads still blocked");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PasswordsTest {
+
+    @Test
+    public void verifiesOnlyThePasswordHashed() {
+        String hash = Passwords.hash("hunter2".toCharArray());
+
+        assertTrue(hash.startsWith("pbkdf2-sha256$"));
+        assertTrue(Passwords.verify("hunter2".toCharArray(), hash));
+        assertFalse(Passwords.verify("hunter3".toCharArray(), hash));
+        assertFalse(Passwords.verify("".toCharArray(), hash));
+    }
+
+    @Test
+    public void saltsEveryHash() {
+        String first = Passwords.hash("hunter2".toCharArray());
+        String second = Passwords.hash("hunter2".toCharArray());
+
+        assertNotEquals(first, second);
+        assertTrue(Passwords.verify("hunter2".toCharArray(), second));
+    }
+
+    @Test
+    public void missingOrUnreadableHashMatchesNothing() {
+        assertFalse(Passwords.verify("not a password".toCharArray(), null));
+        assertFalse(Passwords.verify("hunter2".toCharArray(), "hunter2"));
+        assertFalse(Passwords.verify("hunter2".toCharArray(), "pbkdf2-sha256$x$!!$!!"));
+    }
+}
@@ -0,0 +1,79 @@
+package service;
+
+import dao.PropertyBuilder;
+import dao.PropertyDAO.PropertyBaseData;
+import org.junit.Before;
+import org.junit.Test;
+import service.PropertyAttributeIndex.Attribute;
+import service.PropertyAttributeIndex.Filter;
+import service.PropertyAttributeIndex.SearchResult;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class PropertyAttributeIndexTest {
+    private PropertyAttributeIndex index;
+
+    private static PropertyBaseData property(int id, String type, String city, int rooms, String vacancy) {
+        return PropertyBuilder.property(id).type(type).city(city).rooms(rooms).owner("owner" + id % 2)
+                .vacancy(vacancy).build();
+    }
+
+    private static List<Integer> ids(SearchResult result) {
+        return result.getProperties().stream().map(PropertyBaseData::getPropertyId).collect(Collectors.toList());
+    }
+
+    @Before
+    public void setUp() {
+        index = new PropertyAttributeIndex();
+        index.update(property(1, "House", "80202", 3, "V"));
+        index.update(property(2, "Apartment", "80202", 1, "O"));
+        index.update(property(3, "House", "80301", 4, "V"));
+        index.update(property(4, "Condo", "80202", 2, "V"));
+    }
+
+    @Test
+    public void combinesAndOrAndNot() {
+        Filter vacantInCity = Filter.and(Arrays.asList(
+                Filter.eq(Attribute.VACANCY, "V"), Filter.eq(Attribute.CITY_CODE, "80202")));
+        assertEquals(Arrays.asList(1, 4), ids(index.search(vacantInCity, 10, Collections.emptyList())));
+
+        Filter bigOrCondo = Filter.or(Arrays.asList(
+                Filter.in(Attribute.ROOMS, Arrays.asList(3, 4)), Filter.eq(Attribute.TYPE, "Condo")));
+        assertEquals(3, index.count(bigOrCondo));
+
+        assertEquals(Collections.singletonList(2), ids(index.search(Filter.not(Filter.eq(Attribute.VACANCY, "V")),
+                10, Collections.emptyList())));
+    }
+
+    @Test
+    public void countsFacetsAmongMatches() {
+        SearchResult result = index.search(Filter.eq(Attribute.VACANCY, "V"), 1,
+                Arrays.asList(Attribute.TYPE, Attribute.CITY_CODE));
+
+        assertEquals(1, result.getProperties().size());
+        assertEquals(2, (int) result.getFacets().get(Attribute.TYPE).get("House"));
+        assertEquals(1, (int) result.getFacets().get(Attribute.TYPE).get("Condo"));
+        assertEquals(2, (int) result.getFacets().get(Attribute.CITY_CODE).get("80202"));
+    }
+
+    @Test
+    public void followsUpdatesAndDeletes() {
+        index.update(property(2, "Apartment", "80202", 1, "V"));
+        index.delete(1);
+
+        assertEquals(Arrays.asList(2, 4), ids(index.search(Filter.and(Arrays.asList(
+                Filter.eq(Attribute.VACANCY, "V"), Filter.eq(Attribute.CITY_CODE, "80202"))),
+                10, Collections.emptyList())));
+
+        // the freed ordinal is reused
+        index.update(property(5, "House", "80301", 3, "O"));
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList(5, 3), ids(index.search(Filter.eq(Attribute.CITY_CODE, "80301"), 10,
+                Collections.emptyList())));
+    }
+}
@@ -0,0 +1,78 @@
+package service;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WarmUpTest {
+    @Test
+    public void runsTasksSideBySide() throws InterruptedException {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        WarmUp warmUp = new WarmUp(2)
+                .task("a", () -> {
+                    bothStarted.countDown();
+                    assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+                })
+                .task("b", () -> {
+                    bothStarted.countDown();
+                    assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+                });
+
+        assertFalse(warmUp.isReady());
+        warmUp.start();
+
+        assertTrue(warmUp.await(10, TimeUnit.SECONDS));
+        assertTrue(warmUp.isReady());
+        assertTrue(warmUp.status().matches("(?s)a done \\d+ ms\nb done \\d+ ms\n"));
+    }
+
+    @Test
+    public void isNotReadyUntilEveryTaskIsDone() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        WarmUp warmUp = new WarmUp(2)
+                .task("quick", () -> {
+                })
+                .task("slow", release::await)
+                .start();
+
+        assertFalse(warmUp.await(100, TimeUnit.MILLISECONDS));
+        assertFalse(warmUp.isReady());
+        assertTrue(warmUp.status().contains("slow running"));
+
+        release.countDown();
+        assertTrue(warmUp.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void retriesAFailedTaskUntilItIsDone() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        WarmUp warmUp = new WarmUp(1, 10, 20)
+                .task("connection", () -> {
+                    if (runs.incrementAndGet() < 4) throw new IllegalStateException("no database");
+                })
+                .start();
+
+        assertTrue(warmUp.await(10, TimeUnit.SECONDS));
+        assertEquals(4, runs.get());
+        assertTrue(warmUp.status().matches("connection done \\d+ ms, 3 failed\n"));
+    }
+
+    @Test
+    public void isNotReadyWhileATaskKeepsFailing() throws InterruptedException {
+        WarmUp warmUp = new WarmUp(1, 10, 20)
+                .task("connection", () -> {
+                    throw new IllegalStateException("no database");
+                })
+                .start();
+
+        assertFalse(warmUp.await(200, TimeUnit.MILLISECONDS));
+        assertFalse(warmUp.isReady());
+        assertTrue(warmUp.status().contains("(no database)"));
+    }
+}
@@ -0,0 +1,66 @@
+package util;
+
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StringInternerTest {
+
+    @Test
+    public void equalValuesAreDecodedOnceAndShared() throws SQLException {
+        StringInterner interner = new StringInterner(16);
+        AtomicInteger decodes = new AtomicInteger();
+
+        String first = interner.intern(column("ABQ", decodes), 1);
+        String second = interner.intern(column("ABQ", decodes), 1);
+        String other = interner.intern(column("SAF", decodes), 1);
+
+        assertEquals("ABQ", first);
+        assertSame(first, second);
+        assertEquals("SAF", other);
+        assertEquals(2, decodes.get());
+    }
+
+    @Test
+    public void nullStaysNull() throws SQLException {
+        assertNull(new StringInterner(16).intern(column(null, new AtomicInteger()), 1));
+    }
+
+    @Test
+    public void dictionaryIsBounded() throws SQLException {
+        StringInterner interner = new StringInterner(64);
+
+        for (int i = 0; i < 10_000; i++) {
+            String value = "owner" + i;
+            assertEquals(value, interner.intern(column(value, new AtomicInteger()), 1));
+        }
+
+        assertTrue(interner.size() <= 64);
+    }
+
+    /**
+     * A result set with one string column, counting how often the value is decoded
+     */
+    private static ResultSet column(String value, AtomicInteger decodes) {
+        return (ResultSet) Proxy.newProxyInstance(StringInternerTest.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getBytes":
+                            return value == null ? null : value.getBytes(UTF_8);
+                        case "getString":
+                            decodes.incrementAndGet();
+                            return value == null ? null : new String(value);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,89 @@
+package website.jetty;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdmissionFilterTest {
+    private SessionStore sessions;
+    private AdmissionFilter filter;
+    private int passed;
+
+    @Before
+    public void setUp() {
+        sessions = new SessionStore(60, 10);
+        filter = new AdmissionFilter(sessions, 2, 0.001)
+                .limit("/login", 1, 1, 100)
+                .rate("/login", 1, 0.001)
+                .limit("/properties", 1, 1, 100);
+    }
+
+    @After
+    public void tearDown() {
+        sessions.close();
+    }
+
+    private HttpServletRequest request(String servletPath, String address, String token) {
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getServletPath":
+                            return servletPath;
+                        case "getRemoteAddr":
+                            return address;
+                        case "getCookies":
+                            return token == null ? null : new Cookie[]{new Cookie(SessionStore.COOKIE_NAME, token)};
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    /**
+     * @return the status of the response, 200 if the request was passed on
+     */
+    private int filter(HttpServletRequest request) throws Exception {
+        List<Integer> errors = new ArrayList<>();
+        HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("sendError")) errors.add((Integer) args[0]);
+                    return null;
+                });
+        FilterChain chain = (req, resp) -> passed++;
+
+        filter.doFilter(request, response, chain);
+        return errors.isEmpty() ? 200 : errors.get(0);
+    }
+
+    @Test
+    public void anonymousCallersAreLimitedByAddress() throws Exception {
+        assertEquals(200, filter(request("/properties", "10.0.0.1", null)));
+        assertEquals(200, filter(request("/properties", "10.0.0.1", null)));
+        assertEquals(429, filter(request("/properties", "10.0.0.1", null)));
+
+        assertEquals(200, filter(request("/properties", "10.0.0.2", null)));
+        assertEquals(200, filter(request("/properties", "10.0.0.1", sessions.issue("eugene"))));
+        assertEquals(4, passed);
+    }
+
+    @Test
+    public void loginsHaveARateOfTheirOwn() throws Exception {
+        assertEquals(200, filter(request("/login", "10.0.0.1", null)));
+        assertEquals(429, filter(request("/login", "10.0.0.1", null)));
+
+        // the address still has its requests to the other endpoints
+        assertEquals(200, filter(request("/properties", "10.0.0.1", null)));
+        assertEquals(200, filter(request("/login", "10.0.0.2", null)));
+        assertEquals(3, passed);
+    }
+}
@@ -0,0 +1,98 @@
+package website.jetty;
+
+import org.junit.Test;
+import website.jetty.AdmissionQueue.Priority;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdmissionQueueTest {
+    private static final long LONG_BUDGET_MS = 10_000;
+
+    private static long metric(AdmissionQueue queue, String name) {
+        StringBuilder out = new StringBuilder();
+        queue.appendMetrics(out);
+
+        for (String line : out.toString().split("\n")) {
+            if (line.startsWith("admission.test." + name + " ")) return Long.parseLong(line.split(" ")[1]);
+        }
+        throw new AssertionError("no metric " + name);
+    }
+
+    private static void awaitQueued(AdmissionQueue queue, int queued) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + LONG_BUDGET_MS;
+
+        while (metric(queue, "queued") != queued) {
+            if (System.currentTimeMillis() > deadline) fail("expected " + queued + " queued");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void lookupDisplacesTheLastScan() throws Exception {
+        AdmissionQueue queue = new AdmissionQueue("test", 1, 1, LONG_BUDGET_MS);
+        ExecutorService threads = Executors.newCachedThreadPool();
+
+        try {
+            assertTrue(queue.acquire(Priority.SCAN));
+            Future<Boolean> scan = threads.submit(() -> queue.acquire(Priority.SCAN));
+            awaitQueued(queue, 1);
+
+            Future<Boolean> lookup = threads.submit(() -> queue.acquire(Priority.LOOKUP));
+            assertFalse("the scan is shed", scan.get(LONG_BUDGET_MS, TimeUnit.MILLISECONDS));
+            awaitQueued(queue, 1);
+
+            // a scan does not displace a lookup
+            assertFalse(queue.acquire(Priority.SCAN));
+
+            queue.release();
+            assertTrue(lookup.get(LONG_BUDGET_MS, TimeUnit.MILLISECONDS));
+            assertEquals(2, metric(queue, "shed_queue_full"));
+            assertEquals(1, metric(queue, "running"));
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void waiterOverBudgetIsShed() throws InterruptedException {
+        AdmissionQueue queue = new AdmissionQueue("test", 1, 1, 50);
+
+        assertTrue(queue.acquire(Priority.LOOKUP));
+        assertFalse(queue.acquire(Priority.LOOKUP));
+        assertEquals(1, metric(queue, "shed_over_budget"));
+        assertEquals(0, metric(queue, "queued"));
+
+        queue.release();
+        assertEquals(0, metric(queue, "running"));
+    }
+
+    @Test
+    public void interruptedWaiterLeavesTheQueue() throws Exception {
+        AdmissionQueue queue = new AdmissionQueue("test", 1, 1, LONG_BUDGET_MS);
+        ExecutorService threads = Executors.newSingleThreadExecutor();
+
+        try {
+            assertTrue(queue.acquire(Priority.SCAN));
+            Future<Boolean> waiter = threads.submit(() -> queue.acquire(Priority.SCAN));
+            awaitQueued(queue, 1);
+
+            waiter.cancel(true);
+            awaitQueued(queue, 0);
+
+            // the slot is not handed to the thread that gave up
+            queue.release();
+            assertEquals(0, metric(queue, "running"));
+            assertTrue(queue.acquire(Priority.SCAN));
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package website.jetty;
+
+import dao.ChangeFeed;
+import dao.PropertyBuilder;
+import dao.PropertyDAO;
+import dao.PropertyDAO.PropertyBaseData;
+import dao.TenantDAO;
+import dao.TenantDAO.TenantData;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeVersionsTest {
+    private static PropertyBaseData property(int id, String ownerId, String rentalFee) {
+        return PropertyBuilder.property(id).owner(ownerId).fee(rentalFee).build();
+    }
+
+    private static TenantData tenant(int id, int propertyId) {
+        return new TenantData(id, "Ann", "Lee", null, null, propertyId + " Main St", "ABQ", "87101", propertyId);
+    }
+
+    /**
+     * Feeds answering every read with the given pages, whatever the mark.
+     */
+    private static int refresh(ChangeVersions versions, ChangeFeed<PropertyBaseData> properties,
+                               ChangeFeed<TenantData> tenants) throws SQLException {
+        PropertyDAO propertyDAO = (PropertyDAO) Proxy.newProxyInstance(PropertyDAO.class.getClassLoader(),
+                new Class<?>[]{PropertyDAO.class}, (proxy, method, args) -> properties);
+        TenantDAO tenantDAO = (TenantDAO) Proxy.newProxyInstance(TenantDAO.class.getClassLoader(),
+                new Class<?>[]{TenantDAO.class}, (proxy, method, args) -> tenants);
+        return versions.refresh(propertyDAO, tenantDAO);
+    }
+
+    @SafeVarargs
+    private static <T> ChangeFeed<T> feed(int[] deletedIds, T... upserts) {
+        return new ChangeFeed<>(Arrays.asList(upserts), deletedIds, 1, false);
+    }
+
+    @Test
+    public void feedsBumpTheOwnersOfChangedRows() throws SQLException {
+        ChangeVersions versions = new ChangeVersions();
+        assertEquals(3, refresh(versions, feed(new int[0], property(1, "eugene", "900"), property(2, "lar", "900")),
+                feed(new int[0], tenant(7, 1))));
+        assertEquals(2, versions.ownerVersion("eugene"));
+        assertEquals(1, versions.ownerVersion("lar"));
+
+        // rows sent again are no change
+        String eugene = versions.ownerETag("eugene");
+        String vacant = versions.vacancyETag();
+        assertEquals(0, refresh(versions, feed(new int[0], property(1, "eugene", "900")),
+                feed(new int[0], tenant(7, 1))));
+        assertEquals(eugene, versions.ownerETag("eugene"));
+        assertEquals(vacant, versions.vacancyETag());
+
+        // a property moving to another owner changes both lists; its tenant moving there too only one
+        assertEquals(2, refresh(versions, feed(new int[0], property(2, "eugene", "900")),
+                feed(new int[0], tenant(7, 2))));
+        assertEquals(4, versions.ownerVersion("eugene"));
+        assertEquals(2, versions.ownerVersion("lar"));
+
+        // deletes bump the owner the row had; a tenant going with its property has none left
+        assertEquals(2, refresh(versions, feed(new int[]{2}), feed(new int[]{7})));
+        assertEquals(5, versions.ownerVersion("eugene"));
+        assertEquals(0, refresh(versions, feed(new int[]{2}), feed(new int[]{7})));
+    }
+
+    @Test
+    public void writesBumpTheirOwnerAndTheVacancies() {
+        ChangeVersions versions = new ChangeVersions();
+        String eugene = versions.ownerETag("eugene");
+        String lar = versions.ownerETag("lar");
+        String vacant = versions.vacancyETag();
+
+        versions.propertiesChanged("eugene");
+        assertNotEquals(eugene, versions.ownerETag("eugene"));
+        assertEquals(lar, versions.ownerETag("lar"));
+        assertNotEquals(vacant, versions.vacancyETag());
+
+        versions.tenantsChanged("lar");
+        assertEquals(1, versions.ownerVersion("lar"));
+        assertEquals(2, versions.vacancyVersion());
+        assertEquals(0, versions.ownerVersion("nobody"));
+    }
+
+    @Test
+    public void tagsOfAnotherInstanceNeverMatch() throws InterruptedException {
+        String before = new ChangeVersions().ownerETag("eugene");
+        Thread.sleep(2);
+
+        assertNotEquals(before, new ChangeVersions().ownerETag("eugene"));
+    }
+
+    @Test
+    public void matchesIfNoneMatchLists() {
+        String etag = new ChangeVersions().vacancyETag();
+
+        assertTrue(ChangeVersions.matches(etag, etag));
+        assertTrue(ChangeVersions.matches("\"old\", W/" + etag, etag));
+        assertTrue(ChangeVersions.matches("*", etag));
+        assertFalse(ChangeVersions.matches("\"old\"", etag));
+        assertFalse(ChangeVersions.matches(null, etag));
+    }
+}
@@ -0,0 +1,141 @@
+package website.jetty;
+
+import dao.PropertyBuilder;
+import dao.PropertyDAO;
+import dao.PropertyDAO.PropertyBaseData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OwnerPageServletTest {
+    private SessionStore sessions;
+    private String token;
+    private AtomicInteger rows;
+
+    private static PropertyBaseData property(int id) {
+        return PropertyBuilder.property(id).owner("eugene").build();
+    }
+
+    /**
+     * A DAO streaming {@code count} properties, then failing if {@code failing} is set.
+     */
+    private PropertyDAO dao(int count, boolean failing) {
+        return (PropertyDAO) Proxy.newProxyInstance(PropertyDAO.class.getClassLoader(),
+                new Class<?>[]{PropertyDAO.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("streamAllPropertiesByOwner")) return null;
+
+                    @SuppressWarnings("unchecked")
+                    Consumer<PropertyBaseData> action = (Consumer<PropertyBaseData>) args[1];
+                    for (int id = 1; id <= count; id++) {
+                        action.accept(property(id));
+                        rows.incrementAndGet();
+                    }
+                    if (failing) throw new SQLException("Lost connection to MySQL server during query");
+                    return count;
+                });
+    }
+
+    private HttpServletRequest request() {
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getPathInfo":
+                            return "/properties";
+                        case "getCookies":
+                            return new Cookie[]{new Cookie(SessionStore.COOKIE_NAME, token)};
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static HttpServletResponse response(Writer body) {
+        PrintWriter writer = new PrintWriter(body);
+
+        return (HttpServletResponse) Proxy.newProxyInstance(OwnerPageServletTest.class.getClassLoader(),
+                new Class<?>[]{HttpServletResponse.class},
+                (proxy, method, args) -> method.getName().equals("getWriter") ? writer : null);
+    }
+
+    private void get(PropertyDAO dao, Writer body) throws Exception {
+        new OwnerPageServlet(dao, null, new ChangeVersions(), sessions).doGet(request(), response(body));
+    }
+
+    @Before
+    public void setUp() {
+        sessions = new SessionStore(60, 10);
+        token = sessions.issue("eugene");
+        rows = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        sessions.close();
+    }
+
+    @Test
+    public void rendersEveryRow() throws Exception {
+        StringWriter body = new StringWriter();
+        get(dao(3, false), body);
+
+        assertTrue(body.toString().contains("3 Main St"));
+        assertTrue(body.toString().endsWith("</html>"));
+    }
+
+    @Test
+    public void failedQueryAbortsThePage() throws Exception {
+        StringWriter body = new StringWriter();
+
+        try {
+            get(dao(2, true), body);
+            fail("expected the response to be aborted");
+        } catch (ServletException expected) {
+            assertTrue(body.toString().contains("Unable to load all properties of eugene."));
+            assertFalse("the page is left unfinished", body.toString().contains("</html>"));
+        }
+    }
+
+    @Test
+    public void clientGoingAwayStopsTheQuery() throws Exception {
+        Writer gone = new Writer() {
+            @Override
+            public void write(char[] buf, int off, int len) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void flush() throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        try {
+            get(dao(1000, false), gone);
+            fail("expected the response to be aborted");
+        } catch (ServletException expected) {
+            assertEquals("the query stops at the first row", 0, rows.get());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package website.jetty;
+
+import dao.ChangeFeed;
+import dao.PropertyBuilder;
+import dao.PropertyDAO;
+import dao.PropertyDAO.PropertyBaseData;
+import dao.TenantDAO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class PropertiesServletTest {
+    private SessionStore sessions;
+    private ChangeVersions versions;
+    private PropertyDAO properties;
+    private TenantDAO tenants;
+    private PropertiesServlet servlet;
+    private AtomicInteger queries;
+    private BigDecimal rentalFee;
+    private long changeSeq;
+    private String token;
+
+    /**
+     * The parts of a response the servlet sets.
+     */
+    private static final class Response {
+        final Map<String, String> headers = new HashMap<>();
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int status = HttpServletResponse.SC_OK;
+
+        HttpServletResponse proxy() {
+            ServletOutputStream out = new ServletOutputStream() {
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener writeListener) {
+                }
+
+                @Override
+                public void write(int b) {
+                    body.write(b);
+                }
+            };
+
+            return (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class<?>[]{HttpServletResponse.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "setHeader":
+                                headers.put((String) args[0], (String) args[1]);
+                                return null;
+                            case "setStatus":
+                            case "sendError":
+                                status = (Integer) args[0];
+                                return null;
+                            case "getOutputStream":
+                                return out;
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        @SuppressWarnings("unchecked")
+        List<PropertyBaseData> properties() throws Exception {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(body.toByteArray()))) {
+                return (List<PropertyBaseData>) in.readObject();
+            }
+        }
+    }
+
+    private static HttpServletRequest request(String pathInfo, String token, String ifNoneMatch) {
+        Map<String, Object> attributes = new HashMap<>();
+
+        return (HttpServletRequest) Proxy.newProxyInstance(PropertiesServletTest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getPathInfo":
+                            return pathInfo;
+                        case "getHeader":
+                            return "If-None-Match".equals(args[0]) ? ifNoneMatch : null;
+                        case "getCookies":
+                            return token == null ? null : new Cookie[]{new Cookie(SessionStore.COOKIE_NAME, token)};
+                        case "getAttribute":
+                            return attributes.get(args[0]);
+                        case "setAttribute":
+                            attributes.put((String) args[0], args[1]);
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private Response get(String pathInfo, String ifNoneMatch) throws Exception {
+        Response response = new Response();
+        servlet.doGet(request(pathInfo, token, ifNoneMatch), response.proxy());
+        return response;
+    }
+
+    private PropertyBaseData property() {
+        return PropertyBuilder.property(1).fee(rentalFee).owner("eugene").build();
+    }
+
+    /**
+     * A DAO holding one vacant property of eugene's, counting the queries for the lists. Its feed
+     * sends the property whenever it changed since the mark asked for.
+     */
+    private PropertyDAO dao() {
+        return (PropertyDAO) Proxy.newProxyInstance(PropertyDAO.class.getClassLoader(),
+                new Class<?>[]{PropertyDAO.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "listAllPropertiesByOwner":
+                        case "listAllVacantProperties":
+                            queries.incrementAndGet();
+                            return Collections.singletonList(property());
+                        case "propertyChangesSince":
+                            long seq = (Long) args[1];
+                            List<PropertyBaseData> changed = seq < changeSeq
+                                    ? Collections.singletonList(property()) : Collections.emptyList();
+                            return new ChangeFeed<>(changed, new int[0], Math.max(seq, changeSeq), false);
+                        case "updateRentalFee":
+                            rentalFee = (BigDecimal) args[0];
+                            changeSeq++;
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static TenantDAO noTenants() {
+        return (TenantDAO) Proxy.newProxyInstance(TenantDAO.class.getClassLoader(),
+                new Class<?>[]{TenantDAO.class}, (proxy, method, args) ->
+                        new ChangeFeed<>(Collections.emptyList(), new int[0], (Long) args[1], false));
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        versions = new ChangeVersions();
+        queries = new AtomicInteger();
+        rentalFee = new BigDecimal("1000.00");
+        changeSeq = 1;
+        properties = dao();
+        tenants = noTenants();
+        versions.refresh(properties, tenants);
+
+        sessions = new SessionStore(60, 10);
+        token = sessions.issue("eugene");
+        servlet = new PropertiesServlet(properties, versions, sessions);
+    }
+
+    @After
+    public void tearDown() {
+        sessions.close();
+    }
+
+    @Test
+    public void repeatedPollIsNotModifiedUntilTheFeedHasAChange() throws Exception {
+        Response first = get(null, null);
+        String etag = first.headers.get("ETag");
+        assertEquals(1, first.properties().size());
+
+        Response again = get(null, etag);
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, again.status);
+        assertEquals(0, again.body.size());
+        assertEquals("the tag is answered without a query", 1, queries.get());
+
+        properties.updateRentalFee(new BigDecimal("1100.00"), 1, "eugene");
+        assertEquals(1, versions.refresh(properties, tenants));
+        Response changed = get(null, etag);
+        assertEquals(HttpServletResponse.SC_OK, changed.status);
+        assertNotEquals(etag, changed.headers.get("ETag"));
+        assertEquals(new BigDecimal("1100.00"), changed.properties().get(0).getRentalFee());
+
+        // the feed sends the row again, which is no change
+        changeSeq++;
+        assertEquals(0, versions.refresh(properties, tenants));
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, get(null, changed.headers.get("ETag")).status);
+    }
+
+    @Test
+    public void vacanciesAreOpenButOwnerListsAreNot() throws Exception {
+        token = null;
+        assertEquals(HttpServletResponse.SC_UNAUTHORIZED, get(null, null).status);
+
+        Response vacant = get("/vacant", null);
+        assertEquals(HttpServletResponse.SC_OK, vacant.status);
+        assertEquals(1, vacant.properties().size());
+        assertEquals(HttpServletResponse.SC_NOT_MODIFIED, get("/vacant", vacant.headers.get("ETag")).status);
+    }
+}
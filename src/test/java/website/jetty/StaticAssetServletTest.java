@@ -0,0 +1,71 @@
+package website.jetty;
+
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StaticAssetServletTest {
+    private static final long LENGTH = 1000;
+    private static final long[] IGNORED = new long[0];
+
+    private static long[] range(String header) {
+        return StaticAssetServlet.parseRange(header, LENGTH);
+    }
+
+    @Test
+    public void boundedRange() {
+        assertArrayEquals(new long[]{0, 499}, range("bytes=0-499"));
+        assertArrayEquals(new long[]{500, 999}, range("bytes=500-1500"));
+    }
+
+    @Test
+    public void suffixRangeIsTheLastBytes() {
+        assertArrayEquals(new long[]{900, 999}, range("bytes=-100"));
+        assertArrayEquals(new long[]{0, 999}, range("bytes=-5000"));
+    }
+
+    @Test
+    public void openEndedRangeRunsToTheEnd() {
+        assertArrayEquals(new long[]{990, 999}, range("bytes=990-"));
+        assertArrayEquals(new long[]{0, 999}, range("bytes=0-"));
+    }
+
+    @Test
+    public void unsatisfiableRanges() {
+        assertNull(range("bytes=1000-"));
+        assertNull(range("bytes=1000-1100"));
+        assertNull(range("bytes=500-400"));
+        assertNull(range("bytes=-0"));
+    }
+
+    @Test
+    public void multipleOrMalformedRangesAreIgnored() {
+        assertArrayEquals(IGNORED, range("bytes=0-99,200-299"));
+        assertArrayEquals(IGNORED, range("bytes=-100, 0-0"));
+        assertArrayEquals(IGNORED, range("items=0-99"));
+        assertArrayEquals(IGNORED, range("bytes=100"));
+        assertArrayEquals(IGNORED, range("bytes=a-b"));
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        return ExportServlet.acceptsGzip((HttpServletRequest) Proxy.newProxyInstance(
+                StaticAssetServletTest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class},
+                (proxy, method, args) -> method.getName().equals("getHeader") ? acceptEncoding : null));
+    }
+
+    @Test
+    public void gzipRefusedWithQualityZero() {
+        assertTrue(acceptsGzip("gzip, deflate"));
+        assertTrue(acceptsGzip("br;q=1.0, gzip;q=0.5"));
+        assertFalse(acceptsGzip("gzip;q=0"));
+        assertFalse(acceptsGzip("deflate, gzip; q=0.0"));
+        assertFalse(acceptsGzip("x-gzip-like"));
+        assertFalse(acceptsGzip(null));
+    }
+}